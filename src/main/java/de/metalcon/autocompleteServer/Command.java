@@ -12,6 +12,21 @@ public abstract class Command {
 
 	public abstract void run();
 
+	/**
+	 * returns the name of the index whose answers the command changes, or null
+	 * if it may change the answers of every index
+	 */
+	public String getIndexName() {
+		return null;
+	}
+
+	/**
+	 * is called by the worker once the changes of the command are visible to
+	 * retrieve requests
+	 */
+	public void finished() {
+	}
+
 	public ServletContext getContext() {
 		return this.context;
 	}
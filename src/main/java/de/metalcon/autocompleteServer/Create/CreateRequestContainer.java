@@ -1,13 +1,18 @@
 package de.metalcon.autocompleteServer.Create;
 
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
 
 import javax.servlet.ServletContext;
 
 import de.metalcon.autocompleteServer.Command;
+import de.metalcon.autocompleteServer.Helper.CategoryIndex;
 import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Handle;
+import de.metalcon.autocompleteServer.Helper.PhoneticIndex;
 import de.metalcon.autocompleteServer.Helper.SuggestTree;
+import de.metalcon.autocompleteServer.Helper.TokenIndex;
 
 public class CreateRequestContainer extends Command {
 
@@ -28,16 +33,49 @@ public class CreateRequestContainer extends Command {
 	public void run() {
 		SuggestTree suggestTree = ContextListener.getIndex(
 				this.suggestionComponents.getIndexName(), this.context);
+		// the suggestion keeps the handle of the image of its key, which
+		// follows the image if it is stored or changed later
+		ImageStore imageStore = ContextListener.getImageStore(this.context);
+		Handle handle = (imageStore != null
+				&& this.suggestionComponents.getKey() != null) ? imageStore
+				.handle(this.suggestionComponents.getKey()) : null;
 
 		suggestTree.put(this.suggestionComponents.getSuggestString(),
 				this.suggestionComponents.getWeight(),
-				this.suggestionComponents.getKey());
-		if (this.suggestionComponents.getImageBase64() != null) {
-			HashMap<String, String> map = ContextListener
-					.getImageIndex(this.context);
-			map.put(this.suggestionComponents.getKey(),
-					this.suggestionComponents.getImageBase64());
-			ContextListener.setImageIndex(map, this.context);
+				this.suggestionComponents.getKey(), handle);
+		PhoneticIndex phoneticIndex = ContextListener.getPhoneticIndex(
+				this.suggestionComponents.getIndexName(), this.context);
+		if (phoneticIndex != null) {
+			phoneticIndex.put(this.suggestionComponents.getSuggestString(),
+					this.suggestionComponents.getWeight(),
+					this.suggestionComponents.getKey());
+		}
+		TokenIndex tokenIndex = ContextListener.getTokenIndex(
+				this.suggestionComponents.getIndexName(), this.context);
+		if (tokenIndex != null) {
+			tokenIndex.put(this.suggestionComponents.getSuggestString(),
+					this.suggestionComponents.getWeight(),
+					this.suggestionComponents.getKey());
+		}
+		CategoryIndex categoryIndex = ContextListener.getCategoryIndex(
+				this.suggestionComponents.getIndexName(), this.context);
+		if (categoryIndex != null
+				&& this.suggestionComponents.getCategory() != null) {
+			categoryIndex.put(this.suggestionComponents.getSuggestString(),
+					this.suggestionComponents.getWeight(),
+					this.suggestionComponents.getKey(), handle,
+					this.suggestionComponents.getCategory());
+		}
+		if (this.suggestionComponents.getImage() != null
+				&& imageStore != null) {
+			try {
+				imageStore.put(this.suggestionComponents.getKey(),
+						this.suggestionComponents.getImage());
+			} catch (IOException e) {
+				// the suggestion is still saved with its image, which is
+				// restored at the next start
+				e.printStackTrace();
+			}
 		}
 
 		// This creates the database file if it doesn't exist
@@ -45,9 +83,23 @@ public class CreateRequestContainer extends Command {
 				+ this.suggestionComponents.getIndexName() + ".save");
 
 		this.suggestionComponents.saveToDisc(createFile);
+	}
 
-		this.servlet.commandFinished();
+	/**
+	 * the images are shared by all indexes, so a new image may change the
+	 * answers of every index
+	 */
+	@Override
+	public String getIndexName() {
+		if (this.suggestionComponents.getImage() != null) {
+			return null;
+		}
+		return this.suggestionComponents.getIndexName();
+	}
 
+	@Override
+	public void finished() {
+		this.servlet.commandFinished();
 	}
 
 	public CreateServlet getRequestServlet() {
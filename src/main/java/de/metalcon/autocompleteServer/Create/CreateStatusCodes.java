@@ -1,5 +1,7 @@
 package de.metalcon.autocompleteServer.Create;
 
+import java.util.Arrays;
+
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 
 /**
@@ -28,6 +30,11 @@ public class CreateStatusCodes {
 	public static final String KEY_TOO_LONG = "Your key length exceeds the limit of ";
 	public static final String SUGGESTION_STRING_TOO_LONG = "Your suggestion string is longer than the limit of "
 			+ ProtocolConstants.MAX_SUGGESTION_LENGTH;
+	public static final String LIST_LENGTH_INVALID = "The list length needs to be an Integer between 1 and "
+			+ ProtocolConstants.MAX_NUM_ITEMS;
+	public static final String CATEGORY_UNKNOWN = "The category is unknown and was discarded. Known categories are "
+			+ Arrays.toString(ProtocolConstants.CATEGORIES);
+	public static final String INDEX_READ_ONLY = "The index was mapped from an index file and is read-only. Suggestions can't be created in it.";
 	public static final String IMAGE_WRONG_TYPE = "Wrong image encoding. Only JPEG encoded images are accepted. Please check your file's type!";
 
 	// Status Keys
@@ -42,5 +49,8 @@ public class CreateStatusCodes {
 	public static final String STATUS_NO_KEY = "Warning:KeyNotGiven";
 	public static final String STATUS_KEY_TOO_LONG = "Warning:KeyTooLong";
 	public static final String STATUS_INDEX_DUPLICATE = "Error:IndexDuplicate";
+	public static final String STATUS_LIST_LENGTH_INVALID = "Error:ListLengthInvalid";
+	public static final String STATUS_CATEGORY_UNKNOWN = "Warning:CategoryUnknown";
+	public static final String STATUS_INDEX_READ_ONLY = "Error:IndexReadOnly";
 
 }
@@ -0,0 +1,85 @@
+package de.metalcon.autocompleteServer.Create;
+
+/**
+ * The dimensions of a JPEG image, read from the start-of-frame segment of its
+ * header without decoding the image. The segments before the frame are only
+ * skipped by their lengths, so a thumbnail is checked in the time it takes to
+ * read a few dozen bytes.
+ */
+final class JpegHeader {
+
+	final int width;
+
+	final int height;
+
+	private JpegHeader(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * returns the dimensions of the JPEG image in the first bytes of the
+	 * array, or null if they do not start with a JPEG header that declares the
+	 * dimensions of the frame before its first scan
+	 *
+	 * @param jpeg
+	 * @param length
+	 *            the number of bytes of the image in the array
+	 */
+	static JpegHeader read(byte[] jpeg, int length) {
+		// start of image
+		if (length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+			return null;
+		}
+		int i = 2;
+		while (i + 4 <= length) {
+			if ((jpeg[i] & 0xFF) != 0xFF) {
+				return null;
+			}
+			int marker = jpeg[i + 1] & 0xFF;
+			if (marker == 0xFF) {
+				// fill byte before a marker
+				i++;
+				continue;
+			}
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+				// markers without a segment
+				i += 2;
+				continue;
+			}
+			if (marker == 0xD9 || marker == 0xDA) {
+				// the image ends or its scan starts before a frame
+				return null;
+			}
+			int segmentLength = (jpeg[i + 2] & 0xFF) << 8 | (jpeg[i + 3] & 0xFF);
+			if (segmentLength < 2) {
+				return null;
+			}
+			if (isStartOfFrame(marker)) {
+				// precision, then height and width
+				if (segmentLength < 7 || i + 9 > length) {
+					return null;
+				}
+				int height = (jpeg[i + 5] & 0xFF) << 8 | (jpeg[i + 6] & 0xFF);
+				int width = (jpeg[i + 7] & 0xFF) << 8 | (jpeg[i + 8] & 0xFF);
+				// a height of 0 is only defined after the first scan
+				if (height == 0 || width == 0) {
+					return null;
+				}
+				return new JpegHeader(width, height);
+			}
+			i += 2 + segmentLength;
+		}
+		return null;
+	}
+
+	/**
+	 * returns whether the marker starts a frame of any of the JPEG processes.
+	 * The other markers from 0xC0 to 0xCF define Huffman and arithmetic
+	 * coding tables
+	 */
+	private static boolean isStartOfFrame(int marker) {
+		return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4
+				&& marker != 0xC8 && marker != 0xCC;
+	}
+}
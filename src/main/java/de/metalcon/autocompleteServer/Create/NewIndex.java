@@ -1,12 +1,14 @@
 package de.metalcon.autocompleteServer.Create;
 
-import java.util.HashMap;
-
 import javax.servlet.ServletContext;
 
+import de.metalcon.autocompleteServer.Helper.CategoryIndex;
 import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.PhoneticIndex;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 import de.metalcon.autocompleteServer.Helper.SuggestTree;
+import de.metalcon.autocompleteServer.Helper.TokenIndex;
+import de.metalcon.autocompleteServer.Retrieve.ResponseCache;
 
 /**
  * Contains a method which creates a new index.
@@ -26,18 +28,84 @@ public class NewIndex {
 	 */
 	public static void newSuggestTree(ServletContext context, String indexName,
 			NewIndexResponse response) {
+		newSuggestTree(context, indexName,
+				ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS, false, response);
+	}
+
+	/**
+	 * Creates a new index that precomputes the given number of suggestions per
+	 * prefix. With adaptive lists, only prefixes of up to
+	 * SuggestTree.ADAPTIVE_DEPTH characters keep lists of that length and
+	 * longer prefixes keep shorter ones. Otherwise each list keeps one
+	 * suggestion per key. Does not allow to overwrite an existing index with a
+	 * new one.
+	 * 
+	 * @param context
+	 * @param indexName
+	 * @param listLength
+	 * @param adaptive
+	 */
+	public static void newSuggestTree(ServletContext context, String indexName,
+			int listLength, boolean adaptive, NewIndexResponse response) {
+		newSuggestTree(context, indexName, listLength, adaptive, false,
+				false, false, response);
+	}
+
+	/**
+	 * Creates a new index like the method above, together with a phonetic
+	 * index of the same suggestions if phonetic is true, a token index of them
+	 * if tokens is true and a category index of the ones with a category if
+	 * categories is true. Does not allow to overwrite an existing index with a
+	 * new one.
+	 * 
+	 * @param context
+	 * @param indexName
+	 * @param listLength
+	 * @param adaptive
+	 * @param phonetic
+	 * @param tokens
+	 * @param categories
+	 */
+	public static void newSuggestTree(ServletContext context, String indexName,
+			int listLength, boolean adaptive, boolean phonetic,
+			boolean tokens, boolean categories, NewIndexResponse response) {
 
 		// TODO: add warning if already existing indexName was given.
 		SuggestTree checkIndex = ContextListener.getIndex(indexName, context);
 
 		if (checkIndex == null) {
-			SuggestTree suggestTree = new SuggestTree(
-					ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS);
-
-			HashMap<String, String> imageIndex = new HashMap<String, String>();
+			int flags = SuggestTree.CONCURRENT | SuggestTree.NORMALIZE;
+			// adaptive lists cannot be kept to one suggestion per key
+			if (adaptive) {
+				flags |= SuggestTree.ADAPTIVE;
+			} else {
+				flags |= SuggestTree.DISTINCT_KEYS;
+			}
+			// only the lists of the main and the category trees are sent as
+			// they are, so only they keep fragments
+			SuggestTree suggestTree = new SuggestTree(listLength, flags
+					| SuggestTree.FRAGMENTS);
 
 			ContextListener.setIndex(indexName, suggestTree, context);
-			ContextListener.setImageIndex(imageIndex, context);
+			if (phonetic) {
+				ContextListener.setPhoneticIndex(indexName, new PhoneticIndex(
+						listLength, flags), context);
+			}
+			if (tokens) {
+				ContextListener.setTokenIndex(indexName, new TokenIndex(
+						listLength, flags), context);
+			}
+			if (categories) {
+				ContextListener.setCategoryIndex(indexName, new CategoryIndex(
+						ProtocolConstants.CATEGORIES.length, listLength, flags
+								| SuggestTree.FRAGMENTS), context);
+			}
+			// requests for the name were answered from the default index, so
+			// no cached response is valid anymore
+			ResponseCache cache = ContextListener.getResponseCache(context);
+			if (cache != null) {
+				cache.invalidate(null);
+			}
 		} else {
 			checkIndex = null;
 			response.addIndexAlreadyExistsError(indexName);
@@ -12,9 +12,81 @@ public class NewIndexRequest {
 			ServletContext servletContext) {
 
 		String indexName = checkIndexName(formItemList, response);
+		if (indexName == null) {
+			return response;
+		}
+		Integer listLength = checkListLength(formItemList, response);
+		if (listLength == null) {
+			return response;
+		}
+		boolean adaptive = checkAdaptiveLists(formItemList);
+		boolean phonetic = checkPhoneticIndex(formItemList);
+		boolean tokens = checkTokenIndex(formItemList);
+		boolean categories = checkCategoryIndex(formItemList);
+		NewIndex.newSuggestTree(servletContext, indexName, listLength,
+				adaptive, phonetic, tokens, categories, response);
 		return response;
 	}
 
+	/**
+	 * returns the list length of the request, the default if none was given, or
+	 * null if the given one is not a number between 1 and MAX_NUM_ITEMS
+	 */
+	private static Integer checkListLength(FormItemList formItemList,
+			NewIndexResponse response) {
+		String listLength = null;
+		try {
+			listLength = formItemList.getField(ProtocolConstants.LIST_LENGTH);
+		} catch (IllegalArgumentException e) {
+			return ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS;
+		}
+		try {
+			int value = Integer.parseInt(listLength);
+			if (value >= 1 && value <= ProtocolConstants.MAX_NUM_ITEMS) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+		}
+		response.addListLengthInvalidError(CreateStatusCodes.LIST_LENGTH_INVALID);
+		return null;
+	}
+
+	private static boolean checkAdaptiveLists(FormItemList formItemList) {
+		try {
+			return Boolean.parseBoolean(formItemList
+					.getField(ProtocolConstants.ADAPTIVE_LISTS));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean checkPhoneticIndex(FormItemList formItemList) {
+		try {
+			return Boolean.parseBoolean(formItemList
+					.getField(ProtocolConstants.PHONETIC_INDEX));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean checkTokenIndex(FormItemList formItemList) {
+		try {
+			return Boolean.parseBoolean(formItemList
+					.getField(ProtocolConstants.TOKEN_INDEX));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean checkCategoryIndex(FormItemList formItemList) {
+		try {
+			return Boolean.parseBoolean(formItemList
+					.getField(ProtocolConstants.CATEGORY_INDEX));
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
 	private static String checkIndexName(FormItemList formItemList,
 			NewIndexResponse response) {
 		String indexName = null;
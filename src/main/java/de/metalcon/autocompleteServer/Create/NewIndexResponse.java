@@ -28,4 +28,9 @@ public class NewIndexResponse extends Response {
 	public void addIndexAlreadyExistsError(String duplicateIndex) {
 		this.addStatusMessage(CreateStatusCodes.STATUS_INDEX_DUPLICATE, "the index name " + duplicateIndex + " already exists. Please choose another one.");
 	}
+
+	public void addListLengthInvalidError(String listLengthInvalid) {
+		this.addStatusMessage(CreateStatusCodes.STATUS_LIST_LENGTH_INVALID,
+				listLengthInvalid);
+	}
 }
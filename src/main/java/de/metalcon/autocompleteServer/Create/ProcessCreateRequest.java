@@ -1,19 +1,18 @@
 package de.metalcon.autocompleteServer.Create;
 
-import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
-import javax.imageio.ImageIO;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 
+import de.metalcon.autocompleteServer.Helper.ContextListener;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
-import de.metalcon.utils.FormFile;
 import de.metalcon.utils.FormItemList;
 
 /**
@@ -88,6 +87,15 @@ public class ProcessCreateRequest {
 				suggestionString);
 
 		String indexName = checkIndexName(items, response);
+		// an index that was only mapped from an index file has no tree the
+		// suggestion could be put into
+		if (ContextListener.getIndex(indexName, context) == null
+				&& ContextListener.getMappedIndex(indexName, context) != null) {
+			response.addIndexReadOnlyError(CreateStatusCodes.INDEX_READ_ONLY);
+			statusOk = false;
+			suggestTreeCreateRequestContainer = null;
+			return response;
+		}
 		suggestTreeCreateRequestContainer.getComponents().setIndexName(
 				indexName);
 
@@ -101,17 +109,20 @@ public class ProcessCreateRequest {
 		}
 		suggestTreeCreateRequestContainer.getComponents().setWeight(weight);
 
+		Integer category = checkCategory(items, response);
+		suggestTreeCreateRequestContainer.getComponents()
+				.setCategory(category);
+
 		// Protocol forbids images for suggestions without keys
 		// TODO: add this piece of information to nokey-Warning
 		if (suggestionKey != null) {
-			String image = checkImage(items, response);
+			byte[] image = checkImage(items, response);
 			if (image == null) {
 				statusOk = false;
 				response.addNoImageWarning(CreateStatusCodes.NO_IMAGE);
 			}
 
-			suggestTreeCreateRequestContainer.getComponents().setImageBase64(
-					image);
+			suggestTreeCreateRequestContainer.getComponents().setImage(image);
 		}
 		if (statusOk) {
 			response.addStatusOk(CreateStatusCodes.STATUS_OK);
@@ -121,64 +132,73 @@ public class ProcessCreateRequest {
 		return response;
 	}
 
-	private static String checkImage(FormItemList items,
+	private static byte[] checkImage(FormItemList items,
 			ProcessCreateResponse response) {
-		FormFile image = null;
-		String imageB64 = null;
-		FileItem imageFileItem;
+		byte[] jpeg;
 		try {
-			image = items.getFile(ProtocolConstants.IMAGE);
-			imageFileItem = image.getFormItem();
-
-			BufferedImage bufferedImage = ImageIO.read(imageFileItem
-					.getInputStream());
-			if ((bufferedImage.getWidth() > ProtocolConstants.IMAGE_WIDTH)
-					|| (bufferedImage.getHeight() > ProtocolConstants.IMAGE_HEIGHT)) {
-				response.addImageGeometryTooBigWarning(CreateStatusCodes.IMAGE_GEOMETRY_TOO_BIG);
-				return null;
-			}
-
-			if (imageFileItem.getSize() > ProtocolConstants.MAX_IMAGE_FILE_LENGTH) {
-				response.addImageFileSizeTooBigWarning(CreateStatusCodes.IMAGE_FILE_TOO_LARGE);
-				return null;
-			}
-
+			FileItem imageFileItem = items.getFile(ProtocolConstants.IMAGE)
+					.getFormItem();
+			jpeg = readImage(imageFileItem, response);
 		} catch (IllegalArgumentException e) {
 			statusOk = false;
 			return null;
 		} catch (IOException e) {
 			statusOk = false;
-
 			return null;
 		} catch (NullPointerException e) {
 			statusOk = false;
 			response.addNoImageWarning(CreateStatusCodes.NO_IMAGE);
 			return null;
 		}
+		if (jpeg == null) {
+			statusOk = false;
+		}
+		return jpeg;
+	}
 
-		byte[] buffer = new byte[(int) imageFileItem.getSize()];
-		byte[] tmp = null;
-		try {
-			int size = imageFileItem.getInputStream().read(buffer);
-			if (size > 0) {
-				tmp = new byte[size];
-				for (int i = 0; i < size; i++) {
-					tmp[i] = buffer[i];
-				}
+	/**
+	 * reads the uploaded image once, into an array of its size, and returns
+	 * its bytes if it is a JPEG within the limits of the protocol. Otherwise
+	 * it adds the warning about the image to the response and returns null.
+	 * The dimensions are read from the JPEG header, so the image is not
+	 * decoded, and a file that is too large is not read at all
+	 * 
+	 * @param imageFileItem
+	 * @param response
+	 * @throws IOException
+	 *             if the upload cannot be read
+	 */
+	static byte[] readImage(FileItem imageFileItem,
+			ProcessCreateResponse response) throws IOException {
+		long size = imageFileItem.getSize();
+		if (size > ProtocolConstants.MAX_IMAGE_FILE_LENGTH) {
+			response.addImageFileSizeTooBigWarning(CreateStatusCodes.IMAGE_FILE_TOO_LARGE);
+			return null;
+		}
+		byte[] jpeg = new byte[(int) size];
+		int length = 0;
+		try (InputStream in = imageFileItem.getInputStream()) {
+			int read;
+			while (length < jpeg.length
+					&& (read = in.read(jpeg, length, jpeg.length - length)) != -1) {
+				length += read;
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
-
-		if (tmp != null) {
-			byte[] base64EncodedImage = Base64.encodeBase64(tmp);
-			imageB64 = new String(base64EncodedImage);
-		} else {
-			statusOk = false;
+		if (length == 0) {
+			response.addNoImageWarning(CreateStatusCodes.NO_IMAGE);
 			return null;
 		}
-
-		return "data:image/jpg;base64," + imageB64;
+		JpegHeader header = JpegHeader.read(jpeg, length);
+		if (header == null) {
+			response.addImageWrongTypeWarning(CreateStatusCodes.IMAGE_WRONG_TYPE);
+			return null;
+		}
+		if (header.width > ProtocolConstants.IMAGE_WIDTH
+				|| header.height > ProtocolConstants.IMAGE_HEIGHT) {
+			response.addImageGeometryTooBigWarning(CreateStatusCodes.IMAGE_GEOMETRY_TOO_BIG);
+			return null;
+		}
+		return (length < jpeg.length) ? Arrays.copyOf(jpeg, length) : jpeg;
 	}
 
 	private static Integer checkWeight(FormItemList items,
@@ -201,6 +221,28 @@ public class ProcessCreateRequest {
 		}
 	}
 
+	/**
+	 * returns the id of the category the request names, or null if it names
+	 * none. An unknown category is discarded with a warning, so the suggestion
+	 * is still created without one
+	 */
+	private static Integer checkCategory(FormItemList items,
+			ProcessCreateResponse response) {
+		String category = null;
+		try {
+			category = items.getField(ProtocolConstants.CATEGORY_PARAMETER);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		int id = Arrays.asList(ProtocolConstants.CATEGORIES).indexOf(category);
+		if (id < 0) {
+			response.addCategoryUnknownWarning(CreateStatusCodes.CATEGORY_UNKNOWN);
+			statusOk = false;
+			return null;
+		}
+		return id;
+	}
+
 	private static String checkIndexName(FormItemList items,
 			ProcessCreateResponse response) {
 		String index = null;
@@ -94,6 +94,18 @@ public class ProcessCreateResponse {
 
 	}
 
+	/**
+	 * Adds an IndexReadOnly-Error to the container object. Expects the String
+	 * to be not NULL and correctly formatted.
+	 * 
+	 * @param indexReadOnly
+	 */
+	@SuppressWarnings("unchecked")
+	public void addIndexReadOnlyError(String indexReadOnly) {
+		this.jsonResponse.put(CreateStatusCodes.STATUS_INDEX_READ_ONLY,
+				indexReadOnly);
+	}
+
 	/**
 	 * Adds a WeightNotANumber-Error to the container object. Expects the String
 	 * to be not NULL and correctly formatted.
@@ -129,6 +141,18 @@ public class ProcessCreateResponse {
 				.put(CreateStatusCodes.STATUS_KEY_TOO_LONG, keyTooLong);
 	}
 
+	/**
+	 * Adds a CategoryUnknown-Warning to the container object. Expects the
+	 * String to be not NULL and correctly formatted.
+	 * 
+	 * @param categoryUnknown
+	 */
+	@SuppressWarnings("unchecked")
+	public void addCategoryUnknownWarning(String categoryUnknown) {
+		this.jsonResponse.put(CreateStatusCodes.STATUS_CATEGORY_UNKNOWN,
+				categoryUnknown);
+	}
+
 	/**
 	 * Adds Status OK to the container object. Expects the String to be not NULL
 	 * and correctly formatted. To stay conform to the ASTP, Status OK should
@@ -166,6 +190,18 @@ public class ProcessCreateResponse {
 				imageFileTooLarge);
 	}
 
+	/**
+	 * Adds a ImageWrongType-Warning to the container object. Expects the
+	 * String to be not NULL and correctly formatted.
+	 * 
+	 * @param imageWrongType
+	 */
+	@SuppressWarnings("unchecked")
+	public void addImageWrongTypeWarning(String imageWrongType) {
+		this.jsonResponse.put(CreateStatusCodes.IMAGE_WRONG_TYPE,
+				imageWrongType);
+	}
+
 	/**
 	 * Getter for the response as JSONObject.
 	 * 
@@ -5,8 +5,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.codec.binary.Base64;
 
 import de.metalcon.autocompleteServer.AppendingObjectOutputStream;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
 
 /**
  * 
@@ -23,8 +27,22 @@ public class SuggestionComponents implements Serializable {
 	private String suggestString;
 	private Integer weight;
 	private String key;
+	/**
+	 * the image as a base64 data URI, the form in which it is saved
+	 */
 	private String imageBase64;
+	/**
+	 * the bytes of the uploaded image, handed to the image store as they are
+	 * and only encoded when the suggestion is saved
+	 */
+	private transient byte[] image;
 	private String indexName;
+	/**
+	 * the id of the category of the suggestion, see
+	 * ProtocolConstants.CATEGORIES, or null if it has none. Suggestions saved
+	 * before categories were introduced are read with null
+	 */
+	private Integer category;
 
 	public String getSuggestString() {
 		return this.suggestString;
@@ -58,6 +76,14 @@ public class SuggestionComponents implements Serializable {
 		this.imageBase64 = image;
 	}
 
+	public byte[] getImage() {
+		return this.image;
+	}
+
+	public void setImage(byte[] image) {
+		this.image = image;
+	}
+
 	public String getIndexName() {
 		return this.indexName;
 	}
@@ -66,7 +92,20 @@ public class SuggestionComponents implements Serializable {
 		this.indexName = indexName;
 	}
 
+	public Integer getCategory() {
+		return this.category;
+	}
+
+	public void setCategory(Integer category) {
+		this.category = category;
+	}
+
 	public void saveToDisc(File createFile) {
+		if (this.image != null && this.imageBase64 == null) {
+			this.imageBase64 = ImageStore.DATA_URI_PREFIX
+					+ new String(Base64.encodeBase64(this.image),
+							StandardCharsets.US_ASCII);
+		}
 		try {
 
 			// Writing more than one object to a file breaks its header, when
@@ -0,0 +1,186 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A secondary index that finds the best suggestions of a prefix within one
+ * category, such as bands or albums, in the same time as the index finds them
+ * among all suggestions. Filtering the lists of the index often leaves few or
+ * no suggestions of a rare category, so every category has a
+ * {@link SuggestTree} of its own that keeps the lists of its suggestions.
+ * Categories are numbered from 0, see {@link ProtocolConstants#CATEGORIES}. A
+ * suggestion belongs to one category at a time.
+ */
+public class CategoryIndex {
+
+	private final SuggestTree[] trees;
+
+	/**
+	 * @param categories
+	 *            the number of categories
+	 * @param listLength
+	 *            the number of suggestions the trees precompute per prefix
+	 * @param flags
+	 *            the flags of the trees, see {@link SuggestTree}
+	 */
+	public CategoryIndex(int categories, int listLength, int flags) {
+		this(new SuggestTree[categories]);
+		for (int i = 0; i < categories; i++) {
+			this.trees[i] = new SuggestTree(listLength, flags);
+		}
+	}
+
+	private CategoryIndex(SuggestTree[] trees) {
+		this.trees = trees;
+	}
+
+	/**
+	 * inserts the suggestion into the tree of the category or changes its
+	 * weight, like {@link SuggestTree#put}. If the suggestion belonged to
+	 * another category, it is removed from that one.
+	 *
+	 * @param suggestion
+	 * @param weight
+	 * @param key
+	 * @param category
+	 * @throws IllegalArgumentException
+	 *             if the index has no such category
+	 */
+	public void put(String suggestion, int weight, String key, int category) {
+		this.removeFromOtherCategories(suggestion, category);
+		this.trees[category].put(suggestion, weight, key);
+	}
+
+	/**
+	 * inserts the suggestion with its payload into the tree of the category,
+	 * like {@link SuggestTree#put(String, int, String, Object)}, see
+	 * {@link #put(String, int, String, int)}
+	 *
+	 * @param suggestion
+	 * @param weight
+	 * @param key
+	 * @param payload
+	 * @param category
+	 * @throws IllegalArgumentException
+	 *             if the index has no such category
+	 */
+	public void put(String suggestion, int weight, String key, Object payload,
+			int category) {
+		this.removeFromOtherCategories(suggestion, category);
+		this.trees[category].put(suggestion, weight, key, payload);
+	}
+
+	private void removeFromOtherCategories(String suggestion, int category) {
+		checkCategory(category, this.trees.length);
+		for (int i = 0; i < this.trees.length; i++) {
+			if (i != category) {
+				this.trees[i].remove(suggestion);
+			}
+		}
+	}
+
+	/**
+	 * returns the tree that holds the suggestions of the category, or null if
+	 * the index has no such category
+	 *
+	 * @param category
+	 */
+	public SuggestTree getIndex(int category) {
+		if (category < 0 || category >= this.trees.length) {
+			return null;
+		}
+		return this.trees[category];
+	}
+
+	/**
+	 * returns the number of categories
+	 */
+	public int categories() {
+		return this.trees.length;
+	}
+
+	/**
+	 * returns the number of suggestions in all categories
+	 */
+	public int size() {
+		int size = 0;
+		for (SuggestTree tree : this.trees) {
+			size += tree.size();
+		}
+		return size;
+	}
+
+	private static void checkCategory(int category, int categories) {
+		if (category < 0 || category >= categories) {
+			throw new IllegalArgumentException("unknown category: " + category);
+		}
+	}
+
+	/**
+	 * Collects the suggestions of a category index that is built at once, see
+	 * {@link SuggestTree.Builder}. A suggestion that is added with several
+	 * categories ends up in the last one.
+	 */
+	public static class Builder {
+
+		private final SuggestTree.Builder[] builders;
+
+		/**
+		 * the last category of every added suggestion, to find the ones that
+		 * changed their category
+		 */
+		private final HashMap<String, Integer> categories = new HashMap<String, Integer>();
+
+		private final HashSet<String> moved = new HashSet<String>();
+
+		public Builder(int categories, int listLength, int flags) {
+			this.builders = new SuggestTree.Builder[categories];
+			for (int i = 0; i < categories; i++) {
+				this.builders[i] = new SuggestTree.Builder(listLength, flags);
+			}
+		}
+
+		/**
+		 * @throws IllegalArgumentException
+		 *             if the index has no such category
+		 */
+		public Builder add(String suggestion, int weight, String key,
+				int category) {
+			return this.add(suggestion, weight, key, null, category);
+		}
+
+		/**
+		 * @throws IllegalArgumentException
+		 *             if the index has no such category
+		 */
+		public Builder add(String suggestion, int weight, String key,
+				Object payload, int category) {
+			checkCategory(category, this.builders.length);
+			this.builders[category].add(suggestion, weight, key, payload);
+			Integer previous = this.categories.put(suggestion, category);
+			if (previous != null && previous != category) {
+				this.moved.add(suggestion);
+			}
+			return this;
+		}
+
+		public CategoryIndex build() {
+			SuggestTree[] trees = new SuggestTree[this.builders.length];
+			for (int i = 0; i < trees.length; i++) {
+				trees[i] = this.builders[i].build();
+			}
+			// the builders cannot drop a suggestion, so it is removed from the
+			// trees of its earlier categories
+			for (String suggestion : this.moved) {
+				int category = this.categories.get(suggestion);
+				for (int i = 0; i < trees.length; i++) {
+					if (i != category) {
+						trees[i].remove(suggestion);
+					}
+				}
+			}
+			return new CategoryIndex(trees);
+		}
+	}
+}
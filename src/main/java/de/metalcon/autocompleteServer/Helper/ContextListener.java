@@ -1,9 +1,9 @@
 package de.metalcon.autocompleteServer.Helper;
 
-import java.util.HashMap;
-
 import javax.servlet.ServletContext;
 
+import de.metalcon.autocompleteServer.Retrieve.ResponseCache;
+
 public class ContextListener {
 
 	public static SuggestTree getIndex(String indexName, ServletContext context) {
@@ -17,16 +17,111 @@ public class ContextListener {
 				index);
 	}
 
-	@SuppressWarnings("unchecked")
-	public static HashMap<String, String> getImageIndex(ServletContext context) {
-		return (HashMap<String, String>) context
+	/**
+	 * returns the read-only index that was mapped from an index file, or null
+	 * if no index file of that name was found at the start
+	 */
+	public static MappedSuggestTree getMappedIndex(String indexName,
+			ServletContext context) {
+		return (MappedSuggestTree) context
+				.getAttribute(ProtocolConstants.MAPPED_INDEX_CONTEXT_KEY
+						+ indexName);
+	}
+
+	public static void setMappedIndex(String indexName,
+			MappedSuggestTree mappedIndex, ServletContext context) {
+		context.setAttribute(ProtocolConstants.MAPPED_INDEX_CONTEXT_KEY
+				+ indexName, mappedIndex);
+	}
+
+	/**
+	 * returns whether an index of that name answers retrieve requests, either
+	 * a suggest tree or a mapped index
+	 */
+	public static boolean hasIndex(String indexName, ServletContext context) {
+		return getIndex(indexName, context) != null
+				|| getMappedIndex(indexName, context) != null;
+	}
+
+	/**
+	 * returns the phonetic index that belongs to the index, or null if the
+	 * index has none
+	 */
+	public static PhoneticIndex getPhoneticIndex(String indexName,
+			ServletContext context) {
+		return (PhoneticIndex) context
+				.getAttribute(ProtocolConstants.PHONETIC_INDEX_CONTEXT_KEY
+						+ indexName);
+	}
+
+	public static void setPhoneticIndex(String indexName,
+			PhoneticIndex phoneticIndex, ServletContext context) {
+		context.setAttribute(ProtocolConstants.PHONETIC_INDEX_CONTEXT_KEY
+				+ indexName, phoneticIndex);
+	}
+
+	/**
+	 * returns the token index that belongs to the index, or null if the index
+	 * has none
+	 */
+	public static TokenIndex getTokenIndex(String indexName,
+			ServletContext context) {
+		return (TokenIndex) context
+				.getAttribute(ProtocolConstants.TOKEN_INDEX_CONTEXT_KEY
+						+ indexName);
+	}
+
+	public static void setTokenIndex(String indexName, TokenIndex tokenIndex,
+			ServletContext context) {
+		context.setAttribute(ProtocolConstants.TOKEN_INDEX_CONTEXT_KEY
+				+ indexName, tokenIndex);
+	}
+
+	/**
+	 * returns the category index that belongs to the index, or null if the
+	 * index has none
+	 */
+	public static CategoryIndex getCategoryIndex(String indexName,
+			ServletContext context) {
+		return (CategoryIndex) context
+				.getAttribute(ProtocolConstants.CATEGORY_INDEX_CONTEXT_KEY
+						+ indexName);
+	}
+
+	public static void setCategoryIndex(String indexName,
+			CategoryIndex categoryIndex, ServletContext context) {
+		context.setAttribute(ProtocolConstants.CATEGORY_INDEX_CONTEXT_KEY
+				+ indexName, categoryIndex);
+	}
+
+	/**
+	 * returns the cache of retrieve responses, or null if responses are not
+	 * cached
+	 */
+	public static ResponseCache getResponseCache(ServletContext context) {
+		return (ResponseCache) context
+				.getAttribute(ProtocolConstants.RESPONSE_CACHE_CONTEXT_KEY);
+	}
+
+	public static void setResponseCache(ResponseCache responseCache,
+			ServletContext context) {
+		context.setAttribute(ProtocolConstants.RESPONSE_CACHE_CONTEXT_KEY,
+				responseCache);
+	}
+
+	/**
+	 * returns the images of the suggestions, which all indexes share, or null
+	 * if the server keeps none
+	 */
+	public static ImageStore getImageStore(ServletContext context) {
+		return (ImageStore) context
 				.getAttribute(ProtocolConstants.IMAGE_SERVER_CONTEXT_KEY);
 	}
 
-	public static void setImageIndex(HashMap<String, String> imageIndex,
+	public static void setImageStore(ImageStore imageStore,
 			ServletContext context) {
 		context.setAttribute(ProtocolConstants.IMAGE_SERVER_CONTEXT_KEY,
-				imageIndex);
+				imageStore);
 	}
 
 }
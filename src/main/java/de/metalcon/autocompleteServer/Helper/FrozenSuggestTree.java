@@ -0,0 +1,209 @@
+package de.metalcon.autocompleteServer.Helper;
+
+/**
+ * An immutable copy of a {@link SuggestTree}, created by
+ * {@link SuggestTree#freeze()}. It answers the same queries as the tree it was
+ * created from, but instead of one object per node with four node references,
+ * a list array and a string reference, it stores the nodes in parallel
+ * primitive arrays: the first character, the character end, the three child
+ * links and the index of the suggestion that provides the characters of the
+ * node. The suggestion lists of all nodes are stored as suggestion indices in
+ * one shared array, addressed by a start offset per node.
+ * <p>
+ * The suggestion strings, keys and weights are stored once per suggestion in
+ * another set of parallel arrays. Since the tree cannot be modified, it can be
+ * read by any number of threads without synchronization. The copy of a tree
+ * created with the {@link SuggestTree#NORMALIZE} flag normalizes prefixes the
+ * same way.
+ */
+public class FrozenSuggestTree {
+
+	// package-private for MappedSuggestTree.write
+	final char[] firstChar;
+	final short[] charEnd;
+	final int[] left, mid, right;
+	final int[] text;
+	final int[] listStart;
+	final int[] lists;
+	final String[] suggestions;
+	final String[] keys;
+	final int[] weights;
+	final boolean normalize;
+
+	FrozenSuggestTree(char[] firstChar, short[] charEnd, int[] left,
+			int[] mid, int[] right, int[] text, int[] listStart, int[] lists,
+			String[] suggestions, String[] keys, int[] weights,
+			boolean normalize) {
+		this.firstChar = firstChar;
+		this.charEnd = charEnd;
+		this.left = left;
+		this.mid = mid;
+		this.right = right;
+		this.text = text;
+		this.listStart = listStart;
+		this.lists = lists;
+		this.suggestions = suggestions;
+		this.keys = keys;
+		this.weights = weights;
+		this.normalize = normalize;
+	}
+
+	/**
+	 * Returns the number of suggestions in this tree.
+	 */
+	public int size() {
+		return this.suggestions.length;
+	}
+
+	/**
+	 * Returns the number of nodes in this tree.
+	 */
+	public int nodeCount() {
+		return this.firstChar.length;
+	}
+
+	/**
+	 * Returns the node with the top <i>k</i> highest weighted suggestions in
+	 * this tree that start with the specified prefix, or returns {@code null}
+	 * if the tree contains no suggestion with the prefix.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the specified prefix is an empty string
+	 * @throws NullPointerException
+	 *             if the specified prefix is {@code null}
+	 */
+	public Node getBestSuggestions(String prefix) {
+		if (prefix.isEmpty()) {
+			throw new IllegalArgumentException();
+		}
+		int n = this.find(prefix);
+		return (n != -1) ? new Node(n) : null;
+	}
+
+	/**
+	 * Returns the weight of the specified suggestion in this tree, or -1 if
+	 * the tree does not contain the suggestion.
+	 *
+	 * @throws NullPointerException
+	 *             if the specified suggestion is {@code null}
+	 */
+	public int weightOf(String suggestion) {
+		if (suggestion.isEmpty()) {
+			return -1;
+		}
+		int n = this.find(suggestion);
+		// a node corresponds to a suggestion if it provides its own
+		// characters, otherwise it borrows them from a longer suggestion
+		if (n == -1 || this.charEnd[n] != suggestion.length()
+				|| this.suggestions[this.text[n]].length() != suggestion
+						.length()) {
+			return -1;
+		}
+		return this.weights[this.text[n]];
+	}
+
+	/**
+	 * Returns the index of the node that the specified prefix ends in, or -1
+	 * if there is no such node.
+	 */
+	private int find(String prefix) {
+		if (this.normalize) {
+			prefix = SuggestTree.normalize(prefix);
+		}
+		int i = 0;
+		int n = (this.firstChar.length > 0) ? 0 : -1;
+		while (n != -1) {
+			char c = prefix.charAt(i);
+			if (c < this.firstChar[n]) {
+				n = this.left[n];
+			} else if (c > this.firstChar[n]) {
+				n = this.right[n];
+			} else {
+				String chars = this.suggestions[this.text[n]];
+				int end = this.charEnd[n];
+				for (i++; i < end && i < prefix.length(); i++) {
+					if (prefix.charAt(i) != this.charAt(chars, i)) {
+						return -1;
+					}
+				}
+				if (i < prefix.length()) {
+					n = this.mid[n];
+				} else {
+					return n;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private char charAt(String chars, int index) {
+		char c = chars.charAt(index);
+		return this.normalize ? SuggestTree.normalize(c) : c;
+	}
+
+	/**
+	 * A node of the frozen tree with a rank-ordered list of autocomplete
+	 * suggestions. The highest weighted suggestion is at index 0, the second
+	 * highest weighted at index 1, and so on.
+	 */
+	public final class Node {
+
+		private final int start;
+		private final int length;
+
+		private Node(int node) {
+			this.start = FrozenSuggestTree.this.listStart[node];
+			this.length = FrozenSuggestTree.this.listStart[node + 1]
+					- this.start;
+		}
+
+		private int suggestion(int index) {
+			if (index < 0 || index >= this.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			return FrozenSuggestTree.this.lists[this.start + index];
+		}
+
+		/**
+		 * Returns the suggestion at the specified position in the list.
+		 *
+		 * @throws IndexOutOfBoundsException
+		 *             if the {@code index} argument is negative or not less
+		 *             than the list length
+		 */
+		public String getSuggestion(int index) {
+			return FrozenSuggestTree.this.suggestions[this.suggestion(index)];
+		}
+
+		/**
+		 * Returns the weight of the suggestion at the specified position in
+		 * the list.
+		 *
+		 * @throws IndexOutOfBoundsException
+		 *             if the {@code index} argument is negative or not less
+		 *             than the list length
+		 */
+		public int getWeight(int index) {
+			return FrozenSuggestTree.this.weights[this.suggestion(index)];
+		}
+
+		/**
+		 * Returns the key of the suggestion at the specified position in the
+		 * list.
+		 *
+		 * @throws IndexOutOfBoundsException
+		 *             if the {@code index} argument is negative or not less
+		 *             than the list length
+		 */
+		public String getKey(int index) {
+			return FrozenSuggestTree.this.keys[this.suggestion(index)];
+		}
+
+		/**
+		 * Returns the number of suggestions in the list.
+		 */
+		public int listLength() {
+			return this.length;
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Keeps the JPEG bytes of the suggestion images off the heap, in an
+ * append-only blob file that is mapped into memory in segments. A directory
+ * on the heap maps each suggestion key to the offset and length of its image
+ * in the file. A base64 data URI is only encoded when a client asks for an
+ * image inline, and the image servlet streams the bytes from the file.
+ * <p>
+ * The images are restored from the save files at startup, so the blob file is
+ * emptied when the store is opened. A changed image is appended and the bytes
+ * of the old one stay in the file until the next start. Images are put by one
+ * thread at a time and may be read by any number of threads meanwhile.
+ * <p>
+ * Images are deduplicated by their content: keys with the same bytes, such as
+ * the albums that share a cover, reference one image in the file. An image
+ * counts the keys that reference it and is forgotten when the last one is
+ * removed or gets another image.
+ * <p>
+ * Every key has a {@link Handle} that always holds its current image. The
+ * indexes keep the handle with each suggestion of the key, so a retrieve
+ * request reads the images of its suggestions without looking up their keys.
+ */
+public class ImageStore implements Closeable {
+
+	/**
+	 * the prefix of the data URI of an image
+	 */
+	public static final String DATA_URI_PREFIX = "data:image/jpg;base64,";
+
+	/**
+	 * the bytes of a mapped segment of the blob file. An image never spans two
+	 * segments, so it cannot be larger
+	 */
+	private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final int segmentSize;
+
+	/**
+	 * the mapped segments of the file, replaced by a longer copy when the file
+	 * grows
+	 */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+	/**
+	 * the handles of the keys, which stay in the directory when their image
+	 * is removed, as the indexes may still hold them
+	 */
+	private final ConcurrentHashMap<String, Handle> directory = new ConcurrentHashMap<String, Handle>();
+
+	/**
+	 * the number of keys with an image
+	 */
+	private int keys;
+
+	/**
+	 * the images referenced by keys, by the hash of their bytes
+	 */
+	private final HashMap<Long, Image> images = new HashMap<Long, Image>();
+
+	/**
+	 * the offset in the file where the next image is appended
+	 */
+	private long end;
+
+	/**
+	 * the bytes of the images referenced by keys, each counted once
+	 */
+	private long bytes;
+
+	/**
+	 * the bytes of the images of all keys, each counted for every key
+	 */
+	private long keyBytes;
+
+	/**
+	 * opens the store on the blob file, which is created or emptied
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public ImageStore(File file) throws IOException {
+		this(file, SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param file
+	 * @param segmentSize
+	 *            the bytes of a mapped segment, which is the largest image
+	 *            the store takes
+	 * @throws IOException
+	 */
+	ImageStore(File file, int segmentSize) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * stores the image of the key, replacing its earlier image. If another key
+	 * has an image with the same bytes, the key references that image
+	 *
+	 * @param key
+	 * @param jpeg
+	 *            the bytes of the image
+	 * @throws IOException
+	 *             if the blob file cannot grow
+	 * @throws IllegalArgumentException
+	 *             if the image is larger than a segment
+	 */
+	public synchronized void put(String key, byte[] jpeg) throws IOException {
+		if (jpeg.length > this.segmentSize) {
+			throw new IllegalArgumentException("image of " + jpeg.length
+					+ " bytes is larger than " + this.segmentSize);
+		}
+		long hash = hash(jpeg);
+		Image image = this.images.get(hash);
+		if (image == null || !this.contains(image, jpeg)) {
+			Image appended = this.append(jpeg, hash);
+			if (image == null) {
+				// an image with the same hash but other bytes is not shared
+				this.images.put(hash, appended);
+			}
+			image = appended;
+		}
+		if (image.references++ == 0) {
+			this.bytes += image.length;
+		}
+		this.keyBytes += image.length;
+
+		// the bytes are in the file before the readers can find them
+		Handle handle = this.handle(key);
+		Image previous = handle.image;
+		handle.image = image;
+		if (previous != null) {
+			this.release(previous);
+		} else {
+			this.keys++;
+		}
+	}
+
+	/**
+	 * removes the image of the key
+	 *
+	 * @param key
+	 * @return true if the key had an image
+	 */
+	public synchronized boolean remove(String key) {
+		Handle handle = this.directory.get(key);
+		Image image = (handle != null) ? handle.image : null;
+		if (image == null) {
+			return false;
+		}
+		handle.image = null;
+		this.keys--;
+		this.release(image);
+		return true;
+	}
+
+	/**
+	 * returns the handle of the key, which holds the current image of the
+	 * key, if it has one, from then on. A key has one handle, so an index may
+	 * keep it with every suggestion of the key
+	 *
+	 * @param key
+	 */
+	public Handle handle(String key) {
+		Handle handle = this.directory.get(key);
+		if (handle == null) {
+			Handle created = new Handle();
+			handle = this.directory.putIfAbsent(key, created);
+			if (handle == null) {
+				handle = created;
+			}
+		}
+		return handle;
+	}
+
+	/**
+	 * stores the image of a data URI for the key, see {@link #put}
+	 *
+	 * @param key
+	 * @param dataUri
+	 * @throws IOException
+	 */
+	public void putDataUri(String key, String dataUri) throws IOException {
+		String base64 = dataUri.substring(dataUri.indexOf(',') + 1);
+		this.put(key,
+				Base64.decodeBase64(base64.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * returns the image of the key, or null if the key has none. The image
+	 * stays readable after the key gets another one, as the blob file is only
+	 * appended to
+	 *
+	 * @param key
+	 */
+	public Image getImage(String key) {
+		Handle handle = this.directory.get(key);
+		return (handle != null) ? handle.image : null;
+	}
+
+	/**
+	 * returns a copy of the bytes of the image of the key, or null if the key
+	 * has none
+	 *
+	 * @param key
+	 */
+	public byte[] get(String key) {
+		Image image = this.getImage(key);
+		return (image != null) ? this.get(image) : null;
+	}
+
+	/**
+	 * returns a copy of the bytes of the image
+	 *
+	 * @param image
+	 */
+	public byte[] get(Image image) {
+		byte[] jpeg = new byte[image.length];
+		ByteBuffer source = this.segments[(int) (image.offset / this.segmentSize)]
+				.duplicate();
+		source.position((int) (image.offset % this.segmentSize));
+		source.get(jpeg);
+		return jpeg;
+	}
+
+	/**
+	 * returns the image as a base64 data URI, encoded on every call
+	 *
+	 * @param image
+	 */
+	public String getDataUri(Image image) {
+		return DATA_URI_PREFIX
+				+ new String(Base64.encodeBase64(this.get(image)),
+						StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * writes the bytes of the image to the channel straight from the blob
+	 * file, so a large image is not copied to the heap at once
+	 *
+	 * @param image
+	 * @param target
+	 * @throws IOException
+	 */
+	public void transferTo(Image image, WritableByteChannel target)
+			throws IOException {
+		long position = image.offset;
+		long remaining = image.length;
+		while (remaining > 0) {
+			long transferred = this.channel.transferTo(position, remaining,
+					target);
+			position += transferred;
+			remaining -= transferred;
+		}
+	}
+
+	/**
+	 * returns the number of keys with an image
+	 */
+	public synchronized int size() {
+		return this.keys;
+	}
+
+	/**
+	 * returns the number of distinct images referenced by keys
+	 */
+	public synchronized int images() {
+		return this.images.size();
+	}
+
+	/**
+	 * returns the bytes of the images referenced by keys, counting a shared
+	 * image once
+	 */
+	public synchronized long bytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * returns the bytes that sharing images saves, the bytes of the images of
+	 * all keys minus {@link #bytes()}
+	 */
+	public synchronized long savedBytes() {
+		return this.keyBytes - this.bytes;
+	}
+
+	/**
+	 * returns the bytes used in the blob file, including the ones of replaced
+	 * images and the unused ends of segments
+	 */
+	public synchronized long fileBytes() {
+		return this.end;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+		this.file.close();
+	}
+
+	/**
+	 * appends the bytes to the blob file and returns the new image without
+	 * references
+	 */
+	private Image append(byte[] jpeg, long hash) throws IOException {
+		long offset = this.end;
+		if (offset % this.segmentSize + jpeg.length > this.segmentSize) {
+			// the image starts the next segment
+			offset += this.segmentSize - offset % this.segmentSize;
+		}
+		int segment = (int) (offset / this.segmentSize);
+		if (segment == this.segments.length) {
+			MappedByteBuffer[] segments = Arrays.copyOf(this.segments,
+					segment + 1);
+			segments[segment] = this.channel.map(
+					FileChannel.MapMode.READ_WRITE, (long) segment
+							* this.segmentSize, this.segmentSize);
+			this.segments = segments;
+		}
+		ByteBuffer target = this.segments[segment].duplicate();
+		target.position((int) (offset % this.segmentSize));
+		target.put(jpeg);
+		this.end = offset + jpeg.length;
+		return new Image(offset, jpeg.length, hash);
+	}
+
+	/**
+	 * returns whether the image has the bytes, compared in the file without
+	 * copying them
+	 */
+	private boolean contains(Image image, byte[] jpeg) {
+		if (image.length != jpeg.length) {
+			return false;
+		}
+		ByteBuffer source = this.segments[(int) (image.offset / this.segmentSize)]
+				.duplicate();
+		int position = (int) (image.offset % this.segmentSize);
+		source.limit(position + image.length);
+		source.position(position);
+		return source.equals(ByteBuffer.wrap(jpeg));
+	}
+
+	/**
+	 * drops a reference of a key to the image and forgets the image with its
+	 * last reference. Its bytes stay in the file for the readers that still
+	 * hold it
+	 */
+	private void release(Image image) {
+		this.keyBytes -= image.length;
+		if (--image.references == 0) {
+			this.bytes -= image.length;
+			if (this.images.get(image.hash) == image) {
+				this.images.remove(image.hash);
+			}
+		}
+	}
+
+	/**
+	 * returns the first eight bytes of the SHA-1 of the image
+	 */
+	private static long hash(byte[] jpeg) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(jpeg);
+			long hash = 0;
+			for (int i = 0; i < 8; i++) {
+				hash = (hash << 8) | (digest[i] & 0xFF);
+			}
+			return hash;
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM supports SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The current image of a key, see {@link ImageStore#handle(String)}.
+	 */
+	public static final class Handle {
+
+		private volatile Image image;
+
+		private Handle() {
+		}
+
+		/**
+		 * returns the current image of the key, or null if it has none
+		 */
+		public Image getImage() {
+			return this.image;
+		}
+	}
+
+	/**
+	 * The place of an image in the blob file and its version.
+	 */
+	public static final class Image {
+
+		private final long offset;
+
+		private final int length;
+
+		private final long hash;
+
+		/**
+		 * the number of keys with the image, guarded by the store
+		 */
+		private int references;
+
+		private Image(long offset, int length, long hash) {
+			this.offset = offset;
+			this.length = length;
+			this.hash = hash;
+		}
+
+		/**
+		 * returns the number of bytes of the image
+		 */
+		public int getLength() {
+			return this.length;
+		}
+
+		/**
+		 * returns the version of the image, which changes with its bytes. It
+		 * is derived from the SHA-1 of the bytes, so it stays the same across
+		 * restarts
+		 */
+		public String getVersion() {
+			return Long.toHexString(this.hash);
+		}
+	}
+}
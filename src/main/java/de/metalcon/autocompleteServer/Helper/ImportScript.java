@@ -9,9 +9,6 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-
-import org.apache.commons.codec.binary.Base64;
 
 /**
  * @author Rene Pickhardt
@@ -20,7 +17,7 @@ import org.apache.commons.codec.binary.Base64;
 public class ImportScript {
 
 	
-	public static void loadFilesToIndex(boolean parseBands, SuggestTree suggestTree, HashMap<String, String> imageIndex){
+	public static void loadFilesToIndex(boolean parseBands, SuggestTree.Builder suggestTree, TokenIndex.Builder tokenIndex, ImageStore imageStore){
 		//boolean parseBand = true;
 		String fileName = null;
 		String path = "/home/rpickhardt/data/metalconimages/";
@@ -42,23 +39,29 @@ public class ImportScript {
 			while ((line = br.readLine())!=null){
 
 				if (parseBands){
-					parseBand(line.toLowerCase(), 1300, imageIndex, suggestTree);
+					parseBand(line, 1300, imageStore, suggestTree, tokenIndex);
 				}else{
-					parseAlbum(line.toLowerCase(), 560, imageIndex, suggestTree);
+					parseAlbum(line, 560, imageStore, suggestTree, tokenIndex);
 				}
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		System.out.println(imageStore.images() + " images for "
+				+ imageStore.size() + " keys, " + imageStore.savedBytes()
+				+ " bytes saved by sharing them");
 	}
 
 	/**
+	 * adds the album once, after the name of its band. The token index finds
+	 * it by the words of its own name, merged with the prefix matches
 	 * @param line
 	 * @param suggestTree 
-	 * @param imageIndex 
+	 * @param tokenIndex 
+	 * @param imageStore 
 	 * @param i
 	 */
-	private static void parseAlbum(String line, int max, HashMap<String, String> imageIndex, SuggestTree suggestTree) {
+	private static void parseAlbum(String line, int max, ImageStore imageStore, SuggestTree.Builder suggestTree, TokenIndex.Builder tokenIndex) {
 		String[] values = line.split("\t");
 		if (values.length!=4) return;
 		String name = values[0];
@@ -66,24 +69,24 @@ public class ImportScript {
 		String band = values[3];
 		Integer score = Integer.parseInt(values[2])*10000/max;
 		System.out.println("parsing record");
-		buildHttpRequest(name, imageKey, name, score, imageIndex, suggestTree);
-		buildHttpRequest(band + " " + name, imageKey, band + " " + name, score, imageIndex, suggestTree);
+		buildHttpRequest(band + " " + name, imageKey, band + " " + name, score, imageStore, suggestTree, tokenIndex);
 	}
 
 	/**
 	 * @param line
 	 * @param suggestTree 
-	 * @param imageIndex 
+	 * @param tokenIndex 
+	 * @param imageStore 
 	 * @param i 
 	 */
-	private static void parseBand(String line, int max, HashMap<String, String> imageIndex, SuggestTree suggestTree) {
+	private static void parseBand(String line, int max, ImageStore imageStore, SuggestTree.Builder suggestTree, TokenIndex.Builder tokenIndex) {
 		String[] values = line.split("\t");
 		if (values.length!=4) return;
 		String name = values[0];
 		String imageKey = values[1];
 		String url = values[2];
 		Integer score = Integer.parseInt(values[3])*10000/max;
-		buildHttpRequest(name, imageKey, url, score, imageIndex, suggestTree);		
+		buildHttpRequest(name, imageKey, url, score, imageStore, suggestTree, tokenIndex);		
 	}
 
 	/**
@@ -92,13 +95,15 @@ public class ImportScript {
 	 * @param url
 	 * @param score
 	 * @param suggestTree 
-	 * @param imageIndex 
+	 * @param tokenIndex 
+	 * @param imageStore 
 	 */
 	private static void buildHttpRequest(String name, String imageKey,
-			String key, int score, HashMap<String, String> imageIndex, SuggestTree suggestTree) {
+			String key, int score, ImageStore imageStore, SuggestTree.Builder suggestTree, TokenIndex.Builder tokenIndex) {
 		String path = "/home/rpickhardt/data/metalconimages/images/";
 		File f = new File ( path + imageKey + "60.jpg");
-		suggestTree.put(name, score, key);
+		suggestTree.add(name, score, key, imageStore.handle(key));
+		tokenIndex.add(name, score, key);
 		if (!f.exists()){
 			System.out.println("cant finde image " + imageKey + " entitiy " + name);
 			return;
@@ -119,10 +124,11 @@ public class ImportScript {
 			e1.printStackTrace();
 			return;
 		}
-		byte[] base64EncodedImage = Base64.encodeBase64(cbuf);
-		String result = new String(base64EncodedImage);
-		result = "data:image/jpg;base64," + result;
-		imageIndex.put(key, result);
+		try {
+			imageStore.put(key, cbuf);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 }
@@ -3,6 +3,11 @@
  */
 package de.metalcon.autocompleteServer.Helper;
 
+import java.io.File;
+import java.io.IOException;
+
+import de.metalcon.autocompleteServer.Search;
+
 /**
  * @author Rene Pickhardt
  *
@@ -10,11 +15,58 @@ package de.metalcon.autocompleteServer.Helper;
 public class Importer {
 
 	/**
+	 * Converts a save file into an index file for {@link MappedSuggestTree}
+	 * if called with the paths of both files. Reports how much the images of
+	 * a save file take in the {@link ImageStore} if called with its path only.
+	 * 
 	 * @param args
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 //		ImportScript.loadFilesToIndex(true);
 //		ImportScript.loadFilesToIndex(false);
+		if (args.length == 2) {
+			writeIndexFile(new File(args[0]), new File(args[1]));
+		} else if (args.length == 1) {
+			reportImages(new File(args[0]));
+		}
+	}
+
+	/**
+	 * Restores the images stored in the specified save file into a scratch
+	 * {@link ImageStore} and prints the bytes they take and the bytes that
+	 * sharing images among keys saves.
+	 */
+	public static void reportImages(File saveFile) throws IOException {
+		File imageFile = File.createTempFile("images", ".blob");
+		imageFile.deleteOnExit();
+		try (ImageStore imageStore = new ImageStore(imageFile)) {
+			Search.restoreFromSaveFile(saveFile, new SuggestTree.Builder(
+					ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS),
+					imageStore);
+			long bytes = imageStore.bytes();
+			long saved = imageStore.savedBytes();
+			System.out.println(imageStore.size() + " keys with an image");
+			System.out.println(imageStore.images() + " distinct images");
+			System.out.println(bytes + " bytes stored");
+			System.out.println(saved + " bytes saved ("
+					+ (bytes + saved > 0 ? 100 * saved / (bytes + saved) : 0)
+					+ "%)");
+		}
+	}
+
+	/**
+	 * Builds the suggest tree stored in the specified save file with the flags
+	 * of the default index and writes it to an index file that can be mapped
+	 * with {@link MappedSuggestTree#open(File)}. The server serves the file
+	 * as a read-only index if it is named after the index and placed in
+	 * {@link ProtocolConstants#INDEX_FILE_DIRECTORY}.
+	 */
+	public static void writeIndexFile(File saveFile, File indexFile)
+			throws IOException {
+		SuggestTree.Builder builder = new SuggestTree.Builder(
+				ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS, Search.INDEX_FLAGS);
+		Search.restoreFromSaveFile(saveFile, builder, null);
+		MappedSuggestTree.write(builder.build().freeze(), indexFile);
 	}
 
 }
@@ -0,0 +1,370 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only suggest tree that is stored in a binary index file and queried
+ * directly from a memory mapping of that file. Opening an index only maps the
+ * file, so it takes constant time and the tree itself does not use any heap;
+ * only the strings of the returned suggestions are copied onto the heap.
+ * <p>
+ * An index file is written from a {@link FrozenSuggestTree} with
+ * {@link #write(FrozenSuggestTree, File)} and contains the same arrays,
+ * including the precomputed top <i>k</i> lists. All numbers are big-endian:
+ *
+ * <pre>
+ * header       magic, version, node count, suggestion count, list length,
+ *              list offset, suggestion offset, string offset, flags (9 ints)
+ * nodes        first char (char), char end (short), left, mid, right, text,
+ *              list start (5 ints) per node, children are -1 if missing
+ * lists        suggestion index (int) per list entry
+ * suggestions  weight, suggestion string offset, key string offset (3 ints)
+ * strings      length (int, -1 for null) followed by UTF-16 chars
+ * </pre>
+ *
+ * The only flag is 1 for a tree created with the
+ * {@link SuggestTree#NORMALIZE} flag, whose prefixes are normalized before they
+ * are looked up. Since a mapping is limited to 2 GB, so is an index file. The
+ * tree cannot be modified and can be read by any number of threads without
+ * synchronization.
+ */
+public class MappedSuggestTree {
+
+	private static final int MAGIC = 0x53475431; // "SGT1"
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 36;
+	private static final int NORMALIZED = 0x01;
+	private static final int NODE_SIZE = 24;
+	private static final int SUGGESTION_SIZE = 12;
+
+	private final ByteBuffer buffer;
+	private final int nodeCount;
+	private final int suggestionCount;
+	private final int listLength;
+	private final int listOffset;
+	private final int suggestionOffset;
+	private final boolean normalize;
+
+	private MappedSuggestTree(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("not a suggest tree index file");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("unsupported index file version "
+					+ buffer.getInt(4));
+		}
+		this.nodeCount = buffer.getInt(8);
+		this.suggestionCount = buffer.getInt(12);
+		this.listLength = buffer.getInt(16);
+		this.listOffset = buffer.getInt(20);
+		this.suggestionOffset = buffer.getInt(24);
+		this.normalize = (buffer.getInt(32) & NORMALIZED) != 0;
+	}
+
+	/**
+	 * Maps the specified index file into memory. The file must not be changed
+	 * while the tree is in use.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be mapped or is not an index file
+	 */
+	public static MappedSuggestTree open(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			// the mapping stays valid after the channel is closed
+			return new MappedSuggestTree(channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Writes the specified tree to an index file that can be opened with
+	 * {@link #open(File)}. An existing file is overwritten.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written or the index would be larger
+	 *             than 2 GB
+	 */
+	public static void write(FrozenSuggestTree tree, File file)
+			throws IOException {
+		int nodes = tree.nodeCount();
+		int suggestions = tree.size();
+		long listOffset = HEADER_SIZE + (long) nodes * NODE_SIZE;
+		long suggestionOffset = listOffset + 4L * tree.lists.length;
+		long stringOffset = suggestionOffset + (long) suggestions
+				* SUGGESTION_SIZE;
+		long end = stringOffset;
+		for (int s = 0; s < suggestions; s++) {
+			end += stringSize(tree.suggestions[s]) + stringSize(tree.keys[s]);
+		}
+		if (end > Integer.MAX_VALUE) {
+			throw new IOException("index file would be larger than 2 GB");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nodes);
+			out.writeInt(suggestions);
+			out.writeInt(tree.lists.length);
+			out.writeInt((int) listOffset);
+			out.writeInt((int) suggestionOffset);
+			out.writeInt((int) stringOffset);
+			out.writeInt(tree.normalize ? NORMALIZED : 0);
+			for (int n = 0; n < nodes; n++) {
+				out.writeChar(tree.firstChar[n]);
+				out.writeShort(tree.charEnd[n]);
+				out.writeInt(tree.left[n]);
+				out.writeInt(tree.mid[n]);
+				out.writeInt(tree.right[n]);
+				out.writeInt(tree.text[n]);
+				out.writeInt(tree.listStart[n]);
+			}
+			for (int suggestion : tree.lists) {
+				out.writeInt(suggestion);
+			}
+			long offset = stringOffset;
+			for (int s = 0; s < suggestions; s++) {
+				out.writeInt(tree.weights[s]);
+				out.writeInt((int) offset);
+				offset += stringSize(tree.suggestions[s]);
+				out.writeInt((int) offset);
+				offset += stringSize(tree.keys[s]);
+			}
+			for (int s = 0; s < suggestions; s++) {
+				writeString(out, tree.suggestions[s]);
+				writeString(out, tree.keys[s]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static long stringSize(String string) {
+		return 4 + ((string != null) ? 2L * string.length() : 0);
+	}
+
+	private static void writeString(DataOutputStream out, String string)
+			throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(string.length());
+			out.writeChars(string);
+		}
+	}
+
+	/**
+	 * Returns the number of suggestions in this tree.
+	 */
+	public int size() {
+		return this.suggestionCount;
+	}
+
+	/**
+	 * Returns the number of nodes in this tree.
+	 */
+	public int nodeCount() {
+		return this.nodeCount;
+	}
+
+	/**
+	 * Returns the node with the top <i>k</i> highest weighted suggestions in
+	 * this tree that start with the specified prefix, or returns {@code null}
+	 * if the tree contains no suggestion with the prefix.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the specified prefix is an empty string
+	 * @throws NullPointerException
+	 *             if the specified prefix is {@code null}
+	 */
+	public Node getBestSuggestions(String prefix) {
+		if (prefix.isEmpty()) {
+			throw new IllegalArgumentException();
+		}
+		int n = this.find(prefix);
+		return (n != -1) ? new Node(n) : null;
+	}
+
+	/**
+	 * Returns the weight of the specified suggestion in this tree, or -1 if
+	 * the tree does not contain the suggestion.
+	 *
+	 * @throws NullPointerException
+	 *             if the specified suggestion is {@code null}
+	 */
+	public int weightOf(String suggestion) {
+		if (suggestion.isEmpty()) {
+			return -1;
+		}
+		int n = this.find(suggestion);
+		if (n == -1 || this.charEnd(n) != suggestion.length()) {
+			return -1;
+		}
+		int s = this.text(n);
+		if (this.buffer.getInt(this.suggestionString(s)) != suggestion.length()) {
+			return -1;
+		}
+		return this.buffer.getInt(this.suggestionOffset + s * SUGGESTION_SIZE);
+	}
+
+	/**
+	 * Returns the index of the node that the specified prefix ends in, or -1
+	 * if there is no such node.
+	 */
+	private int find(String prefix) {
+		if (this.normalize) {
+			prefix = SuggestTree.normalize(prefix);
+		}
+		int i = 0;
+		int n = (this.nodeCount > 0) ? 0 : -1;
+		while (n != -1) {
+			int node = HEADER_SIZE + n * NODE_SIZE;
+			char c = prefix.charAt(i);
+			char firstChar = this.buffer.getChar(node);
+			if (c < firstChar) {
+				n = this.buffer.getInt(node + 4);
+			} else if (c > firstChar) {
+				n = this.buffer.getInt(node + 12);
+			} else {
+				// the characters of the node, skipping the length
+				int chars = this.suggestionString(this.text(n)) + 4;
+				int end = this.charEnd(n);
+				for (i++; i < end && i < prefix.length(); i++) {
+					if (prefix.charAt(i) != this.charAt(chars, i)) {
+						return -1;
+					}
+				}
+				if (i < prefix.length()) {
+					n = this.buffer.getInt(node + 8);
+				} else {
+					return n;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private char charAt(int chars, int index) {
+		char c = this.buffer.getChar(chars + 2 * index);
+		return this.normalize ? SuggestTree.normalize(c) : c;
+	}
+
+	private int charEnd(int n) {
+		return this.buffer.getShort(HEADER_SIZE + n * NODE_SIZE + 2);
+	}
+
+	private int text(int n) {
+		return this.buffer.getInt(HEADER_SIZE + n * NODE_SIZE + 16);
+	}
+
+	private int listStart(int n) {
+		return (n < this.nodeCount) ? this.buffer.getInt(HEADER_SIZE + n
+				* NODE_SIZE + 20) : this.listLength;
+	}
+
+	private int suggestionString(int s) {
+		return this.buffer.getInt(this.suggestionOffset + s * SUGGESTION_SIZE
+				+ 4);
+	}
+
+	private String readString(int offset) {
+		int length = this.buffer.getInt(offset);
+		if (length == -1) {
+			return null;
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = this.buffer.getChar(offset + 4 + 2 * i);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * A node of the mapped tree with a rank-ordered list of autocomplete
+	 * suggestions. The highest weighted suggestion is at index 0, the second
+	 * highest weighted at index 1, and so on.
+	 */
+	public final class Node {
+
+		private final int start;
+		private final int length;
+
+		private Node(int node) {
+			this.start = MappedSuggestTree.this.listStart(node);
+			this.length = MappedSuggestTree.this.listStart(node + 1)
+					- this.start;
+		}
+
+		/**
+		 * Returns the offset of the record of the suggestion at the specified
+		 * position in the list.
+		 */
+		private int suggestion(int index) {
+			if (index < 0 || index >= this.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			MappedSuggestTree tree = MappedSuggestTree.this;
+			int s = tree.buffer.getInt(tree.listOffset + 4
+					* (this.start + index));
+			return tree.suggestionOffset + s * SUGGESTION_SIZE;
+		}
+
+		/**
+		 * Returns the suggestion at the specified position in the list.
+		 *
+		 * @throws IndexOutOfBoundsException
+		 *             if the {@code index} argument is negative or not less
+		 *             than the list length
+		 */
+		public String getSuggestion(int index) {
+			MappedSuggestTree tree = MappedSuggestTree.this;
+			return tree.readString(tree.buffer.getInt(this.suggestion(index) + 4));
+		}
+
+		/**
+		 * Returns the weight of the suggestion at the specified position in
+		 * the list.
+		 *
+		 * @throws IndexOutOfBoundsException
+		 *             if the {@code index} argument is negative or not less
+		 *             than the list length
+		 */
+		public int getWeight(int index) {
+			return MappedSuggestTree.this.buffer.getInt(this.suggestion(index));
+		}
+
+		/**
+		 * Returns the key of the suggestion at the specified position in the
+		 * list.
+		 *
+		 * @throws IndexOutOfBoundsException
+		 *             if the {@code index} argument is negative or not less
+		 *             than the list length
+		 */
+		public String getKey(int index) {
+			MappedSuggestTree tree = MappedSuggestTree.this;
+			return tree.readString(tree.buffer.getInt(this.suggestion(index) + 8));
+		}
+
+		/**
+		 * Returns the number of suggestions in the list.
+		 */
+		public int listLength() {
+			return this.length;
+		}
+	}
+}
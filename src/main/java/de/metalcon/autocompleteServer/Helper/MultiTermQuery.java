@@ -0,0 +1,221 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * Finds the suggestions that contain every term of a query, so that "Iron
+ * Maiden Power" finds "Iron Maiden – Powerslave". All terms but the last must
+ * be whole words of the suggestion, and the last one must start a word,
+ * unless the query ends with whitespace. Words are separated by spaces and
+ * may come in any order. A suggestion of a single word never matches. The
+ * terms and words are compared the way the index compares them, so that they
+ * match regardless of case and diacritics in a normalized index.
+ * <p>
+ * Every term has a stream of the suggestions with a matching word in order of
+ * weight, which merges the first words from the index with the later words
+ * from its {@link TokenIndex}. A whole word is looked up together with the
+ * space that follows it, or as the last word, so that its stream does not
+ * hold the longer words it starts. The streams are read in turns and each
+ * suggestion that was not seen before is checked against all terms. A
+ * suggestion has the same weight in every stream, so one that was not seen yet
+ * weighs at most as much as the lowest of the weights last read from the
+ * streams. The query stops as soon as it has count matches that are not
+ * lighter than that, when a stream runs out, since every match must be in it,
+ * or after reading budget suggestions.
+ */
+public class MultiTermQuery {
+
+	/**
+	 * returns up to count suggestions that contain all terms of the query,
+	 * mapped to their keys and ordered by weight, or an empty map if there are
+	 * none or the query has a single term. Each entity is returned once
+	 *
+	 * @param index
+	 * @param tokenIndex
+	 *            the token index of the same suggestions
+	 * @param query
+	 * @param count
+	 * @param budget
+	 *            the number of suggestions that may be read from the streams
+	 */
+	public static LinkedHashMap<String, String> getSuggestions(
+			SuggestTree index, TokenIndex tokenIndex, String query, int count,
+			int budget) {
+		LinkedHashMap<String, String> suggestions = new LinkedHashMap<String, String>();
+		String[] terms = index.fold(query).trim().split("\\s+");
+		if (terms.length < 2 || count == 0) {
+			return suggestions;
+		}
+		boolean prefix = !Character.isWhitespace(query
+				.charAt(query.length() - 1));
+
+		Stream[] streams = new Stream[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			if (prefix && i == terms.length - 1) {
+				streams[i] = new Stream(index.iterator(terms[i]),
+						tokenIndex.iterator(terms[i]));
+			} else {
+				streams[i] = new Stream(index.iterator(terms[i] + ' '),
+						tokenIndex.wordIterator(terms[i]));
+			}
+		}
+		HashSet<String> seen = new HashSet<String>();
+		// the heaviest match of each entity
+		HashMap<String, Match> matches = new HashMap<String, Match>();
+		int threshold = Integer.MAX_VALUE;
+		while (budget > 0 && countAtLeast(matches, threshold) < count) {
+			for (Stream stream : streams) {
+				if (!stream.next()) {
+					return toSuggestions(matches, count);
+				}
+				budget--;
+				threshold = Math.min(threshold, stream.weight);
+				if (seen.add(stream.suggestion)
+						&& matches(index.fold(stream.suggestion), terms,
+								prefix)) {
+					String entity = (stream.key != null) ? stream.key
+							: stream.suggestion;
+					Match match = matches.get(entity);
+					if (match == null || match.weight < stream.weight) {
+						matches.put(entity, new Match(stream.suggestion,
+								stream.key, stream.weight));
+					}
+				}
+			}
+		}
+		return toSuggestions(matches, count);
+	}
+
+	private static int countAtLeast(HashMap<String, Match> matches, int weight) {
+		int count = 0;
+		for (Match match : matches.values()) {
+			if (match.weight >= weight) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static LinkedHashMap<String, String> toSuggestions(
+			HashMap<String, Match> matches, int count) {
+		ArrayList<Match> list = new ArrayList<Match>(matches.values());
+		Collections.sort(list);
+		LinkedHashMap<String, String> suggestions = new LinkedHashMap<String, String>();
+		for (int i = 0; i < list.size() && suggestions.size() < count; i++) {
+			suggestions.put(list.get(i).suggestion, list.get(i).key);
+		}
+		return suggestions;
+	}
+
+	/**
+	 * returns whether every term but the last is a word of the suggestion and
+	 * the last one is a word or starts one if prefix is true
+	 */
+	private static boolean matches(String suggestion, String[] terms,
+			boolean prefix) {
+		for (int i = 0; i < terms.length; i++) {
+			if (!containsWord(suggestion, terms[i], prefix
+					&& i == terms.length - 1)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * returns whether the term is a word of the suggestion, or starts one if
+	 * prefix is true
+	 */
+	private static boolean containsWord(String suggestion, String term,
+			boolean prefix) {
+		int length = term.length();
+		for (int i = suggestion.indexOf(term); i >= 0; i = suggestion.indexOf(
+				term, i + 1)) {
+			if ((i == 0 || suggestion.charAt(i - 1) == ' ')
+					&& (prefix || i + length == suggestion.length() || suggestion
+							.charAt(i + length) == ' ')) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The suggestions with a word that matches a term, in order of weight. It
+	 * merges the iterators over the index and over the token index.
+	 */
+	private static final class Stream {
+
+		private final SuggestTree.RankedIterator first;
+
+		private final TokenIndex.RankedIterator later;
+
+		// the next suggestion of each iterator
+		private String firstHead;
+
+		private String laterHead;
+
+		private String suggestion;
+
+		private int weight;
+
+		private String key;
+
+		private Stream(SuggestTree.RankedIterator first,
+				TokenIndex.RankedIterator later) {
+			this.first = first;
+			this.later = later;
+			this.firstHead = first.next();
+			this.laterHead = later.next();
+		}
+
+		/**
+		 * moves to the next suggestion and returns true, or returns false if
+		 * there is none
+		 */
+		private boolean next() {
+			if (this.firstHead == null && this.laterHead == null) {
+				return false;
+			}
+			if (this.laterHead == null
+					|| (this.firstHead != null && this.first.weight() >= this.later
+							.weight())) {
+				this.suggestion = this.firstHead;
+				this.weight = this.first.weight();
+				this.key = this.first.key();
+				this.firstHead = this.first.next();
+			} else {
+				this.suggestion = this.laterHead;
+				this.weight = this.later.weight();
+				this.key = this.later.key();
+				this.laterHead = this.later.next();
+			}
+			return true;
+		}
+	}
+
+	private static final class Match implements Comparable<Match> {
+
+		private final String suggestion;
+
+		private final String key;
+
+		private final int weight;
+
+		private Match(String suggestion, String key, int weight) {
+			this.suggestion = suggestion;
+			this.key = key;
+			this.weight = weight;
+		}
+
+		@Override
+		public int compareTo(Match other) {
+			return (this.weight > other.weight) ? -1
+					: (this.weight < other.weight) ? 1 : 0;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.util.LinkedHashMap;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+/**
+ * A secondary index that finds suggestions by the way they sound, so that
+ * "motorhed" finds "Motörhead". Each suggestion is stored in a
+ * {@link SuggestTree} under its Double Metaphone codes, followed by a space
+ * and the suggestion itself, so that suggestions with the same code are kept
+ * apart. A term is looked up with its primary code as the prefix, which costs
+ * one more walk through a tree. The codes are computed from the normalized
+ * suggestion, see {@link SuggestTree#normalize(String)}, so that letters with
+ * diacritics sound like the plain ones.
+ */
+public class PhoneticIndex {
+
+	/**
+	 * long enough that the code of a typed prefix is a prefix of the code of
+	 * the whole name
+	 */
+	private static final int MAX_CODE_LENGTH = 12;
+
+	private final SuggestTree tree;
+
+	private final DoubleMetaphone encoder;
+
+	/**
+	 * @param listLength
+	 *            the number of suggestions the tree precomputes per prefix
+	 * @param flags
+	 *            the flags of the tree, see {@link SuggestTree}
+	 */
+	public PhoneticIndex(int listLength, int flags) {
+		this(new SuggestTree(listLength, flags));
+	}
+
+	private PhoneticIndex(SuggestTree tree) {
+		this.tree = tree;
+		this.encoder = newEncoder();
+	}
+
+	/**
+	 * inserts the suggestion or changes its weight, like
+	 * {@link SuggestTree#put}. Suggestions without any letters have no code
+	 * and are not added.
+	 *
+	 * @param suggestion
+	 * @param weight
+	 * @param key
+	 */
+	public void put(String suggestion, int weight, String key) {
+		String normalized = SuggestTree.normalize(suggestion);
+		String primary = this.encoder.doubleMetaphone(normalized);
+		if (primary.isEmpty()) {
+			return;
+		}
+		this.tree.put(entry(primary, suggestion), weight, key);
+		String alternate = this.encoder.doubleMetaphone(normalized, true);
+		if (!alternate.equals(primary)) {
+			this.tree.put(entry(alternate, suggestion), weight, key);
+		}
+	}
+
+	/**
+	 * returns up to count suggestions that sound like they start with the
+	 * term, mapped to their keys and ordered by weight, or an empty map if
+	 * there are none
+	 *
+	 * @param term
+	 * @param count
+	 */
+	public LinkedHashMap<String, String> getSuggestions(String term, int count) {
+		LinkedHashMap<String, String> suggestions = new LinkedHashMap<String, String>();
+		String code = this.encoder.doubleMetaphone(SuggestTree.normalize(term));
+		if (code.isEmpty()) {
+			return suggestions;
+		}
+		// a suggestion may be stored under both of its codes
+		SuggestTree.Node node = this.tree.getBestSuggestions(code, 2 * count);
+		if (node == null) {
+			return suggestions;
+		}
+		for (int i = 0; i < node.listLength() && suggestions.size() < count; i++) {
+			String entry = node.getSuggestion(i);
+			suggestions.put(entry.substring(entry.indexOf(' ') + 1),
+					node.getKey(i));
+		}
+		return suggestions;
+	}
+
+	/**
+	 * returns the number of entries in the tree, which is the number of
+	 * suggestions plus the number of suggestions with a second code
+	 */
+	public int size() {
+		return this.tree.size();
+	}
+
+	private static String entry(String code, String suggestion) {
+		return code + ' ' + suggestion;
+	}
+
+	private static DoubleMetaphone newEncoder() {
+		DoubleMetaphone encoder = new DoubleMetaphone();
+		encoder.setMaxCodeLen(MAX_CODE_LENGTH);
+		return encoder;
+	}
+
+	/**
+	 * Collects the suggestions of a phonetic index that is built at once, see
+	 * {@link SuggestTree.Builder}.
+	 */
+	public static class Builder {
+
+		private final SuggestTree.Builder builder;
+
+		private final DoubleMetaphone encoder;
+
+		public Builder(int listLength, int flags) {
+			this.builder = new SuggestTree.Builder(listLength, flags);
+			this.encoder = newEncoder();
+		}
+
+		public Builder add(String suggestion, int weight, String key) {
+			String normalized = SuggestTree.normalize(suggestion);
+			String primary = this.encoder.doubleMetaphone(normalized);
+			if (primary.isEmpty()) {
+				return this;
+			}
+			this.builder.add(entry(primary, suggestion), weight, key);
+			String alternate = this.encoder.doubleMetaphone(normalized, true);
+			if (!alternate.equals(primary)) {
+				this.builder.add(entry(alternate, suggestion), weight, key);
+			}
+			return this;
+		}
+
+		public PhoneticIndex build() {
+			return new PhoneticIndex(this.builder.build());
+		}
+	}
+}
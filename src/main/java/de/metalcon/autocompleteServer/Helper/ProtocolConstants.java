@@ -11,6 +11,25 @@ public class ProtocolConstants {
 	public static final String QUERY_PARAMETER = "term";
 	public static final String INDEX_PARAMETER = "indexName";
 	public static final String NUM_ITEMS = "numItems";
+	public static final String CONTINUATION_PARAMETER = "continuation";
+	public static final String FUZZY_PARAMETER = "fuzzy";
+	public static final String CATEGORY_PARAMETER = "category";
+	/**
+	 * whether the suggestions carry their images as data URIs, as they did
+	 * before the image servlet, instead of a reference to the servlet
+	 */
+	public static final String INLINE_IMAGES_PARAMETER = "inlineImages";
+
+	/**
+	 * the path of the image servlet relative to the retrieve servlet and its
+	 * parameters, the suggestion key and the version of the image. Images
+	 * requested with their current version may be cached for IMAGE_MAX_AGE
+	 * seconds
+	 */
+	public static final String IMAGE_PATH = "image";
+	public static final String IMAGE_KEY_PARAMETER = "key";
+	public static final String IMAGE_VERSION_PARAMETER = "v";
+	public static final int IMAGE_MAX_AGE = 365 * 24 * 60 * 60;
 
 	/**
 	 * parameters for the response JSON of the retrieval request
@@ -19,6 +38,7 @@ public class ProtocolConstants {
 	public static final String RESP_JSON_FIELD_SUGGESTION = "suggestion";
 	public static final String RESP_JSON_FIELD_SUGGESTION_KEY = "key";
 	public static final String RESP_JSON_FIELD_SUGGESTION_IMAGE = "image";
+	public static final String RESP_JSON_FIELD_CONTINUATION = "continuation";
 
 	/**
 	 * form parameter names for the create request of the ASTP
@@ -33,11 +53,89 @@ public class ProtocolConstants {
 	public static final int IMAGE_HEIGHT = 64;
 	public static final long MAX_IMAGE_FILE_LENGTH = 3000000;
 
+	/**
+	 * form parameter names for the new index request of the ASTP. The list
+	 * length is the number of suggestions the index precomputes per prefix
+	 * and may be between 1 and MAX_NUM_ITEMS. With adaptive lists, only short
+	 * prefixes keep lists of that length.
+	 */
+	public static final String LIST_LENGTH = "listLength";
+	public static final String ADAPTIVE_LISTS = "adaptiveLists";
+	/**
+	 * whether the new index keeps a phonetic index as well, which retrieve
+	 * requests fall back to when the exact prefix has too few suggestions
+	 */
+	public static final String PHONETIC_INDEX = "phoneticIndex";
+	/**
+	 * whether the new index keeps a token index as well, which retrieve
+	 * requests use to find suggestions by the start of a later word
+	 */
+	public static final String TOKEN_INDEX = "tokenIndex";
+	/**
+	 * whether the new index keeps a category index as well, which retrieve
+	 * requests with a category are answered from
+	 */
+	public static final String CATEGORY_INDEX = "categoryIndex";
+
+	/**
+	 * the categories a suggestion may belong to, which create and retrieve
+	 * requests name in the category parameter. The position of a category is
+	 * its id, which is stored with the suggestion, so new categories are only
+	 * added at the end
+	 */
+	public static final String[] CATEGORIES = { "band", "album", "venue" };
+
 	/**
 	 * the default Number of Items which can be retrieved from the Suggest
 	 * Server
 	 */
 	public static final Integer MAX_NUMBER_OF_SUGGESTIONS = 7;
+	/**
+	 * the maximum Number of Items a single retrieve request may ask for. Items
+	 * beyond the precomputed MAX_NUMBER_OF_SUGGESTIONS are found by a
+	 * best-first search in the index
+	 */
+	public static final Integer MAX_NUM_ITEMS = 50;
+	/**
+	 * the highest edit distance a fuzzy retrieve request may ask for. Shorter
+	 * terms are searched with at most one edit per three characters, as
+	 * almost every suggestion is within two edits of a two character term. A
+	 * fuzzy search visits at most FUZZY_NODE_BUDGET nodes of the index
+	 */
+	public static final int MAX_FUZZY_DISTANCE = 2;
+	public static final int FUZZY_NODE_BUDGET = 5000;
+	/**
+	 * the number of suggestions a query of several terms may read from the
+	 * streams of its terms, see MultiTermQuery
+	 */
+	public static final int MULTI_TERM_BUDGET = 5000;
 	public static final String DEFAULT_INDEX_NAME = "generalIndex";
-	public static final String IMAGE_SERVER_CONTEXT_KEY = "image-index-hashMap";
+	public static final boolean DEFAULT_INDEX_PHONETIC = true;
+	public static final String PHONETIC_INDEX_CONTEXT_KEY = "phonetic-index:";
+	public static final boolean DEFAULT_INDEX_TOKENS = true;
+	public static final String TOKEN_INDEX_CONTEXT_KEY = "token-index:";
+	public static final boolean DEFAULT_INDEX_CATEGORIES = true;
+	public static final String CATEGORY_INDEX_CONTEXT_KEY = "category-index:";
+	public static final String IMAGE_SERVER_CONTEXT_KEY = "image-store";
+	/**
+	 * the directory of the index files written by the Importer. Every file
+	 * named after an index with the extension INDEX_FILE_EXTENSION is served
+	 * read-only, see MappedSuggestTree. The index file of the default index
+	 * replaces its save file at the start, and the suggestions created after
+	 * that are kept in memory on top of it
+	 */
+	public static final String INDEX_FILE_DIRECTORY = "/var/lib/tomcat/";
+	public static final String INDEX_FILE_EXTENSION = ".idx";
+	public static final String MAPPED_INDEX_CONTEXT_KEY = "mapped-index:";
+	/**
+	 * the blob file of the images, next to the save files, see ImageStore
+	 */
+	public static final String IMAGE_STORE_FILE = "/var/lib/tomcat/images.blob";
+	/**
+	 * the number of bytes the cache of retrieve responses may hold and the
+	 * number of responses it is expected to hold, see ResponseCache
+	 */
+	public static final long RESPONSE_CACHE_BYTES = 32 * 1024 * 1024;
+	public static final int RESPONSE_CACHE_ENTRIES = 16384;
+	public static final String RESPONSE_CACHE_CONTEXT_KEY = "response-cache";
 }
@@ -16,9 +16,20 @@ package de.metalcon.autocompleteServer.Helper;
 
 //package net.sourceforge.suggesttree;
 
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * An efficient data structure for rank-sensitive autocomplete features. It
@@ -62,25 +73,143 @@ import java.util.Random;
  * within the ternary search tree does. However, for best performance, the
  * suggestions should be inserted into the tree in random order. For large
  * <i>n</i>, this practically always produces a balanced tree where going left
- * or right cuts the search space more or less in half.
+ * or right cuts the search space more or less in half. When all suggestions are
+ * known up front, a {@link Builder} creates a perfectly balanced tree from them
+ * in any order and is much faster than inserting them one by one.
  * <p>
  * If a suggestion is removed and the corresponding node has no middle child but
  * a left child and a right child, the node is replaced with either the leftmost
  * node from its right subtree or the rightmost node from its left subtree. To
  * preserve the balance of the tree, the choice is made at random.
  * <p>
- * This implementation is not synchronized. If multiple threads access a tree
- * concurrently, and at least one of the threads modifies the tree, it must be
- * synchronized externally. This is typically accomplished by synchronizing on
- * some object that naturally encapsulates the tree.
+ * This implementation is not synchronized by default. If multiple threads
+ * access a tree concurrently, and at least one of the threads modifies the
+ * tree, it must be synchronized externally. This is typically accomplished by
+ * synchronizing on some object that naturally encapsulates the tree.
+ * <p>
+ * Alternatively, a tree can be created with the {@link #CONCURRENT} flag. Such
+ * a tree allows one writing thread and any number of reading threads without
+ * locking: suggestion lists are never modified in place but copied, changed and
+ * then published through a volatile field, and {@link #getBestSuggestions}
+ * returns a snapshot of the list that stays unchanged while the reader iterates
+ * over it. A lookup that races with a structural change on its path (a node
+ * split on insertion or a node removal) may miss the prefix once, but never
+ * returns a suggestion that does not start with the prefix and never sees a
+ * partially updated list. Writes must still come from a single thread, and the
+ * {@link Iterator} is not safe to use while the tree is modified.
+ * <p>
+ * A tree created with the {@link #TEXT_ARENA} flag does not keep the suggestion
+ * and key strings passed to {@link #put}. It copies their characters into one
+ * growable byte array instead and addresses them by offset, which saves the
+ * object headers of two strings and their arrays per suggestion. The characters
+ * of a removed suggestion stay in the array until the tree is cleared, so this
+ * mode is meant for trees that are mostly built once and rarely shrink.
+ * <p>
+ * A tree created with the {@link #ADAPTIVE} flag keeps lists of length
+ * <i>k</i> only in the nodes that start within the first three characters of
+ * a suggestion, so that every prefix of up to three characters has a full
+ * list. These short prefixes are the ones typed most often and are shared by
+ * the most suggestions. Deeper nodes keep lists of about half that
+ * length, which saves a large part of the list memory, as most nodes are deep.
+ * A list in a node is then no longer complete for all of its parents, so the
+ * lists of a parent are kept up to date by searching below a child whose list
+ * is exhausted. Queries for more suggestions than a node holds are answered
+ * with {@link #getBestSuggestions(String, int)}.
+ * <p>
+ * A tree created with the {@link #NORMALIZE} flag compares the normalized
+ * characters of suggestions and prefixes, so that "Motörhead" and
+ * "MOTORHEAD" are the same suggestion and "mot" finds both. The nodes keep the
+ * suggestion that was inserted first and return it as it was inserted, but
+ * composed (NFC), so that an "ö" typed as "o" and a combining diaeresis is
+ * the same suggestion as well. Since each character of a composed string
+ * normalizes to a single character, the characters of a node are normalized
+ * when they are read, and the tree needs no more memory than a plain one.
+ * <p>
+ * A tree created with the {@link #DISTINCT_KEYS} flag treats the suggestions
+ * with the same key as names of one entity and keeps at most one suggestion
+ * per key in each list, the highest weighted one. A list then holds the top
+ * <i>k</i> entities below its node, so no slot is taken by an alias of an
+ * entity that is already listed. Since the best suggestion of each key below
+ * a node is in the list of the child it comes from, the lists are still kept
+ * up to date from the lists of the child nodes. Suggestions with a
+ * {@code null} key are all distinct. The best-first search for longer lists
+ * and the fuzzy search also return one suggestion per key.
+ * <p>
+ * A tree created with the {@link #FRAGMENTS} flag lets the caller attach an
+ * encoded form to the suggestion list of a prefix, such as the bytes of the
+ * response that lists it, so that a frequently requested list is encoded
+ * once. The fragments are kept in a small table by the identity of their
+ * lists, and every list is copied when it changes, as in a concurrent tree,
+ * so a fragment never outlives the list it was built from.
  * 
  * @version 1 August 2013
  */
 public class SuggestTree {
     
+    /**
+     * Flag that makes the tree safe for one writing thread and any number of
+     * lock-free reading threads.
+     */
+    public static final int CONCURRENT = 0x01;
+    
+    /**
+     * Flag that makes the tree store all suggestion and key strings in one
+     * shared byte array instead of separate string objects.
+     */
+    public static final int TEXT_ARENA = 0x02;
+    
+    /**
+     * Flag that makes the tree keep shorter suggestion lists in nodes deeper
+     * than {@link #ADAPTIVE_DEPTH} characters.
+     */
+    public static final int ADAPTIVE = 0x04;
+    
+    /**
+     * The number of characters up to which the prefixes of a tree created
+     * with the {@link #ADAPTIVE} flag have lists of length <i>k</i>.
+     */
+    public static final int ADAPTIVE_DEPTH = 3;
+    
+    /**
+     * Flag that makes the tree compare suggestions and prefixes by their
+     * normalized characters, see {@link #normalize(String)}, while it keeps
+     * and returns the suggestions as they were inserted.
+     */
+    public static final int NORMALIZE = 0x08;
+    
+    /**
+     * Flag that makes the tree keep at most one suggestion per key in each
+     * suggestion list. It cannot be combined with {@link #ADAPTIVE}.
+     */
+    public static final int DISTINCT_KEYS = 0x10;
+    
+    /**
+     * Flag that makes the tree keep an encoded form of recently requested
+     * suggestion lists, see {@link #getFragment}.
+     */
+    public static final int FRAGMENTS = 0x20;
+    
+    /**
+     * The number of fragments a tree created with the {@link #FRAGMENTS} flag
+     * keeps at most.
+     */
+    private static final int FRAGMENT_SLOTS = 1 << 12;
+    
+    /**
+     * The number of suggestions from which a parallel build sorts a range or
+     * creates a subtree in a separate task.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+    
     private final Random random = new Random();
     private final int k;
-    private Node root;
+    private final int deepK;
+    private final boolean concurrent;
+    private final boolean normalize;
+    private final boolean distinct;
+    private final Fragment[] fragments;
+    private TextArena arena;
+    private volatile Node root;
     private int size;
 
     /**
@@ -90,13 +219,44 @@ public class SuggestTree {
      * than 1
      */
     public SuggestTree(int k) {
-        if(k < 1)
+        this(k, 0);
+    }
+    
+    /**
+     * Creates a tree that returns the top {@code k} highest weighted
+     * autocomplete suggestions for a given prefix, using the specified
+     * combination of flags, such as {@link #CONCURRENT}, {@link #TEXT_ARENA},
+     * {@link #ADAPTIVE}, {@link #NORMALIZE}, {@link #DISTINCT_KEYS} or
+     * {@link #FRAGMENTS}.
+     * @throws IllegalArgumentException if the specified {@code k} value is less
+     * than 1 or the flags combine {@link #ADAPTIVE} and
+     * {@link #DISTINCT_KEYS}
+     */
+    public SuggestTree(int k, int flags) {
+        if(k < 1 || !validFlags(flags))
             throw new IllegalArgumentException();
         this.k = k;
+        deepK = ((flags & ADAPTIVE) != 0) ? (k + 1) / 2 : k;
+        concurrent = (flags & CONCURRENT) != 0;
+        normalize = (flags & NORMALIZE) != 0;
+        distinct = (flags & DISTINCT_KEYS) != 0;
+        fragments = ((flags & FRAGMENTS) != 0) ? new Fragment[FRAGMENT_SLOTS]
+                : null;
+        arena = ((flags & TEXT_ARENA) != 0) ? new TextArena() : null;
         root = null;
         size = 0;
     }
     
+    /**
+     * Returns whether the specified flags can be combined. The lists of an
+     * adaptive tree cannot be merged from the lists of the child nodes, which
+     * keeping one suggestion per key relies on.
+     */
+    private static boolean validFlags(int flags) {
+        return (flags & (ADAPTIVE | DISTINCT_KEYS))
+                != (ADAPTIVE | DISTINCT_KEYS);
+    }
+    
     /**
      * Returns the number of suggestions in this tree.
      */
@@ -110,19 +270,177 @@ public class SuggestTree {
     public void clear() {
         root = null;
         size = 0;
+        // concurrent readers may still be on their way through the old nodes
+        if(arena != null && !concurrent)
+            arena = new TextArena();
+        if(fragments != null)
+            Arrays.fill(fragments, null);
     }
 
     /**
      * Returns the node with the top <i>k</i> highest weighted suggestions in
      * this tree that start with the specified prefix, or returns {@code null}
-     * if the tree contains no suggestion with the prefix.
+     * if the tree contains no suggestion with the prefix. If the tree was
+     * created with the {@link #CONCURRENT} flag, the returned node is a
+     * snapshot of the list that is not affected by later modifications.
+     * If the tree was created with the {@link #TEXT_ARENA} flag, each call
+     * returns a new node. If the tree was created with the {@link #ADAPTIVE}
+     * flag, the list of a long prefix may hold fewer than <i>k</i> suggestions
+     * even though more of them start with the prefix.
      * @throws IllegalArgumentException if the specified prefix is an empty
      * string
      * @throws NullPointerException if the specified prefix is {@code null}
      */
     public Node getBestSuggestions(String prefix) {
+        Node n = getPrefixNode(prefix);
+        if(n == null)
+            return null;
+        return (arena != null || concurrent) ? view(n.list) : n;
+    }
+    
+    /**
+     * Returns a node with the top {@code count} highest weighted suggestions
+     * in this tree that start with the specified prefix, or returns
+     * {@code null} if the tree contains no suggestion with the prefix. Unlike
+     * {@link #getBestSuggestions(String)}, the count is not limited to
+     * <i>k</i>. The first <i>k</i> suggestions are those of the precomputed
+     * list of the prefix; further suggestions are found by a best-first search
+     * that starts from the precomputed lists of the child nodes and only
+     * descends into a node once its whole list has been returned. Each call
+     * returns a new node.
+     * @throws IllegalArgumentException if the specified prefix is an empty
+     * string or the count is negative
+     * @throws NullPointerException if the specified prefix is {@code null}
+     */
+    public Node getBestSuggestions(String prefix, int count) {
+        if(count < 0)
+            throw new IllegalArgumentException();
+        Node n = getPrefixNode(prefix);
+        if(n == null)
+            return null;
+        Node[] list = n.list;
+        if(count <= list.length)
+            return view(Arrays.copyOf(list, count));
+        return getBestSuggestions(prefix, count, null);
+    }
+    
+    /**
+     * Returns the next page of at most {@code count} suggestions that start
+     * with the specified prefix, or returns {@code null} if the tree contains
+     * no suggestion with the prefix. If the continuation is {@code null}, the
+     * first page is returned, which is the same as the node returned by
+     * {@link #getBestSuggestions(String, int)}. Otherwise the continuation
+     * must be one returned by {@link Page#getContinuation} of the previous page
+     * for the same prefix, and the best-first search is resumed where that
+     * page ended, without repeating the work for the earlier pages. If the
+     * tree is modified between two pages, the later pages are based on the
+     * modified tree and may repeat or skip suggestions.
+     * @throws IllegalArgumentException if the specified prefix is an empty
+     * string, the count is negative or the continuation is not valid for the
+     * prefix
+     * @throws NullPointerException if the specified prefix is {@code null}
+     */
+    public Page getBestSuggestions(String prefix, int count,
+            String continuation) {
+        if(count < 0)
+            throw new IllegalArgumentException();
+        Node n = getPrefixNode(prefix);
+        if(n == null)
+            return null;
+        Node[] list = n.list;
+        Search search = new Search(prefix);
+        if(continuation == null)
+            search.addList(n, list, 0);
+        else
+            search.resume(continuation);
+        ArrayList<Node> result = new ArrayList<Node>(Math.min(count, 64));
+        while(result.size() < count && search.hasNext())
+            result.add(search.next());
+        // the search returns the whole list of the node before any other
+        // suggestion, so a first page of that length is the list itself
+        boolean whole = continuation == null && result.size() == list.length;
+        Node view = view(whole ? list
+                : result.toArray(new Node[result.size()]));
+        return new Page(view, search.hasNext() ? search : null, whole);
+    }
+    
+    /**
+     * Returns whether this tree was created with the {@link #FRAGMENTS} flag.
+     */
+    public boolean keepsFragments() {
+        return fragments != null;
+    }
+    
+    /**
+     * Returns the fragment that was stored with {@link #putFragment} for the
+     * suggestion list of the specified page, or {@code null} if there is none
+     * or the list has changed since. A fragment is an encoded form of a list,
+     * such as the bytes of its JSON, that the caller builds once and reuses
+     * until the list changes. Fragments are only kept for first pages that
+     * hold the whole list of their prefix, and at most a few thousand of them
+     * are kept, each in a slot chosen by the identity of its list. A tree
+     * created with the {@link #FRAGMENTS} flag copies a list whenever it
+     * changes, so a fragment is dropped with the list it was built from.
+     */
+    public Object getFragment(Page page) {
+        if(fragments == null || !page.whole)
+            return null;
+        Node[] list = page.view.list;
+        Fragment fragment = fragments[fragmentSlot(list)];
+        return (fragment != null && fragment.list == list) ? fragment.value
+                : null;
+    }
+    
+    /**
+     * Stores the fragment for the suggestion list of the specified page,
+     * replacing the fragment of another list in the same slot. Does nothing
+     * if the tree keeps no fragments or the page does not hold the whole list
+     * of its prefix.
+     */
+    public void putFragment(Page page, Object fragment) {
+        if(fragments == null || !page.whole)
+            return;
+        Node[] list = page.view.list;
+        fragments[fragmentSlot(list)] = new Fragment(list, fragment);
+    }
+    
+    private static int fragmentSlot(Node[] list) {
+        int hash = System.identityHashCode(list);
+        return (hash ^ (hash >>> 16)) & (FRAGMENT_SLOTS - 1);
+    }
+    
+    /**
+     * Returns a node with at most {@code count} suggestions in this tree that
+     * start with a string within the specified Levenshtein distance of the
+     * specified prefix, or returns {@code null} if there is no such
+     * suggestion. The tree is walked with one row of the edit distance matrix
+     * per character, and a branch is left as soon as no prefix below it can
+     * be close enough. The precomputed lists of all nodes that end a close
+     * enough prefix are merged, so that the suggestions are ranked by the
+     * lowest distance of a prefix they start with, and then by weight. Where
+     * a list is too short for the requested count, the suggestions below its
+     * node are added best first.
+     * At most {@code budget} nodes are visited, starting with the branches
+     * of the characters as typed, which keeps the time of a query bounded
+     * but may miss matches in a large tree. Each call returns a new node.
+     * @throws IllegalArgumentException if the specified prefix is an empty
+     * string or the distance, count or budget is negative
+     * @throws NullPointerException if the specified prefix is {@code null}
+     */
+    public Node getFuzzySuggestions(String prefix, int maxDistance, int count,
+            int budget) {
+        if(prefix.isEmpty() || maxDistance < 0 || count < 0 || budget < 0)
+            throw new IllegalArgumentException();
+        FuzzySearch search = new FuzzySearch(prefix, maxDistance, count,
+                budget);
+        search.walk(root, 0);
+        return search.result();
+    }
+    
+    private Node getPrefixNode(String prefix) {
         if(prefix.isEmpty())
             throw new IllegalArgumentException();
+        prefix = fold(prefix);
         int i = 0;
         Node n = root;
         while(n != null) {
@@ -131,8 +449,11 @@ public class SuggestTree {
             else if(prefix.charAt(i) > n.firstChar)
                 n = n.right;
             else{
-                for(i++; i < n.charEnd && i < prefix.length(); i++) {
-                    if(prefix.charAt(i) != n.suggestion.charAt(i))
+                // the first character is compared against the suggestion
+                // string as well, so that a reader racing with a node split
+                // cannot match a node at the wrong position
+                for(; i < n.charEnd && i < prefix.length(); i++) {
+                    if(prefix.charAt(i) != charAt(n, i))
                         return null;
                 }
                 if(i < prefix.length())
@@ -143,7 +464,11 @@ public class SuggestTree {
         }
         return null;
     }
-
+    
+    private Node view(Node[] list) {
+        return (arena != null) ? new TextView(list, arena) : new Node(list);
+    }
+    
     /**
      * Returns the weight of the specified suggestion in this tree, or -1 if the
      * tree does not contain the suggestion.
@@ -154,9 +479,21 @@ public class SuggestTree {
         return (n != null) ? n.weight : -1;
     }
     
+    /**
+     * Returns the payload of the specified suggestion in this tree, or
+     * {@code null} if the tree does not contain the suggestion or it has no
+     * payload.
+     * @throws NullPointerException if the specified suggestion is {@code null}
+     */
+    public Object payloadOf(String suggestion) {
+        Node n = getNode(suggestion);
+        return (n != null) ? n.payload : null;
+    }
+
     private Node getNode(String suggestion) {
         if(suggestion.isEmpty())
             return null;
+        suggestion = fold(suggestion);
         int i = 0;
         Node n = root;
         while(n != null) {
@@ -167,7 +504,7 @@ public class SuggestTree {
             else{
                 for(i++; i < n.charEnd; i++) {
                     if(i == suggestion.length()
-                            || suggestion.charAt(i) != n.suggestion.charAt(i))
+                            || suggestion.charAt(i) != charAt(n, i))
                         return null;
                 }
                 if(i < suggestion.length())
@@ -184,34 +521,67 @@ public class SuggestTree {
      * tree, or assigns the specified new weight to the suggestion if it is
      * already present.
      * @throws IllegalArgumentException if the specified suggestion is an empty
-     * string or the specified weight is negative
+     * string or the specified weight is negative, or if the tree was created
+     * with the {@link #TEXT_ARENA} flag and the suggestion or key is longer
+     * than 32767 characters
      * @throws NullPointerException if the specified suggestion is {@code null}
      */
     public void put(String suggestion, int weight, String key) {
+        put(suggestion, weight, key, null, false);
+    }
+    
+    /**
+     * Inserts the specified suggestion with the specified weight and payload
+     * into this tree, or assigns the specified new weight and payload to the
+     * suggestion if it is already present. The payload is an object that the
+     * caller wants to have at hand for each suggestion it gets from the tree,
+     * such as a handle to its image, see {@link Node#getPayload}. Unlike
+     * {@link #put(String, int, String)}, which keeps the payload of a present
+     * suggestion, this method replaces it, also with {@code null}.
+     * @throws IllegalArgumentException if the specified suggestion is an empty
+     * string or the specified weight is negative, or if the tree was created
+     * with the {@link #TEXT_ARENA} flag and the suggestion or key is longer
+     * than 32767 characters
+     * @throws NullPointerException if the specified suggestion is {@code null}
+     */
+    public void put(String suggestion, int weight, String key,
+            Object payload) {
+        put(suggestion, weight, key, payload, true);
+    }
+    
+    private void put(String suggestion, int weight, String key,
+            Object payload, boolean replacePayload) {
         if(suggestion.isEmpty() || weight < 0)
             throw new IllegalArgumentException();
+        // a normalized tree keeps the composed form, which has as many
+        // characters as the folded one it is compared by
+        if(normalize)
+            suggestion = compose(suggestion);
         if(root == null) {
-            root = new Node(suggestion, weight, key, 0, null);
+            root = newNode(suggestion, weight, key, payload, 0, null);
             size++;
             return;
         }
+        // the nodes are found by the normalized characters, but keep the
+        // suggestion as it was inserted, apart from its composition
+        String probe = fold(suggestion);
         int i = 0;
         Node n = root;
         while(true) {
-            if(suggestion.charAt(i) < n.firstChar) {
+            if(probe.charAt(i) < n.firstChar) {
                 if(n.left != null)
                     n = n.left;
                 else{
-                    n.left = new Node(suggestion, weight, key, i, n);
+                    n.left = newNode(suggestion, weight, key, payload, i, n);
                     insertIntoLists(n.left);
                     size++;
                     return;
                 }
-            }else if(suggestion.charAt(i) > n.firstChar) {
+            }else if(probe.charAt(i) > n.firstChar) {
                 if(n.right != null)
                     n = n.right;
                 else{
-                    n.right = new Node(suggestion, weight, key, i, n);
+                    n.right = newNode(suggestion, weight, key, payload, i, n);
                     insertIntoLists(n.right);
                     size++;
                     return;
@@ -219,7 +589,7 @@ public class SuggestTree {
             }else{
                 for(i++; i < n.charEnd; i++) {
                     if(i == suggestion.length()
-                            || suggestion.charAt(i) != n.suggestion.charAt(i)) {
+                            || probe.charAt(i) != charAt(n, i)) {
                         n = splitNode(n, i);
                         break;
                     }
@@ -228,35 +598,184 @@ public class SuggestTree {
                     if(n.mid != null)
                         n = n.mid;
                     else{
-                        n.mid = new Node(suggestion, weight, key, i, n);
+                        n.mid = newNode(suggestion, weight, key, payload, i, n);
                         insertIntoLists(n.mid);
                         size++;
                         return;
                     }
                 }else if(n.weight == -1) {
-                    n.suggestion = suggestion;
+                    if(arena != null) {
+                        ((TextNode) n).text = arena.add(suggestion);
+                        ((TextNode) n).keyText = arena.add(key);
+                    }else{
+                        n.suggestion = suggestion;
+                        n.key = key;
+                    }
+                    n.payload = payload;
                     n.weight = weight;
                     insertIntoLists(n);
                     size++;
                     return;
-                }else if(weight > n.weight) {
-                    n.weight = weight;
-                    updateListsIncreasedWeight(n);
-                    return;
-                }else if(weight < n.weight) {
-                    n.weight = weight;
-                    updateListsDecreasedWeight(n);
-                    return;
-                }else
+                }else{
+                    if(replacePayload)
+                        n.payload = payload;
+                    if(weight > n.weight) {
+                        n.weight = weight;
+                        updateListsIncreasedWeight(n);
+                    }else if(weight < n.weight) {
+                        n.weight = weight;
+                        updateListsDecreasedWeight(n);
+                    }
                     return;
+                }
+            }
+        }
+    }
+    
+    private Node newNode(String suggestion, int weight, String key,
+            Object payload, int index, Node parent) {
+        Node n;
+        if(arena == null)
+            n = new Node(suggestion, weight, key, index, parent);
+        else
+            n = new TextNode(suggestion, weight, arena.add(suggestion),
+                    arena.add(key), index, parent);
+        n.firstChar = fold(n.firstChar);
+        n.payload = payload;
+        return n;
+    }
+    
+    private Node newInternalNode(Node text, char firstChar, int charEnd) {
+        if(arena != null)
+            return new TextNode(firstChar, charEnd, ((TextNode) text).text);
+        Node n = new Node(firstChar, charEnd, -1, null);
+        n.suggestion = text.suggestion;
+        return n;
+    }
+    
+    private char charAt(Node n, int index) {
+        return fold((arena != null) ? arena.charAt(((TextNode) n).text, index)
+                : n.suggestion.charAt(index));
+    }
+    
+    private char fold(char c) {
+        return normalize ? normalize(c) : c;
+    }
+    
+    /**
+     * Returns the specified string with the characters this tree compares,
+     * which are the normalized ones if the tree was created with the
+     * {@link #NORMALIZE} flag.
+     */
+    String fold(String string) {
+        return normalize ? normalize(string) : string;
+    }
+    
+    /**
+     * Returns the normalized form of the specified string: it is composed
+     * (NFC), and then each character is decomposed by compatibility (NFKD),
+     * stripped of its combining marks and case-folded, so that "Motörhead",
+     * "MOTÖRHEAD" and "motorhead" all become "motorhead". A character is
+     * only replaced if it folds to a single character, which keeps the length
+     * of a composed string, so that a tree created with the {@link #NORMALIZE}
+     * flag can compare the characters of a suggestion one by one without
+     * storing its normalized form. Ligatures and other characters that expand
+     * to several letters are only case-folded.
+     * @throws NullPointerException if the specified string is {@code null}
+     */
+    public static String normalize(String string) {
+        return foldChars(compose(string));
+    }
+    
+    /**
+     * Returns the composed form (NFC) of the specified string, which is the
+     * string itself if it is composed already.
+     */
+    private static String compose(String string) {
+        if(Normalizer.isNormalized(string, Normalizer.Form.NFC))
+            return string;
+        return Normalizer.normalize(string, Normalizer.Form.NFC);
+    }
+    
+    /**
+     * Returns the normalized form of the specified character, see
+     * {@link #normalize(String)}.
+     */
+    static char normalize(char c) {
+        return Folding.TABLE[c];
+    }
+    
+    private static String foldChars(String string) {
+        for(int i = 0; i < string.length(); i++) {
+            if(normalize(string.charAt(i)) != string.charAt(i)) {
+                char[] chars = string.toCharArray();
+                for(; i < chars.length; i++)
+                    chars[i] = normalize(chars[i]);
+                return new String(chars);
+            }
+        }
+        return string;
+    }
+    
+    /**
+     * Holds the normalized form of every character, which is computed once,
+     * when the first normalized tree is used.
+     */
+    private static final class Folding {
+        
+        private static final char[] TABLE =
+                new char[Character.MAX_VALUE + 1];
+        
+        static {
+            for(int c = 0; c <= Character.MAX_VALUE; c++)
+                TABLE[c] = foldOnce((char) c);
+            // a character may fold to one that folds further, such as a
+            // compatibility character to an upper case letter
+            for(int c = 0; c <= Character.MAX_VALUE; c++)
+                TABLE[c] = TABLE[TABLE[c]];
+        }
+        
+        private static char foldOnce(char c) {
+            char base = c;
+            if(!Character.isSurrogate(c)) {
+                String decomposed = Normalizer.normalize(String.valueOf(c),
+                        Normalizer.Form.NFKD);
+                int letters = 0;
+                for(int i = 0; i < decomposed.length(); i++) {
+                    char d = decomposed.charAt(i);
+                    int type = Character.getType(d);
+                    if(type != Character.NON_SPACING_MARK
+                            && type != Character.COMBINING_SPACING_MARK
+                            && type != Character.ENCLOSING_MARK) {
+                        base = d;
+                        letters++;
+                    }
+                }
+                if(letters != 1)
+                    base = c;
             }
+            return Character.toLowerCase(Character.toUpperCase(base));
         }
     }
     
+    private String suggestionOf(Node n) {
+        return (arena != null) ? arena.get(((TextNode) n).text)
+                : n.suggestion;
+    }
+    
+    private String keyOf(Node n) {
+        return (arena != null) ? arena.get(((TextNode) n).keyText) : n.key;
+    }
+    
     private Node splitNode(Node n, int position) {
-        Node[] list = (n.list.length < k) ? n.list : Arrays.copyOf(n.list, k);
-        Node m = new Node(list, n, position);
-        n.firstChar = n.suggestion.charAt(position);
+        Node[] list = n.list;
+        // the new parent starts where the node started and keeps its list
+        int capacity = capacity(n);
+        Node[] parentList = (list.length == capacity) ? list.clone() : list;
+        Node m = (arena != null)
+                ? new TextNode(parentList, (TextNode) n, position)
+                : new Node(parentList, n, position);
+        n.firstChar = charAt(n, position);
         if(n.left != null)
             n.left.parent = m;
         n.left = null;
@@ -272,14 +791,25 @@ public class SuggestTree {
         else
             n.parent.right = m;
         n.parent = m;
+        // the rest of the node starts deeper and may keep a shorter list
+        int rest = capacity(n);
+        if(list.length > rest)
+            n.list = Arrays.copyOf(list, rest);
+        else if(list.length == rest && rest < capacity)
+            n.list = list.clone();
         return m;
     }
     
     private void insertIntoLists(Node suggestion) {
+        if(distinct) {
+            updateDistinctLists(suggestion);
+            return;
+        }
         for(Node n = suggestion, m = n.mid; n != null; m = n, n = n.parent) {
             if(n.mid == m && m != null) {
                 Node[] list = n.list;
-                if(list.length < k) {
+                int capacity = capacity(n);
+                if(list.length < capacity) {
                     Node[] a = new Node[list.length + 1];
                     int i = list.length;
                     while(i > 0 && suggestion.weight > list[i - 1].weight) {
@@ -289,34 +819,49 @@ public class SuggestTree {
                     a[i] = suggestion;
                     System.arraycopy(list, 0, a, 0, i);
                     n.list = a;
-                }else if(suggestion.weight > list[k - 1].weight) {
-                    int i = k - 1;
+                }else if(suggestion.weight > list[capacity - 1].weight) {
+                    list = writableList(list);
+                    int i = capacity - 1;
                     while(i > 0 && suggestion.weight > list[i - 1].weight) {
                         list[i] = list[i - 1];
                         i--;
                     }
                     list[i] = suggestion;
-                }else
+                    n.list = list;
+                }else if(capacity == k)
                     return;
             }
         }
     }
     
     private void updateListsIncreasedWeight(Node suggestion) {
+        if(distinct) {
+            updateDistinctLists(suggestion);
+            return;
+        }
         int i = 0;
         for(Node n = suggestion, m = n.mid; n != null; m = n, n = n.parent) {
             if(n.mid == m && m != null) {
                 Node[] list = n.list;
-                while(i < k && suggestion != list[i])
+                // lists of different lengths may rank equal weights
+                // differently, so the position is not carried over
+                if(deepK < k)
+                    i = 0;
+                while(i < list.length && suggestion != list[i])
                     i++;
-                if(i == k && suggestion.weight <= list[i - 1].weight)
-                    return;
-                int j = (i < k) ? i : i - 1;
+                if(i == list.length && suggestion.weight <= list[i - 1].weight) {
+                    if(capacity(n) == k)
+                        return;
+                    continue;
+                }
+                list = writableList(list);
+                int j = (i < list.length) ? i : i - 1;
                 while(j > 0 && suggestion.weight > list[j - 1].weight) {
                     list[j] = list[j - 1];
                     j--;
                 }
                 list[j] = suggestion;
+                n.list = list;
             }
         }
     }
@@ -325,56 +870,272 @@ public class SuggestTree {
         int i = 0;
         for(Node n = suggestion, m = n.mid; n != null; m = n, n = n.parent) {
             if(n.mid == m && m != null) {
+                if(distinct) {
+                    // a list without the suggestion is a child of lists
+                    // without it
+                    if(!replaceInDistinctList(n, suggestion, false))
+                        return;
+                    continue;
+                }
                 Node[] list = n.list;
-                while(i < k && suggestion != list[i])
+                // lists of different lengths may rank equal weights
+                // differently, so the position is not carried over
+                if(deepK < k)
+                    i = 0;
+                while(i < list.length && suggestion != list[i])
                     i++;
-                if(i == k)
-                    return;
+                if(i == list.length) {
+                    if(capacity(n) == k)
+                        return;
+                    continue;
+                }
+                int last = list.length - 1;
+                Node bus = null;
+                if(list.length == capacity(n) && (i == last
+                        || suggestion.weight < list[last].weight))
+                    bus = bestUnlistedSuggestion(n);
+                list = writableList(list);
                 int j = i;
                 while(j < list.length - 1
                         && suggestion.weight < list[j + 1].weight) {
                     list[j] = list[j + 1];
                     j++;
                 }
-                if(j < k - 1)
+                if(bus != null && bus.weight > suggestion.weight)
+                    list[j] = bus;
+                else
                     list[j] = suggestion;
-                else{
-                    Node bus = bestUnlistedSuggestion(n);
-                    if(bus != null && bus.weight > suggestion.weight)
-                        list[j] = bus;
-                    else
-                        list[j] = suggestion;
-                }
+                n.list = list;
             }
         }
     }
     
-    private Node bestUnlistedSuggestion(Node n) {
+    /**
+     * Updates the lists of a tree created with the {@link #DISTINCT_KEYS}
+     * flag after the specified suggestion was inserted or its weight was
+     * increased. In each list, the suggestion moves up, takes the place of a
+     * lighter suggestion with the same key, or is added if its key is not
+     * listed. The lists above a list that keeps a suggestion with the same key
+     * that is not lighter, or that is full of heavier suggestions, do not
+     * change either.
+     */
+    private void updateDistinctLists(Node suggestion) {
+        String key = keyOf(suggestion);
+        for(Node n = suggestion, m = n.mid; n != null; m = n, n = n.parent) {
+            if(n.mid == m && m != null) {
+                Node[] list = n.list;
+                int i = indexOfEntity(suggestion, key, list);
+                if(i == -1) {
+                    if(list.length == k
+                            && suggestion.weight <= list[k - 1].weight)
+                        return;
+                }else if(list[i] != suggestion
+                        && list[i].weight >= suggestion.weight)
+                    return;
+                n.list = replaceInList(list, i, suggestion);
+            }
+        }
+    }
+    
+    /**
+     * Takes the specified suggestion, whose weight was decreased or which was
+     * removed, out of the list of the specified node of a tree created with
+     * the {@link #DISTINCT_KEYS} flag and puts the best suggestion below the
+     * node that can take its place into the list, unless the suggestion is
+     * still heavier. Returns {@code false} if the suggestion is not listed.
+     */
+    private boolean replaceInDistinctList(Node n, Node suggestion,
+            boolean removed) {
+        Node[] list = n.list;
+        int i = 0;
+        while(i < list.length && suggestion != list[i])
+            i++;
+        if(i == list.length)
+            return false;
+        Node replacement = bestReplacement(n, suggestion);
+        if(!removed && (replacement == null
+                || replacement.weight <= suggestion.weight))
+            replacement = suggestion;
+        n.list = replaceInList(list, i, replacement);
+        return true;
+    }
+    
+    /**
+     * Returns the highest weighted suggestion of the specified node or below
+     * it, other than the specified suggestion, that can take the place of the
+     * suggestion in the list of the node: one with the same key or one whose
+     * key is not listed. The lists of the child nodes have already been
+     * updated, and each of them holds the best suggestions of its keys, so the
+     * first suggestion in each of them that can take the place is enough.
+     */
+    private Node bestReplacement(Node n, Node suggestion) {
         Node[] list = n.list;
+        String key = keyOf(suggestion);
         Node result = null;
-        if(n.weight != -1) {
-            int i = 0;
-            while(i < k && n != list[i])
-                i++;
-            if(i == k)
-                result = n;
-        }
+        if(n != suggestion && n.weight != -1 && canReplace(n, key, list))
+            result = n;
         for(Node c = firstChild(n); c != null; c = nextChild(c)) {
-            secondForLoop:
-            for(int i = 0, j = 0; i < c.list.length; i++, j++) {
-                Node suggestion = c.list[i];
-                for(; j < k; j++) {
-                    if(suggestion == list[j])
-                        continue secondForLoop;
+            for(Node candidate : c.list) {
+                if(result != null && candidate.weight <= result.weight)
+                    break;
+                if(candidate != suggestion && canReplace(candidate, key, list)) {
+                    result = candidate;
+                    break;
                 }
-                if(result == null || result.weight < suggestion.weight)
-                    result = suggestion;
-                break secondForLoop;
             }
         }
         return result;
     }
     
+    private boolean canReplace(Node candidate, String key, Node[] list) {
+        String candidateKey = keyOf(candidate);
+        if(candidateKey != null && candidateKey.equals(key))
+            return true;
+        for(Node n : list) {
+            if(n == candidate || candidateKey != null
+                    && candidateKey.equals(keyOf(n)))
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the position of the specified suggestion in the specified list,
+     * or else the position of a suggestion with the specified key, which is
+     * the key of the suggestion, or -1 if there is neither.
+     */
+    private int indexOfEntity(Node suggestion, String key, Node[] list) {
+        int index = -1;
+        for(int i = 0; i < list.length; i++) {
+            if(list[i] == suggestion)
+                return i;
+            if(index == -1 && key != null && key.equals(keyOf(list[i])))
+                index = i;
+        }
+        return index;
+    }
+    
+    /**
+     * Returns a new list without the entry at the specified position, unless
+     * it is -1, and with the specified suggestion, unless it is {@code null},
+     * inserted behind the suggestions that are not lighter. If no entry is
+     * removed from a full list, its last entry is dropped.
+     */
+    private Node[] replaceInList(Node[] list, int index, Node suggestion) {
+        int length = list.length;
+        if(index != -1)
+            length--;
+        if(suggestion != null && length < k)
+            length++;
+        Node[] a = new Node[length];
+        boolean inserted = suggestion == null;
+        for(int i = 0, j = 0; j < length; i++) {
+            if(i == index)
+                continue;
+            if(!inserted && (i == list.length
+                    || suggestion.weight > list[i].weight)) {
+                a[j++] = suggestion;
+                inserted = true;
+                i--;
+            }else
+                a[j++] = list[i];
+        }
+        return a;
+    }
+    
+    private Node[] writableList(Node[] list) {
+        return (concurrent || fragments != null) ? list.clone() : list;
+    }
+    
+    /**
+     * Returns the maximum length of the suggestion list of the specified node.
+     * A node keeps <i>k</i> suggestions if it starts within the first
+     * {@link #ADAPTIVE_DEPTH} characters, so that a short prefix that ends
+     * inside a long node gets a full list. It never increases from a node to
+     * its middle child.
+     */
+    private int capacity(Node n) {
+        if(deepK == k || n.charEnd <= ADAPTIVE_DEPTH)
+            return k;
+        return (start(n) < ADAPTIVE_DEPTH) ? k : deepK;
+    }
+    
+    /**
+     * Returns the position of the first character of the specified node,
+     * which is where the nearest node that has it below its middle child
+     * ends.
+     */
+    private static int start(Node n) {
+        for(Node p = n.parent; p != null; n = p, p = p.parent) {
+            if(p.mid == n)
+                return p.charEnd;
+        }
+        return 0;
+    }
+    
+    /**
+     * Returns the best suggestions below the specified node, at most the
+     * specified number, one per key in a tree with distinct keys.
+     */
+    private Node[] bestSuggestions(Node n, int count) {
+        Search search = new Search(null);
+        search.addList(n, 0);
+        ArrayList<Node> best = new ArrayList<Node>(count);
+        while(best.size() < count && search.hasNext())
+            best.add(search.next());
+        return best.toArray(new Node[best.size()]);
+    }
+    
+    private Node bestUnlistedSuggestion(Node n) {
+        Node[] list = n.list;
+        Node result = null;
+        if(n.weight != -1 && !isListed(n, list))
+            result = n;
+        for(Node c = firstChild(n); c != null; c = nextChild(c))
+            result = bestUnlistedSuggestion(c, list, result);
+        return result;
+    }
+    
+    /**
+     * Returns the highest weighted of the specified result and the suggestions
+     * below the specified child node that are not in the specified list.
+     */
+    private Node bestUnlistedSuggestion(Node c, Node[] list, Node result) {
+        Node[] a = c.list;
+        secondForLoop:
+        for(int i = 0, j = 0; i < a.length; i++, j++) {
+            Node suggestion = a[i];
+            if(deepK < k)
+                j = 0;
+            for(; j < list.length; j++) {
+                if(suggestion == list[j])
+                    continue secondForLoop;
+            }
+            if(result == null || result.weight < suggestion.weight)
+                result = suggestion;
+            return result;
+        }
+        // a full list that is listed entirely may hide further suggestions,
+        // which can only happen if it is shorter than the list of the parent
+        if(a.length == capacity(c) && a.length < list.length
+                && (result == null || result.weight < a[a.length - 1].weight)) {
+            if(c.weight != -1 && !isListed(c, list)
+                    && (result == null || result.weight < c.weight))
+                result = c;
+            for(Node d = firstChild(c); d != null; d = nextChild(d))
+                result = bestUnlistedSuggestion(d, list, result);
+        }
+        return result;
+    }
+    
+    private static boolean isListed(Node suggestion, Node[] list) {
+        for(Node n : list) {
+            if(n == suggestion)
+                return true;
+        }
+        return false;
+    }
+    
     private Node firstChild(Node n) {
         n = n.mid;
         if(n != null) {
@@ -481,6 +1242,12 @@ public class SuggestTree {
     
     private Node mergeWithChild(Node n) {
         Node child = n.mid;
+        // the child takes the place of the node, which may keep a longer
+        // list, so the list is filled up while the child is still below it
+        int capacity = capacity(n);
+        if(child.list.length == capacity(child)
+                && child.list.length < capacity)
+            child.list = bestSuggestions(child, capacity);
         child.firstChar = n.firstChar;
         child.left = n.left;
         if(child.left != null)
@@ -504,18 +1271,33 @@ public class SuggestTree {
         int i = 0;
         for(Node n = firstList, m = n.mid; n != null; m = n, n = n.parent) {
             if(n.mid == m) {
-                if(n.weight == -1)
-                    n.suggestion = n.mid.suggestion;
+                // removed nodes may still be referenced by list snapshots
+                // that concurrent readers hold, so they keep their strings
+                if(n.weight == -1 && !concurrent) {
+                    if(arena != null)
+                        ((TextNode) n).text = ((TextNode) n.mid).text;
+                    else
+                        n.suggestion = n.mid.suggestion;
+                }
+                if(distinct) {
+                    replaceInDistinctList(n, suggestion, true);
+                    continue;
+                }
                 Node[] list = n.list;
-                while(i < k && suggestion != list[i])
+                if(deepK < k)
+                    i = 0;
+                while(i < list.length && suggestion != list[i])
                     i++;
-                if(i < k) {
+                if(i < list.length) {
                     Node bus;
-                    if(list.length == k
+                    int last = list.length - 1;
+                    if(list.length == capacity(n)
                             && (bus = bestUnlistedSuggestion(n)) != null) {
-                        for(int j = i; j < k - 1; j++)
+                        list = writableList(list);
+                        for(int j = i; j < last; j++)
                             list[j] = list[j + 1];
-                        list[k - 1] = bus;
+                        list[last] = bus;
+                        n.list = list;
                     }else{
                         int len = list.length;
                         Node[] a = new Node[len - 1];
@@ -528,6 +1310,651 @@ public class SuggestTree {
         }
     }
     
+    /**
+     * Returns an immutable copy of this tree that stores the nodes and the
+     * suggestion lists in parallel primitive arrays instead of node objects.
+     * The copy answers the same queries with a much smaller memory footprint,
+     * but cannot be modified. If the tree is modified concurrently, this
+     * method must be called from the writing thread.
+     */
+    public FrozenSuggestTree freeze() {
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        IdentityHashMap<Node, Integer> nodeIds =
+                new IdentityHashMap<Node, Integer>();
+        IdentityHashMap<Node, Integer> suggestionIds =
+                new IdentityHashMap<Node, Integer>(size);
+        String[] suggestions = new String[size];
+        String[] keys = new String[size];
+        int[] weights = new int[size];
+        int listsLength = 0;
+        ArrayDeque<Node> stack = new ArrayDeque<Node>();
+        if(root != null)
+            stack.push(root);
+        while(!stack.isEmpty()) {
+            Node n = stack.pop();
+            nodeIds.put(n, nodes.size());
+            nodes.add(n);
+            listsLength += n.list.length;
+            if(n.weight != -1) {
+                int id = suggestionIds.size();
+                suggestionIds.put(n, id);
+                suggestions[id] = suggestionOf(n);
+                keys[id] = keyOf(n);
+                weights[id] = n.weight;
+            }
+            if(n.right != null)
+                stack.push(n.right);
+            if(n.mid != null)
+                stack.push(n.mid);
+            if(n.left != null)
+                stack.push(n.left);
+        }
+        int count = nodes.size();
+        char[] firstChar = new char[count];
+        short[] charEnd = new short[count];
+        int[] left = new int[count], mid = new int[count],
+                right = new int[count], text = new int[count];
+        int[] listStart = new int[count + 1];
+        int[] lists = new int[listsLength];
+        for(int i = 0, j = 0; i < count; i++) {
+            Node n = nodes.get(i);
+            firstChar[i] = n.firstChar;
+            charEnd[i] = n.charEnd;
+            left[i] = (n.left != null) ? nodeIds.get(n.left) : -1;
+            mid[i] = (n.mid != null) ? nodeIds.get(n.mid) : -1;
+            right[i] = (n.right != null) ? nodeIds.get(n.right) : -1;
+            // every suggestion in the list of a node shares the characters
+            // of the node, so the best one can provide them
+            text[i] = (n.weight != -1) ? suggestionIds.get(n)
+                    : suggestionIds.get(n.list[0]);
+            listStart[i] = j;
+            for(Node suggestion : n.list)
+                lists[j++] = suggestionIds.get(suggestion);
+            listStart[i + 1] = j;
+        }
+        return new FrozenSuggestTree(firstChar, charEnd, left, mid, right,
+                text, listStart, lists, suggestions, keys, weights, normalize);
+    }
+    
+    /**
+     * A builder that creates a tree from a batch of suggestions. It collects
+     * the suggestions in any order, sorts them, and then creates the tree level
+     * by level: the child nodes of a node are arranged as a perfectly balanced
+     * binary search tree by always choosing the median character as the root,
+     * and the suggestion lists are merged bottom-up from the lists of the child
+     * nodes. If a suggestion is added more than once, the tree gets the weight,
+     * the key and the payload that were added last.
+     */
+    public static final class Builder {
+        
+        private final int k;
+        private final int flags;
+        private String[] suggestions;
+        private String[] keys;
+        private Object[] payloads;
+        private int[] weights;
+        private int size;
+        
+        /**
+         * Creates a builder for a tree that returns the top {@code k} highest
+         * weighted autocomplete suggestions for a given prefix.
+         * @throws IllegalArgumentException if the specified {@code k} value is
+         * less than 1
+         */
+        public Builder(int k) {
+            this(k, 0);
+        }
+        
+        /**
+         * Creates a builder for a tree that returns the top {@code k} highest
+         * weighted autocomplete suggestions for a given prefix, using the
+         * specified combination of flags.
+         * @throws IllegalArgumentException if the specified {@code k} value is
+         * less than 1 or the flags combine {@link #ADAPTIVE} and
+         * {@link #DISTINCT_KEYS}
+         */
+        public Builder(int k, int flags) {
+            if(k < 1 || !validFlags(flags))
+                throw new IllegalArgumentException();
+            this.k = k;
+            this.flags = flags;
+            suggestions = new String[1024];
+            keys = new String[1024];
+            payloads = new Object[1024];
+            weights = new int[1024];
+            size = 0;
+        }
+        
+        /**
+         * Adds the specified suggestion with the specified weight to the tree
+         * that is built, or assigns the specified new weight and key to the
+         * suggestion if it has already been added.
+         * @throws IllegalArgumentException if the specified suggestion is an
+         * empty string or the specified weight is negative
+         * @throws NullPointerException if the specified suggestion is
+         * {@code null}
+         */
+        public Builder add(String suggestion, int weight, String key) {
+            return add(suggestion, weight, key, null);
+        }
+        
+        /**
+         * Adds the specified suggestion with the specified weight and payload
+         * to the tree that is built, or assigns the specified new weight, key
+         * and payload to the suggestion if it has already been added, see
+         * {@link SuggestTree#put(String, int, String, Object)}.
+         * @throws IllegalArgumentException if the specified suggestion is an
+         * empty string or the specified weight is negative
+         * @throws NullPointerException if the specified suggestion is
+         * {@code null}
+         */
+        public Builder add(String suggestion, int weight, String key,
+                Object payload) {
+            if(suggestion.isEmpty() || weight < 0)
+                throw new IllegalArgumentException();
+            if((flags & NORMALIZE) != 0)
+                suggestion = compose(suggestion);
+            if(size == suggestions.length) {
+                int capacity = size + (size >> 1);
+                suggestions = Arrays.copyOf(suggestions, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                payloads = Arrays.copyOf(payloads, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            suggestions[size] = suggestion;
+            keys[size] = key;
+            payloads[size] = payload;
+            weights[size] = weight;
+            size++;
+            return this;
+        }
+        
+        /**
+         * Returns the number of suggestions added so far, including repeated
+         * ones.
+         */
+        public int size() {
+            return size;
+        }
+        
+        /**
+         * Returns a new tree with the suggestions added so far.
+         */
+        public SuggestTree build() {
+            return build(null);
+        }
+        
+        /**
+         * Returns a new tree with the suggestions added so far, using the
+         * threads of the specified pool to sort the suggestions and to create
+         * the subtrees of large prefix ranges concurrently. The returned tree
+         * is identical to the one returned by {@link #build()}. If the pool is
+         * {@code null}, the tree is built by the calling thread.
+         */
+        public SuggestTree build(ForkJoinPool pool) {
+            boolean parallel = pool != null;
+            int[] order = new int[size];
+            for(int i = 0; i < size; i++)
+                order[i] = i;
+            Sorter sorter = new Sorter(suggestions, order,
+                    (flags & NORMALIZE) != 0, parallel);
+            invoke(pool, sorter.new Sort(0, size, 0));
+            int count = 0;
+            for(int i = 0; i < size; i++) {
+                if(order[i] != -1)
+                    order[count++] = order[i];
+            }
+            SuggestTree tree = new SuggestTree(k, flags);
+            if(count > 0) {
+                Batch batch = new Batch(tree, count, parallel);
+                invoke(pool, batch.new Fill(suggestions, keys, payloads,
+                        weights, order, 0, count));
+                batch.addToArena();
+                tree.root = invoke(pool, batch.new Root());
+            }
+            tree.size = count;
+            return tree;
+        }
+    }
+    
+    /**
+     * Runs the specified task in the specified pool, or in the calling thread
+     * if the pool is {@code null}. The tasks of a builder only fork subtasks if
+     * they run in a pool.
+     */
+    private static <T> T invoke(ForkJoinPool pool, ForkJoinTask<T> task) {
+        return (pool != null) ? pool.invoke(task) : task.invoke();
+    }
+    
+    /**
+     * Sorts the suggestion indices of a {@link Builder} by their suggestions.
+     * The sort is stable. Instead of comparing strings, it sorts by the first
+     * three characters packed into a long and then sorts each run of equal
+     * values by the following three characters, and so on, so that each string
+     * is only read once per three characters that are needed to tell it apart
+     * from the others. Of each run of equal suggestions, which is still in the
+     * order the suggestions were added in, all but the last index are replaced
+     * with -1. In parallel mode, both halves of large ranges are sorted and
+     * large runs are sorted further concurrently.
+     */
+    private static final class Sorter {
+        
+        private final String[] suggestions;
+        private final int[] order;
+        private final long[] chunks;
+        private final int[] tmpOrder;
+        private final long[] tmpChunks;
+        private final boolean normalize;
+        private final boolean parallel;
+        
+        private Sorter(String[] suggestions, int[] order, boolean normalize,
+                boolean parallel) {
+            this.suggestions = suggestions;
+            this.order = order;
+            this.normalize = normalize;
+            chunks = new long[order.length];
+            tmpOrder = new int[order.length];
+            tmpChunks = new long[order.length];
+            this.parallel = parallel;
+        }
+        
+        /**
+         * Returns the three characters of the specified suggestion that start
+         * at the specified offset, padded with zeros, followed by the number of
+         * remaining characters up to a maximum of 4. A signed comparison of two
+         * such values matches the lexicographic order of the suggestions if
+         * they share their first {@code offset} characters and the values
+         * differ. If the values are equal and the count is 4, the suggestions
+         * are longer and have to be compared at the next offset; otherwise the
+         * suggestions are equal. The characters of a normalized tree are
+         * normalized first.
+         */
+        private long chunk(String suggestion, int offset) {
+            long chunk = 0;
+            for(int i = offset; i < offset + 3; i++) {
+                chunk <<= 16;
+                if(i < suggestion.length()) {
+                    char c = suggestion.charAt(i);
+                    chunk |= normalize ? normalize(c) : c;
+                }
+            }
+            chunk = chunk << 16 | Math.min(suggestion.length() - offset, 4);
+            return chunk ^ Long.MIN_VALUE;
+        }
+        
+        /**
+         * Sorts the indices from {@code from} to {@code to}, whose suggestions
+         * share their first {@code offset} characters.
+         */
+        private final class Sort extends RecursiveAction {
+            
+            private static final long serialVersionUID = 1L;
+            
+            private final int from, to, offset;
+            
+            private Sort(int from, int to, int offset) {
+                this.from = from;
+                this.to = to;
+                this.offset = offset;
+            }
+            
+            @Override
+            protected void compute() {
+                new MergeSort(from, to, offset).compute();
+                ArrayList<Sort> tasks = new ArrayList<Sort>();
+                for(int i = from; i < to;) {
+                    int start = i++;
+                    while(i < to && chunks[i] == chunks[start])
+                        i++;
+                    if(i - start > 1 && (chunks[start] & 0xFFFF) == 4) {
+                        Sort sort = new Sort(start, i, offset + 3);
+                        if(parallel && i - start >= PARALLEL_THRESHOLD)
+                            tasks.add(sort);
+                        else
+                            sort.compute();
+                    }else{
+                        for(int j = start; j < i - 1; j++)
+                            order[j] = -1;
+                    }
+                }
+                if(!tasks.isEmpty())
+                    invokeAll(tasks);
+            }
+        }
+        
+        /**
+         * Computes the chunks at the specified offset of the indices from
+         * {@code from} to {@code to} and sorts the indices by their chunks.
+         */
+        private final class MergeSort extends RecursiveAction {
+            
+            private static final long serialVersionUID = 1L;
+            
+            private final int from, to, offset;
+            
+            private MergeSort(int from, int to, int offset) {
+                this.from = from;
+                this.to = to;
+                this.offset = offset;
+            }
+            
+            @Override
+            protected void compute() {
+                if(to - from < 16) {
+                    for(int i = from; i < to; i++) {
+                        long chunk = chunk(suggestions[order[i]], offset);
+                        int index = order[i];
+                        int j = i;
+                        while(j > from && chunks[j - 1] > chunk) {
+                            chunks[j] = chunks[j - 1];
+                            order[j] = order[j - 1];
+                            j--;
+                        }
+                        chunks[j] = chunk;
+                        order[j] = index;
+                    }
+                    return;
+                }
+                int mid = (from + to) >>> 1;
+                MergeSort left = new MergeSort(from, mid, offset);
+                MergeSort right = new MergeSort(mid, to, offset);
+                if(parallel && to - from >= PARALLEL_THRESHOLD)
+                    invokeAll(left, right);
+                else{
+                    left.compute();
+                    right.compute();
+                }
+                if(chunks[mid - 1] <= chunks[mid])
+                    return;
+                System.arraycopy(chunks, from, tmpChunks, from, to - from);
+                System.arraycopy(order, from, tmpOrder, from, to - from);
+                for(int i = from, l = from, r = mid; i < to; i++) {
+                    if(r == to || l < mid && tmpChunks[l] <= tmpChunks[r]) {
+                        chunks[i] = tmpChunks[l];
+                        order[i] = tmpOrder[l++];
+                    }else{
+                        chunks[i] = tmpChunks[r];
+                        order[i] = tmpOrder[r++];
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * The sorted and distinct suggestions of a {@link Builder}, from which the
+     * nodes of a tree are created. Besides the suggestions, it keeps their
+     * lengths and the length of the common prefix of each suggestion with the
+     * previous one, so that the structure of the tree can be derived from two
+     * int arrays without reading the strings again. The suggestions from
+     * {@code lo} to {@code hi} that share their first {@code depth}
+     * characters always form one subtree, so in parallel mode, the subtrees of
+     * large ranges are created concurrently.
+     */
+    private static final class Batch {
+        
+        private final SuggestTree tree;
+        private final boolean parallel;
+        private final String[] suggestions;
+        private final String[] keys;
+        private final Object[] payloads;
+        private final int[] weights;
+        private final int[] lengths;
+        private final int[] commonPrefixes;
+        private int[] texts, keyTexts;
+        
+        private Batch(SuggestTree tree, int count, boolean parallel) {
+            this.tree = tree;
+            this.parallel = parallel;
+            suggestions = new String[count];
+            keys = new String[count];
+            payloads = new Object[count];
+            weights = new int[count];
+            lengths = new int[count];
+            commonPrefixes = new int[count];
+        }
+        
+        /**
+         * Copies the suggestions from {@code lo} to {@code hi} in the
+         * specified order and computes their common prefixes.
+         */
+        private final class Fill extends RecursiveAction {
+            
+            private static final long serialVersionUID = 1L;
+            
+            private final String[] suggestions, keys;
+            private final Object[] payloads;
+            private final int[] weights, order;
+            private final int lo, hi;
+            
+            private Fill(String[] suggestions, String[] keys,
+                    Object[] payloads, int[] weights, int[] order, int lo,
+                    int hi) {
+                this.suggestions = suggestions;
+                this.keys = keys;
+                this.payloads = payloads;
+                this.weights = weights;
+                this.order = order;
+                this.lo = lo;
+                this.hi = hi;
+            }
+            
+            @Override
+            protected void compute() {
+                if(parallel && hi - lo >= 2 * PARALLEL_THRESHOLD) {
+                    int mid = (lo + hi) >>> 1;
+                    invokeAll(new Fill(suggestions, keys, payloads, weights,
+                            order, lo, mid), new Fill(suggestions, keys,
+                            payloads, weights, order, mid, hi));
+                    return;
+                }
+                for(int i = lo; i < hi; i++) {
+                    String suggestion = suggestions[order[i]];
+                    Batch.this.suggestions[i] = suggestion;
+                    Batch.this.keys[i] = keys[order[i]];
+                    Batch.this.payloads[i] = payloads[order[i]];
+                    Batch.this.weights[i] = weights[order[i]];
+                    lengths[i] = suggestion.length();
+                    if(i > 0) {
+                        String previous = suggestions[order[i - 1]];
+                        int max = Math.min(previous.length(),
+                                suggestion.length());
+                        int j = 0;
+                        while(j < max && tree.fold(previous.charAt(j))
+                                == tree.fold(suggestion.charAt(j)))
+                            j++;
+                        commonPrefixes[i] = j;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Copies the suggestions and keys into the text arena of the tree, if
+         * it has one, in sorted order and independent of the order in which
+         * the nodes are created.
+         */
+        private void addToArena() {
+            if(tree.arena == null)
+                return;
+            texts = new int[suggestions.length];
+            keyTexts = new int[suggestions.length];
+            for(int i = 0; i < suggestions.length; i++) {
+                texts[i] = tree.arena.add(suggestions[i]);
+                keyTexts[i] = tree.arena.add(keys[i]);
+            }
+        }
+        
+        /**
+         * Creates the whole tree and returns its root.
+         */
+        private final class Root extends RecursiveTask<Node> {
+            
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected Node compute() {
+                Node[] nodes = buildChildren(0, suggestions.length, 0);
+                truncateLists(nodes);
+                return link(nodes, 0, nodes.length, null);
+            }
+        }
+        
+        /**
+         * Creates the subtree of the suggestions from {@code lo} to
+         * {@code hi} and returns its root.
+         */
+        private final class Subtree extends RecursiveTask<Node> {
+            
+            private static final long serialVersionUID = 1L;
+            
+            private final int lo, hi, depth;
+            
+            private Subtree(int lo, int hi, int depth) {
+                this.lo = lo;
+                this.hi = hi;
+                this.depth = depth;
+            }
+            
+            @Override
+            protected Node compute() {
+                return buildNode(lo, hi, depth);
+            }
+        }
+        
+        /**
+         * Creates one node for each distinct character at position
+         * {@code depth} of the suggestions from {@code lo} to {@code hi},
+         * which all share their first {@code depth} characters and are longer
+         * than that, and returns the nodes in order.
+         */
+        private Node[] buildChildren(int lo, int hi, int depth) {
+            int count = 1;
+            for(int i = lo + 1; i < hi; i++) {
+                if(commonPrefixes[i] == depth)
+                    count++;
+            }
+            Node[] nodes = new Node[count];
+            Subtree[] tasks = null;
+            for(int i = lo, j = 0; i < hi; j++) {
+                int start = i++;
+                while(i < hi && commonPrefixes[i] > depth)
+                    i++;
+                if(parallel && i - start >= PARALLEL_THRESHOLD) {
+                    if(tasks == null)
+                        tasks = new Subtree[count];
+                    tasks[j] = new Subtree(start, i, depth);
+                    tasks[j].fork();
+                }else
+                    nodes[j] = buildNode(start, i, depth);
+            }
+            if(tasks != null) {
+                for(int j = count - 1; j >= 0; j--) {
+                    if(tasks[j] != null)
+                        nodes[j] = tasks[j].join();
+                }
+            }
+            return nodes;
+        }
+        
+        private Node buildNode(int lo, int hi, int depth) {
+            int end = lengths[lo];
+            for(int i = lo + 1; i < hi; i++)
+                end = Math.min(end, commonPrefixes[i]);
+            boolean listed = lengths[lo] == end;
+            Node[] children = null;
+            if(!listed || hi - lo > 1)
+                children = buildChildren(listed ? lo + 1 : lo, hi, end);
+            Node n;
+            if(listed && texts != null) {
+                n = new TextNode(suggestions[lo], weights[lo], texts[lo],
+                        keyTexts[lo], depth, null);
+                n.firstChar = tree.fold(n.firstChar);
+                n.payload = payloads[lo];
+            }else if(listed)
+                n = tree.newNode(suggestions[lo], weights[lo], keys[lo],
+                        payloads[lo], depth, null);
+            else
+                n = tree.newInternalNode(children[0],
+                        tree.fold(suggestions[lo].charAt(depth)), end);
+            if(children != null) {
+                n.mid = link(children, 0, children.length, n);
+                n.list = mergeLists(listed ? n : null, children);
+                truncateLists(children);
+            }
+            return n;
+        }
+        
+        /**
+         * Shortens the lists of the specified nodes to their capacity. Every
+         * list is built with <i>k</i> suggestions, so that the parent can
+         * merge its list from them, and is only shortened afterwards.
+         */
+        private void truncateLists(Node[] nodes) {
+            for(Node n : nodes) {
+                int capacity = tree.capacity(n);
+                if(n.list.length > capacity)
+                    n.list = Arrays.copyOf(n.list, capacity);
+            }
+        }
+        
+        /**
+         * Links the nodes from {@code lo} to {@code hi} to a balanced binary
+         * search tree and returns its root.
+         */
+        private static Node link(Node[] nodes, int lo, int hi, Node parent) {
+            if(lo == hi)
+                return null;
+            int mid = (lo + hi) >>> 1;
+            Node n = nodes[mid];
+            n.parent = parent;
+            n.left = link(nodes, lo, mid, n);
+            n.right = link(nodes, mid + 1, hi, n);
+            return n;
+        }
+        
+        /**
+         * Merges the specified suggestion, if not {@code null}, and the lists
+         * of the specified nodes into a list of the top <i>k</i> suggestions.
+         * For a tree with distinct keys, a suggestion whose key is already
+         * listed is skipped.
+         */
+        private Node[] mergeLists(Node suggestion, Node[] nodes) {
+            int length = (suggestion != null) ? 1 : 0;
+            for(Node n : nodes)
+                length += n.list.length;
+            Node[] list = new Node[Math.min(tree.k, length)];
+            int[] next = new int[nodes.length];
+            HashSet<String> keys = tree.distinct ? new HashSet<String>() : null;
+            int i = 0;
+            while(i < list.length) {
+                Node best = suggestion;
+                int from = -1;
+                for(int j = 0; j < nodes.length; j++) {
+                    Node[] a = nodes[j].list;
+                    if(next[j] < a.length
+                            && (best == null || a[next[j]].weight > best.weight)) {
+                        best = a[next[j]];
+                        from = j;
+                    }
+                }
+                if(best == null)
+                    break;
+                if(from == -1)
+                    suggestion = null;
+                else
+                    next[from]++;
+                if(keys != null) {
+                    String key = tree.keyOf(best);
+                    if(key != null && !keys.add(key))
+                        continue;
+                }
+                list[i++] = best;
+            }
+            return (i < list.length) ? Arrays.copyOf(list, i) : list;
+        }
+    }
+    
     /**
      * Returns an iterator over the suggestions in this tree.
      */
@@ -568,7 +1995,7 @@ public class SuggestTree {
                 throw new ConcurrentModificationException();
             else
                 current = nextSuggestion();
-            return (current != null) ? current.suggestion : null;
+            return (current != null) ? suggestionOf(current) : null;
         }
         
         private Node firstSuggestion(Node n) {
@@ -619,28 +2046,608 @@ public class SuggestTree {
         }
     }
     
+    /**
+     * Returns an iterator over the suggestions in this tree that start with
+     * the specified prefix, in order of weight. The suggestions are found by
+     * the same best-first search as the pages of
+     * {@link #getBestSuggestions(String, int, String)}, one at a time, so a
+     * caller that stops early only pays for the suggestions it has taken.
+     * @throws IllegalArgumentException if the specified prefix is an empty
+     * string
+     * @throws NullPointerException if the specified prefix is {@code null}
+     */
+    public RankedIterator iterator(String prefix) {
+        Node n = getPrefixNode(prefix);
+        Search search = new Search(prefix);
+        if(n != null)
+            search.addList(n, 0);
+        return new RankedIterator(search);
+    }
+    
+    /**
+     * An iterator over the suggestions that start with a prefix. The iterator
+     * returns the suggestions in descending order of weight. Like the
+     * {@link Iterator}, it is not safe to use while the tree is modified.
+     */
+    public final class RankedIterator {
+        
+        private final Search search;
+        private Node current;
+        
+        private RankedIterator(Search search) {
+            this.search = search;
+            current = null;
+        }
+        
+        /**
+         * Returns the next suggestion in the iteration, or {@code null} if the
+         * iteration has no more suggestions.
+         */
+        public String next() {
+            current = search.hasNext() ? search.next() : null;
+            return (current != null) ? suggestionOf(current) : null;
+        }
+        
+        /**
+         * Returns the weight of the last suggestion returned.
+         * @throws IllegalStateException if the {@code next} method has not yet
+         * been called or the last call to {@code next} returned {@code null}
+         */
+        public int weight() {
+            if(current == null)
+                throw new IllegalStateException();
+            return current.weight;
+        }
+        
+        /**
+         * Returns the key of the last suggestion returned.
+         * @throws IllegalStateException if the {@code next} method has not yet
+         * been called or the last call to {@code next} returned {@code null}
+         */
+        public String key() {
+            if(current == null)
+                throw new IllegalStateException();
+            return keyOf(current);
+        }
+    }
+    
+    /**
+     * A best-first search for the suggestions that start with a prefix. The
+     * queue holds cursors into the suggestion lists of nodes. A node's
+     * children are only queued once its full list has been returned, since no
+     * suggestion below it can outweigh the last entry of that list. As the
+     * suggestions come out in order of weight, a suggestion that is weighted
+     * higher than the last one returned has been returned already; of those
+     * with the same weight, the search remembers which ones it has returned.
+     * In a tree with distinct keys, it also remembers the keys it has returned
+     * and skips the other suggestions with these keys, which are the ones the
+     * lists leave out.
+     * <p>
+     * The state of the search can be written to a continuation string and
+     * read back later. Nodes are written as their prefixes and suggestions as
+     * their strings, each preceded by its length: the last weight, the number
+     * of cursors and the number of remembered suggestions, then for each cursor
+     * in queue order either {@code L} with the list index and the node prefix
+     * or {@code S} with a single suggestion, then the remembered suggestions.
+     * In a tree with distinct keys, the number of returned keys follows the
+     * number of remembered suggestions, and the keys follow the suggestions.
+     */
+    private final class Search {
+        
+        private final String prefix;
+        private final PriorityQueue<Cursor> queue;
+        private final IdentityHashMap<Node,Boolean> returned;
+        private final HashSet<String> keys;
+        private int lastWeight;
+        private int sequence;
+        
+        private Search(String prefix) {
+            this.prefix = (prefix != null) ? fold(prefix) : null;
+            queue = new PriorityQueue<Cursor>();
+            returned = new IdentityHashMap<Node,Boolean>();
+            keys = new HashSet<String>();
+            lastWeight = Integer.MAX_VALUE;
+            sequence = 0;
+        }
+        
+        private void addList(Node n, int index) {
+            addList(n, n.list, index);
+        }
+        
+        private void addList(Node n, Node[] list, int index) {
+            if(index < list.length)
+                queue.add(new Cursor(list, n, index, sequence++));
+        }
+        
+        private void addSuggestion(Node n) {
+            queue.add(new Cursor(new Node[] {n}, null, 0, sequence++));
+        }
+        
+        private boolean hasNext() {
+            while(!queue.isEmpty()) {
+                Cursor c = queue.peek();
+                Node suggestion = c.list[c.index];
+                if((suggestion.weight < lastWeight
+                        || suggestion.weight == lastWeight
+                        && !returned.containsKey(suggestion))
+                        && !keyReturned(suggestion))
+                    return true;
+                advance(queue.poll());
+            }
+            return false;
+        }
+        
+        /**
+         * Returns the next suggestion. Must only be called after
+         * {@link #hasNext} returned {@code true}.
+         */
+        private Node next() {
+            Cursor c = queue.poll();
+            Node suggestion = c.list[c.index];
+            advance(c);
+            if(suggestion.weight < lastWeight) {
+                lastWeight = suggestion.weight;
+                returned.clear();
+            }
+            returned.put(suggestion, Boolean.TRUE);
+            if(distinct) {
+                String key = keyOf(suggestion);
+                if(key != null)
+                    keys.add(key);
+            }
+            return suggestion;
+        }
+        
+        private boolean keyReturned(Node suggestion) {
+            if(keys.isEmpty())
+                return false;
+            String key = keyOf(suggestion);
+            return key != null && keys.contains(key);
+        }
+        
+        private void advance(Cursor c) {
+            if(++c.index < c.list.length) {
+                c.sequence = sequence++;
+                queue.add(c);
+            }else if(c.expand != null && c.list.length == capacity(c.expand)) {
+                Node e = c.expand;
+                if(e.weight != -1)
+                    addSuggestion(e);
+                ArrayDeque<Node> stack = new ArrayDeque<Node>();
+                if(e.mid != null)
+                    stack.push(e.mid);
+                while(!stack.isEmpty()) {
+                    Node child = stack.pop();
+                    addList(child, 0);
+                    if(child.left != null)
+                        stack.push(child.left);
+                    if(child.right != null)
+                        stack.push(child.right);
+                }
+            }
+        }
+        
+        private String toContinuation() {
+            Cursor[] cursors = queue.toArray(new Cursor[queue.size()]);
+            Arrays.sort(cursors);
+            StringBuilder sb = new StringBuilder();
+            sb.append(lastWeight).append(',').append(cursors.length).append(',')
+                    .append(returned.size()).append(',');
+            if(distinct)
+                sb.append(keys.size()).append(',');
+            for(Cursor c : cursors) {
+                if(c.expand != null) {
+                    sb.append('L').append(c.index).append(',');
+                    appendString(sb, suggestionOf(c.expand).substring(0,
+                            c.expand.charEnd));
+                }else{
+                    sb.append('S');
+                    appendString(sb, suggestionOf(c.list[0]));
+                }
+            }
+            for(Node n : returned.keySet())
+                appendString(sb, suggestionOf(n));
+            for(String key : keys)
+                appendString(sb, key);
+            return sb.toString();
+        }
+        
+        private void appendString(StringBuilder sb, String string) {
+            sb.append(string.length()).append(',').append(string);
+        }
+        
+        /**
+         * Restores the state written by {@link #toContinuation}. Nodes and
+         * suggestions that are no longer in the tree are left out.
+         * @throws IllegalArgumentException if the continuation is malformed or
+         * belongs to a different prefix
+         */
+        private void resume(String continuation) {
+            ContinuationReader in = new ContinuationReader(continuation);
+            lastWeight = in.readInt();
+            int cursors = in.readInt();
+            int suggestions = in.readInt();
+            int keyCount = distinct ? in.readInt() : 0;
+            for(int i = 0; i < cursors; i++) {
+                char type = in.readChar();
+                if(type == 'L') {
+                    int index = in.readInt();
+                    Node n = getPrefixNode(readString(in));
+                    if(n != null)
+                        addList(n, index);
+                }else if(type == 'S') {
+                    Node n = getNode(readString(in));
+                    if(n != null && n.weight != -1)
+                        addSuggestion(n);
+                }else{
+                    throw new IllegalArgumentException("malformed continuation");
+                }
+            }
+            for(int i = 0; i < suggestions; i++) {
+                Node n = getNode(readString(in));
+                if(n != null)
+                    returned.put(n, Boolean.TRUE);
+            }
+            for(int i = 0; i < keyCount; i++)
+                keys.add(in.readString());
+            if(!in.atEnd())
+                throw new IllegalArgumentException("malformed continuation");
+        }
+        
+        private String readString(ContinuationReader in) {
+            String string = in.readString();
+            if(!fold(string).startsWith(prefix))
+                throw new IllegalArgumentException(
+                        "continuation belongs to a different prefix");
+            return string;
+        }
+    }
+    
+    private final class FuzzySearch {
+        
+        private final String prefix;
+        private final int count;
+        private int budget;
+        // the match of each suggestion, or of each key in a tree with
+        // distinct keys
+        private final HashMap<Object,FuzzyMatch> matches;
+        // the number of matches for each distance
+        private final int[] counts;
+        // the highest distance that can still improve the result
+        private int bound;
+        // the rows of the edit distance matrix for each position
+        private int[][] rows;
+        
+        private FuzzySearch(String prefix, int maxDistance, int count,
+                int budget) {
+            this.prefix = fold(prefix);
+            this.count = count;
+            this.budget = budget;
+            matches = new HashMap<Object,FuzzyMatch>();
+            counts = new int[maxDistance + 1];
+            bound = maxDistance;
+            rows = new int[16][];
+            rows[0] = new int[prefix.length() + 1];
+            for(int j = 0; j < rows[0].length; j++)
+                rows[0][j] = j;
+        }
+        
+        /**
+         * Walks the binary search tree of the specified node, whose strings
+         * all continue the prefix of the row at the specified position.
+         */
+        private void walk(Node n, int start) {
+            if(n == null || budget == 0)
+                return;
+            budget--;
+            walkNode(n, start);
+            // the branch with the typed character comes first
+            if(start < prefix.length() && prefix.charAt(start) > n.firstChar) {
+                walk(n.right, start);
+                walk(n.left, start);
+            }else{
+                walk(n.left, start);
+                walk(n.right, start);
+            }
+        }
+        
+        private void walkNode(Node n, int start) {
+            int best = Integer.MAX_VALUE;
+            int min = 0;
+            int last = prefix.length();
+            for(int i = start; i < n.charEnd; i++) {
+                min = nextRow(i, charAt(n, i));
+                best = Math.min(best, rows[i + 1][last]);
+                if(min > bound)
+                    break;
+            }
+            if(best <= bound)
+                addSubtree(n, best);
+            // a longer string below can only come closer than the best
+            // prefix so far if the row still has a smaller distance
+            if(min <= bound && min < best)
+                walk(n.mid, n.charEnd);
+        }
+        
+        /**
+         * Computes the row after the specified character at the specified
+         * position and returns its smallest distance.
+         */
+        private int nextRow(int position, char c) {
+            if(position + 1 == rows.length)
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            int[] row = rows[position];
+            int[] next = rows[position + 1];
+            if(next == null)
+                next = rows[position + 1] = new int[row.length];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for(int j = 1; j < row.length; j++) {
+                int cost = (prefix.charAt(j - 1) == c) ? 0 : 1;
+                next[j] = Math.min(Math.min(next[j - 1], row[j]) + 1,
+                        row[j - 1] + cost);
+                min = Math.min(min, next[j]);
+            }
+            return min;
+        }
+        
+        /**
+         * Adds the best suggestions below the specified node. The list of the
+         * node is taken first. If it is full but fewer of its suggestions are
+         * matched at this distance than requested, the search continues into
+         * the subtree best first, as {@link Search} does for longer lists.
+         */
+        private void addSubtree(Node n, int distance) {
+            Node[] list = n.list;
+            int taken = 0;
+            for(Node suggestion : list) {
+                if(add(suggestion, distance))
+                    taken++;
+            }
+            if(taken < count && list.length == capacity(n)) {
+                Search search = new Search(null);
+                search.addList(n, list, 0);
+                // the list comes first and has been taken
+                for(int i = 0; i < list.length && search.hasNext(); i++)
+                    search.next();
+                while(taken < count && search.hasNext()) {
+                    if(add(search.next(), distance))
+                        taken++;
+                }
+            }
+            // once there are enough matches at some distance, nothing
+            // farther away can make it into the result
+            int sum = 0;
+            for(int d = 0; d < bound; d++) {
+                sum += counts[d];
+                if(sum >= count) {
+                    bound = d;
+                    break;
+                }
+            }
+        }
+        
+        /**
+         * Adds a suggestion at the specified distance and returns whether it
+         * is not matched closer elsewhere, so that it takes one of the
+         * requested places at this distance.
+         */
+        private boolean add(Node suggestion, int distance) {
+            String key = distinct ? keyOf(suggestion) : null;
+            Object entity = (key != null) ? key : suggestion;
+            FuzzyMatch match = matches.get(entity);
+            if(match == null) {
+                matches.put(entity, new FuzzyMatch(suggestion, distance));
+                counts[distance]++;
+                return true;
+            }
+            if(distance < match.distance
+                    || distance == match.distance
+                    && suggestion.weight > match.weight) {
+                counts[match.distance]--;
+                counts[distance]++;
+                match.set(suggestion, distance);
+            }
+            return match.distance == distance;
+        }
+        
+        private Node result() {
+            if(matches.isEmpty())
+                return null;
+            FuzzyMatch[] sorted = matches.values().toArray(
+                    new FuzzyMatch[matches.size()]);
+            Arrays.sort(sorted);
+            Node[] list = new Node[Math.min(count, sorted.length)];
+            for(int i = 0; i < list.length; i++)
+                list[i] = sorted[i].suggestion;
+            return view(list);
+        }
+    }
+    
+    /**
+     * A suggestion found by a fuzzy search. The weight is read once, so that
+     * the order stays consistent while the tree is modified concurrently. In
+     * a tree with distinct keys, the suggestion is replaced by a closer or
+     * heavier one with the same key.
+     */
+    private static final class FuzzyMatch implements Comparable<FuzzyMatch> {
+        
+        private Node suggestion;
+        private int weight;
+        private int distance;
+        
+        private FuzzyMatch(Node suggestion, int distance) {
+            set(suggestion, distance);
+        }
+        
+        private void set(Node suggestion, int distance) {
+            this.suggestion = suggestion;
+            weight = suggestion.weight;
+            this.distance = distance;
+        }
+        
+        @Override
+        public int compareTo(FuzzyMatch other) {
+            if(distance != other.distance)
+                return (distance < other.distance) ? -1 : 1;
+            if(weight != other.weight)
+                return (weight > other.weight) ? -1 : 1;
+            return 0;
+        }
+    }
+    
+    /**
+     * Reads the numbers and strings of a continuation written by
+     * {@link Search#toContinuation}.
+     */
+    private static final class ContinuationReader {
+        
+        private final String string;
+        private int position;
+        
+        private ContinuationReader(String string) {
+            this.string = string;
+            position = 0;
+        }
+        
+        private int readInt() {
+            int end = string.indexOf(',', position);
+            if(end == -1)
+                throw new IllegalArgumentException("malformed continuation");
+            int value = Integer.parseInt(string.substring(position, end));
+            position = end + 1;
+            return value;
+        }
+        
+        private char readChar() {
+            if(position >= string.length())
+                throw new IllegalArgumentException("malformed continuation");
+            return string.charAt(position++);
+        }
+        
+        private String readString() {
+            int length = readInt();
+            if(length < 0 || length > string.length() - position)
+                throw new IllegalArgumentException("malformed continuation");
+            position += length;
+            return string.substring(position - length, position);
+        }
+        
+        private boolean atEnd() {
+            return position == string.length();
+        }
+    }
+    
+    /**
+     * A fragment attached to a suggestion list, see {@link #getFragment}.
+     */
+    private static final class Fragment {
+        
+        private final Node[] list;
+        private final Object value;
+        
+        private Fragment(Node[] list, Object value) {
+            this.list = list;
+            this.value = value;
+        }
+    }
+    
+    /**
+     * A position in a suggestion list during a best-first search. Cursors are
+     * ordered by the weight of the suggestion they point to, highest first,
+     * and then by the order in which they were queued. If the expand node is
+     * not {@code null}, the list is the suggestion list of that node; otherwise
+     * it holds a single suggestion.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+        
+        private final Node[] list;
+        private final Node expand;
+        private int index;
+        private int sequence;
+        
+        private Cursor(Node[] list, Node expand, int index, int sequence) {
+            this.list = list;
+            this.expand = expand;
+            this.index = index;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public int compareTo(Cursor other) {
+            int weight = list[index].weight;
+            int otherWeight = other.list[other.index].weight;
+            if(weight != otherWeight)
+                return (weight > otherWeight) ? -1 : 1;
+            return (sequence < other.sequence) ? -1
+                    : (sequence > other.sequence) ? 1 : 0;
+        }
+    }
+    
+    /**
+     * A page of suggestions returned by
+     * {@link SuggestTree#getBestSuggestions(String, int, String)}.
+     */
+    public static final class Page extends Node {
+        
+        private final Node view;
+        private final Search search;
+        private final boolean whole;
+        
+        private Page(Node view, Search search, boolean whole) {
+            super(view.list);
+            this.view = view;
+            this.search = search;
+            this.whole = whole;
+        }
+        
+        @Override
+        public String getSuggestion(int index) {
+            return view.getSuggestion(index);
+        }
+        
+        @Override
+        public String getKey(int index) {
+            return view.getKey(index);
+        }
+        
+        /**
+         * Returns the continuation for the next page, or {@code null} if there
+         * are no further suggestions with the prefix.
+         */
+        public String getContinuation() {
+            return (search != null) ? search.toContinuation() : null;
+        }
+    }
+    
     /**
      * A tree node with a rank-ordered list of autocomplete suggestions. The
      * highest weighted suggestion is at index 0, the second highest weighted at
      * index 1, and so on.
      */
-    public static final class Node {
+    public static class Node {
         
-        private Node[] list;
+        private volatile Node[] list;
         private String suggestion;
         private String key;
+        private Object payload;
         private int weight;
-        private char firstChar;
+        private volatile char firstChar;
         private final short charEnd;
-        private Node left, mid, right, parent;
+        private volatile Node left, mid, right;
+        private Node parent;
         
         private Node(String suggestion, int weight,String key, int index, Node parent) {
-            list = new Node[] {this};
+            this(suggestion.charAt(index), suggestion.length(), weight, parent);
             this.suggestion = suggestion;
-            this.weight = weight;
             this.key = key;
-            firstChar = suggestion.charAt(index);
-            charEnd = (short) suggestion.length();
+        }
+        
+        private Node(char firstChar, int charEnd, int weight, Node parent) {
+            list = new Node[] {this};
+            this.weight = weight;
+            this.firstChar = firstChar;
+            this.charEnd = (short) charEnd;
             left = mid = right = null;
             this.parent = parent;
         }
@@ -657,6 +2664,12 @@ public class SuggestTree {
             parent = n.parent;
         }
         
+        private Node(Node[] list) {
+            this.list = list;
+            weight = -1;
+            charEnd = 0;
+        }
+        
         /**
          * Returns the suggestion at the specified position in the list.
          * @throws IndexOutOfBoundsException if the {@code index} argument is
@@ -686,6 +2699,19 @@ public class SuggestTree {
         	return list[index].key;
         }
         
+        /**
+         * Returns the payload of the suggestion at the specified position in
+         * the list, which was set with
+         * {@link SuggestTree#put(String, int, String, Object)}, or
+         * {@code null} if it has none. A frozen or mapped copy of the tree
+         * keeps no payloads.
+         * @throws IndexOutOfBoundsException if the {@code index} argument is
+         * negative or not less than the list length
+         */
+        public Object getPayload(int index) {
+            return list[index].payload;
+        }
+        
         /**
          * Returns the number of suggestions in the list.
          */
@@ -693,4 +2719,147 @@ public class SuggestTree {
             return list.length;
         }
     }
+    
+    /**
+     * A node of a tree created with the {@link #TEXT_ARENA} flag. Instead of
+     * string references, it holds the offsets of its suggestion and key in the
+     * text arena of the tree.
+     */
+    private static final class TextNode extends Node {
+        
+        private int text, keyText;
+        
+        private TextNode(String suggestion, int weight, int text, int keyText,
+                int index, Node parent) {
+            super(suggestion.charAt(index), suggestion.length(), weight, parent);
+            this.text = text;
+            this.keyText = keyText;
+        }
+        
+        private TextNode(Node[] list, TextNode n, int charEnd) {
+            super(list, n, charEnd);
+            text = n.text;
+        }
+        
+        private TextNode(char firstChar, int charEnd, int text) {
+            super(firstChar, charEnd, -1, null);
+            this.text = text;
+            keyText = -1;
+        }
+    }
+    
+    /**
+     * The node returned by {@link #getBestSuggestions} of a tree created with
+     * the {@link #TEXT_ARENA} flag. It reads the suggestions and keys of its
+     * list from the text arena.
+     */
+    private static final class TextView extends Node {
+        
+        private final TextArena arena;
+        
+        private TextView(Node[] list, TextArena arena) {
+            super(list);
+            this.arena = arena;
+        }
+        
+        @Override
+        public String getSuggestion(int index) {
+            return arena.get(((TextNode) super.list[index]).text);
+        }
+        
+        @Override
+        public String getKey(int index) {
+            return arena.get(((TextNode) super.list[index]).keyText);
+        }
+    }
+    
+    /**
+     * A growable byte array that holds the suggestion and key strings of a tree
+     * created with the {@link #TEXT_ARENA} flag. Each string is stored as a
+     * two byte header followed by its characters and is addressed by the offset
+     * of its first character. The header holds the length of the string and a
+     * flag bit that tells whether the characters are stored with one byte each
+     * (ISO-8859-1, which covers most suggestions) or two bytes each (UTF-16).
+     * Strings are only ever appended, so a reader that got an offset from a
+     * published node always finds the characters in the array.
+     */
+    private static final class TextArena {
+        
+        private static final int WIDE = 0x8000;
+        
+        private volatile byte[] bytes;
+        private int size;
+        
+        private TextArena() {
+            bytes = new byte[4096];
+            size = 0;
+        }
+        
+        /**
+         * Appends the specified string and returns its offset, or returns -1 if
+         * the string is {@code null}.
+         * @throws IllegalArgumentException if the string is longer than 32767
+         * characters
+         */
+        private int add(String string) {
+            if(string == null)
+                return -1;
+            int length = string.length();
+            if(length > Short.MAX_VALUE)
+                throw new IllegalArgumentException();
+            boolean wide = false;
+            for(int i = 0; i < length && !wide; i++)
+                wide = string.charAt(i) > 0xFF;
+            int end = size + 2 + (wide ? 2 * length : length);
+            byte[] a = bytes;
+            if(end > a.length || end < 0) {
+                long capacity = Math.max(a.length + (a.length >> 1), (long) end);
+                if(end < 0 || capacity > Integer.MAX_VALUE - 8) {
+                    if(end < 0 || end > Integer.MAX_VALUE - 8)
+                        throw new IllegalStateException("text arena is full");
+                    capacity = Integer.MAX_VALUE - 8;
+                }
+                a = Arrays.copyOf(a, (int) capacity);
+            }
+            int header = wide ? (length | WIDE) : length;
+            a[size] = (byte) (header >>> 8);
+            a[size + 1] = (byte) header;
+            int offset = size + 2;
+            for(int i = 0, j = offset; i < length; i++) {
+                char c = string.charAt(i);
+                if(wide)
+                    a[j++] = (byte) (c >>> 8);
+                a[j++] = (byte) c;
+            }
+            size = end;
+            // publishes the new characters, even if the array did not change
+            bytes = a;
+            return offset;
+        }
+        
+        private char charAt(int offset, int index) {
+            byte[] a = bytes;
+            if((a[offset - 2] & 0x80) == 0)
+                return (char) (a[offset + index] & 0xFF);
+            int i = offset + 2 * index;
+            return (char) ((a[i] & 0xFF) << 8 | (a[i + 1] & 0xFF));
+        }
+        
+        private String get(int offset) {
+            if(offset == -1)
+                return null;
+            byte[] a = bytes;
+            int header = (a[offset - 2] & 0xFF) << 8 | (a[offset - 1] & 0xFF);
+            int length = header & ~WIDE;
+            char[] chars = new char[length];
+            if((header & WIDE) == 0) {
+                for(int i = 0; i < length; i++)
+                    chars[i] = (char) (a[offset + i] & 0xFF);
+            }else{
+                for(int i = 0, j = offset; i < length; i++, j += 2)
+                    chars[i] = (char) ((a[j] & 0xFF) << 8 | (a[j + 1] & 0xFF));
+            }
+            return new String(chars);
+        }
+    }
 }
@@ -0,0 +1,321 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A secondary index that finds suggestions by the start of any word but the
+ * first, so that "puppets" finds "Master of Puppets". The first word is
+ * covered by the index itself. Different words of the same suggestion and
+ * suggestions with the same key are returned once.
+ * <p>
+ * The suggestions of a {@link Builder} are kept as {@link WordSuffixes}, which
+ * refer to the strings the index keeps as well and take a few ints per word
+ * start. The suggestions put later are stored in a {@link SuggestTree}, once
+ * for every word start, rotated to start with that word, followed by a
+ * separator and the words before it, so that the entry holds the suggestion
+ * only once and can be turned back into it. A suggestion of the builder that
+ * is put again is answered from the tree from then on.
+ */
+public class TokenIndex {
+
+	/**
+	 * separates the rotated part of an entry from the words before it. It is
+	 * lower than any character that may be typed, so the entries of a word are
+	 * next to each other in the tree
+	 */
+	private static final char SEPARATOR = '\u0000';
+
+	private static final SuggestTree.RankedIterator[] NO_ENTRIES = {};
+
+	private static final WordSuffixes.RankedIterator[] NO_RANGES = {};
+
+	private final SuggestTree tree;
+
+	/**
+	 * the word starts of the suggestions of the builder, or null
+	 */
+	private final WordSuffixes suffixes;
+
+	/**
+	 * the suggestions of the builder that were put again
+	 */
+	private final Set<Integer> replaced;
+
+	/**
+	 * @param listLength
+	 *            the number of suggestions the tree precomputes per prefix
+	 * @param flags
+	 *            the flags of the tree, see {@link SuggestTree}
+	 */
+	public TokenIndex(int listLength, int flags) {
+		this(new SuggestTree(listLength, flags), null);
+	}
+
+	private TokenIndex(SuggestTree tree, WordSuffixes suffixes) {
+		this.tree = tree;
+		this.suffixes = suffixes;
+		this.replaced = (suffixes != null) ? Collections
+				.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>())
+				: Collections.<Integer> emptySet();
+	}
+
+	/**
+	 * inserts the suggestion or changes its weight, like
+	 * {@link SuggestTree#put}. Suggestions with a single word have no entries.
+	 *
+	 * @param suggestion
+	 * @param weight
+	 * @param key
+	 */
+	public void put(String suggestion, int weight, String key) {
+		for (int i = WordSuffixes.nextWordStart(suggestion, 0); i > 0; i = WordSuffixes
+				.nextWordStart(suggestion, i)) {
+			this.tree.put(entry(suggestion, i), weight, key);
+		}
+		if (this.suffixes != null) {
+			String folded = this.tree.fold(suggestion);
+			int first = WordSuffixes.nextWordStart(folded, 0);
+			int owner = (first > 0) ? this.suffixes.find(folded, first) : -1;
+			if (owner >= 0) {
+				this.replaced.add(owner);
+			}
+		}
+	}
+
+	/**
+	 * returns up to count suggestions that have a word other than the first
+	 * starting with the term, mapped to their keys and ordered by weight, or
+	 * an empty map if there are none. A suggestion whose key was already
+	 * returned for a higher weighted suggestion is left out, so that an
+	 * entity is returned once
+	 *
+	 * @param term
+	 * @param count
+	 */
+	public LinkedHashMap<String, String> getSuggestions(String term, int count) {
+		LinkedHashMap<String, String> suggestions = new LinkedHashMap<String, String>();
+		HashSet<String> keys = new HashSet<String>();
+		RankedIterator iterator = this.iterator(term);
+		String suggestion;
+		while (suggestions.size() < count
+				&& (suggestion = iterator.next()) != null) {
+			String key = iterator.key();
+			if (key == null ? !suggestions.containsKey(suggestion) : keys
+					.add(key)) {
+				suggestions.put(suggestion, key);
+			}
+		}
+		return suggestions;
+	}
+
+	/**
+	 * returns the number of word starts after the first word of all
+	 * suggestions
+	 */
+	public int size() {
+		return ((this.suffixes != null) ? this.suffixes.size() : 0)
+				+ this.tree.size();
+	}
+
+	/**
+	 * returns an iterator over the suggestions that have a word other than the
+	 * first starting with the term, in order of weight. A suggestion is
+	 * returned once for each of its words after the first that start with the
+	 * term
+	 *
+	 * @param term
+	 */
+	public RankedIterator iterator(String term) {
+		if (term.indexOf(SEPARATOR) >= 0) {
+			return new RankedIterator(NO_ENTRIES, NO_RANGES);
+		}
+		SuggestTree.RankedIterator[] entries = (this.tree.size() > 0) ? new SuggestTree.RankedIterator[] { this.tree
+				.iterator(term) } : NO_ENTRIES;
+		if (this.suffixes == null) {
+			return new RankedIterator(entries, NO_RANGES);
+		}
+		String folded = this.tree.fold(term);
+		int from = this.suffixes.first(folded);
+		return new RankedIterator(entries,
+				new WordSuffixes.RankedIterator[] { this.suffixes.new RankedIterator(
+						from, this.suffixes.last(from, folded)) });
+	}
+
+	/**
+	 * returns an iterator over the suggestions that have a word other than the
+	 * first that is equal to the word, in order of weight
+	 *
+	 * @param word
+	 */
+	RankedIterator wordIterator(String word) {
+		if (word.indexOf(SEPARATOR) >= 0) {
+			return new RankedIterator(NO_ENTRIES, NO_RANGES);
+		}
+		// a word is followed by a space or, as the last word, by the separator
+		SuggestTree.RankedIterator[] entries = (this.tree.size() > 0) ? new SuggestTree.RankedIterator[] {
+				this.tree.iterator(word + ' '),
+				this.tree.iterator(word + SEPARATOR) }
+				: NO_ENTRIES;
+		if (this.suffixes == null) {
+			return new RankedIterator(entries, NO_RANGES);
+		}
+		String folded = this.tree.fold(word);
+		String space = this.tree.fold(word + ' ');
+		int from = this.suffixes.first(folded);
+		int to = this.suffixes.equal(from, this.suffixes.last(from, folded),
+				folded.length());
+		int spaced = this.suffixes.first(space);
+		return new RankedIterator(entries, new WordSuffixes.RankedIterator[] {
+				this.suffixes.new RankedIterator(spaced, this.suffixes.last(
+						spaced, space)),
+				this.suffixes.new RankedIterator(from, to) });
+	}
+
+	private static String entry(String suggestion, int wordStart) {
+		return suggestion.substring(wordStart) + SEPARATOR
+				+ suggestion.substring(0, wordStart);
+	}
+
+	private static String suggestion(String entry) {
+		int separator = entry.lastIndexOf(SEPARATOR);
+		return new StringBuilder(entry.length() - 1)
+				.append(entry, separator + 1, entry.length())
+				.append(entry, 0, separator).toString();
+	}
+
+	/**
+	 * An iterator over suggestions of the index in order of weight. It merges
+	 * the entries of the tree and the word starts of the builder.
+	 */
+	public final class RankedIterator {
+
+		private final SuggestTree.RankedIterator[] entries;
+
+		// the next entry of each iterator over the tree
+		private final String[] heads;
+
+		private final WordSuffixes.RankedIterator[] ranges;
+
+		// the next suffix of each range, or -1
+		private final int[] next;
+
+		private String key;
+
+		private int weight;
+
+		private RankedIterator(SuggestTree.RankedIterator[] entries,
+				WordSuffixes.RankedIterator[] ranges) {
+			this.entries = entries;
+			this.heads = new String[entries.length];
+			for (int i = 0; i < entries.length; i++) {
+				this.heads[i] = entries[i].next();
+			}
+			this.ranges = ranges;
+			this.next = new int[ranges.length];
+			for (int i = 0; i < ranges.length; i++) {
+				this.next[i] = this.advance(ranges[i]);
+			}
+		}
+
+		/**
+		 * returns the next suggestion, or null if there is none
+		 */
+		public String next() {
+			int bestEntry = -1;
+			for (int i = 0; i < this.heads.length; i++) {
+				if (this.heads[i] != null
+						&& (bestEntry == -1 || this.entries[i].weight() > this.entries[bestEntry]
+								.weight())) {
+					bestEntry = i;
+				}
+			}
+			int bestRange = -1;
+			for (int i = 0; i < this.next.length; i++) {
+				if (this.next[i] >= 0
+						&& (bestRange == -1 || suffixes.weight(this.next[i]) > suffixes
+								.weight(this.next[bestRange]))) {
+					bestRange = i;
+				}
+			}
+			if (bestEntry == -1 && bestRange == -1) {
+				return null;
+			}
+			if (bestRange == -1
+					|| (bestEntry != -1 && this.entries[bestEntry].weight() >= suffixes
+							.weight(this.next[bestRange]))) {
+				String suggestion = suggestion(this.heads[bestEntry]);
+				this.weight = this.entries[bestEntry].weight();
+				this.key = this.entries[bestEntry].key();
+				this.heads[bestEntry] = this.entries[bestEntry].next();
+				return suggestion;
+			}
+			int suffix = this.next[bestRange];
+			this.weight = suffixes.weight(suffix);
+			this.key = suffixes.key(suffix);
+			this.next[bestRange] = this.advance(this.ranges[bestRange]);
+			return suffixes.suggestion(suffix);
+		}
+
+		/**
+		 * returns the weight of the suggestion last returned by next
+		 */
+		public int weight() {
+			return this.weight;
+		}
+
+		/**
+		 * returns the key of the suggestion last returned by next
+		 */
+		public String key() {
+			return this.key;
+		}
+
+		/**
+		 * returns the next suffix of the range whose suggestion was not put
+		 * again, or -1 if there is none
+		 */
+		private int advance(WordSuffixes.RankedIterator range) {
+			int suffix = range.next();
+			while (suffix >= 0 && !replaced.isEmpty()
+					&& replaced.contains(suffixes.owner(suffix))) {
+				suffix = range.next();
+			}
+			return suffix;
+		}
+	}
+
+	/**
+	 * Collects the suggestions of a token index that is built at once. If a
+	 * suggestion is added more than once, the index gets the weight and the
+	 * key that were added last.
+	 */
+	public static class Builder {
+
+		private final int listLength;
+
+		private final int flags;
+
+		private final WordSuffixes.Builder suffixes;
+
+		public Builder(int listLength, int flags) {
+			this.listLength = listLength;
+			this.flags = flags;
+			this.suffixes = new WordSuffixes.Builder(
+					(flags & SuggestTree.NORMALIZE) != 0);
+		}
+
+		public Builder add(String suggestion, int weight, String key) {
+			this.suffixes.add(suggestion, weight, key);
+			return this;
+		}
+
+		public TokenIndex build() {
+			return new TokenIndex(new SuggestTree(this.listLength, this.flags),
+					this.suffixes.build());
+		}
+	}
+}
@@ -0,0 +1,575 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * The word starts after the first word of a fixed set of suggestions, sorted
+ * by the characters from the word start on, like a suffix array that only
+ * holds the suffixes that start a word. The suffixes that start with a term
+ * are next to each other, so they are found by two binary searches, and a
+ * tree over the weights of the sorted suffixes returns them in order of
+ * weight, one range maximum at a time.
+ * <p>
+ * A suffix is an index into the suggestions and the offset of its word, so
+ * the text is not copied: the suggestions and keys are the strings that were
+ * added, which the index of the same suggestions keeps as well. This takes
+ * a short, an int and three longs per word start and two references per
+ * suggestion, where a {@link SuggestTree} of the suffixes takes nodes, lists
+ * and a string per word start. The suffixes are compared by their
+ * normalized characters if normalize is set, see
+ * {@link SuggestTree#normalize(String)}.
+ */
+final class WordSuffixes {
+
+	private final boolean normalize;
+
+	private final String[] suggestions;
+
+	private final String[] keys;
+
+	/**
+	 * the suggestion and the offset of the word of each suffix, in the order
+	 * of the suffixes
+	 */
+	private final int[] owners;
+
+	private final short[] starts;
+
+	/**
+	 * the first {@link #HEAD_LENGTH} folded characters of each suffix, the
+	 * first one in the highest bits and zeros after its end, so that most
+	 * steps of a search read one array instead of the text
+	 */
+	private final long[] heads;
+
+	private static final int HEAD_LENGTH = 4;
+
+	/**
+	 * every {@link #SAMPLE_STEP}th head, small enough to stay in the cache,
+	 * which narrows a search down before it reads the heads
+	 */
+	private final long[] samples;
+
+	private static final int SAMPLE_STEP = 128;
+
+	/**
+	 * a tree of range maxima over the weights of the suffixes: the suffixes
+	 * are the leaves from index n on, and each inner node holds the heaviest
+	 * suffix of its two children. A node holds the weight in the high bits
+	 * and the inverted index of the suffix in the low ones, so that it is
+	 * compared without reading another array and the first of equally heavy
+	 * suffixes wins
+	 */
+	private final long[] heaviest;
+
+	private WordSuffixes(boolean normalize, String[] suggestions,
+			String[] keys, int[] owners, short[] starts, int[] weights) {
+		this.normalize = normalize;
+		this.suggestions = suggestions;
+		this.keys = keys;
+		this.owners = owners;
+		this.starts = starts;
+		int n = owners.length;
+		this.heads = new long[n];
+		for (int i = 0; i < n; i++) {
+			String suggestion = this.suggestion(i);
+			long head = 0;
+			for (int c = 0, offset = starts[i]; c < HEAD_LENGTH; c++, offset++) {
+				head = (head << 16)
+						| ((offset < suggestion.length()) ? this.fold(suggestion
+								.charAt(offset)) : 0);
+			}
+			this.heads[i] = head;
+		}
+		this.samples = new long[(n + SAMPLE_STEP - 1) / SAMPLE_STEP];
+		for (int i = 0; i < this.samples.length; i++) {
+			this.samples[i] = this.heads[i * SAMPLE_STEP];
+		}
+		this.heaviest = new long[2 * n];
+		for (int i = 0; i < n; i++) {
+			this.heaviest[n + i] = ((long) weights[i] << 32) | (~i & 0xFFFFFFFFL);
+		}
+		for (int i = n - 1; i > 0; i--) {
+			this.heaviest[i] = Math.max(this.heaviest[2 * i],
+					this.heaviest[2 * i + 1]);
+		}
+	}
+
+	/**
+	 * returns the number of suffixes
+	 */
+	int size() {
+		return this.owners.length;
+	}
+
+	String suggestion(int suffix) {
+		return this.suggestions[this.owners[suffix]];
+	}
+
+	String key(int suffix) {
+		return this.keys[this.owners[suffix]];
+	}
+
+	int weight(int suffix) {
+		return (int) (this.heaviest[this.owners.length + suffix] >>> 32);
+	}
+
+	/**
+	 * returns the suggestion the suffix belongs to, which is the same for all
+	 * suffixes of a suggestion
+	 */
+	int owner(int suffix) {
+		return this.owners[suffix];
+	}
+
+	/**
+	 * returns the suggestion that folds to the specified one, or -1 if there
+	 * is none
+	 *
+	 * @param suggestion
+	 *            the folded suggestion
+	 * @param wordStart
+	 *            the start of a word after the first of the suggestion
+	 */
+	int find(String suggestion, int wordStart) {
+		String suffix = suggestion.substring(wordStart);
+		int from = this.first(suffix);
+		int to = this.equal(from, this.last(from, suffix), suffix.length());
+		for (int i = from; i < to; i++) {
+			if (this.starts[i] == wordStart
+					&& this.equals(this.suggestion(i), suggestion)) {
+				return this.owners[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * returns the index of the first suffix that starts with the folded term
+	 * or comes after it
+	 */
+	int first(String term) {
+		long head = head(term);
+		long mask = mask(term);
+		// a sample with a lower head comes before the first suffix and one
+		// with a higher head after it
+		int lower = this.countSamples(head, mask, 0);
+		int higher = this.countSamples(head, mask, 1);
+		int lo = (lower > 0) ? (lower - 1) * SAMPLE_STEP + 1 : 0;
+		int hi = (higher < this.samples.length) ? higher * SAMPLE_STEP
+				: this.owners.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.compareTo(mid, term, head) < 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * returns the index after the last suffix that starts with the folded
+	 * term. The search gallops from index from, which must not come after the
+	 * first such suffix, so that it takes the fewer steps the fewer suffixes
+	 * start with the term
+	 */
+	int last(int from, String term) {
+		long head = head(term);
+		int n = this.owners.length;
+		int lo = from;
+		int hi = from;
+		for (int step = 1; hi < n && this.compareTo(hi, term, head) <= 0; step <<= 1) {
+			lo = hi + 1;
+			hi = (n - from > step) ? from + step : n;
+		}
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.compareTo(mid, term, head) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * returns the index after the suffixes that equal the term, among the
+	 * suffixes from index from to index to that start with it, where they
+	 * come first
+	 *
+	 * @param from
+	 * @param to
+	 * @param length
+	 *            the length of the term
+	 */
+	int equal(int from, int to, int length) {
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.length(mid) == length) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * returns the node of the heaviest suffix from index from to index to,
+	 * exclusive, which must not be empty, see {@link #heaviest}
+	 */
+	private long heaviest(int from, int to) {
+		long best = -1;
+		int n = this.owners.length;
+		for (int lo = from + n, hi = to + n; lo < hi; lo >>>= 1, hi >>>= 1) {
+			if ((lo & 1) == 1) {
+				best = Math.max(best, this.heaviest[lo++]);
+			}
+			if ((hi & 1) == 1) {
+				best = Math.max(best, this.heaviest[--hi]);
+			}
+		}
+		return best;
+	}
+
+	private int length(int suffix) {
+		return this.suggestion(suffix).length() - this.starts[suffix];
+	}
+
+	/**
+	 * returns the number of samples whose heads compare lower than the head
+	 * of the term, or not higher if bound is 1
+	 */
+	private int countSamples(long head, long mask, int bound) {
+		int lo = 0;
+		int hi = this.samples.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compareHeads(this.samples[mid], head, mask) < bound) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * compares the suffix with the folded term, as far as the term goes, so
+	 * that a suffix that starts with the term compares as equal. The text of
+	 * the suffix is only read if its head equals the one of the term
+	 *
+	 * @param suffix
+	 * @param term
+	 * @param head
+	 *            the head of the term
+	 */
+	private int compareTo(int suffix, String term, long head) {
+		int result = compareHeads(this.heads[suffix], head, mask(term));
+		if (result != 0 || term.length() <= HEAD_LENGTH) {
+			return result;
+		}
+		String suggestion = this.suggestion(suffix);
+		int start = this.starts[suffix];
+		int length = Math.min(suggestion.length() - start, term.length());
+		for (int i = HEAD_LENGTH; i < length; i++) {
+			char c = this.fold(suggestion.charAt(start + i));
+			if (c != term.charAt(i)) {
+				return c - term.charAt(i);
+			}
+		}
+		return (suggestion.length() - start < term.length()) ? -1 : 0;
+	}
+
+	/**
+	 * returns whether the suggestion folds to the folded one
+	 */
+	private boolean equals(String suggestion, String folded) {
+		if (suggestion.length() != folded.length()) {
+			return false;
+		}
+		for (int i = 0; i < folded.length(); i++) {
+			if (this.fold(suggestion.charAt(i)) != folded.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private char fold(char c) {
+		return this.normalize ? SuggestTree.normalize(c) : c;
+	}
+
+	/**
+	 * compares the head of a suffix with the head of a term as far as the
+	 * mask of the term goes
+	 */
+	private static int compareHeads(long suffixHead, long head, long mask) {
+		// flipping the sign bit compares the heads as unsigned
+		long a = (suffixHead & mask) ^ Long.MIN_VALUE;
+		long b = (head & mask) ^ Long.MIN_VALUE;
+		return (a < b) ? -1 : (a > b) ? 1 : 0;
+	}
+
+	/**
+	 * returns the bits of the head that the term fills
+	 */
+	private static long mask(String term) {
+		int chars = Math.min(term.length(), HEAD_LENGTH);
+		return (chars == 0) ? 0 : -1L << (16 * (HEAD_LENGTH - chars));
+	}
+
+	/**
+	 * returns the head of the folded term, see {@link #heads}
+	 */
+	private static long head(String term) {
+		long head = 0;
+		for (int i = 0; i < HEAD_LENGTH; i++) {
+			head = (head << 16) | ((i < term.length()) ? term.charAt(i) : 0);
+		}
+		return head;
+	}
+
+	/**
+	 * returns the index of the first word start after the given index, or -1
+	 * if there is none. Words are separated by whitespace
+	 */
+	static int nextWordStart(String suggestion, int index) {
+		for (int i = index + 1; i < suggestion.length(); i++) {
+			if (Character.isWhitespace(suggestion.charAt(i - 1))
+					&& !Character.isWhitespace(suggestion.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The suffixes in the order of their weights, from the heaviest on. Each
+	 * step takes the heaviest suffix of a range and splits the range around
+	 * it, so that the next suffix is the heaviest of all ranges left.
+	 */
+	final class RankedIterator {
+
+		private final PriorityQueue<Range> ranges = new PriorityQueue<Range>();
+
+		RankedIterator(int from, int to) {
+			this.add(from, to);
+		}
+
+		/**
+		 * returns the next suffix, or -1 if there is none
+		 */
+		int next() {
+			Range range = this.ranges.poll();
+			if (range == null) {
+				return -1;
+			}
+			this.add(range.from, range.suffix);
+			this.add(range.suffix + 1, range.to);
+			return range.suffix;
+		}
+
+		private void add(int from, int to) {
+			if (from < to) {
+				this.ranges.add(new Range(from, to, heaviest(from, to)));
+			}
+		}
+	}
+
+	private final class Range implements Comparable<Range> {
+
+		private final int from;
+
+		private final int to;
+
+		private final long heaviest;
+
+		private final int suffix;
+
+		private Range(int from, int to, long heaviest) {
+			this.from = from;
+			this.to = to;
+			this.heaviest = heaviest;
+			this.suffix = ~(int) heaviest;
+		}
+
+		@Override
+		public int compareTo(Range other) {
+			return (this.heaviest > other.heaviest) ? -1 : 1;
+		}
+	}
+
+	/**
+	 * Collects the suggestions and sorts their suffixes once they are all
+	 * known.
+	 */
+	static final class Builder {
+
+		private final boolean normalize;
+
+		private final ArrayList<String> suggestions = new ArrayList<String>();
+
+		private final ArrayList<String> keys = new ArrayList<String>();
+
+		private int[] weights = new int[16];
+
+		Builder(boolean normalize) {
+			this.normalize = normalize;
+		}
+
+		/**
+		 * adds the suggestion if it has more than one word. A normalized
+		 * suggestion is kept composed, so that each of its characters folds
+		 * on its own
+		 */
+		void add(String suggestion, int weight, String key) {
+			if (nextWordStart(suggestion, 0) < 0) {
+				return;
+			}
+			if (this.normalize
+					&& !Normalizer.isNormalized(suggestion,
+							Normalizer.Form.NFC)) {
+				suggestion = Normalizer.normalize(suggestion,
+						Normalizer.Form.NFC);
+			}
+			if (this.suggestions.size() == this.weights.length) {
+				int[] weights = new int[2 * this.weights.length];
+				System.arraycopy(this.weights, 0, weights, 0,
+						this.weights.length);
+				this.weights = weights;
+			}
+			this.weights[this.suggestions.size()] = weight;
+			this.suggestions.add(suggestion);
+			this.keys.add(key);
+		}
+
+		/**
+		 * sorts the suffixes of the suggestions. A suggestion that was added
+		 * more than once keeps the weight and the key that were added last
+		 */
+		WordSuffixes build() {
+			int added = this.suggestions.size();
+			String[] all = this.suggestions.toArray(new String[added]);
+			int[] order = identity(added);
+			this.sort(all, identity(added), new short[added], order,
+					new int[added], 0, added);
+			// equal suggestions are next to each other in the order they
+			// were added
+			boolean[] kept = new boolean[added];
+			int count = 0;
+			for (int i = 0; i < added; i++) {
+				if (i + 1 == added
+						|| this.compare(all[order[i]], 0, all[order[i + 1]], 0) != 0) {
+					kept[order[i]] = true;
+					count++;
+				}
+			}
+			String[] suggestions = new String[count];
+			String[] keys = new String[count];
+			int[] weights = new int[count];
+			int suffixes = 0;
+			for (int i = 0, s = 0; i < added; i++) {
+				if (kept[i]) {
+					suggestions[s] = all[i];
+					keys[s] = this.keys.get(i);
+					weights[s] = this.weights[i];
+					for (int w = nextWordStart(all[i], 0); w > 0; w = nextWordStart(
+							all[i], w)) {
+						suffixes++;
+					}
+					s++;
+				}
+			}
+			int[] owners = new int[suffixes];
+			short[] starts = new short[suffixes];
+			int suffix = 0;
+			for (int s = 0; s < count; s++) {
+				for (int w = nextWordStart(suggestions[s], 0); w > 0; w = nextWordStart(
+						suggestions[s], w)) {
+					owners[suffix] = s;
+					starts[suffix] = (short) w;
+					suffix++;
+				}
+			}
+			order = identity(suffixes);
+			this.sort(suggestions, owners, starts, order, new int[suffixes],
+					0, suffixes);
+			int[] sortedOwners = new int[suffixes];
+			short[] sortedStarts = new short[suffixes];
+			int[] sortedWeights = new int[suffixes];
+			for (int i = 0; i < suffixes; i++) {
+				sortedOwners[i] = owners[order[i]];
+				sortedStarts[i] = starts[order[i]];
+				sortedWeights[i] = weights[owners[order[i]]];
+			}
+			return new WordSuffixes(this.normalize, suggestions, keys,
+					sortedOwners, sortedStarts, sortedWeights);
+		}
+
+		private static int[] identity(int length) {
+			int[] order = new int[length];
+			for (int i = 0; i < length; i++) {
+				order[i] = i;
+			}
+			return order;
+		}
+
+		/**
+		 * sorts the range of the order by the folded suffixes it points to,
+		 * with a merge sort that keeps equal suffixes in the order they come
+		 * in
+		 */
+		private void sort(String[] suggestions, int[] owners, short[] starts,
+				int[] order, int[] buffer, int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			this.sort(suggestions, owners, starts, order, buffer, from, mid);
+			this.sort(suggestions, owners, starts, order, buffer, mid, to);
+			System.arraycopy(order, from, buffer, from, to - from);
+			int i = from;
+			int j = mid;
+			for (int k = from; k < to; k++) {
+				if (j == to
+						|| (i < mid && this.compare(suggestions[owners[buffer[i]]],
+								starts[buffer[i]], suggestions[owners[buffer[j]]],
+								starts[buffer[j]]) <= 0)) {
+					order[k] = buffer[i++];
+				} else {
+					order[k] = buffer[j++];
+				}
+			}
+		}
+
+		/**
+		 * compares the folded characters of two suggestions from their
+		 * offsets on
+		 */
+		private int compare(String a, int offsetA, String b, int offsetB) {
+			int lengthA = a.length() - offsetA;
+			int lengthB = b.length() - offsetB;
+			int length = Math.min(lengthA, lengthB);
+			for (int i = 0; i < length; i++) {
+				char c = this.fold(a.charAt(offsetA + i));
+				char d = this.fold(b.charAt(offsetB + i));
+				if (c != d) {
+					return c - d;
+				}
+			}
+			return lengthA - lengthB;
+		}
+
+		private char fold(char c) {
+			return this.normalize ? SuggestTree.normalize(c) : c;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.simple.JSONObject;
+
+import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+
+/**
+ * Reports the metrics of the cache of retrieve responses as JSON, see
+ * {@link ResponseCache}, and the ones of the {@link ImageStore} under
+ * "images".
+ */
+public class CacheStatsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void doGet(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException {
+		ResponseCache cache = ContextListener.getResponseCache(this
+				.getServletContext());
+		JSONObject stats = new JSONObject();
+		if (cache != null) {
+			stats.put("hitRate", cache.hitRate());
+			stats.put("hits", cache.hits());
+			stats.put("misses", cache.misses());
+			stats.put("size", cache.size());
+			stats.put("bytes", cache.bytes());
+			stats.put("evictions", cache.evictions());
+			stats.put("rejections", cache.rejections());
+		}
+		ImageStore imageStore = ContextListener.getImageStore(this
+				.getServletContext());
+		if (imageStore != null) {
+			JSONObject images = new JSONObject();
+			images.put("keys", imageStore.size());
+			images.put("images", imageStore.images());
+			images.put("bytes", imageStore.bytes());
+			images.put("savedBytes", imageStore.savedBytes());
+			images.put("fileBytes", imageStore.fileBytes());
+			stats.put("images", images);
+		}
+		response.setContentType("application/json");
+		PrintWriter out = response.getWriter();
+		out.println(stats.toJSONString());
+		out.flush();
+	}
+
+}
@@ -0,0 +1,90 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Image;
+import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+
+/**
+ * Serves the image of a suggestion key as JPEG, so that retrieve responses
+ * only carry a reference to it, see {@link #reference(String, Image)}. The
+ * reference holds the version of the image, so a client may cache the image
+ * of a reference for good, and a changed image gets a new reference. Requests
+ * without the current version are answered as well, but have to be
+ * revalidated with the ETag.
+ */
+public class ImageServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected void doGet(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException {
+		String key = request
+				.getParameter(ProtocolConstants.IMAGE_KEY_PARAMETER);
+		if (key == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		ImageStore imageStore = ContextListener.getImageStore(this
+				.getServletContext());
+		Image image = (imageStore != null) ? imageStore.getImage(key) : null;
+		if (image == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		String eTag = "\"" + image.getVersion() + "\"";
+		response.setHeader("ETag", eTag);
+		if (image.getVersion().equals(
+				request.getParameter(ProtocolConstants.IMAGE_VERSION_PARAMETER))) {
+			response.setHeader("Cache-Control", "public, max-age="
+					+ ProtocolConstants.IMAGE_MAX_AGE);
+		} else {
+			response.setHeader("Cache-Control", "no-cache");
+		}
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null
+				&& (ifNoneMatch.contains(eTag) || ifNoneMatch.trim()
+						.equals("*"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType("image/jpeg");
+		response.setContentLength(image.getLength());
+		OutputStream out = response.getOutputStream();
+		imageStore.transferTo(image, Channels.newChannel(out));
+		out.flush();
+	}
+
+	/**
+	 * returns the reference to the image of the key that retrieve responses
+	 * carry instead of the image, a URL relative to the retrieve servlet
+	 *
+	 * @param key
+	 * @param image
+	 */
+	static String reference(String key, Image image) {
+		try {
+			return ProtocolConstants.IMAGE_PATH + "?"
+					+ ProtocolConstants.IMAGE_KEY_PARAMETER + "="
+					+ URLEncoder.encode(key, "UTF-8") + "&"
+					+ ProtocolConstants.IMAGE_VERSION_PARAMETER + "="
+					+ image.getVersion();
+		} catch (UnsupportedEncodingException e) {
+			// every JVM supports UTF-8
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
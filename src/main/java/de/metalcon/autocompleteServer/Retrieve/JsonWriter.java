@@ -0,0 +1,258 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes JSON as UTF-8 into a growing byte array, without creating Strings or
+ * JSON objects on the way. Strings are escaped the way json-simple escapes
+ * them, so the output matches the one of {@link org.json.simple.JSONValue}.
+ * Every thread reuses one writer through {@link #get()}, so once its buffer
+ * has grown to the size of the responses, encoding a response allocates
+ * nothing. The size of the encoded JSON is known before it is written, which
+ * gives the Content-Length of the response.
+ */
+final class JsonWriter {
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	/**
+	 * the largest buffer a thread keeps for the next response, so that a
+	 * response with large images does not pin its buffer for good
+	 */
+	private static final int MAX_KEPT_CAPACITY = 64 * 1024;
+
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7',
+			'8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+	private static final ThreadLocal<JsonWriter> WRITERS = new ThreadLocal<JsonWriter>() {
+
+		@Override
+		protected JsonWriter initialValue() {
+			return new JsonWriter(INITIAL_CAPACITY);
+		}
+	};
+
+	private byte[] buffer;
+
+	private int size;
+
+	/**
+	 * the chars of the string being written, which are faster to read from
+	 * an array than through String#charAt
+	 */
+	private char[] chars = new char[256];
+
+	/**
+	 * @param capacity
+	 *            the number of bytes the writer holds before it grows
+	 */
+	JsonWriter(int capacity) {
+		this.buffer = new byte[Math.max(capacity, 16)];
+	}
+
+	/**
+	 * returns the empty writer of the current thread. It stays valid until
+	 * the thread calls this method again
+	 */
+	static JsonWriter get() {
+		JsonWriter writer = WRITERS.get();
+		if (writer.buffer.length > MAX_KEPT_CAPACITY) {
+			writer.buffer = new byte[INITIAL_CAPACITY];
+		}
+		writer.size = 0;
+		return writer;
+	}
+
+	/**
+	 * writes a char that needs neither escaping nor more than one byte, such
+	 * as the brackets and separators of JSON
+	 *
+	 * @param c
+	 */
+	JsonWriter write(char c) {
+		this.ensureCapacity(1);
+		this.buffer[this.size++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * writes bytes that are JSON already
+	 *
+	 * @param json
+	 */
+	JsonWriter write(byte[] json) {
+		this.ensureCapacity(json.length);
+		System.arraycopy(json, 0, this.buffer, this.size, json.length);
+		this.size += json.length;
+		return this;
+	}
+
+	/**
+	 * writes the string as a quoted and escaped JSON string
+	 *
+	 * @param string
+	 */
+	JsonWriter writeString(String string) {
+		this.write('"');
+		// the buffer and size are kept in locals, so that the loop over the
+		// plain chars of long strings such as images stays tight
+		byte[] buffer = this.buffer;
+		int size = this.size;
+		int length = string.length();
+		if (length > this.chars.length) {
+			this.chars = new char[Math.max(length, 2 * this.chars.length)];
+		}
+		char[] chars = this.chars;
+		string.getChars(0, length, chars, 0);
+		int i = 0;
+		while (i < length) {
+			// room for the rest of the string if it is plain, and for the six
+			// bytes of the longest escape
+			if (size + (length - i) + 6 > buffer.length) {
+				this.size = size;
+				this.ensureCapacity((length - i) + 6);
+				buffer = this.buffer;
+			}
+			char c = chars[i];
+			// digits, letters and most punctuation are copied as they are
+			while (c >= '0' && c < 0x7F && c != '\\') {
+				buffer[size++] = (byte) c;
+				if (++i == length) {
+					break;
+				}
+				c = chars[i];
+			}
+			if (i == length) {
+				break;
+			}
+			if (c >= 0x80) {
+				if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(chars[i + 1])) {
+					size = writeCodePoint(buffer, size,
+							Character.toCodePoint(c, chars[++i]));
+				} else if (Character.isSurrogate(c)) {
+					// like String#getBytes
+					buffer[size++] = '?';
+				} else if (c <= 0x9F || (c >= 0x2000 && c <= 0x20FF)) {
+					size = writeEscape(buffer, size, c);
+				} else {
+					size = writeCodePoint(buffer, size, c);
+				}
+			} else {
+				size = writeAscii(buffer, size, c);
+			}
+			i++;
+		}
+		this.size = size;
+		return this.write('"');
+	}
+
+	/**
+	 * writes the name and the value of a field of a JSON object
+	 *
+	 * @param name
+	 * @param value
+	 */
+	JsonWriter writeField(String name, String value) {
+		return this.writeString(name).write(':').writeString(value);
+	}
+
+	/**
+	 * returns the number of bytes written
+	 */
+	int size() {
+		return this.size;
+	}
+
+	void writeTo(OutputStream out) throws IOException {
+		out.write(this.buffer, 0, this.size);
+	}
+
+	byte[] toByteArray() {
+		byte[] json = new byte[this.size];
+		System.arraycopy(this.buffer, 0, json, 0, this.size);
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return new String(this.buffer, 0, this.size, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * writes an ASCII char below '0' or the backslash, escaping it where JSON
+	 * or json-simple do, and returns the new size
+	 */
+	private static int writeAscii(byte[] buffer, int size, char c) {
+		switch (c) {
+		case '"':
+		case '\\':
+		case '/':
+			return writeEscape(buffer, size, c);
+		case '\b':
+			return writeEscape(buffer, size, 'b');
+		case '\f':
+			return writeEscape(buffer, size, 'f');
+		case '\n':
+			return writeEscape(buffer, size, 'n');
+		case '\r':
+			return writeEscape(buffer, size, 'r');
+		case '\t':
+			return writeEscape(buffer, size, 't');
+		default:
+			if (c < 0x20 || c == 0x7F) {
+				return writeEscape(buffer, size, c);
+			}
+			buffer[size] = (byte) c;
+			return size + 1;
+		}
+	}
+
+	/**
+	 * writes the escape of a char with a short escape, or the \\u escape of a
+	 * control char, and returns the new size
+	 */
+	private static int writeEscape(byte[] buffer, int size, char c) {
+		buffer[size++] = '\\';
+		if (c >= 0x20 && c < 0x7F) {
+			buffer[size++] = (byte) c;
+			return size;
+		}
+		buffer[size++] = 'u';
+		buffer[size++] = HEX[(c >> 12) & 0xF];
+		buffer[size++] = HEX[(c >> 8) & 0xF];
+		buffer[size++] = HEX[(c >> 4) & 0xF];
+		buffer[size++] = HEX[c & 0xF];
+		return size;
+	}
+
+	/**
+	 * writes the UTF-8 bytes of a code point above 0x7F and returns the new
+	 * size
+	 */
+	private static int writeCodePoint(byte[] buffer, int size, int codePoint) {
+		if (codePoint < 0x800) {
+			buffer[size++] = (byte) (0xC0 | (codePoint >> 6));
+		} else if (codePoint < 0x10000) {
+			buffer[size++] = (byte) (0xE0 | (codePoint >> 12));
+			buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+		} else {
+			buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+			buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+		}
+		buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+		return size;
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (this.size + bytes > this.buffer.length) {
+			byte[] grown = new byte[Math.max(this.buffer.length * 2, this.size
+					+ bytes)];
+			System.arraycopy(this.buffer, 0, grown, 0, this.size);
+			this.buffer = grown;
+		}
+	}
+}
@@ -1,12 +1,23 @@
 package de.metalcon.autocompleteServer.Retrieve;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 
+import de.metalcon.autocompleteServer.Helper.CategoryIndex;
 import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Handle;
+import de.metalcon.autocompleteServer.Helper.MappedSuggestTree;
+import de.metalcon.autocompleteServer.Helper.MultiTermQuery;
+import de.metalcon.autocompleteServer.Helper.PhoneticIndex;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 import de.metalcon.autocompleteServer.Helper.SuggestTree;
-import de.metalcon.autocompleteServer.Helper.SuggestTree.Node;
+import de.metalcon.autocompleteServer.Helper.SuggestTree.Page;
+import de.metalcon.autocompleteServer.Helper.TokenIndex;
 
 /**
  * This class is a helper class to process the Read Requests
@@ -24,25 +35,84 @@ public class ProcessRetrieveRequest {
 	public static ProcessRetrieveResponse checkRequestParameter(
 			HttpServletRequest request, ServletContext context) {
 		ProcessRetrieveResponse response = new ProcessRetrieveResponse(context);
+		response.setInlineImages(request
+				.getParameter(ProtocolConstants.INLINE_IMAGES_PARAMETER) != null);
 		Integer numItems = checkNumItems(request, response);
 		String term = checkTerm(request, response);
 		if (term == null) {
 			return response;
 		}
-		SuggestTree index = checkIndexName(request, response, context);
+		String indexName = checkIndexName(request, response, context);
+		SuggestTree index = ContextListener.getIndex(indexName, context);
+		MappedSuggestTree mappedIndex = ContextListener.getMappedIndex(
+				indexName, context);
+		if (mappedIndex != null) {
+			// a mapped index keeps no categories
+			checkCategory(request, response, null);
+			retrieveMappedSuggestions(response, mappedIndex, index, term,
+					numItems);
+			return response;
+		}
 		if (index == null) {
 			response.addError(RetrieveStatusCodes.NO_INDEX_AVAILABLE);
 			return response;
 		}
-		retrieveSuggestions(request, response, index, term, numItems);
+		TokenIndex tokenIndex = ContextListener.getTokenIndex(indexName,
+				context);
+		PhoneticIndex phoneticIndex = ContextListener.getPhoneticIndex(
+				indexName, context);
+		SuggestTree categoryTree = checkCategory(request, response,
+				ContextListener.getCategoryIndex(indexName, context));
+		if (categoryTree != null) {
+			// the token and phonetic indexes do not know the categories, so
+			// only the tree of the category answers
+			index = categoryTree;
+			tokenIndex = null;
+			phoneticIndex = null;
+		}
+		Integer maxDistance = checkFuzzy(request, response, term);
+		if (maxDistance > 0) {
+			retrieveFuzzySuggestions(response, index, term, numItems,
+					maxDistance);
+		} else {
+			retrieveSuggestions(request, response, index, tokenIndex,
+					phoneticIndex, term, numItems);
+		}
 		return response;
 	}
 
+	/**
+	 * checks the ASTP request for the category the suggestions should belong
+	 * to and returns the tree of that category, or null if the parameter is
+	 * not set. If the category is unknown or the index keeps no categories, a
+	 * warning is added and null is returned, so suggestions of all categories
+	 * are retrieved
+	 * 
+	 * @param request
+	 * @param response
+	 * @param categoryIndex
+	 */
+	private static SuggestTree checkCategory(HttpServletRequest request,
+			ProcessRetrieveResponse response, CategoryIndex categoryIndex) {
+		String category = request
+				.getParameter(ProtocolConstants.CATEGORY_PARAMETER);
+		if (category == null) {
+			return null;
+		}
+		int id = Arrays.asList(ProtocolConstants.CATEGORIES).indexOf(category);
+		if (id < 0 || categoryIndex == null) {
+			response.addCategoryWarning(RetrieveStatusCodes.CATEGORY_UNKNOWN);
+			return null;
+		}
+		return categoryIndex.getIndex(id);
+	}
+
 	/**
 	 * checks the ASTP request for the number of items that should be retrieved
 	 * If the parameter is not set we use the default value If the parameter is
 	 * not set correctly (no integer or bigger than the maximum allowed Integer
-	 * or negative) we use the default value
+	 * or negative) we use the default value. Values above the k of the index
+	 * are allowed up to MAX_NUM_ITEMS
 	 * 
 	 * @param request
 	 * @param response
@@ -55,7 +125,7 @@ public class ProcessRetrieveRequest {
 			try {
 				numItems = Integer.parseInt(tmp);
 				if ((numItems < 1)
-						|| (numItems > ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS)) {
+						|| (numItems > ProtocolConstants.MAX_NUM_ITEMS)) {
 					numItems = ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS;
 					response.addNumItemsWarning(RetrieveStatusCodes.NUMITEMS_OUT_OF_RANGE);
 				}
@@ -72,36 +142,61 @@ public class ProcessRetrieveRequest {
 	}
 
 	/**
-	 * Returns the search Index according to the indexName Parameter of the ASTP
-	 * if no Parameter was in the request the default index will be used. if the
-	 * parameter did not match any known index the default index will be used.
-	 * returns null if the default index is requested but does not exist
+	 * checks the ASTP request for the edit distance of a fuzzy search. If the
+	 * parameter is not set the term is searched exactly. If it is not set
+	 * correctly (no integer, negative or bigger than MAX_FUZZY_DISTANCE) a
+	 * warning is added and the term is searched exactly. The distance is
+	 * lowered to one per three characters of the term
+	 * 
+	 * @param request
+	 * @param response
+	 * @param term
+	 */
+	private static Integer checkFuzzy(HttpServletRequest request,
+			ProcessRetrieveResponse response, String term) {
+		String tmp = request.getParameter(ProtocolConstants.FUZZY_PARAMETER);
+		if (tmp == null) {
+			return 0;
+		}
+		Integer maxDistance = null;
+		try {
+			maxDistance = Integer.parseInt(tmp);
+		} catch (NumberFormatException e) {
+			response.addFuzzyWarning(RetrieveStatusCodes.FUZZY_INVALID);
+			return 0;
+		}
+		if ((maxDistance < 0)
+				|| (maxDistance > ProtocolConstants.MAX_FUZZY_DISTANCE)) {
+			response.addFuzzyWarning(RetrieveStatusCodes.FUZZY_INVALID);
+			return 0;
+		}
+		return Math.min(maxDistance, term.length() / 3);
+	}
+
+	/**
+	 * Returns the name of the search Index according to the indexName
+	 * Parameter of the ASTP if no Parameter was in the request the default
+	 * index will be used. if the parameter did not match any known index the
+	 * default index will be used, which may not exist either
 	 * 
 	 * @param request
 	 * @param response
 	 */
-	private static SuggestTree checkIndexName(HttpServletRequest request,
+	private static String checkIndexName(HttpServletRequest request,
 			ProcessRetrieveResponse response, ServletContext context) {
 		String indexName = request
 				.getParameter(ProtocolConstants.INDEX_PARAMETER);
-		SuggestTree index = null;
 		// if no indexName Parameter was provided use the default index.
 		if (indexName == null) {
 			indexName = ProtocolConstants.DEFAULT_INDEX_NAME;
 			response.addIndexWarning(RetrieveStatusCodes.NO_INDEX_GIVEN);
-			index = ContextListener.getIndex(indexName, context);
-		}
-		// if an indexName Parameter was provided use this one
-		else {
-			index = ContextListener.getIndex(indexName, context);
-			// if the indexName given is unknown to the server use the default.
-			if (index == null) {
-				indexName = ProtocolConstants.DEFAULT_INDEX_NAME;
-				response.addIndexWarning(RetrieveStatusCodes.INDEX_UNKNOWN);
-				index = ContextListener.getIndex(indexName, context);
-			}
 		}
-		return index;
+		// if the indexName given is unknown to the server use the default.
+		else if (!ContextListener.hasIndex(indexName, context)) {
+			indexName = ProtocolConstants.DEFAULT_INDEX_NAME;
+			response.addIndexWarning(RetrieveStatusCodes.INDEX_UNKNOWN);
+		}
+		return indexName;
 	}
 
 	/**
@@ -119,29 +214,311 @@ public class ProcessRetrieveRequest {
 				response.addError(RetrieveStatusCodes.NO_TERM_GIVEN);
 				return null;
 			}
-			return term;
+			// the indexes compare normalized characters, so the term is
+			// normalized once for all lookups
+			return SuggestTree.normalize(term);
 		}
 	}
 
 	/**
+	 * retrieves the page of suggestions that starts at the continuation of the
+	 * request, or the first page if no continuation was given. If there are
+	 * more suggestions, the continuation for the next page is added to the
+	 * response. If the index has a token index, the first page merges the
+	 * suggestions that start with the term with those that have a later word
+	 * starting with it, by weight, and the continuation resumes after the
+	 * suggestions of the index that made it onto the page. If the first page
+	 * is not full, it is filled up with suggestions that contain all of the
+	 * terms, if the index has a token index, and then with suggestions that
+	 * sound like the term, if it has a phonetic index. Every entity is added
+	 * once
+	 * 
 	 * @param request
 	 * @param response
 	 * @param index
+	 * @param tokenIndex
+	 * @param phoneticIndex
 	 * @param term
 	 * @param numItems
 	 */
 	private static void retrieveSuggestions(HttpServletRequest request,
-			ProcessRetrieveResponse response, SuggestTree index, String term,
+			ProcessRetrieveResponse response, SuggestTree index,
+			TokenIndex tokenIndex, PhoneticIndex phoneticIndex, String term,
 			Integer numItems) {
-		Node suggestions = index.getBestSuggestions(term);
-		if (suggestions == null) {
+		String continuation = request
+				.getParameter(ProtocolConstants.CONTINUATION_PARAMETER);
+		Page suggestions;
+		try {
+			suggestions = index.getBestSuggestions(term, numItems,
+					continuation);
+		} catch (IllegalArgumentException e) {
+			response.addContinuationWarning(RetrieveStatusCodes.CONTINUATION_INVALID);
+			continuation = null;
+			suggestions = index.getBestSuggestions(term, numItems, null);
+		}
+		HashSet<String> found = new HashSet<String>();
+		int listed = 0;
+		// later pages would repeat the added suggestions of earlier ones
+		if (continuation == null && tokenIndex != null) {
+			listed = mergeTokenSuggestions(response, found, index, tokenIndex,
+					suggestions, term, numItems);
+			if (listed < 0) {
+				return;
+			}
+		} else if (suggestions != null) {
+			listed = addPage(response, found, index, suggestions);
+			if (suggestions.getContinuation() != null) {
+				return;
+			}
+		}
+		if (continuation == null) {
+			if (tokenIndex != null && listed < numItems) {
+				listed += addSuggestions(response, found,
+						MultiTermQuery.getSuggestions(index, tokenIndex, term,
+								numItems, ProtocolConstants.MULTI_TERM_BUDGET),
+						numItems - listed);
+			}
+			if (phoneticIndex != null && listed < numItems) {
+				listed += addSuggestions(response, found,
+						phoneticIndex.getSuggestions(term, numItems), numItems
+								- listed);
+			}
+		}
+		if (listed == 0) {
 			response.addError(RetrieveStatusCodes.NO_SUGGESTIONS_MATCHING_TERM);
-			return;
 		}
-		for (int i = 0; i < Math.min(suggestions.listLength(), numItems); ++i) {
+	}
+
+	/**
+	 * adds the page of the index to the response, along with its
+	 * continuation, and returns the number of added suggestions
+	 * 
+	 * @param response
+	 * @param found
+	 * @param index
+	 * @param suggestions
+	 */
+	private static int addPage(ProcessRetrieveResponse response,
+			HashSet<String> found, SuggestTree index, Page suggestions) {
+		boolean encoded = response.addSuggestionFragment(index, suggestions);
+		for (int i = 0; i < suggestions.listLength(); ++i) {
 			String suggestString = suggestions.getSuggestion(i);
 			String key = suggestions.getKey(i);
-			response.addSuggestion(suggestString, key);
+			if (!encoded) {
+				response.addSuggestion(suggestString, key,
+						(Handle) suggestions.getPayload(i));
+			}
+			found.add(entity(suggestString, key));
+		}
+		String next = suggestions.getContinuation();
+		if (next != null) {
+			response.addContinuation(next);
+		}
+		return suggestions.listLength();
+	}
+
+	/**
+	 * adds up to count suggestions to the response, merged by weight from the
+	 * first page of the index and the suggestions of the token index, and
+	 * returns their number, or -1 if the index has more suggestions and their
+	 * continuation was added. If only some of the page made it, the
+	 * continuation resumes after them
+	 * 
+	 * @param response
+	 * @param found
+	 * @param index
+	 * @param tokenIndex
+	 * @param suggestions
+	 *            the first page of the index, or null
+	 * @param term
+	 * @param count
+	 */
+	private static int mergeTokenSuggestions(ProcessRetrieveResponse response,
+			HashSet<String> found, SuggestTree index, TokenIndex tokenIndex,
+			Page suggestions, String term, int count) {
+		int length = (suggestions != null) ? suggestions.listLength() : 0;
+		TokenIndex.RankedIterator tokens = tokenIndex.iterator(term);
+		ArrayList<String> tokenSuggestions = new ArrayList<String>();
+		ArrayList<String> tokenKeys = new ArrayList<String>();
+		// the merged suggestions in order, the ones of the page by their
+		// position and the token suggestions by their inverted position
+		ArrayList<Integer> merged = new ArrayList<Integer>();
+		HashSet<String> entities = new HashSet<String>();
+		HashSet<String> tokenEntities = new HashSet<String>();
+		int fromPage = 0;
+		String token = tokens.next();
+		while (merged.size() < count && (fromPage < length || token != null)) {
+			if (fromPage < length
+					&& (token == null || suggestions.getWeight(fromPage) >= tokens
+							.weight())) {
+				// the page may list an entity more than once, as it is
+				String entity = entity(suggestions.getSuggestion(fromPage),
+						suggestions.getKey(fromPage));
+				if (!tokenEntities.contains(entity)) {
+					entities.add(entity);
+					merged.add(fromPage);
+				}
+				fromPage++;
+			} else {
+				String entity = entity(token, tokens.key());
+				if (entities.add(entity)) {
+					tokenEntities.add(entity);
+					merged.add(~tokenSuggestions.size());
+					tokenSuggestions.add(token);
+					tokenKeys.add(tokens.key());
+				}
+				token = tokens.next();
+			}
+		}
+		if (tokenSuggestions.isEmpty()) {
+			if (suggestions == null) {
+				return 0;
+			}
+			int listed = addPage(response, found, index, suggestions);
+			return (suggestions.getContinuation() != null) ? -1 : listed;
+		}
+		for (int position : merged) {
+			String suggestString;
+			String key;
+			Handle handle;
+			if (position >= 0) {
+				suggestString = suggestions.getSuggestion(position);
+				key = suggestions.getKey(position);
+				handle = (Handle) suggestions.getPayload(position);
+			} else {
+				suggestString = tokenSuggestions.get(~position);
+				key = tokenKeys.get(~position);
+				handle = (Handle) index.payloadOf(suggestString);
+			}
+			found.add(entity(suggestString, key));
+			response.addSuggestion(suggestString, key, handle);
+		}
+		if (fromPage < length) {
+			response.addContinuation(index.getBestSuggestions(term, fromPage,
+					null).getContinuation());
+			return -1;
+		}
+		if (suggestions != null && suggestions.getContinuation() != null) {
+			response.addContinuation(suggestions.getContinuation());
+			return -1;
+		}
+		return merged.size();
+	}
+
+	/**
+	 * retrieves the suggestions of a read-only index that was mapped from an
+	 * index file, merged by weight with the suggestions created since the
+	 * start, if the index takes them. Such an index only keeps the top k list
+	 * of every prefix, so at most k of its suggestions are retrieved and there
+	 * is no continuation, fuzzy search or filling up from other indexes. A
+	 * suggestion that was created again is retrieved with its new weight, and
+	 * every entity is added once
+	 * 
+	 * @param response
+	 * @param mappedIndex
+	 * @param index
+	 *            the suggestions created since the start, or null
+	 * @param term
+	 * @param numItems
+	 */
+	private static void retrieveMappedSuggestions(
+			ProcessRetrieveResponse response, MappedSuggestTree mappedIndex,
+			SuggestTree index, String term, Integer numItems) {
+		MappedSuggestTree.Node mapped = mappedIndex.getBestSuggestions(term);
+		SuggestTree.Node created = (index != null) ? index.getBestSuggestions(
+				term, numItems) : null;
+		int mappedLength = (mapped != null) ? mapped.listLength() : 0;
+		int createdLength = (created != null) ? created.listLength() : 0;
+		HashSet<String> found = new HashSet<String>();
+		int listed = 0;
+		int fromMapped = 0;
+		int fromCreated = 0;
+		while (listed < numItems
+				&& (fromMapped < mappedLength || fromCreated < createdLength)) {
+			if (fromCreated == createdLength
+					|| (fromMapped < mappedLength && mapped
+							.getWeight(fromMapped) >= created
+							.getWeight(fromCreated))) {
+				String suggestString = mapped.getSuggestion(fromMapped);
+				String key = mapped.getKey(fromMapped);
+				fromMapped++;
+				if ((index == null || index.weightOf(suggestString) == -1)
+						&& found.add(entity(suggestString, key))) {
+					response.addSuggestion(suggestString, key);
+					listed++;
+				}
+			} else {
+				String suggestString = created.getSuggestion(fromCreated);
+				String key = created.getKey(fromCreated);
+				if (found.add(entity(suggestString, key))) {
+					response.addSuggestion(suggestString, key,
+							(Handle) created.getPayload(fromCreated));
+					listed++;
+				}
+				fromCreated++;
+			}
+		}
+		if (listed == 0) {
+			response.addError(RetrieveStatusCodes.NO_SUGGESTIONS_MATCHING_TERM);
+		}
+	}
+
+	/**
+	 * adds up to count suggestions of entities that were not found yet to the
+	 * response and returns the number of added suggestions
+	 * 
+	 * @param response
+	 * @param found
+	 * @param suggestions
+	 *            suggestions mapped to their keys
+	 * @param count
+	 */
+	private static int addSuggestions(ProcessRetrieveResponse response,
+			HashSet<String> found, Map<String, String> suggestions, int count) {
+		int added = 0;
+		for (Map.Entry<String, String> entry : suggestions.entrySet()) {
+			if (added == count) {
+				break;
+			}
+			if (found.add(entity(entry.getKey(), entry.getValue()))) {
+				response.addSuggestion(entry.getKey(), entry.getValue());
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * returns the key of a suggestion, which identifies the entity it
+	 * suggests, or the suggestion itself if it has no key
+	 */
+	private static String entity(String suggestion, String key) {
+		return (key != null) ? key : suggestion;
+	}
+
+	/**
+	 * retrieves the suggestions that start with a string within the given
+	 * edit distance of the term. Fuzzy results are not paged, so no
+	 * continuation is added
+	 * 
+	 * @param response
+	 * @param index
+	 * @param term
+	 * @param numItems
+	 * @param maxDistance
+	 */
+	private static void retrieveFuzzySuggestions(
+			ProcessRetrieveResponse response, SuggestTree index, String term,
+			Integer numItems, Integer maxDistance) {
+		SuggestTree.Node suggestions = index.getFuzzySuggestions(term,
+				maxDistance, numItems, ProtocolConstants.FUZZY_NODE_BUDGET);
+		if (suggestions == null) {
+			response.addError(RetrieveStatusCodes.NO_SUGGESTIONS_MATCHING_TERM);
+			return;
+		}
+		for (int i = 0; i < suggestions.listLength(); ++i) {
+			response.addSuggestion(suggestions.getSuggestion(i),
+					suggestions.getKey(i), (Handle) suggestions.getPayload(i));
 		}
 	}
 
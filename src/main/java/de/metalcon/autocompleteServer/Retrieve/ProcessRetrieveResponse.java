@@ -1,14 +1,19 @@
 package de.metalcon.autocompleteServer.Retrieve;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.servlet.ServletContext;
 
-import org.json.simple.JSONObject;
-
 import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Handle;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Image;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+import de.metalcon.autocompleteServer.Helper.SuggestTree;
+import de.metalcon.autocompleteServer.Helper.SuggestTree.Page;
 
 /**
  * The ProcessRetrieveResponse class handles the data that are send to the
@@ -20,9 +25,32 @@ import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
  * 
  */
 public class ProcessRetrieveResponse {
+	private static final byte[] SUGGESTION_LIST_FIELD = ("\""
+			+ ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST + "\":[")
+			.getBytes(StandardCharsets.UTF_8);
+
 	private final ServletContext context;
-	private JSONObject jsonResponse;
-	private final ArrayList<HashMap<String, String>> suggestionsResponseList;
+	/**
+	 * the suggestions added one by one, each followed by its key and its
+	 * image, which may be null
+	 */
+	private String[] suggestions;
+	private int suggestionCount;
+	/**
+	 * the warnings, the error and the continuation, each name followed by its
+	 * value
+	 */
+	private String[] fields;
+	private int fieldCount;
+	/**
+	 * the encoded suggestions that come before the ones in the list, or null
+	 */
+	private SuggestionFragment fragment;
+	/**
+	 * whether the suggestions carry their images instead of references to the
+	 * image servlet
+	 */
+	private boolean inlineImages;
 
 	/**
 	 * @param context
@@ -31,19 +59,13 @@ public class ProcessRetrieveResponse {
 	public ProcessRetrieveResponse(ServletContext context) {
 		// TODO:what happens if the provided context is null?
 		this.context = context;
-		this.jsonResponse = new JSONObject();
-		this.suggestionsResponseList = new ArrayList<HashMap<String, String>>();
 	}
 
 	/**
 	 * @param numitemsNotGiven
 	 */
-	@SuppressWarnings("unchecked")
 	public void addNumItemsWarning(String message) {
-		if (this.jsonResponse == null) {
-			this.jsonResponse = new JSONObject();
-		}
-		this.jsonResponse.put("warning:numItems", message);
+		this.putField("warning:numItems", message);
 	}
 
 	/**
@@ -51,24 +73,47 @@ public class ProcessRetrieveResponse {
 	 * 
 	 * @param noIndexGiven
 	 */
-	@SuppressWarnings("unchecked")
 	public void addIndexWarning(String noIndexGiven) {
-		if (this.jsonResponse == null) {
-			this.jsonResponse = new JSONObject();
-		}
-		this.jsonResponse.put("warning:noIndexGiven", noIndexGiven);
+		this.putField("warning:noIndexGiven", noIndexGiven);
+	}
+
+	/**
+	 * @param message
+	 */
+	public void addContinuationWarning(String message) {
+		this.putField("warning:continuation", message);
+	}
+
+	/**
+	 * @param message
+	 */
+	public void addFuzzyWarning(String message) {
+		this.putField("warning:fuzzy", message);
+	}
+
+	/**
+	 * @param message
+	 */
+	public void addCategoryWarning(String message) {
+		this.putField("warning:category", message);
 	}
 
 	/**
 	 * @param noIndexAvailable
 	 */
-	@SuppressWarnings("unchecked")
 	public void addError(String message) {
 		// TODO Errors should really stop the request and send the answer away
-		if (this.jsonResponse == null) {
-			this.jsonResponse = new JSONObject();
-		}
-		this.jsonResponse.put("error", message);
+		this.putField("error", message);
+	}
+
+	/**
+	 * makes the suggestions added from then on carry their images as data
+	 * URIs instead of references to the {@link ImageServlet}
+	 * 
+	 * @param inlineImages
+	 */
+	public void setInlineImages(boolean inlineImages) {
+		this.inlineImages = inlineImages;
 	}
 
 	/**
@@ -77,36 +122,153 @@ public class ProcessRetrieveResponse {
 	 */
 	public void addSuggestion(String suggestString, String key) {
 		// also retrieve image from the image index
-		HashMap<String, String> suggestionJsonEntry = new HashMap<String, String>();
-		suggestionJsonEntry.put(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION,
-				suggestString);
+		Image image = null;
 		if (key != null) {
-			suggestionJsonEntry.put(
-					ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_KEY, key);
-			HashMap<String, String> imageIndex = ContextListener
-					.getImageIndex(this.context);
-			String serializedImage = imageIndex.get(key);
-			if (serializedImage != null) {
-				suggestionJsonEntry.put(
-						ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_IMAGE,
-						serializedImage);
-			}
+			ImageStore imageStore = ContextListener.getImageStore(this.context);
+			image = (imageStore != null) ? imageStore.getImage(key) : null;
+		}
+		this.addSuggestion(suggestString, key, image);
+	}
+
+	/**
+	 * adds a suggestion with the handle of the image of its key, which the
+	 * index keeps with the suggestion, so that the image is not looked up by
+	 * the key. Without a handle, the image is looked up
+	 * 
+	 * @param suggestString
+	 * @param key
+	 * @param handle
+	 *            the payload of the suggestion in the index
+	 */
+	public void addSuggestion(String suggestString, String key, Handle handle) {
+		if (handle == null) {
+			this.addSuggestion(suggestString, key);
+			return;
+		}
+		this.addSuggestion(suggestString, key, handle.getImage());
+	}
+
+	private void addSuggestion(String suggestString, String key, Image image) {
+		String serializedImage = null;
+		if (image != null) {
+			serializedImage = this.inlineImages ? ContextListener
+					.getImageStore(this.context).getDataUri(image)
+					: ImageServlet.reference(key, image);
+		}
+		if (this.suggestions == null) {
+			this.suggestions = new String[3 * ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS];
+		} else if (3 * this.suggestionCount == this.suggestions.length) {
+			this.suggestions = Arrays.copyOf(this.suggestions,
+					2 * this.suggestions.length);
+		}
+		int i = 3 * this.suggestionCount++;
+		this.suggestions[i] = suggestString;
+		this.suggestions[i + 1] = key;
+		this.suggestions[i + 2] = serializedImage;
+	}
+
+	/**
+	 * adds the suggestions of the page as the first suggestions of the
+	 * response, from the fragment the index keeps for the list of the page if
+	 * it is still valid, or from a newly encoded one that the index keeps from
+	 * then on. Returns false without adding anything if the index keeps no
+	 * fragments, suggestions were already added or the images are inlined,
+	 * in which case the suggestions are added one by one
+	 * 
+	 * @param index
+	 * @param suggestions
+	 */
+	public boolean addSuggestionFragment(SuggestTree index, Page suggestions) {
+		if (!index.keepsFragments() || this.fragment != null
+				|| this.suggestionCount > 0 || this.inlineImages) {
+			return false;
+		}
+		// images are shared by all indexes, so their changes bump the version
+		// of all indexes, which changes the references to them
+		ResponseCache cache = ContextListener.getResponseCache(this.context);
+		long version = (cache != null) ? cache.version(null) : 0;
+		SuggestionFragment fragment = (SuggestionFragment) index
+				.getFragment(suggestions);
+		if (fragment == null || fragment.version != version) {
+			fragment = SuggestionFragment.encode(suggestions,
+					ContextListener.getImageStore(this.context), version);
+			index.putFragment(suggestions, fragment);
 		}
-		this.suggestionsResponseList.add(suggestionJsonEntry);
+		this.fragment = fragment;
+		return true;
+	}
+
+	/**
+	 * adds the continuation that the client can send with its next request to
+	 * get the next page of suggestions
+	 * 
+	 * @param continuation
+	 */
+	public void addContinuation(String continuation) {
+		this.putField(ProtocolConstants.RESP_JSON_FIELD_CONTINUATION,
+				continuation);
 	}
 
 	/**
-	 * creates the response JSON String that will be send to the client
-	 * containing all the data.
+	 * writes the UTF-8 encoded response JSON to the stream, through the
+	 * reusable buffer of the current thread
 	 * 
-	 * @return
-	 */
-	@SuppressWarnings("unchecked")
-	public String buildJsonResonse() {
-		this.jsonResponse.put(
-				ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST,
-				this.suggestionsResponseList);
-		return this.jsonResponse.toJSONString();
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeJsonResponse(OutputStream out) throws IOException {
+		JsonWriter json = JsonWriter.get();
+		this.writeJsonResponse(json);
+		json.writeTo(out);
+	}
+
+	/**
+	 * writes the response JSON to the writer. The encoded suggestions of a
+	 * fragment are written as they are, so only the fields around them are
+	 * encoded for each request
+	 * 
+	 * @param json
+	 */
+	void writeJsonResponse(JsonWriter json) {
+		json.write('{').write(SUGGESTION_LIST_FIELD);
+		boolean first = true;
+		if (this.fragment != null && this.fragment.json.length > 0) {
+			json.write(this.fragment.json);
+			first = false;
+		}
+		for (int i = 0; i < this.suggestionCount; i++) {
+			if (!first) {
+				json.write(',');
+			}
+			SuggestionFragment.writeSuggestion(json, this.suggestions[3 * i],
+					this.suggestions[3 * i + 1], this.suggestions[3 * i + 2]);
+			first = false;
+		}
+		json.write(']');
+		for (int i = 0; i < this.fieldCount; i++) {
+			json.write(',').writeField(this.fields[2 * i],
+					this.fields[2 * i + 1]);
+		}
+		json.write('}');
+	}
+
+	/**
+	 * sets the field of the response, replacing an earlier value
+	 */
+	private void putField(String name, String value) {
+		for (int i = 0; i < this.fieldCount; i++) {
+			if (this.fields[2 * i].equals(name)) {
+				this.fields[2 * i + 1] = value;
+				return;
+			}
+		}
+		if (this.fields == null) {
+			this.fields = new String[8];
+		} else if (2 * this.fieldCount == this.fields.length) {
+			this.fields = Arrays.copyOf(this.fields, 2 * this.fields.length);
+		}
+		this.fields[2 * this.fieldCount++] = name;
+		this.fields[2 * this.fieldCount - 1] = value;
 	}
 
 }
@@ -0,0 +1,386 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the final bytes of retrieve responses, so that the requests for the
+ * few short prefixes that make up most of the traffic neither walk an index
+ * nor build JSON again. The cache is bounded by the bytes of its responses.
+ * When it is full, the least recently used responses are evicted, but only
+ * if the new response was requested more often than each of them, so that a
+ * burst of rare terms does not push out the frequent ones. The request
+ * frequencies are estimated by a count-min sketch of small counters that are
+ * halved from time to time, so that old popularity fades (TinyLFU).
+ * <p>
+ * A hit takes no lock, as most requests are hits. It only stamps the time of
+ * its use on the response and counts the request in the sketch, whose
+ * counters may lose an increment to a concurrent one, which the estimate
+ * tolerates. Storing a response takes a lock, and the least recently used
+ * response is found among a few sampled ones, which approximates the order of
+ * use without keeping a list that every hit would have to update.
+ * <p>
+ * Every index has a write version, which the worker bumps after each change.
+ * A response is stored with the version its index had before the response was
+ * computed and only returned while the index still has that version, so that
+ * a response is never older than the last change of its index.
+ */
+public class ResponseCache {
+
+	/**
+	 * the number of hash functions of the sketch
+	 */
+	private static final int DEPTH = 4;
+
+	/**
+	 * the highest count of a counter of the sketch
+	 */
+	private static final int MAX_COUNT = 15;
+
+	/**
+	 * the number of responses sampled to find the least recently used one
+	 */
+	private static final int SAMPLES = 8;
+
+	private final long maxBytes;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * the stored responses by their slot, so that they can be sampled. Only
+	 * changed with the lock held
+	 */
+	private final ArrayList<Entry> slots = new ArrayList<Entry>();
+
+	private final Random random = new Random();
+
+	private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * bumped for changes that may affect the responses of every index
+	 */
+	private volatile long globalVersion;
+
+	private final byte[] counters;
+
+	private final int mask;
+
+	/**
+	 * the number of requests counted since the counters were last halved
+	 */
+	private int samples;
+
+	private final int sampleLimit;
+
+	private long bytes;
+
+	/**
+	 * counted without the lock, so concurrent requests may lose a count
+	 */
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	private long rejections;
+
+	/**
+	 * @param maxBytes
+	 *            the number of response bytes the cache may hold
+	 * @param expectedEntries
+	 *            the number of responses the cache is expected to hold, which
+	 *            sizes the frequency sketch
+	 */
+	public ResponseCache(long maxBytes, int expectedEntries) {
+		this.maxBytes = maxBytes;
+		int width = Integer.highestOneBit(Math.max(expectedEntries, 16) - 1) << 1;
+		this.counters = new byte[DEPTH * width];
+		this.mask = width - 1;
+		this.sampleLimit = 10 * width;
+	}
+
+	/**
+	 * returns the current write version of the index, which a response has to
+	 * be stored with. It has to be read before the response is computed. If
+	 * indexName is null, only the changes that affect every index count
+	 *
+	 * @param indexName
+	 */
+	public long version(String indexName) {
+		Long version = (indexName != null) ? this.versions.get(indexName)
+				: null;
+		return this.globalVersion + ((version != null) ? version : 0);
+	}
+
+	/**
+	 * bumps the write version of the index, so that none of its stored
+	 * responses is returned anymore. If indexName is null, the responses of
+	 * every index are invalidated
+	 *
+	 * @param indexName
+	 */
+	public synchronized void invalidate(String indexName) {
+		if (indexName == null) {
+			this.globalVersion++;
+		} else {
+			Long version = this.versions.get(indexName);
+			this.versions.put(indexName, (version != null) ? version + 1 : 1);
+		}
+	}
+
+	/**
+	 * returns the response stored for the key with the given version, or null
+	 * if there is none. Every call counts as a request of the key
+	 *
+	 * @param key
+	 * @param version
+	 *            the current version of the index of the response
+	 */
+	public byte[] get(String key, long version) {
+		increment(key);
+		Entry entry = this.entries.get(key);
+		if (entry != null && entry.version != version) {
+			removeStale(entry);
+			entry = null;
+		}
+		if (entry == null) {
+			this.misses++;
+			return null;
+		}
+		entry.lastUsed = System.nanoTime();
+		this.hits++;
+		return entry.response;
+	}
+
+	/**
+	 * stores the response for the key, if the cache has room for it or the
+	 * key was requested more often than the responses that would have to be
+	 * evicted for it
+	 *
+	 * @param key
+	 * @param version
+	 *            the version of the index of the response, read before the
+	 *            response was computed
+	 * @param response
+	 */
+	public synchronized void put(String key, long version, byte[] response) {
+		remove(key);
+		long size = size(key, response);
+		if (size > this.maxBytes) {
+			this.rejections++;
+			return;
+		}
+		ArrayList<Entry> victims = new ArrayList<Entry>();
+		long free = this.maxBytes - this.bytes;
+		if (free < size) {
+			int frequency = frequency(key);
+			while (free < size) {
+				Entry victim = leastRecentlyUsed(victims);
+				if (frequency(victim.key) >= frequency) {
+					this.rejections++;
+					return;
+				}
+				victims.add(victim);
+				free += size(victim.key, victim.response);
+			}
+		}
+		for (Entry victim : victims) {
+			remove(victim.key);
+			this.evictions++;
+		}
+		Entry entry = new Entry(key, response, version);
+		entry.slot = this.slots.size();
+		this.slots.add(entry);
+		this.entries.put(key, entry);
+		this.bytes += size;
+	}
+
+	/**
+	 * returns the number of stored responses
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * returns the number of bytes of the stored responses and their keys
+	 */
+	public synchronized long bytes() {
+		return this.bytes;
+	}
+
+	public long hits() {
+		return this.hits;
+	}
+
+	public long misses() {
+		return this.misses;
+	}
+
+	/**
+	 * returns the share of requests that were answered from the cache, or 0
+	 * if there were none
+	 */
+	public double hitRate() {
+		long requests = this.hits + this.misses;
+		return (requests > 0) ? (double) this.hits / requests : 0;
+	}
+
+	/**
+	 * returns the number of responses that were evicted for others
+	 */
+	public synchronized long evictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * returns the number of responses that were not stored, because they were
+	 * requested less often than the ones they would have evicted
+	 */
+	public synchronized long rejections() {
+		return this.rejections;
+	}
+
+	private void remove(String key) {
+		Entry entry = this.entries.remove(key);
+		if (entry != null) {
+			this.bytes -= size(key, entry.response);
+			// the last slot takes the place of the removed one
+			Entry last = this.slots.remove(this.slots.size() - 1);
+			if (last != entry) {
+				last.slot = entry.slot;
+				this.slots.set(entry.slot, last);
+			}
+		}
+	}
+
+	/**
+	 * removes the response of an older version of its index, unless it has
+	 * already been replaced
+	 */
+	private synchronized void removeStale(Entry entry) {
+		if (this.entries.get(entry.key) == entry) {
+			remove(entry.key);
+		}
+	}
+
+	/**
+	 * returns the least recently used of a few randomly sampled responses, or
+	 * of all if there are only a few, other than the given ones. There has to
+	 * be such a response
+	 */
+	private Entry leastRecentlyUsed(ArrayList<Entry> excluded) {
+		int count = this.slots.size();
+		boolean sample = count - excluded.size() > SAMPLES;
+		Entry result = null;
+		for (int i = 0; i < (sample ? SAMPLES : count); i++) {
+			Entry entry = this.slots.get(sample ? this.random.nextInt(count)
+					: i);
+			if (!excluded.contains(entry)
+					&& (result == null || entry.lastUsed < result.lastUsed)) {
+				result = entry;
+			}
+		}
+		if (result == null) {
+			// every sample was excluded
+			for (Entry entry : this.slots) {
+				if (!excluded.contains(entry)
+						&& (result == null || entry.lastUsed < result.lastUsed)) {
+					result = entry;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * returns the bytes a response takes in the cache, counting the chars of
+	 * its key twice
+	 */
+	private static long size(String key, byte[] response) {
+		return 2L * key.length() + response.length;
+	}
+
+	private void increment(String key) {
+		int hash = spread(key.hashCode());
+		for (int i = 0; i < DEPTH; i++) {
+			int index = i * (this.mask + 1) + (index(hash, i) & this.mask);
+			if (this.counters[index] < MAX_COUNT) {
+				this.counters[index]++;
+			}
+		}
+		if (++this.samples >= this.sampleLimit) {
+			this.halve();
+		}
+	}
+
+	/**
+	 * halves the counters once for all requests that reached the limit at the
+	 * same time
+	 */
+	private synchronized void halve() {
+		if (this.samples < this.sampleLimit) {
+			return;
+		}
+		for (int i = 0; i < this.counters.length; i++) {
+			this.counters[i] >>= 1;
+		}
+		this.samples /= 2;
+	}
+
+	/**
+	 * returns the estimated number of recent requests of the key, the lowest
+	 * of its counters
+	 */
+	private int frequency(String key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < DEPTH; i++) {
+			frequency = Math.min(frequency, this.counters[i * (this.mask + 1)
+					+ (index(hash, i) & this.mask)]);
+		}
+		return frequency;
+	}
+
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * returns the hash of the i-th hash function, derived from the spread hash
+	 * with a different odd multiplier each
+	 */
+	private static int index(int hash, int i) {
+		int h = hash * (0x85EBCA6B + 2 * i * 0x27D4EB2E);
+		return h ^ (h >>> 15);
+	}
+
+	private static class Entry {
+
+		private final String key;
+
+		private final byte[] response;
+
+		private final long version;
+
+		/**
+		 * the time of the last use, written by hits without the lock
+		 */
+		private volatile long lastUsed;
+
+		/**
+		 * the position in the slots, changed with the lock held
+		 */
+		private int slot;
+
+		private Entry(String key, byte[] response, long version) {
+			this.key = key;
+			this.response = response;
+			this.version = version;
+			this.lastUsed = System.nanoTime();
+		}
+	}
+}
@@ -1,13 +1,18 @@
 package de.metalcon.autocompleteServer.Retrieve;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+import de.metalcon.autocompleteServer.Helper.SuggestTree;
+
 /**
  * Servlet implementation class TestServlet
  */
@@ -31,13 +36,80 @@ public class RetrieveServlet extends HttpServlet {
 	@Override
 	protected void doGet(HttpServletRequest request,
 			HttpServletResponse response) throws ServletException, IOException {
-		ProcessRetrieveResponse responseObject = ProcessRetrieveRequest
-				.checkRequestParameter(request, this.getServletContext());
-		String resultJson = responseObject.buildJsonResonse();
+		ServletContext context = this.getServletContext();
+		ResponseCache cache = ContextListener.getResponseCache(context);
+		String key = (cache != null) ? cacheKey(request) : null;
+		long version = 0;
+		byte[] resultJson = null;
+		if (key != null) {
+			version = cache.version(indexName(request, context));
+			resultJson = cache.get(key, version);
+		}
 		response.setContentType("application/json");
-		PrintWriter out = response.getWriter();
-		out.println(resultJson);
+		response.setCharacterEncoding("UTF-8");
+		OutputStream out = response.getOutputStream();
+		if (resultJson == null) {
+			ProcessRetrieveResponse responseObject = ProcessRetrieveRequest
+					.checkRequestParameter(request, context);
+			// the response is encoded into the buffer of the thread, which
+			// gives its length before anything is sent
+			JsonWriter json = JsonWriter.get();
+			responseObject.writeJsonResponse(json);
+			if (key == null) {
+				response.setContentLength(json.size());
+				json.writeTo(out);
+				out.flush();
+				return;
+			}
+			resultJson = json.toByteArray();
+			cache.put(key, version, resultJson);
+		}
+		response.setContentLength(resultJson.length);
+		out.write(resultJson);
 		out.flush();
 	}
 
+	/**
+	 * returns the key of the cached response to the request, or null if the
+	 * response is not cached. The key holds every parameter that the response
+	 * depends on, with the normalized term, as the index does not tell terms
+	 * apart that normalize to the same string. Later pages are not cached
+	 * 
+	 * @param request
+	 */
+	private static String cacheKey(HttpServletRequest request) {
+		String term = request.getParameter(ProtocolConstants.QUERY_PARAMETER);
+		String continuation = request
+				.getParameter(ProtocolConstants.CONTINUATION_PARAMETER);
+		if (term == null || continuation != null) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		for (String parameter : new String[] {
+				ProtocolConstants.INDEX_PARAMETER, ProtocolConstants.NUM_ITEMS,
+				ProtocolConstants.FUZZY_PARAMETER,
+				ProtocolConstants.CATEGORY_PARAMETER,
+				ProtocolConstants.INLINE_IMAGES_PARAMETER }) {
+			// parameters that were not given cause warnings, so they differ
+			// from all given values
+			String value = request.getParameter(parameter);
+			key.append((value != null) ? value : "\u0001").append('\u0000');
+		}
+		return key.append(SuggestTree.normalize(term)).toString();
+	}
+
+	/**
+	 * returns the name of the index that answers the request, which is the
+	 * default index if the request names none or an unknown one
+	 */
+	private static String indexName(HttpServletRequest request,
+			ServletContext context) {
+		String indexName = request
+				.getParameter(ProtocolConstants.INDEX_PARAMETER);
+		if (indexName == null || !ContextListener.hasIndex(indexName, context)) {
+			return ProtocolConstants.DEFAULT_INDEX_NAME;
+		}
+		return indexName;
+	}
+
 }
@@ -3,6 +3,8 @@
  */
 package de.metalcon.autocompleteServer.Retrieve;
 
+import java.util.Arrays;
+
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 
 /**
@@ -16,7 +18,7 @@ public class RetrieveStatusCodes {
 	 */
 	public static final String NUMITEMS_NOT_AN_INTEGER = "The numItems Parameter needs to be an Integer. I set it to: " + ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS;
 	public static final String NUMITEMS_NOT_GIVEN = "You did not give the number of items I set it to: "+ ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS;
-	public static final String NUMITEMS_OUT_OF_RANGE = "The rquested number of items is out of range. It has to be between 1 and " + ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS + " I set it to: "+ ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS;
+	public static final String NUMITEMS_OUT_OF_RANGE = "The rquested number of items is out of range. It has to be between 1 and " + ProtocolConstants.MAX_NUM_ITEMS + " I set it to: "+ ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS;
 	
 	/**
 	 * error messages and warnings for the index parameter
@@ -30,6 +32,21 @@ public class RetrieveStatusCodes {
 	 */
 	public static final String NO_TERM_GIVEN = "I cannot give you suggestions if you don't provide me a prefix";
 	
+	/**
+	 * error messages and warnings for the continuation parameter
+	 */
+	public static final String CONTINUATION_INVALID = "The continuation does not belong to this term or is malformed. I returned the first page instead.";
+	
+	/**
+	 * error messages and warnings for the fuzzy parameter
+	 */
+	public static final String FUZZY_INVALID = "The fuzzy Parameter needs to be an Integer between 0 and " + ProtocolConstants.MAX_FUZZY_DISTANCE + ". I searched for the exact term instead.";
+	
+	/**
+	 * error messages and warnings for the category parameter
+	 */
+	public static final String CATEGORY_UNKNOWN = "The category is unknown to me or the index does not keep categories. Known categories are " + Arrays.toString(ProtocolConstants.CATEGORIES) + ". I returned suggestions of all categories.";
+	
 	/**
 	 * error messages and warnings for the query process
 	 */
@@ -0,0 +1,87 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Handle;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Image;
+import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+import de.metalcon.autocompleteServer.Helper.SuggestTree;
+
+/**
+ * The UTF-8 encoded JSON objects of the suggestions of a list, separated by
+ * commas but without the brackets around them, which an index created with
+ * the {@link SuggestTree#FRAGMENTS} flag keeps for its frequently requested
+ * lists. The references to the images of the suggestions are part of the
+ * JSON, so a fragment is only valid while the images are at the version it
+ * was built with.
+ */
+class SuggestionFragment {
+
+	final byte[] json;
+
+	final long version;
+
+	private SuggestionFragment(byte[] json, long version) {
+		this.json = json;
+		this.version = version;
+	}
+
+	/**
+	 * encodes the suggestions of the list with their keys and the references
+	 * to the images of the keys, which are read from the handles the list
+	 * keeps with its suggestions or else looked up by the keys
+	 * 
+	 * @param suggestions
+	 * @param imageStore
+	 *            the images of the keys, or null if there are none
+	 * @param version
+	 *            the version of the images
+	 */
+	static SuggestionFragment encode(SuggestTree.Node suggestions,
+			ImageStore imageStore, long version) {
+		JsonWriter json = new JsonWriter(128 * suggestions.listLength());
+		for (int i = 0; i < suggestions.listLength(); i++) {
+			if (i > 0) {
+				json.write(',');
+			}
+			String key = suggestions.getKey(i);
+			Handle handle = (Handle) suggestions.getPayload(i);
+			Image image = null;
+			if (handle != null) {
+				image = handle.getImage();
+			} else if (key != null && imageStore != null) {
+				image = imageStore.getImage(key);
+			}
+			writeSuggestion(json, suggestions.getSuggestion(i), key,
+					(image != null) ? ImageServlet.reference(key, image) : null);
+		}
+		return new SuggestionFragment(json.toByteArray(), version);
+	}
+
+	/**
+	 * writes the JSON object of a suggestion with its key and image, if it has
+	 * them
+	 * 
+	 * @param json
+	 * @param suggestion
+	 * @param key
+	 * @param image
+	 */
+	static void writeSuggestion(JsonWriter json, String suggestion,
+			String key, String image) {
+		json.write('{');
+		json.writeField(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION,
+				suggestion);
+		if (key != null) {
+			json.write(',');
+			json.writeField(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_KEY,
+					key);
+			if (image != null) {
+				json.write(',');
+				json.writeField(
+						ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_IMAGE,
+						image);
+			}
+		}
+		json.write('}');
+	}
+}
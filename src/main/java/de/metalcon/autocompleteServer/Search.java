@@ -5,28 +5,175 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.util.HashMap;
 
 import javax.servlet.ServletContext;
 
 import de.metalcon.autocompleteServer.Create.SuggestionComponents;
+import de.metalcon.autocompleteServer.Helper.CategoryIndex;
 import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Handle;
+import de.metalcon.autocompleteServer.Helper.MappedSuggestTree;
+import de.metalcon.autocompleteServer.Helper.PhoneticIndex;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 import de.metalcon.autocompleteServer.Helper.SuggestTree;
+import de.metalcon.autocompleteServer.Helper.TokenIndex;
+import de.metalcon.autocompleteServer.Retrieve.ResponseCache;
 
 public class Search {
 
+	/**
+	 * the flags of the trees of the default index. The main and the category
+	 * trees also keep fragments. The Importer writes index files with the same
+	 * flags, so a mapped index answers like the default index
+	 */
+	public static final int INDEX_FLAGS = SuggestTree.CONCURRENT
+			| SuggestTree.NORMALIZE | SuggestTree.DISTINCT_KEYS;
+
 	public static void initilizeSuggestTree(ServletContext context) {
-		SuggestTree suggestTree = new SuggestTree(
-				ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS);
+		SuggestTree.Builder builder = new SuggestTree.Builder(
+				ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS, INDEX_FLAGS
+						| SuggestTree.FRAGMENTS);
+
+		PhoneticIndex.Builder phoneticBuilder = null;
+		if (ProtocolConstants.DEFAULT_INDEX_PHONETIC) {
+			phoneticBuilder = new PhoneticIndex.Builder(
+					ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS, INDEX_FLAGS);
+		}
 
-		HashMap<String, String> imageIndex = new HashMap<String, String>();
+		TokenIndex.Builder tokenBuilder = null;
+		if (ProtocolConstants.DEFAULT_INDEX_TOKENS) {
+			tokenBuilder = new TokenIndex.Builder(
+					ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS, INDEX_FLAGS);
+		}
+
+		CategoryIndex.Builder categoryBuilder = null;
+		if (ProtocolConstants.DEFAULT_INDEX_CATEGORIES) {
+			categoryBuilder = new CategoryIndex.Builder(
+					ProtocolConstants.CATEGORIES.length,
+					ProtocolConstants.MAX_NUMBER_OF_SUGGESTIONS, INDEX_FLAGS
+							| SuggestTree.FRAGMENTS);
+		}
 
+		ImageStore imageStore = null;
 		try {
+			imageStore = new ImageStore(new File(
+					ProtocolConstants.IMAGE_STORE_FILE));
+		} catch (IOException e) {
+			// the suggestions are answered without images
+			e.printStackTrace();
+		}
+
+		// an index file written by the Importer is mapped instead of
+		// replaying the save file, and the trees only take the suggestions
+		// created from now on
+		MappedSuggestTree mappedIndex = openIndexFile(new File(
+				ProtocolConstants.INDEX_FILE_DIRECTORY
+						+ ProtocolConstants.DEFAULT_INDEX_NAME
+						+ ProtocolConstants.INDEX_FILE_EXTENSION));
+		if (mappedIndex != null) {
+			ContextListener.setMappedIndex(
+					ProtocolConstants.DEFAULT_INDEX_NAME, mappedIndex, context);
+		} else {
 			// FIXME change after debugging
 			File saveFile = new File("/var/lib/tomcat/"
 					+ ProtocolConstants.DEFAULT_INDEX_NAME + ".save");
+			restoreFromSaveFile(saveFile, builder, phoneticBuilder,
+					tokenBuilder, categoryBuilder, imageStore);
+		}
+
+		ContextListener.setIndex(ProtocolConstants.DEFAULT_INDEX_NAME,
+				builder.build(), context);
+		if (phoneticBuilder != null) {
+			ContextListener.setPhoneticIndex(
+					ProtocolConstants.DEFAULT_INDEX_NAME,
+					phoneticBuilder.build(), context);
+		}
+		if (tokenBuilder != null) {
+			ContextListener.setTokenIndex(ProtocolConstants.DEFAULT_INDEX_NAME,
+					tokenBuilder.build(), context);
+		}
+		if (categoryBuilder != null) {
+			ContextListener.setCategoryIndex(
+					ProtocolConstants.DEFAULT_INDEX_NAME,
+					categoryBuilder.build(), context);
+		}
+		mapIndexFiles(new File(ProtocolConstants.INDEX_FILE_DIRECTORY),
+				context);
+		ContextListener.setImageStore(imageStore, context);
+		ContextListener.setResponseCache(new ResponseCache(
+				ProtocolConstants.RESPONSE_CACHE_BYTES,
+				ProtocolConstants.RESPONSE_CACHE_ENTRIES), context);
+	}
+
+	/**
+	 * Maps every index file in the specified directory as a read-only index
+	 * named after the file, unless an index of that name was already restored
+	 * from its save file or mapped. An index file that cannot be mapped is
+	 * skipped. Does nothing if the directory does not exist.
+	 */
+	public static void mapIndexFiles(File directory, ServletContext context) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.endsWith(ProtocolConstants.INDEX_FILE_EXTENSION)) {
+				continue;
+			}
+			String indexName = name.substring(0, name.length()
+					- ProtocolConstants.INDEX_FILE_EXTENSION.length());
+			if (ContextListener.hasIndex(indexName, context)) {
+				continue;
+			}
+			MappedSuggestTree mappedIndex = openIndexFile(file);
+			if (mappedIndex != null) {
+				ContextListener.setMappedIndex(indexName, mappedIndex, context);
+			}
+		}
+	}
+
+	/**
+	 * returns the index file mapped as a read-only index, or null if it does
+	 * not exist or cannot be mapped
+	 */
+	private static MappedSuggestTree openIndexFile(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return MappedSuggestTree.open(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
 
+	/**
+	 * Adds all suggestions stored in the specified save file to the builder
+	 * and their images to the image store if it is not null. The suggestions
+	 * keep the handles of the images of their keys. Does nothing if the file
+	 * does not exist.
+	 */
+	public static void restoreFromSaveFile(File saveFile,
+			SuggestTree.Builder builder, ImageStore imageStore) {
+		restoreFromSaveFile(saveFile, builder, null, null, null, imageStore);
+	}
+
+	/**
+	 * Adds all suggestions stored in the specified save file to the builder,
+	 * the phonetic, token and category builders and their images to the image
+	 * store if they are not null. The suggestions of the builder and the
+	 * category builder keep the handles of the images of their keys. Only
+	 * suggestions with a category are added to the category builder. Does
+	 * nothing if the file does not exist.
+	 */
+	public static void restoreFromSaveFile(File saveFile,
+			SuggestTree.Builder builder, PhoneticIndex.Builder phoneticBuilder,
+			TokenIndex.Builder tokenBuilder,
+			CategoryIndex.Builder categoryBuilder, ImageStore imageStore) {
+		try {
 			if (saveFile.exists()) {
 
 				FileInputStream fileInputStream = new FileInputStream(saveFile);
@@ -38,11 +185,37 @@ public class Search {
 					try {
 						SuggestionComponents suggestTreeEntry = (SuggestionComponents) restore
 								.readObject();
-						suggestTree.put(suggestTreeEntry.getSuggestString(),
+						Handle handle = (imageStore != null && suggestTreeEntry
+								.getKey() != null) ? imageStore
+								.handle(suggestTreeEntry.getKey()) : null;
+						builder.add(suggestTreeEntry.getSuggestString(),
 								suggestTreeEntry.getWeight(),
-								suggestTreeEntry.getKey());
-						imageIndex.put(suggestTreeEntry.getKey(),
-								suggestTreeEntry.getImageBase64());
+								suggestTreeEntry.getKey(), handle);
+						if (phoneticBuilder != null) {
+							phoneticBuilder.add(
+									suggestTreeEntry.getSuggestString(),
+									suggestTreeEntry.getWeight(),
+									suggestTreeEntry.getKey());
+						}
+						if (tokenBuilder != null) {
+							tokenBuilder.add(
+									suggestTreeEntry.getSuggestString(),
+									suggestTreeEntry.getWeight(),
+									suggestTreeEntry.getKey());
+						}
+						if (categoryBuilder != null
+								&& suggestTreeEntry.getCategory() != null) {
+							categoryBuilder.add(
+									suggestTreeEntry.getSuggestString(),
+									suggestTreeEntry.getWeight(),
+									suggestTreeEntry.getKey(), handle,
+									suggestTreeEntry.getCategory());
+						}
+						if (imageStore != null
+								&& suggestTreeEntry.getKey() != null
+								&& suggestTreeEntry.getImageBase64() != null) {
+							restoreImage(imageStore, suggestTreeEntry);
+						}
 					} catch (EOFException e) {
 						restore.close();
 						break;
@@ -57,8 +230,19 @@ public class Search {
 			e1.printStackTrace();
 
 		}
-		ContextListener.setIndex(ProtocolConstants.DEFAULT_INDEX_NAME,
-				suggestTree, context);
-		ContextListener.setImageIndex(imageIndex, context);
+	}
+
+	/**
+	 * puts the image of the entry into the store. An image that cannot be
+	 * stored does not stop the restore
+	 */
+	private static void restoreImage(ImageStore imageStore,
+			SuggestionComponents suggestTreeEntry) {
+		try {
+			imageStore.putDataUri(suggestTreeEntry.getKey(),
+					suggestTreeEntry.getImageBase64());
+		} catch (IOException | IllegalArgumentException e) {
+			e.printStackTrace();
+		}
 	}
 }
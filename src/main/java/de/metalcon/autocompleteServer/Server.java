@@ -1,5 +1,6 @@
 package de.metalcon.autocompleteServer;
 
+import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -7,6 +8,9 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+
 public class Server implements ServletContextListener {
 
 	private final BlockingQueue<Command> commands;
@@ -20,6 +24,15 @@ public class Server implements ServletContextListener {
 	@Override
 	public void contextDestroyed(ServletContextEvent arg0) {
 		this.worker.stop();
+		ImageStore imageStore = ContextListener.getImageStore(arg0
+				.getServletContext());
+		if (imageStore != null) {
+			try {
+				imageStore.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 	@Override
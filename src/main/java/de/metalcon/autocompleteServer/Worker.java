@@ -2,11 +2,15 @@ package de.metalcon.autocompleteServer;
 
 import java.util.concurrent.BlockingQueue;
 
+import de.metalcon.autocompleteServer.Helper.ContextListener;
+import de.metalcon.autocompleteServer.Retrieve.ResponseCache;
+
 /**
  * 
  * Manages the command queue. As long as there are commands on the queue, the
  * head is run and removed. Waits if the queue is empty, starts working again if
- * a new command is added.
+ * a new command is added. After each command, the cached retrieve responses
+ * of the index it changed are invalidated.
  * 
  * @author Christian
  * 
@@ -29,6 +33,12 @@ public class Worker implements Runnable {
 			while (true) {
 				command = this.commands.take();
 				command.run();
+				ResponseCache cache = ContextListener.getResponseCache(command
+						.getContext());
+				if (cache != null) {
+					cache.invalidate(command.getIndexName());
+				}
+				command.finished();
 			}
 		} catch (InterruptedException e) {
 			// System.out.println("worker stopped");
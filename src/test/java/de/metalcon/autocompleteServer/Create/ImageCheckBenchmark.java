@@ -0,0 +1,102 @@
+package de.metalcon.autocompleteServer.Create;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.fileupload.FileItem;
+
+import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+
+/**
+ * Measures the time that checking an uploaded image of a create request
+ * takes, for the full decode with ImageIO that the check used to do and for
+ * the {@link JpegHeader} that {@link ProcessCreateRequest} reads now. The
+ * full decode also encodes the data URI that the create request used to hand
+ * to the image store, while the bytes are now handed on as they are read.
+ * This is not a unit test and is not run by the build. Run it with the number
+ * of checks, for example:
+ *
+ * <pre>
+ * java ... ImageCheckBenchmark 100000
+ * </pre>
+ *
+ * The image is a JPEG of the largest dimensions the protocol allows, read
+ * from a temporary file like an upload that the file upload kept on disk.
+ */
+public class ImageCheckBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+		File file = File.createTempFile("image", ".jpg");
+		file.deleteOnExit();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(TestJpegHeader.encode(ProtocolConstants.IMAGE_WIDTH,
+					ProtocolConstants.IMAGE_HEIGHT, "jpg"));
+		}
+		FileItem item = new ImageFileItem(file);
+		ProcessCreateResponse response = new ProcessCreateResponse(null);
+		System.out.println(file.length() + " bytes per image");
+
+		System.out.printf("%-8s %12s %12s%n", "path", "ns/image",
+				"images/s");
+		for (int round = 0; round < 2; round++) {
+			// the first round warms up
+			boolean report = round == 1;
+			run("imageio", report, count, item, response, true);
+			run("header", report, count, item, response, false);
+		}
+	}
+
+	private static void run(String name, boolean report, int count,
+			FileItem item, ProcessCreateResponse response, boolean decode)
+			throws IOException {
+		int length = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			length += decode ? decode(item).length() : ProcessCreateRequest
+					.readImage(item, response).length;
+		}
+		long time = System.nanoTime() - start;
+		if (report) {
+			System.out.printf("%-8s %12d %12d%n", name, time / count,
+					1000000000L * count / time);
+		}
+		if (length == 0) {
+			throw new IllegalStateException();
+		}
+	}
+
+	/**
+	 * checks the image like the create request did before the
+	 * {@link JpegHeader}: decodes it, reads the upload again and copies it
+	 * byte by byte. The streams are closed, which the create request did not
+	 * do
+	 */
+	private static String decode(FileItem item) throws IOException {
+		BufferedImage bufferedImage;
+		try (InputStream in = item.getInputStream()) {
+			bufferedImage = ImageIO.read(in);
+		}
+		if (bufferedImage.getWidth() > ProtocolConstants.IMAGE_WIDTH
+				|| bufferedImage.getHeight() > ProtocolConstants.IMAGE_HEIGHT) {
+			return null;
+		}
+		byte[] buffer = new byte[(int) item.getSize()];
+		int size;
+		try (InputStream in = item.getInputStream()) {
+			size = in.read(buffer);
+		}
+		byte[] tmp = new byte[size];
+		for (int i = 0; i < size; i++) {
+			tmp[i] = buffer[i];
+		}
+		return "data:image/jpg;base64," + new String(Base64.encodeBase64(tmp));
+	}
+}
@@ -2,7 +2,9 @@ package de.metalcon.autocompleteServer.Create;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Field;
@@ -16,9 +18,13 @@ import javax.servlet.http.HttpServletRequest;
 import org.json.simple.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import de.metalcon.autocompleteServer.Response;
+import de.metalcon.autocompleteServer.Helper.PhoneticIndex;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+import de.metalcon.autocompleteServer.Helper.SuggestTree;
+import de.metalcon.autocompleteServer.Helper.TokenIndex;
 import de.metalcon.utils.FormItemList;
 
 public class TestCreateNewIndex {
@@ -56,7 +62,78 @@ public class TestCreateNewIndex {
 				this.jsonResponse.get(ProtocolConstants.STATUS_MESSAGE));
 	}
 
+	@Test
+	public void testListLength() {
+		this.processNewIndexRequest("venueIndex", "20");
+
+		ArgumentCaptor<SuggestTree> index = ArgumentCaptor
+				.forClass(SuggestTree.class);
+		verify(this.servletContext).setAttribute(
+				eq(ProtocolConstants.INDEX_PARAMETER + "venueIndex"),
+				index.capture());
+		for (int i = 0; i < 25; i++) {
+			index.getValue().put("venue" + i, i, null);
+		}
+		assertEquals(20, index.getValue().getBestSuggestions("v")
+				.listLength());
+	}
+
+	@Test
+	public void testPhoneticIndex() {
+		this.processNewIndexRequest("venueIndex", null, "true");
+
+		ArgumentCaptor<PhoneticIndex> index = ArgumentCaptor
+				.forClass(PhoneticIndex.class);
+		verify(this.servletContext).setAttribute(
+				eq(ProtocolConstants.PHONETIC_INDEX_CONTEXT_KEY + "venueIndex"),
+				index.capture());
+		index.getValue().put("Druckluftkammer", 25, "venue:1");
+		assertEquals("venue:1",
+				index.getValue().getSuggestions("drukluft", 7)
+						.get("Druckluftkammer"));
+	}
+
+	@Test
+	public void testTokenIndex() {
+		this.processNewIndexRequest("venueIndex", null, null, "true");
+
+		ArgumentCaptor<TokenIndex> index = ArgumentCaptor
+				.forClass(TokenIndex.class);
+		verify(this.servletContext).setAttribute(
+				eq(ProtocolConstants.TOKEN_INDEX_CONTEXT_KEY + "venueIndex"),
+				index.capture());
+		index.getValue().put("Live Music Hall", 25, "venue:1");
+		assertEquals("venue:1",
+				index.getValue().getSuggestions("Mus", 7)
+						.get("Live Music Hall"));
+	}
+
+	@Test
+	public void testListLengthOutOfRange() {
+		this.processNewIndexRequest("venueIndex", "0");
+		assertEquals(CreateStatusCodes.STATUS_LIST_LENGTH_INVALID,
+				this.jsonResponse.get(ProtocolConstants.STATUS_MESSAGE));
+
+		this.processNewIndexRequest("venueIndex", "many");
+		assertEquals(CreateStatusCodes.STATUS_LIST_LENGTH_INVALID,
+				this.jsonResponse.get(ProtocolConstants.STATUS_MESSAGE));
+	}
+
 	private void processNewIndexRequest(String indexName) {
+		this.processNewIndexRequest(indexName, null);
+	}
+
+	private void processNewIndexRequest(String indexName, String listLength) {
+		this.processNewIndexRequest(indexName, listLength, null);
+	}
+
+	private void processNewIndexRequest(String indexName, String listLength,
+			String phoneticIndex) {
+		this.processNewIndexRequest(indexName, listLength, phoneticIndex, null);
+	}
+
+	private void processNewIndexRequest(String indexName, String listLength,
+			String phoneticIndex, String tokenIndex) {
 
 		this.newIndexResponse = new NewIndexResponse(
 				this.servletConfig.getServletContext());
@@ -65,6 +142,16 @@ public class TestCreateNewIndex {
 		if (indexName != null) {
 			formItemList.addField(ProtocolConstants.INDEX_PARAMETER, indexName);
 		}
+		if (listLength != null) {
+			formItemList.addField(ProtocolConstants.LIST_LENGTH, listLength);
+		}
+		if (phoneticIndex != null) {
+			formItemList.addField(ProtocolConstants.PHONETIC_INDEX,
+					phoneticIndex);
+		}
+		if (tokenIndex != null) {
+			formItemList.addField(ProtocolConstants.TOKEN_INDEX, tokenIndex);
+		}
 
 		NewIndexRequest.checkRequestParameter(formItemList,
 				this.newIndexResponse, this.servletConfig.getServletContext());
@@ -0,0 +1,81 @@
+package de.metalcon.autocompleteServer.Create;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that the {@link JpegHeader} reads the dimensions that a full
+ * decode finds and turns down anything else.
+ */
+public class TestJpegHeader {
+
+	@Test
+	public void testEncodedImages() throws IOException {
+		int[][] dimensions = { { 64, 64 }, { 65, 64 }, { 64, 65 }, { 1, 300 },
+				{ 1000, 7 } };
+		for (int[] dimension : dimensions) {
+			byte[] jpeg = encode(dimension[0], dimension[1], "jpg");
+			JpegHeader header = JpegHeader.read(jpeg, jpeg.length);
+			assertEquals(dimension[0], header.width);
+			assertEquals(dimension[1], header.height);
+		}
+	}
+
+	@Test
+	public void testProgressiveFrame() {
+		byte[] jpeg = { (byte) 0xFF, (byte) 0xD8,
+				// fill bytes and a comment before the frame
+				(byte) 0xFF, (byte) 0xFF, (byte) 0xFE, 0, 4, 'h', 'i',
+				// progressive frame of 48 x 32 pixels
+				(byte) 0xFF, (byte) 0xC2, 0, 11, 8, 0, 32, 0, 48, 1, 1, 0x11,
+				0 };
+		JpegHeader header = JpegHeader.read(jpeg, jpeg.length);
+		assertEquals(48, header.width);
+		assertEquals(32, header.height);
+
+		// a Huffman table is no frame
+		jpeg[10] = (byte) 0xC4;
+		assertNull(JpegHeader.read(jpeg, jpeg.length));
+	}
+
+	@Test
+	public void testNoJpeg() throws IOException {
+		byte[] png = encode(16, 16, "png");
+		assertNull(JpegHeader.read(png, png.length));
+		assertNull(JpegHeader.read(new byte[0], 0));
+
+		byte[] jpeg = encode(16, 16, "jpg");
+		// cut off before the frame
+		int frame = 2;
+		while ((jpeg[frame + 1] & 0xFF) != 0xC0) {
+			frame += 2 + ((jpeg[frame + 2] & 0xFF) << 8 | (jpeg[frame + 3] & 0xFF));
+		}
+		assertNull(JpegHeader.read(Arrays.copyOf(jpeg, frame + 6), frame + 6));
+	}
+
+	/**
+	 * returns the bytes of an image of the dimensions in the format
+	 */
+	static byte[] encode(int width, int height, String format)
+			throws IOException {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setRGB(x, y, x * 0x030201 + y * 0x010203);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, format, out);
+		return out.toByteArray();
+	}
+}
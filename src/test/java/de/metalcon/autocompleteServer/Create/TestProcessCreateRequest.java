@@ -1,11 +1,16 @@
 package de.metalcon.autocompleteServer.Create;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -16,6 +21,7 @@ import org.apache.commons.fileupload.FileItem;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.metalcon.autocompleteServer.Helper.MappedSuggestTree;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 import de.metalcon.autocompleteServer.Helper.SuggestTree;
 import de.metalcon.utils.FormItemList;
@@ -304,6 +310,74 @@ public class TestProcessCreateRequest {
 		}
 	}
 
+	@Test
+	public void testFullFormWithEncodedImages() throws Exception {
+		byte[] jpeg = TestJpegHeader.encode(ProtocolConstants.IMAGE_WIDTH,
+				ProtocolConstants.IMAGE_HEIGHT, "jpg");
+		ProcessCreateResponse testResponse = this.processTestRequest(
+				ProtocolTestConstants.VALID_SUGGESTION_KEY,
+				ProtocolTestConstants.VALID_SUGGESTION_STRING,
+				ProtocolTestConstants.VALID_SUGGESTION_WEIGHT,
+				ProtocolTestConstants.VALID_SUGGESTION_INDEX,
+				new ImageFileItem(imageFile(jpeg)));
+		assertEquals(CreateStatusCodes.STATUS_OK, testResponse.getResponse()
+				.get(CreateStatusCodes.STATUS_OK));
+		assertTrue(Arrays.equals(jpeg, testResponse.getContainer()
+				.getComponents().getImage()));
+
+		testResponse = this.processTestRequest(
+				ProtocolTestConstants.VALID_SUGGESTION_KEY,
+				ProtocolTestConstants.VALID_SUGGESTION_STRING,
+				ProtocolTestConstants.VALID_SUGGESTION_WEIGHT,
+				ProtocolTestConstants.VALID_SUGGESTION_INDEX,
+				new ImageFileItem(imageFile(TestJpegHeader.encode(
+						ProtocolConstants.IMAGE_WIDTH + 1,
+						ProtocolConstants.IMAGE_HEIGHT, "jpg"))));
+		assertEquals(CreateStatusCodes.IMAGE_GEOMETRY_TOO_BIG, testResponse
+				.getResponse().get(CreateStatusCodes.IMAGE_GEOMETRY_TOO_BIG));
+		assertNull(testResponse.getContainer().getComponents().getImage());
+
+		testResponse = this.processTestRequest(
+				ProtocolTestConstants.VALID_SUGGESTION_KEY,
+				ProtocolTestConstants.VALID_SUGGESTION_STRING,
+				ProtocolTestConstants.VALID_SUGGESTION_WEIGHT,
+				ProtocolTestConstants.VALID_SUGGESTION_INDEX,
+				new ImageFileItem(imageFile(TestJpegHeader.encode(16, 16,
+						"png"))));
+		assertEquals(CreateStatusCodes.IMAGE_WRONG_TYPE, testResponse
+				.getResponse().get(CreateStatusCodes.IMAGE_WRONG_TYPE));
+	}
+
+	private static File imageFile(byte[] image) throws IOException {
+		File file = File.createTempFile("image", null);
+		file.deleteOnExit();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(image);
+		}
+		return file;
+	}
+
+	/**
+	 * rejects suggestions for an index that was only mapped from an index
+	 * file, which has no tree to take them
+	 */
+	@Test
+	public void testFormReadOnlyIndex() {
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.MAPPED_INDEX_CONTEXT_KEY
+								+ "mappedIndex")).thenReturn(
+				mock(MappedSuggestTree.class));
+		ProcessCreateResponse testResponse = this.processTestRequest(
+				ProtocolTestConstants.VALID_SUGGESTION_KEY,
+				ProtocolTestConstants.VALID_SUGGESTION_STRING,
+				ProtocolTestConstants.VALID_SUGGESTION_WEIGHT, "mappedIndex",
+				null);
+		assertNull(testResponse.getContainer());
+		assertEquals(CreateStatusCodes.INDEX_READ_ONLY, testResponse
+				.getResponse().get(CreateStatusCodes.STATUS_INDEX_READ_ONLY));
+	}
+
 	@Test
 	public void testFullFormWithoutImage() {
 
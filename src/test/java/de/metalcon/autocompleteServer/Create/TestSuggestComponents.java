@@ -1,6 +1,7 @@
 package de.metalcon.autocompleteServer.Create;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.io.EOFException;
@@ -10,9 +11,11 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.HashMap;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.metalcon.autocompleteServer.Helper.ImageStore;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 import de.metalcon.autocompleteServer.Helper.SuggestTree;
 
@@ -39,6 +42,15 @@ public class TestSuggestComponents {
 				.parseInt(ProtocolTestConstants.VALID_SUGGESTION_WEIGHT));
 	}
 
+	/**
+	 * every test writes its own save file, so the tests do not depend on the
+	 * order they run in
+	 */
+	@After
+	public void deleteTestFile() {
+		this.testFile.delete();
+	}
+
 	@Test
 	public void testFileSaving() {
 
@@ -73,6 +85,30 @@ public class TestSuggestComponents {
 
 	}
 
+	/**
+	 * the uploaded bytes are not serialized, they are saved as the data URI
+	 * that the save files have always held
+	 */
+	@Test
+	public void testImageSavedAsDataUri() throws IOException,
+			ClassNotFoundException {
+		File file = File.createTempFile("suggestion", ".save");
+		file.delete();
+		file.deleteOnExit();
+		this.testComponents.setImage(new byte[] { (byte) 0xFF, (byte) 0xD8,
+				(byte) 0xFF, (byte) 0xD9 });
+		this.testComponents.saveToDisc(file);
+
+		SuggestionComponents restoredComponents;
+		try (ObjectInputStream restore = new ObjectInputStream(
+				new FileInputStream(file))) {
+			restoredComponents = (SuggestionComponents) restore.readObject();
+		}
+		assertEquals(ImageStore.DATA_URI_PREFIX + "/9j/2Q==",
+				restoredComponents.getImageBase64());
+		assertNull(restoredComponents.getImage());
+	}
+
 	/**
 	 * This test contains the actual implementation of the initialization method
 	 * as calling the method without a server would otherwise fail.
@@ -86,6 +122,7 @@ public class TestSuggestComponents {
 
 		HashMap<String, String> imageIndex = new HashMap<String, String>();
 
+		this.testComponents.saveToDisc(this.testFile);
 		try {
 			FileInputStream saveFile = new FileInputStream("TestFile.save");
 			ObjectInputStream restore = new ObjectInputStream(saveFile);
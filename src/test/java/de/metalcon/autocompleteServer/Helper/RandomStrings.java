@@ -0,0 +1,30 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.util.Random;
+
+/**
+ * Random suggestions and prefixes for the tests that compare a tree against a
+ * brute force computation. A small alphabet makes the strings share many
+ * prefixes, which is what the trees are tested for.
+ */
+final class RandomStrings {
+
+	private RandomStrings() {
+	}
+
+	/**
+	 * returns a string of 1 to maxLength characters of the alphabet
+	 * 
+	 * @param random
+	 * @param alphabet
+	 * @param maxLength
+	 */
+	static String randomString(Random random, String alphabet, int maxLength) {
+		int length = 1 + random.nextInt(maxLength);
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,625 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks and reports for the {@link SuggestTree} and its variants. This is
+ * not a unit test and is not run by the build. Run it with the name of a
+ * report and the number of suggestions, for example:
+ *
+ * <pre>
+ * java -Xmx4g ... SuggestTreeBenchmark footprint 1000000
+ * java -Xmx8g ... SuggestTreeBenchmark build 10000000
+ * java -Xmx4g ... SuggestTreeBenchmark adaptive 1000000
+ * java -Xmx4g ... SuggestTreeBenchmark churn 1000000
+ * java -Xmx4g ... SuggestTreeBenchmark fuzzy 1000000
+ * java -Xmx4g ... SuggestTreeBenchmark tokens 1000000
+ * java -Xmx4g ... SuggestTreeBenchmark multiterm 1000000
+ * </pre>
+ *
+ * The suggestions are random band-like names built from a fixed list of
+ * syllables, so that the tree has a realistic amount of shared prefixes.
+ */
+public class SuggestTreeBenchmark {
+
+	private static final String[] SYLLABLES = { "me", "ta", "li", "ca", "de",
+			"th", "ni", "gh", "wi", "sh", "mo", "to", "r", "he", "ad", "sl",
+			"ay", "er", "ir", "on", "ma", "id", "en", "ju", "da", "s", "pr",
+			"ie", "st", "bl", "ack", "sa", "bb", "ath", "op", "eth", "ka",
+			"os", "dr", "um", "ic", "ult", "ra", "an", "ve", "no", "m", "x" };
+
+	public static void main(String[] args) throws InterruptedException,
+			IOException {
+		String report = (args.length > 0) ? args[0] : "footprint";
+		int count = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+		switch (report) {
+		case "footprint":
+			footprint(count);
+			break;
+		case "startup":
+			startup(count);
+			break;
+		case "build":
+			build(count);
+			break;
+		case "parallel":
+			parallel(count);
+			break;
+		case "adaptive":
+			adaptive(count);
+			break;
+		case "churn":
+			churn(count);
+			break;
+		case "fuzzy":
+			fuzzy(count);
+			break;
+		case "tokens":
+			tokens(count);
+			break;
+		case "multiterm":
+			multiTerm(count);
+			break;
+		default:
+			throw new IllegalArgumentException("unknown report: " + report);
+		}
+	}
+
+	/**
+	 * Compares the heap used by a {@link SuggestTree}, by the
+	 * {@link FrozenSuggestTree} created from it and by a tree created with the
+	 * {@link SuggestTree#TEXT_ARENA} flag. Every tree gets its own copies of
+	 * the suggestion and key strings, so the numbers include the text.
+	 */
+	private static void footprint(int count) throws InterruptedException {
+		String[] names = names(count, 1);
+		long base = usedMemory();
+
+		SuggestTree tree = new SuggestTree(7);
+		Random random = new Random(2);
+		for (String name : names) {
+			tree.put(copy(name), random.nextInt(10000), copy(name));
+		}
+		long treeBytes = usedMemory() - base;
+
+		FrozenSuggestTree frozen = tree.freeze();
+		int size = tree.size();
+		tree = null;
+		long frozenBytes = usedMemory() - base;
+		System.out.println("suggestions:        " + size);
+		System.out.println("nodes:              " + frozen.nodeCount());
+		frozen = null;
+
+		tree = new SuggestTree(7, SuggestTree.TEXT_ARENA);
+		random = new Random(2);
+		for (String name : names) {
+			tree.put(name, random.nextInt(10000), name);
+		}
+		long arenaBytes = usedMemory() - base;
+
+		printBytes("SuggestTree", treeBytes, size);
+		printBytes("FrozenSuggestTree", frozenBytes, size);
+		printBytes("TEXT_ARENA", arenaBytes, size);
+	}
+
+	/**
+	 * Compares the time needed to rebuild a {@link SuggestTree} by inserting
+	 * all suggestions, which is what happens when the server replays its save
+	 * file, with the time needed to open a {@link MappedSuggestTree} and
+	 * answer the first query.
+	 */
+	private static void startup(int count) throws IOException {
+		String[] names = names(count, 1);
+		Random random = new Random(2);
+		long start = System.nanoTime();
+		SuggestTree tree = new SuggestTree(7);
+		for (String name : names) {
+			tree.put(name, random.nextInt(10000), name);
+		}
+		long buildNanos = System.nanoTime() - start;
+
+		File file = File.createTempFile("suggest", ".idx");
+		try {
+			start = System.nanoTime();
+			MappedSuggestTree.write(tree.freeze(), file);
+			long writeNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			MappedSuggestTree mapped = MappedSuggestTree.open(file);
+			mapped.getBestSuggestions(names[0].substring(0, 1));
+			long openNanos = System.nanoTime() - start;
+
+			System.out.println("suggestions:        " + tree.size());
+			System.out.println("index file:         " + file.length()
+					+ " bytes");
+			printMillis("insert all", buildNanos);
+			printMillis("write index file", writeNanos);
+			printMillis("open and query", openNanos);
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Compares building a tree with {@link SuggestTree.Builder} with inserting
+	 * the same suggestions one by one, once in random order and once in
+	 * lexicographic order, which is the worst case for insertion. Each tree is
+	 * then queried with the same prefixes to show the effect of its balance.
+	 */
+	private static void build(int count) throws InterruptedException {
+		String[] names = names(count, 1);
+		int[] weights = new int[count];
+		Random random = new Random(2);
+		for (int i = 0; i < count; i++) {
+			weights[i] = random.nextInt(10000);
+		}
+		String[] prefixes = new String[100000];
+		for (int i = 0; i < prefixes.length; i++) {
+			String name = names[random.nextInt(count)];
+			prefixes[i] = name.substring(0, 1 + random.nextInt(name.length()));
+		}
+
+		usedMemory();
+		long start = System.nanoTime();
+		SuggestTree tree = new SuggestTree(7);
+		for (int i = 0; i < count; i++) {
+			tree.put(names[i], weights[i], names[i]);
+		}
+		printMillis("put, random order", System.nanoTime() - start);
+		printMillis("  100k queries", query(tree, prefixes));
+		tree = null;
+
+		String[] sorted = names.clone();
+		Arrays.sort(sorted);
+		usedMemory();
+		start = System.nanoTime();
+		tree = new SuggestTree(7);
+		for (int i = 0; i < count; i++) {
+			tree.put(sorted[i], weights[i], sorted[i]);
+		}
+		printMillis("put, sorted order", System.nanoTime() - start);
+		printMillis("  100k queries", query(tree, prefixes));
+		tree = null;
+		sorted = null;
+
+		usedMemory();
+		start = System.nanoTime();
+		SuggestTree.Builder builder = new SuggestTree.Builder(7);
+		for (int i = 0; i < count; i++) {
+			builder.add(names[i], weights[i], names[i]);
+		}
+		tree = builder.build();
+		printMillis("Builder", System.nanoTime() - start);
+		printMillis("  100k queries", query(tree, prefixes));
+		System.out.println("suggestions:        " + tree.size());
+	}
+
+	/**
+	 * Builds the same tree sequentially and then in parallel with 1, 2, 4,
+	 * ... threads up to the number of available processors.
+	 */
+	private static void parallel(int count) throws InterruptedException {
+		String[] names = names(count, 1);
+		SuggestTree.Builder builder = new SuggestTree.Builder(7);
+		Random random = new Random(2);
+		for (String name : names) {
+			builder.add(name, random.nextInt(10000), name);
+		}
+		names = null;
+
+		usedMemory();
+		long start = System.nanoTime();
+		builder.build();
+		printMillis("sequential", System.nanoTime() - start);
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= processors; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			usedMemory();
+			start = System.nanoTime();
+			builder.build(pool);
+			printMillis(threads + " threads", System.nanoTime() - start);
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Compares the heap used by trees with lists of length 20, with adaptive
+	 * lists of length 20 for short prefixes and 10 for long ones, and with
+	 * lists of length 10, and the time each of them needs to return the top
+	 * 20 suggestions for short and long prefixes. Lists shorter than 20 are
+	 * extended by a best-first search.
+	 */
+	private static void adaptive(int count) throws InterruptedException {
+		String[] names = names(count, 1);
+		int[] weights = new int[count];
+		Random random = new Random(2);
+		for (int i = 0; i < count; i++) {
+			weights[i] = random.nextInt(10000);
+		}
+		String[] shortPrefixes = new String[100000];
+		String[] longPrefixes = new String[100000];
+		for (int i = 0; i < shortPrefixes.length; i++) {
+			String name = names[random.nextInt(count)];
+			int length = Math.min(name.length(), SuggestTree.ADAPTIVE_DEPTH);
+			shortPrefixes[i] = name.substring(0, 1 + random.nextInt(length));
+			name = names[random.nextInt(count)];
+			length = Math.max(name.length(), SuggestTree.ADAPTIVE_DEPTH + 1);
+			longPrefixes[i] = name.substring(0,
+					Math.min(name.length(), SuggestTree.ADAPTIVE_DEPTH + 1
+							+ random.nextInt(length - SuggestTree.ADAPTIVE_DEPTH)));
+		}
+
+		int[][] configurations = { { 20, 0 }, { 20, SuggestTree.ADAPTIVE },
+				{ 10, 0 } };
+		String[] labels = { "k=20", "k=20 ADAPTIVE", "k=10" };
+		for (int c = 0; c < configurations.length; c++) {
+			long base = usedMemory();
+			SuggestTree.Builder builder = new SuggestTree.Builder(
+					configurations[c][0], configurations[c][1]);
+			for (int i = 0; i < count; i++) {
+				builder.add(names[i], weights[i], names[i]);
+			}
+			SuggestTree tree = builder.build();
+			builder = null;
+			printBytes(labels[c], usedMemory() - base, tree.size());
+			// warm up
+			query(tree, shortPrefixes, 20);
+			printMillis("  100k short, top 20", query(tree, shortPrefixes, 20));
+			printMillis("  100k long, top 20", query(tree, longPrefixes, 20));
+			tree = null;
+		}
+	}
+
+	/**
+	 * Measures heavy churn on a tree: inserting new suggestions, lowering the
+	 * weights of the highest weighted ones, which are in the most lists, and
+	 * removing them again, each for a tenth of the suggestions.
+	 */
+	private static void churn(int count) throws InterruptedException {
+		String[] names = names(count, 1);
+		String[] extra = names(count / 10, 3);
+		SuggestTree.Builder builder = new SuggestTree.Builder(7);
+		Random random = new Random(2);
+		for (String name : names) {
+			builder.add(name, random.nextInt(10000), name);
+		}
+		SuggestTree tree = builder.build();
+		builder = null;
+
+		usedMemory();
+		long start = System.nanoTime();
+		for (String name : extra) {
+			tree.put(name, random.nextInt(10000), name);
+		}
+		printMillis("insert", System.nanoTime() - start);
+
+		// the highest weighted suggestions in random order
+		String[] top = new String[extra.length];
+		SuggestTree.Iterator iterator = tree.iterator();
+		int found = 0;
+		String name;
+		while ((name = iterator.next()) != null && found < top.length) {
+			if (iterator.weight() >= 9000) {
+				top[found++] = name;
+			}
+		}
+		top = Arrays.copyOf(top, found);
+		for (int i = top.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			String tmp = top[i];
+			top[i] = top[j];
+			top[j] = tmp;
+		}
+
+		start = System.nanoTime();
+		for (String suggestion : top) {
+			tree.put(suggestion, tree.weightOf(suggestion) - 9000, suggestion);
+		}
+		printMillis("decrease weight", System.nanoTime() - start);
+		start = System.nanoTime();
+		for (String suggestion : top) {
+			tree.put(suggestion, tree.weightOf(suggestion) + 9000, suggestion);
+		}
+		printMillis("increase weight", System.nanoTime() - start);
+		start = System.nanoTime();
+		for (String suggestion : top) {
+			tree.remove(suggestion);
+		}
+		printMillis("remove", System.nanoTime() - start);
+		System.out.println("changed suggestions: " + top.length);
+	}
+
+	/**
+	 * Measures the latency of fuzzy queries for prefixes of 3 to 10
+	 * characters with one typo, for both distances and with and without a
+	 * node budget.
+	 */
+	private static void fuzzy(int count) {
+		String[] names = names(count, 1);
+		SuggestTree.Builder builder = new SuggestTree.Builder(7);
+		Random random = new Random(2);
+		for (String name : names) {
+			builder.add(name, random.nextInt(10000), name);
+		}
+		SuggestTree tree = builder.build();
+
+		String[] prefixes = new String[10000];
+		for (int i = 0; i < prefixes.length; i++) {
+			String name = names[random.nextInt(names.length)];
+			char[] prefix = name.substring(0,
+					Math.min(name.length(), 3 + random.nextInt(8)))
+					.toCharArray();
+			prefix[random.nextInt(prefix.length)] = 'x';
+			prefixes[i] = new String(prefix);
+		}
+		// warm up
+		for (String prefix : prefixes) {
+			tree.getFuzzySuggestions(prefix, 1, 7, 5000);
+		}
+		for (int maxDistance = 1; maxDistance <= 2; maxDistance++) {
+			for (int budget : new int[] { Integer.MAX_VALUE, 20000, 5000 }) {
+				long[] nanos = new long[prefixes.length];
+				int found = 0;
+				for (int i = 0; i < prefixes.length; i++) {
+					long start = System.nanoTime();
+					if (tree.getFuzzySuggestions(prefixes[i], maxDistance, 7,
+							budget) != null) {
+						found++;
+					}
+					nanos[i] = System.nanoTime() - start;
+				}
+				Arrays.sort(nanos);
+				System.out.printf(
+						"distance %d, budget %10d: p50 %,8.1f us, p99 %,9.1f us,"
+								+ " found %d%n", maxDistance, budget,
+						nanos[nanos.length / 2] / 1e3,
+						nanos[nanos.length * 99 / 100] / 1e3, found);
+			}
+		}
+	}
+
+	/**
+	 * Compares two ways to find albums by their own name and by the name of
+	 * their band: inserting every album twice, as "name" and "band name", the
+	 * way ImportScript did, and inserting it once as "band name" together
+	 * with a {@link TokenIndex}. Queries start the album name or one of its
+	 * later words, and the top suggestions of the tree are merged with those
+	 * of the token index by weight, like a retrieve request does. The
+	 * suggestions are copied, so that the numbers include their text, while
+	 * the keys are shared. The token index keeps the strings of the tree, as
+	 * the import does.
+	 */
+	private static void tokens(int count) throws InterruptedException {
+		String[] albums = names(count, 1);
+		String[] bands = names(count / 10, 3);
+		String[] suggestions = new String[count];
+		int[] weights = new int[count];
+		Random random = new Random(2);
+		for (int i = 0; i < count; i++) {
+			suggestions[i] = bands[random.nextInt(bands.length)] + " "
+					+ albums[i];
+			weights[i] = random.nextInt(10000);
+		}
+		String[] firstWords = new String[100000];
+		String[] laterWords = new String[100000];
+		for (int i = 0; i < firstWords.length; i++) {
+			String[] words = albums[random.nextInt(count)].split(" ");
+			firstWords[i] = words[0].substring(0,
+					1 + random.nextInt(words[0].length()));
+			words = albums[random.nextInt(count)].split(" ");
+			String word = words[random.nextInt(words.length)];
+			laterWords[i] = word.substring(0, 1 + random.nextInt(word.length()));
+		}
+
+		long base = usedMemory();
+		SuggestTree.Builder builder = new SuggestTree.Builder(7);
+		for (int i = 0; i < count; i++) {
+			builder.add(copy(albums[i]), weights[i], suggestions[i]);
+			builder.add(copy(suggestions[i]), weights[i], suggestions[i]);
+		}
+		SuggestTree duplicates = builder.build();
+		builder = null;
+		printBytes("duplicates", usedMemory() - base, count);
+		// warm up
+		tokenQuery(duplicates, null, firstWords);
+		printMillis("  100k album starts", tokenQuery(duplicates, null,
+				firstWords));
+		printMillis("  100k any word", tokenQuery(duplicates, null,
+				laterWords));
+		duplicates = null;
+
+		base = usedMemory();
+		builder = new SuggestTree.Builder(7);
+		TokenIndex.Builder tokenBuilder = new TokenIndex.Builder(7, 0);
+		for (int i = 0; i < count; i++) {
+			String suggestion = copy(suggestions[i]);
+			builder.add(suggestion, weights[i], suggestions[i]);
+			tokenBuilder.add(suggestion, weights[i], suggestions[i]);
+		}
+		SuggestTree tree = builder.build();
+		TokenIndex tokenIndex = tokenBuilder.build();
+		builder = null;
+		tokenBuilder = null;
+		printBytes("token index", usedMemory() - base, count);
+		System.out.println("  word starts:      " + tokenIndex.size());
+		tokenQuery(tree, tokenIndex, firstWords);
+		printMillis("  100k album starts", tokenQuery(tree, tokenIndex,
+				firstWords));
+		printMillis("  100k any word", tokenQuery(tree, tokenIndex,
+				laterWords));
+	}
+
+	/**
+	 * Measures the latency of queries for two or three words of a suggestion,
+	 * the last of them shortened to a prefix, with and without a budget.
+	 */
+	private static void multiTerm(int count) {
+		String[] albums = names(count, 1);
+		String[] bands = names(count / 10, 3);
+		SuggestTree.Builder builder = new SuggestTree.Builder(7);
+		TokenIndex.Builder tokenBuilder = new TokenIndex.Builder(7, 0);
+		String[] suggestions = new String[count];
+		Random random = new Random(2);
+		for (int i = 0; i < count; i++) {
+			suggestions[i] = bands[random.nextInt(bands.length)] + " "
+					+ albums[i];
+			int weight = random.nextInt(10000);
+			builder.add(suggestions[i], weight, suggestions[i]);
+			tokenBuilder.add(suggestions[i], weight, suggestions[i]);
+		}
+		SuggestTree tree = builder.build();
+		TokenIndex tokenIndex = tokenBuilder.build();
+
+		String[] queries = new String[10000];
+		for (int i = 0; i < queries.length; i++) {
+			String[] words;
+			do {
+				words = suggestions[random.nextInt(count)].split(" ");
+			} while (words.length < 2);
+			int terms = Math.min(words.length, 2 + random.nextInt(2));
+			StringBuilder query = new StringBuilder();
+			for (int t = 1; t < terms; t++) {
+				query.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			String word = words[random.nextInt(words.length)];
+			query.append(word, 0, 1 + random.nextInt(word.length()));
+			queries[i] = query.toString();
+		}
+		// warm up
+		for (String query : queries) {
+			MultiTermQuery.getSuggestions(tree, tokenIndex, query, 7, 5000);
+		}
+		for (int budget : new int[] { Integer.MAX_VALUE, 20000, 5000 }) {
+			long[] nanos = new long[queries.length];
+			int found = 0;
+			for (int i = 0; i < queries.length; i++) {
+				long start = System.nanoTime();
+				found += MultiTermQuery.getSuggestions(tree, tokenIndex,
+						queries[i], 7, budget).size();
+				nanos[i] = System.nanoTime() - start;
+			}
+			Arrays.sort(nanos);
+			System.out.printf("budget %10d: p50 %,8.1f us, p99 %,9.1f us,"
+					+ " max %,10.1f us, found %d%n", budget,
+					nanos[nanos.length / 2] / 1e3,
+					nanos[nanos.length * 99 / 100] / 1e3,
+					nanos[nanos.length - 1] / 1e3, found);
+		}
+	}
+
+	private static long tokenQuery(SuggestTree tree, TokenIndex tokenIndex,
+			String[] prefixes) {
+		long start = System.nanoTime();
+		for (String prefix : prefixes) {
+			SuggestTree.Node node = tree.getBestSuggestions(prefix);
+			if (tokenIndex != null) {
+				merge(node, tokenIndex.iterator(prefix), 7);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * merges the list of the node with the suggestions of the token index by
+	 * weight, once per key, and returns the number of merged suggestions
+	 */
+	private static int merge(SuggestTree.Node node,
+			TokenIndex.RankedIterator tokens, int count) {
+		HashSet<String> keys = new HashSet<String>();
+		int length = (node != null) ? node.listLength() : 0;
+		int fromNode = 0;
+		String token = tokens.next();
+		while (keys.size() < count && (fromNode < length || token != null)) {
+			if (fromNode < length
+					&& (token == null || node.getWeight(fromNode) >= tokens
+							.weight())) {
+				keys.add(node.getKey(fromNode++));
+			} else {
+				keys.add(tokens.key());
+				token = tokens.next();
+			}
+		}
+		return keys.size();
+	}
+
+	private static long query(SuggestTree tree, String[] prefixes, int count) {
+		long start = System.nanoTime();
+		for (String prefix : prefixes) {
+			if (tree.getBestSuggestions(prefix, count) == null) {
+				throw new IllegalStateException("missing prefixes");
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long query(SuggestTree tree, String[] prefixes) {
+		int found = 0;
+		long start = System.nanoTime();
+		for (String prefix : prefixes) {
+			if (tree.getBestSuggestions(prefix) != null) {
+				found++;
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		if (found != prefixes.length) {
+			throw new IllegalStateException("missing prefixes");
+		}
+		return nanos;
+	}
+
+	/**
+	 * Returns the specified number of random names. Some of them may be
+	 * equal.
+	 */
+	static String[] names(int count, long seed) {
+		Random random = new Random(seed);
+		String[] names = new String[count];
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			builder.setLength(0);
+			int words = 1 + random.nextInt(3);
+			for (int w = 0; w < words; w++) {
+				if (w > 0) {
+					builder.append(' ');
+				}
+				int syllables = 1 + random.nextInt(4);
+				for (int s = 0; s < syllables; s++) {
+					builder.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+				}
+			}
+			names[i] = builder.toString();
+		}
+		return names;
+	}
+
+	/**
+	 * Returns a copy of the specified string that does not share its
+	 * characters with the original.
+	 */
+	static String copy(String string) {
+		return new String(string.toCharArray());
+	}
+
+	static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	static void printBytes(String label, long bytes, int suggestions) {
+		System.out.printf("%-20s%,14d bytes %8.1f bytes/suggestion%n", label
+				+ ":", bytes, (double) bytes / suggestions);
+	}
+
+	static void printMillis(String label, long nanos) {
+		System.out.printf("%-20s%,14.1f ms%n", label + ":", nanos / 1e6);
+	}
+}
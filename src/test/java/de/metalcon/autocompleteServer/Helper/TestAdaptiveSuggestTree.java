@@ -0,0 +1,148 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that the shorter lists of a tree created with the
+ * {@link SuggestTree#ADAPTIVE} flag always hold the best suggestions of their
+ * prefix, while suggestions are inserted, reweighted and removed.
+ */
+public class TestAdaptiveSuggestTree {
+
+	private static final String ALPHABET = "abc";
+
+	@Test
+	public void testListsAfterUpdates() {
+		SuggestTree tree = new SuggestTree(6, SuggestTree.ADAPTIVE);
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		Random random = new Random(13);
+		for (int i = 0; i < 20000; i++) {
+			String suggestion = randomString(random, ALPHABET, 8);
+			if (random.nextInt(4) == 0) {
+				tree.remove(suggestion);
+				weights.remove(suggestion);
+			} else {
+				int weight = random.nextInt(1000);
+				tree.put(suggestion, weight, null);
+				weights.put(suggestion, weight);
+			}
+			if (i % 1000 == 0) {
+				checkLists(tree, weights);
+			}
+		}
+		checkLists(tree, weights);
+	}
+
+	@Test
+	public void testBuilder() {
+		SuggestTree.Builder builder = new SuggestTree.Builder(6,
+				SuggestTree.ADAPTIVE);
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		Random random = new Random(17);
+		for (int i = 0; i < 5000; i++) {
+			String suggestion = randomString(random, ALPHABET, 8);
+			int weight = random.nextInt(1000);
+			builder.add(suggestion, weight, null);
+			weights.put(suggestion, weight);
+		}
+		SuggestTree tree = builder.build();
+		checkLists(tree, weights);
+
+		// the built tree can be modified like any other
+		for (String suggestion : new ArrayList<String>(weights.keySet())) {
+			if (random.nextBoolean()) {
+				tree.remove(suggestion);
+				weights.remove(suggestion);
+			}
+		}
+		checkLists(tree, weights);
+	}
+
+	@Test
+	public void testShortPrefixHasFullList() {
+		SuggestTree tree = new SuggestTree(4, SuggestTree.ADAPTIVE);
+		for (int i = 0; i < 10; i++) {
+			tree.put("abcdef" + i, i, null);
+		}
+		tree.put("abx", 100, null);
+		tree.put("abcx", 99, null);
+		assertEquals(4, tree.getBestSuggestions("ab").listLength());
+		assertEquals(2, tree.getBestSuggestions("abcd").listLength());
+		assertEquals(4, tree.getBestSuggestions("abcd", 4).listLength());
+	}
+
+	@Test
+	public void testShortPrefixInsideLongNode() {
+		SuggestTree tree = new SuggestTree(4, SuggestTree.ADAPTIVE);
+		for (int i = 0; i < 10; i++) {
+			tree.put("zzzzz" + i, i, null);
+		}
+		tree.put("m", 100, null);
+		// "z" ends inside the node of "zzzzz", which starts at the first
+		// character
+		assertEquals(4, tree.getBestSuggestions("z").listLength());
+		assertEquals(4, tree.getBestSuggestions("zzz").listLength());
+		assertEquals(4, tree.getBestSuggestions("zzzz").listLength());
+
+		// a split leaves the part below the third character a short list
+		tree.put("zzzy", 50, null);
+		assertEquals(4, tree.getBestSuggestions("zzz").listLength());
+		assertEquals(2, tree.getBestSuggestions("zzzz").listLength());
+		assertEquals(9, tree.getBestSuggestions("zzzz").getWeight(0));
+
+		// and a merge fills it up again
+		tree.remove("zzzy");
+		assertEquals(4, tree.getBestSuggestions("z").listLength());
+		assertEquals(4, tree.getBestSuggestions("zzzz").listLength());
+		assertEquals(6, tree.getBestSuggestions("z").getWeight(3));
+	}
+
+	private static void checkLists(SuggestTree tree,
+			Map<String, Integer> weights) {
+		Map<String, List<Integer>> expected = new HashMap<String, List<Integer>>();
+		for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+			String suggestion = entry.getKey();
+			for (int end = 1; end <= suggestion.length(); end++) {
+				String prefix = suggestion.substring(0, end);
+				List<Integer> list = expected.get(prefix);
+				if (list == null) {
+					list = new ArrayList<Integer>();
+					expected.put(prefix, list);
+				}
+				list.add(entry.getValue());
+			}
+		}
+		assertEquals(weights.size(), tree.size());
+		for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+			List<Integer> list = entry.getValue();
+			Collections.sort(list, Collections.reverseOrder());
+			SuggestTree.Node node = tree.getBestSuggestions(entry.getKey());
+			int length = node.listLength();
+			if (entry.getKey().length() <= SuggestTree.ADAPTIVE_DEPTH) {
+				assertEquals(Math.min(list.size(), 6), length);
+			} else {
+				assertTrue(length == Math.min(list.size(), 6)
+						|| length == Math.min(list.size(), 3));
+			}
+			for (int i = 0; i < length; i++) {
+				assertEquals(list.get(i).intValue(), node.getWeight(i));
+			}
+			node = tree.getBestSuggestions(entry.getKey(), 10);
+			assertEquals(Math.min(list.size(), 10), node.listLength());
+			for (int i = 0; i < node.listLength(); i++) {
+				assertEquals(list.get(i).intValue(), node.getWeight(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Compares the results of {@link SuggestTree#getBestSuggestions(String, int)}
+ * for counts larger than <i>k</i> with a brute force search over all
+ * suggestions.
+ */
+public class TestBestFirstSuggestions {
+
+	private static final String ALPHABET = "abcd";
+
+	@Test
+	public void testSameAnswersAsBruteForce() {
+		this.checkBruteForce(0);
+	}
+
+	@Test
+	public void testSameAnswersAsBruteForceTextArena() {
+		this.checkBruteForce(SuggestTree.TEXT_ARENA);
+	}
+
+	@Test
+	public void testSmallCount() {
+		SuggestTree tree = new SuggestTree(3);
+		tree.put("metallica", 10, "band:1");
+		tree.put("megadeth", 5, "band:2");
+		tree.put("melechesh", 7, "band:3");
+		SuggestTree.Node node = tree.getBestSuggestions("me", 2);
+		assertEquals(2, node.listLength());
+		assertEquals("metallica", node.getSuggestion(0));
+		assertEquals("melechesh", node.getSuggestion(1));
+		assertEquals("band:3", node.getKey(1));
+		assertEquals(0, tree.getBestSuggestions("me", 0).listLength());
+		assertNull(tree.getBestSuggestions("x", 10));
+	}
+
+	@Test
+	public void testPagesSameAsOneQuery() {
+		this.checkPages(0);
+	}
+
+	@Test
+	public void testPagesSameAsOneQueryTextArena() {
+		this.checkPages(SuggestTree.TEXT_ARENA);
+	}
+
+	@Test
+	public void testLastPage() {
+		SuggestTree tree = new SuggestTree(3);
+		tree.put("metallica", 10, "band:1");
+		tree.put("megadeth", 5, "band:2");
+		SuggestTree.Page page = tree.getBestSuggestions("me", 1, null);
+		assertEquals("metallica", page.getSuggestion(0));
+		page = tree.getBestSuggestions("me", 5, page.getContinuation());
+		assertEquals(1, page.listLength());
+		assertEquals("megadeth", page.getSuggestion(0));
+		assertNull(page.getContinuation());
+	}
+
+	@Test
+	public void testRankedIterator() {
+		SuggestTree tree = new SuggestTree(1, SuggestTree.TEXT_ARENA);
+		tree.put("metallica", 10, "band:1");
+		tree.put("megadeth", 5, "band:2");
+		tree.put("melechesh", 7, "band:3");
+		tree.put("manowar", 8, "band:4");
+		SuggestTree.RankedIterator iterator = tree.iterator("me");
+		assertEquals("metallica", iterator.next());
+		assertEquals(10, iterator.weight());
+		assertEquals("melechesh", iterator.next());
+		assertEquals("band:3", iterator.key());
+		assertEquals("megadeth", iterator.next());
+		assertNull(iterator.next());
+		assertNull(tree.iterator("x").next());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testContinuationOfOtherPrefix() {
+		SuggestTree tree = new SuggestTree(3);
+		tree.put("metallica", 10, "band:1");
+		tree.put("megadeth", 5, "band:2");
+		tree.put("manowar", 3, "band:3");
+		String continuation = tree.getBestSuggestions("me", 1, null)
+				.getContinuation();
+		tree.getBestSuggestions("ma", 1, continuation);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedContinuation() {
+		SuggestTree tree = new SuggestTree(3);
+		tree.put("metallica", 10, "band:1");
+		tree.getBestSuggestions("me", 1, "3,1,0,L0,99,me");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCount() {
+		new SuggestTree(3).getBestSuggestions("a", -1);
+	}
+
+	private void checkBruteForce(int flags) {
+		SuggestTree tree = new SuggestTree(3, flags);
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		Random random = new Random(5);
+		for (int i = 0; i < 5000; i++) {
+			String suggestion = randomString(random, ALPHABET, 6);
+			if (random.nextInt(5) == 0) {
+				tree.remove(suggestion);
+				weights.remove(suggestion);
+			} else {
+				int weight = random.nextInt(100);
+				tree.put(suggestion, weight, "key:" + suggestion);
+				weights.put(suggestion, weight);
+			}
+		}
+
+		Set<String> prefixes = new HashSet<String>();
+		for (String suggestion : weights.keySet()) {
+			for (int end = 1; end <= suggestion.length(); end++) {
+				prefixes.add(suggestion.substring(0, end));
+			}
+		}
+		for (String prefix : prefixes) {
+			List<Integer> expected = new ArrayList<Integer>();
+			for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					expected.add(entry.getValue());
+				}
+			}
+			Collections.sort(expected, Collections.reverseOrder());
+
+			int count = 20;
+			SuggestTree.Node best = tree.getBestSuggestions(prefix);
+			SuggestTree.Node node = tree.getBestSuggestions(prefix, count);
+			assertEquals(Math.min(count, expected.size()), node.listLength());
+			Set<String> found = new HashSet<String>();
+			for (int i = 0; i < node.listLength(); i++) {
+				String suggestion = node.getSuggestion(i);
+				assertTrue(suggestion.startsWith(prefix));
+				assertTrue(found.add(suggestion));
+				assertEquals(expected.get(i).intValue(), node.getWeight(i));
+				assertEquals(weights.get(suggestion).intValue(),
+						node.getWeight(i));
+				assertEquals("key:" + suggestion, node.getKey(i));
+				// the precomputed list comes first and in the same order
+				if (i < best.listLength()) {
+					assertEquals(best.getSuggestion(i), suggestion);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fetches the suggestions for a number of prefixes page by page and
+	 * compares them with a single query for all of them. Many suggestions
+	 * share a weight, so this also covers resuming between equal weights.
+	 */
+	private void checkPages(int flags) {
+		SuggestTree tree = new SuggestTree(3, flags);
+		Random random = new Random(8);
+		for (int i = 0; i < 3000; i++) {
+			String suggestion = randomString(random, ALPHABET, 6);
+			tree.put(suggestion, random.nextInt(20), "key:" + suggestion);
+		}
+
+		for (String prefix : new String[] { "a", "b", "ab", "cd", "dda" }) {
+			for (int pageSize = 1; pageSize <= 7; pageSize += 3) {
+				int total = 60;
+				SuggestTree.Node expected = tree.getBestSuggestions(prefix,
+						total);
+				int i = 0;
+				String continuation = null;
+				do {
+					SuggestTree.Page page = tree.getBestSuggestions(prefix,
+							pageSize, continuation);
+					for (int j = 0; j < page.listLength() && i < total; j++, i++) {
+						assertEquals(expected.getSuggestion(i),
+								page.getSuggestion(j));
+						assertEquals(expected.getWeight(i), page.getWeight(j));
+						assertEquals(expected.getKey(i), page.getKey(j));
+					}
+					continuation = page.getContinuation();
+				} while (continuation != null && i < total);
+				assertEquals(expected.listLength(), i);
+			}
+		}
+	}
+}
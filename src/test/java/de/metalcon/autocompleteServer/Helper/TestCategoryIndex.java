@@ -0,0 +1,135 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that a {@link CategoryIndex} keeps the best suggestions of every
+ * category for each prefix, even where the suggestions of other categories
+ * fill the lists of the index.
+ */
+public class TestCategoryIndex {
+
+	private static final String ALPHABET = "abc";
+
+	private static final int CATEGORIES = 3;
+
+	private static final int K = 5;
+
+	@Test
+	public void testRareCategory() {
+		SuggestTree index = new SuggestTree(3, 0);
+		CategoryIndex categoryIndex = new CategoryIndex(CATEGORIES, 3, 0);
+		String[] bands = { "Metallica", "Megadeth", "Megaherz", "Meshuggah" };
+		for (int i = 0; i < bands.length; i++) {
+			index.put(bands[i], 100 - i, null);
+			categoryIndex.put(bands[i], 100 - i, null, 0);
+		}
+		index.put("Master of Puppets", 10, null);
+		categoryIndex.put("Master of Puppets", 10, null, 1);
+
+		// the album is not in the list of the index
+		assertEquals("Megaherz", index.getBestSuggestions("M").getSuggestion(2));
+		SuggestTree.Node node = categoryIndex.getIndex(1).getBestSuggestions(
+				"M");
+		assertEquals(1, node.listLength());
+		assertEquals("Master of Puppets", node.getSuggestion(0));
+		assertEquals(3, categoryIndex.getIndex(0).getBestSuggestions("M")
+				.listLength());
+		assertNull(categoryIndex.getIndex(2).getBestSuggestions("M"));
+		assertNull(categoryIndex.getIndex(CATEGORIES));
+	}
+
+	@Test
+	public void testChangedCategory() {
+		CategoryIndex categoryIndex = new CategoryIndex(CATEGORIES, K, 0);
+		categoryIndex.put("Mezzanine", 10, "1", 0);
+		categoryIndex.put("Mezzanine", 20, "1", 1);
+		assertEquals(1, categoryIndex.size());
+		assertNull(categoryIndex.getIndex(0).getBestSuggestions("Me"));
+		assertEquals(20, categoryIndex.getIndex(1).weightOf("Mezzanine"));
+
+		categoryIndex = new CategoryIndex.Builder(CATEGORIES, K, 0)
+				.add("Mezzanine", 10, "1", 0).add("Mezzanine", 20, "1", 1)
+				.add("Mezzanine", 30, "1", 0).build();
+		assertEquals(1, categoryIndex.size());
+		assertEquals(30, categoryIndex.getIndex(0).weightOf("Mezzanine"));
+		assertNull(categoryIndex.getIndex(1).getBestSuggestions("Me"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownCategory() {
+		new CategoryIndex(CATEGORIES, K, 0).put("Mezzanine", 10, null,
+				CATEGORIES);
+	}
+
+	@Test
+	public void testListsOfCategories() {
+		CategoryIndex categoryIndex = new CategoryIndex(CATEGORIES, K,
+				SuggestTree.CONCURRENT);
+		CategoryIndex.Builder builder = new CategoryIndex.Builder(CATEGORIES,
+				K, SuggestTree.CONCURRENT);
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		Map<String, Integer> categories = new HashMap<String, Integer>();
+		Random random = new Random(17);
+		for (int i = 0; i < 5000; i++) {
+			String suggestion = randomString(random, ALPHABET, 6);
+			int weight = random.nextInt(1000);
+			// most suggestions belong to the first category
+			int category = (random.nextInt(10) == 0) ? 1 + random
+					.nextInt(CATEGORIES - 1) : 0;
+			categoryIndex.put(suggestion, weight, null, category);
+			builder.add(suggestion, weight, null, category);
+			weights.put(suggestion, weight);
+			categories.put(suggestion, category);
+		}
+		checkLists(categoryIndex, weights, categories);
+		checkLists(builder.build(), weights, categories);
+	}
+
+	/**
+	 * checks the list of every prefix in every category against the weights
+	 * of the suggestions of that category
+	 */
+	private static void checkLists(CategoryIndex categoryIndex,
+			Map<String, Integer> weights, Map<String, Integer> categories) {
+		assertEquals(weights.size(), categoryIndex.size());
+		for (int category = 0; category < CATEGORIES; category++) {
+			Map<String, List<Integer>> expected = new HashMap<String, List<Integer>>();
+			for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+				if (categories.get(entry.getKey()) != category) {
+					continue;
+				}
+				for (int end = 1; end <= entry.getKey().length(); end++) {
+					String prefix = entry.getKey().substring(0, end);
+					if (!expected.containsKey(prefix)) {
+						expected.put(prefix, new ArrayList<Integer>());
+					}
+					expected.get(prefix).add(entry.getValue());
+				}
+			}
+			SuggestTree tree = categoryIndex.getIndex(category);
+			for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+				List<Integer> list = entry.getValue();
+				Collections.sort(list, Collections.reverseOrder());
+				SuggestTree.Node node = tree.getBestSuggestions(entry.getKey());
+				assertEquals(Math.min(list.size(), K), node.listLength());
+				for (int i = 0; i < node.listLength(); i++) {
+					assertEquals(list.get(i).intValue(), node.getWeight(i));
+					assertEquals(category,
+							categories.get(node.getSuggestion(i)).intValue());
+				}
+			}
+		}
+	}
+}
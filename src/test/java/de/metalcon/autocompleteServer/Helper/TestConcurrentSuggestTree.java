@@ -0,0 +1,142 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import de.metalcon.autocompleteServer.Helper.SuggestTree.Node;
+
+/**
+ * Stress test for trees created with the {@link SuggestTree#CONCURRENT} flag.
+ * One writer thread inserts, re-weights and removes suggestions while several
+ * reader threads query random prefixes without any locking. The readers must
+ * never see an exception or a suggestion that does not match their prefix,
+ * and after the writer is done every list has to be correct.
+ */
+public class TestConcurrentSuggestTree {
+
+	private static final int K = 7;
+	private static final int READERS = 4;
+	private static final int WRITES = 300000;
+	private static final String ALPHABET = "abcde";
+
+	@Test
+	public void testMixedReadWriteLoad() throws InterruptedException {
+		runMixedReadWriteLoad(SuggestTree.CONCURRENT);
+	}
+
+	@Test
+	public void testMixedReadWriteLoadWithTextArena()
+			throws InterruptedException {
+		runMixedReadWriteLoad(SuggestTree.CONCURRENT | SuggestTree.TEXT_ARENA);
+	}
+
+	private static void runMixedReadWriteLoad(int flags)
+			throws InterruptedException {
+		final SuggestTree tree = new SuggestTree(K, flags);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+
+		Thread[] readers = new Thread[READERS];
+		for (int r = 0; r < READERS; r++) {
+			final Random random = new Random(r);
+			readers[r] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						while (!done.get()) {
+							String prefix = randomString(random, ALPHABET, 3);
+							Node suggestions = tree.getBestSuggestions(prefix);
+							if (suggestions != null) {
+								checkSnapshot(prefix, suggestions);
+							}
+						}
+					} catch (Throwable t) {
+						errors.add(t);
+					}
+				}
+			};
+			readers[r].start();
+		}
+
+		Map<String, Integer> reference = new HashMap<String, Integer>();
+		Random random = new Random(42);
+		for (int i = 0; i < WRITES; i++) {
+			String suggestion = randomString(random, ALPHABET, 6);
+			if (random.nextInt(4) == 0) {
+				tree.remove(suggestion);
+				reference.remove(suggestion);
+			} else {
+				int weight = random.nextInt(1000);
+				tree.put(suggestion, weight, suggestion);
+				reference.put(suggestion, weight);
+			}
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(reference.size(), tree.size());
+		checkAgainstReference(tree, reference);
+	}
+
+	private static void checkSnapshot(String prefix, Node suggestions) {
+		int length = suggestions.listLength();
+		assertTrue("list length " + length, length >= 1 && length <= K);
+		for (int i = 0; i < length; i++) {
+			String suggestion = suggestions.getSuggestion(i);
+			assertTrue(prefix + " -> " + suggestion,
+					suggestion.startsWith(prefix));
+			assertTrue("no key for " + suggestion,
+					suggestions.getKey(i) != null);
+			for (int j = 0; j < i; j++) {
+				assertTrue("torn list for " + prefix,
+						!suggestion.equals(suggestions.getSuggestion(j)));
+			}
+		}
+	}
+
+	private static void checkAgainstReference(SuggestTree tree,
+			Map<String, Integer> reference) {
+		Map<String, List<Integer>> expected = new HashMap<String, List<Integer>>();
+		for (Map.Entry<String, Integer> entry : reference.entrySet()) {
+			String suggestion = entry.getKey();
+			for (int end = 1; end <= suggestion.length(); end++) {
+				String prefix = suggestion.substring(0, end);
+				List<Integer> weights = expected.get(prefix);
+				if (weights == null) {
+					weights = new ArrayList<Integer>();
+					expected.put(prefix, weights);
+				}
+				weights.add(entry.getValue());
+			}
+		}
+		for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+			List<Integer> weights = entry.getValue();
+			Collections.sort(weights, Collections.reverseOrder());
+			Node suggestions = tree.getBestSuggestions(entry.getKey());
+			assertEquals(Math.min(K, weights.size()), suggestions.listLength());
+			for (int i = 0; i < suggestions.listLength(); i++) {
+				String suggestion = suggestions.getSuggestion(i);
+				assertTrue(suggestion.startsWith(entry.getKey()));
+				assertEquals(weights.get(i).intValue(),
+						suggestions.getWeight(i));
+				assertEquals(reference.get(suggestion).intValue(),
+						suggestions.getWeight(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that the lists of a tree created with the
+ * {@link SuggestTree#DISTINCT_KEYS} flag always hold the best suggestion of
+ * each of the best keys of their prefix, while suggestions are inserted,
+ * reweighted and removed.
+ */
+public class TestDistinctKeys {
+
+	private static final String ALPHABET = "abc";
+
+	private static final int K = 5;
+
+	@Test
+	public void testAliases() {
+		SuggestTree tree = new SuggestTree(3, SuggestTree.DISTINCT_KEYS);
+		tree.put("Metallica", 100, "band:1");
+		tree.put("Megadeth", 99, "band:2");
+		tree.put("Metallica (band)", 98, "band:1");
+		tree.put("Megaherz", 97, "band:3");
+		tree.put("Menhir", 96, null);
+		SuggestTree.Node node = tree.getBestSuggestions("Me");
+		assertEquals(3, node.listLength());
+		assertEquals("Metallica", node.getSuggestion(0));
+		assertEquals("Megadeth", node.getSuggestion(1));
+		assertEquals("Megaherz", node.getSuggestion(2));
+
+		// the alias takes the place of the lighter name
+		tree.put("Metallica (band)", 101, "band:1");
+		node = tree.getBestSuggestions("Me");
+		assertEquals("Metallica (band)", node.getSuggestion(0));
+		assertEquals("Megadeth", node.getSuggestion(1));
+
+		// and gives it back when it is removed
+		tree.remove("Metallica (band)");
+		node = tree.getBestSuggestions("Met");
+		assertEquals(1, node.listLength());
+		assertEquals("Metallica", node.getSuggestion(0));
+
+		node = tree.getFuzzySuggestions("Metalica", 1, 7, 1000);
+		assertEquals(1, node.listLength());
+		assertEquals("Metallica", node.getSuggestion(0));
+	}
+
+	@Test
+	public void testListsAfterUpdates() {
+		for (int flags : new int[] { 0, SuggestTree.CONCURRENT,
+				SuggestTree.TEXT_ARENA }) {
+			SuggestTree tree = new SuggestTree(K, SuggestTree.DISTINCT_KEYS
+					| flags);
+			Map<String, Integer> weights = new HashMap<String, Integer>();
+			Map<String, String> keys = new HashMap<String, String>();
+			Random random = new Random(flags);
+			for (int i = 0; i < 20000; i++) {
+				String suggestion = randomString(random, ALPHABET, 6);
+				if (random.nextInt(4) == 0) {
+					tree.remove(suggestion);
+					weights.remove(suggestion);
+					keys.remove(suggestion);
+				} else {
+					int weight = random.nextInt(1000);
+					String key = randomKey(random);
+					tree.put(suggestion, weight, key);
+					weights.put(suggestion, weight);
+					// the key of a suggestion that is already present is kept
+					if (!keys.containsKey(suggestion)) {
+						keys.put(suggestion, key);
+					}
+				}
+				if (i % 1000 == 0) {
+					checkLists(tree, weights, keys);
+				}
+			}
+			checkLists(tree, weights, keys);
+		}
+	}
+
+	@Test
+	public void testBuilder() {
+		SuggestTree.Builder builder = new SuggestTree.Builder(K,
+				SuggestTree.DISTINCT_KEYS);
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		Map<String, String> keys = new HashMap<String, String>();
+		Random random = new Random(23);
+		for (int i = 0; i < 5000; i++) {
+			String suggestion = randomString(random, ALPHABET, 6);
+			int weight = random.nextInt(1000);
+			String key = randomKey(random);
+			builder.add(suggestion, weight, key);
+			weights.put(suggestion, weight);
+			keys.put(suggestion, key);
+		}
+		SuggestTree tree = builder.build();
+		checkLists(tree, weights, keys);
+
+		// the built tree can be modified like any other
+		for (String suggestion : new ArrayList<String>(weights.keySet())) {
+			if (random.nextBoolean()) {
+				tree.remove(suggestion);
+				weights.remove(suggestion);
+				keys.remove(suggestion);
+			}
+		}
+		checkLists(tree, weights, keys);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotAdaptive() {
+		new SuggestTree(K, SuggestTree.DISTINCT_KEYS | SuggestTree.ADAPTIVE);
+	}
+
+	/**
+	 * checks the list of every prefix, a longer list found by the best-first
+	 * search and the pages of that search against the best suggestion of each
+	 * key, where every suggestion without a key is a key of its own
+	 */
+	private static void checkLists(SuggestTree tree,
+			Map<String, Integer> weights, Map<String, String> keys) {
+		Map<String, Map<Object, Integer>> best = new HashMap<String, Map<Object, Integer>>();
+		for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+			String suggestion = entry.getKey();
+			Object entity = (keys.get(suggestion) != null) ? keys
+					.get(suggestion) : suggestion;
+			for (int end = 1; end <= suggestion.length(); end++) {
+				String prefix = suggestion.substring(0, end);
+				Map<Object, Integer> entities = best.get(prefix);
+				if (entities == null) {
+					entities = new HashMap<Object, Integer>();
+					best.put(prefix, entities);
+				}
+				Integer weight = entities.get(entity);
+				if (weight == null || weight < entry.getValue()) {
+					entities.put(entity, entry.getValue());
+				}
+			}
+		}
+		assertEquals(weights.size(), tree.size());
+		for (Map.Entry<String, Map<Object, Integer>> entry : best.entrySet()) {
+			List<Integer> expected = new ArrayList<Integer>(entry.getValue()
+					.values());
+			Collections.sort(expected, Collections.reverseOrder());
+			String prefix = entry.getKey();
+
+			SuggestTree.Node node = tree.getBestSuggestions(prefix);
+			assertEquals(Math.min(expected.size(), K), node.listLength());
+			checkNode(node, expected, entry.getValue());
+
+			node = tree.getBestSuggestions(prefix, 2 * K);
+			assertEquals(Math.min(expected.size(), 2 * K), node.listLength());
+			checkNode(node, expected, entry.getValue());
+
+			List<Integer> paged = new ArrayList<Integer>();
+			Set<Object> entities = new HashSet<Object>();
+			String continuation = null;
+			do {
+				SuggestTree.Page page = tree.getBestSuggestions(prefix, 2,
+						continuation);
+				for (int i = 0; i < page.listLength(); i++) {
+					paged.add(page.getWeight(i));
+					assertTrue(entities.add(entity(page, i)));
+				}
+				continuation = page.getContinuation();
+			} while (continuation != null);
+			assertEquals(expected, paged);
+		}
+		assertNull(tree.getBestSuggestions("x"));
+	}
+
+	private static void checkNode(SuggestTree.Node node,
+			List<Integer> expected, Map<Object, Integer> best) {
+		Set<Object> entities = new HashSet<Object>();
+		for (int i = 0; i < node.listLength(); i++) {
+			assertEquals(expected.get(i).intValue(), node.getWeight(i));
+			Object entity = entity(node, i);
+			assertTrue(entities.add(entity));
+			assertEquals(best.get(entity).intValue(), node.getWeight(i));
+		}
+	}
+
+	private static Object entity(SuggestTree.Node node, int index) {
+		return (node.getKey(index) != null) ? node.getKey(index) : node
+				.getSuggestion(index);
+	}
+
+	private static String randomKey(Random random) {
+		int key = random.nextInt(12);
+		return (key < 2) ? null : "key:" + key;
+	}
+}
@@ -0,0 +1,93 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that a {@link SuggestTree} created with the
+ * {@link SuggestTree#FRAGMENTS} flag returns the fragment of a list only
+ * while the list is unchanged.
+ */
+public class TestFragments {
+
+	@Test
+	public void testFragmentOfUnchangedList() {
+		for (int flags : new int[] { 0, SuggestTree.CONCURRENT }) {
+			SuggestTree tree = new SuggestTree(3, SuggestTree.FRAGMENTS
+					| flags);
+			assertTrue(tree.keepsFragments());
+			tree.put("Metallica", 100, "band:1");
+			tree.put("Megadeth", 90, "band:2");
+			tree.put("Menhir", 80, "band:3");
+			tree.put("Meshuggah", 70, "band:4");
+
+			SuggestTree.Page page = tree.getBestSuggestions("Me", 3, null);
+			assertNull(tree.getFragment(page));
+			tree.putFragment(page, "fragment");
+			assertEquals("fragment",
+					tree.getFragment(tree.getBestSuggestions("Me", 3, null)));
+
+			// a change below the list does not change it
+			tree.put("Meshuggah", 75, "band:4");
+			assertEquals("fragment",
+					tree.getFragment(tree.getBestSuggestions("Me", 3, null)));
+
+			tree.put("Melechesh", 95, "band:5");
+			assertNull(tree.getFragment(tree.getBestSuggestions("Me", 3, null)));
+			tree.putFragment(tree.getBestSuggestions("Me", 3, null), "new");
+			tree.put("Megadeth", 50, "band:2");
+			assertNull(tree.getFragment(tree.getBestSuggestions("Me", 3, null)));
+			tree.putFragment(tree.getBestSuggestions("Me", 3, null), "new");
+			tree.remove("Metallica");
+			assertNull(tree.getFragment(tree.getBestSuggestions("Me", 3, null)));
+			tree.putFragment(tree.getBestSuggestions("Me", 3, null), "new");
+			tree.clear();
+			tree.put("Melechesh", 95, "band:5");
+			assertNull(tree.getFragment(tree.getBestSuggestions("Me", 3, null)));
+		}
+	}
+
+	@Test
+	public void testOnlyWholeLists() {
+		SuggestTree tree = new SuggestTree(3, SuggestTree.FRAGMENTS);
+		tree.put("Metallica", 100, null);
+		tree.put("Megadeth", 90, null);
+		tree.put("Menhir", 80, null);
+		tree.put("Meshuggah", 70, null);
+
+		// shorter and longer pages and later pages are not lists of the tree
+		SuggestTree.Page page = tree.getBestSuggestions("Me", 2, null);
+		tree.putFragment(page, "fragment");
+		assertNull(tree.getFragment(page));
+		page = tree.getBestSuggestions("Me", 4, null);
+		tree.putFragment(page, "fragment");
+		assertNull(tree.getFragment(page));
+		page = tree.getBestSuggestions("Me", 3, null);
+		SuggestTree.Page next = tree.getBestSuggestions("Me", 3,
+				page.getContinuation());
+		tree.putFragment(next, "fragment");
+		assertNull(tree.getFragment(next));
+
+		// the whole list is paged as before
+		assertEquals(3, page.listLength());
+		assertEquals("Metallica", page.getSuggestion(0));
+		assertEquals("Menhir", page.getSuggestion(2));
+		assertEquals(1, next.listLength());
+		assertEquals("Meshuggah", next.getSuggestion(0));
+		assertNull(next.getContinuation());
+	}
+
+	@Test
+	public void testNoFragmentsWithoutFlag() {
+		SuggestTree tree = new SuggestTree(3, SuggestTree.CONCURRENT);
+		tree.put("Metallica", 100, null);
+		SuggestTree.Page page = tree.getBestSuggestions("Me", 3, null);
+		tree.putFragment(page, "fragment");
+		assertFalse(tree.keepsFragments());
+		assertNull(tree.getFragment(page));
+	}
+}
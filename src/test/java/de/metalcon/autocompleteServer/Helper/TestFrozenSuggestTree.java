@@ -0,0 +1,68 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that a {@link FrozenSuggestTree} answers every query exactly like
+ * the {@link SuggestTree} it was created from.
+ */
+public class TestFrozenSuggestTree {
+
+	private static final String ALPHABET = "abcdef";
+
+	@Test
+	public void testSameAnswersAsSuggestTree() {
+		SuggestTree tree = new SuggestTree(7);
+		Set<String> strings = new HashSet<String>();
+		Random random = new Random(7);
+		for (int i = 0; i < 20000; i++) {
+			String suggestion = randomString(random, ALPHABET, 7);
+			strings.add(suggestion);
+			if (random.nextInt(5) == 0) {
+				tree.remove(suggestion);
+			} else {
+				tree.put(suggestion, random.nextInt(500), "key:" + suggestion);
+			}
+		}
+
+		FrozenSuggestTree frozen = tree.freeze();
+		assertEquals(tree.size(), frozen.size());
+		for (String string : strings) {
+			assertEquals(tree.weightOf(string), frozen.weightOf(string));
+			for (int end = 1; end <= string.length(); end++) {
+				String prefix = string.substring(0, end);
+				SuggestTree.Node expected = tree.getBestSuggestions(prefix);
+				FrozenSuggestTree.Node actual = frozen
+						.getBestSuggestions(prefix);
+				if (expected == null) {
+					assertNull(actual);
+					continue;
+				}
+				assertEquals(expected.listLength(), actual.listLength());
+				for (int i = 0; i < expected.listLength(); i++) {
+					assertEquals(expected.getSuggestion(i),
+							actual.getSuggestion(i));
+					assertEquals(expected.getWeight(i), actual.getWeight(i));
+					assertEquals(expected.getKey(i), actual.getKey(i));
+				}
+			}
+		}
+		assertNull(frozen.getBestSuggestions("x"));
+		assertEquals(-1, frozen.weightOf("x"));
+	}
+
+	@Test
+	public void testEmptyTree() {
+		FrozenSuggestTree frozen = new SuggestTree(7).freeze();
+		assertEquals(0, frozen.size());
+		assertNull(frozen.getBestSuggestions("a"));
+	}
+}
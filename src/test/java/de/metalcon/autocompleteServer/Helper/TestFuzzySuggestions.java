@@ -0,0 +1,224 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SuggestTree#getFuzzySuggestions} with typical typos and against
+ * a brute force computation of the edit distance of the prefixes.
+ */
+public class TestFuzzySuggestions {
+
+	private static final String ALPHABET = "abcd";
+
+	private static final int BUDGET = Integer.MAX_VALUE;
+
+	@Test
+	public void testTypos() {
+		SuggestTree tree = this.bands(0);
+		SuggestTree.Node node = tree.getFuzzySuggestions("metalica", 1, 7,
+				BUDGET);
+		assertEquals("metallica", node.getSuggestion(0));
+		assertEquals("band:1", node.getKey(0));
+
+		// a swap of two characters is two edits
+		assertNull(tree.getFuzzySuggestions("nigthwish", 1, 7, BUDGET));
+		node = tree.getFuzzySuggestions("nigthwish", 2, 7, BUDGET);
+		assertEquals(1, node.listLength());
+		assertEquals("nightwish", node.getSuggestion(0));
+	}
+
+	@Test
+	public void testTyposTextArena() {
+		SuggestTree tree = this.bands(SuggestTree.TEXT_ARENA);
+		SuggestTree.Node node = tree.getFuzzySuggestions("megadet", 1, 7,
+				BUDGET);
+		assertEquals("megadeth", node.getSuggestion(0));
+		assertEquals("band:2", node.getKey(0));
+	}
+
+	@Test
+	public void testCloserMatchesFirst() {
+		SuggestTree tree = this.bands(0);
+		// "me" matches "megadeth" and "metallica" exactly and "nightwish"
+		// only with two edits, although it is weighted higher
+		tree.put("nightwish", 100, "band:4");
+		SuggestTree.Node node = tree.getFuzzySuggestions("me", 2, 7, BUDGET);
+		assertEquals("metallica", node.getSuggestion(0));
+		assertEquals("megadeth", node.getSuggestion(1));
+		assertEquals(2, tree.getFuzzySuggestions("me", 2, 2, BUDGET)
+				.listLength());
+	}
+
+	@Test
+	public void testDistanceZeroIsPrefixSearch() {
+		SuggestTree tree = this.bands(0);
+		SuggestTree.Node exact = tree.getBestSuggestions("me");
+		SuggestTree.Node fuzzy = tree.getFuzzySuggestions("me", 0, 7, BUDGET);
+		assertEquals(exact.listLength(), fuzzy.listLength());
+		for (int i = 0; i < exact.listLength(); i++) {
+			assertEquals(exact.getSuggestion(i), fuzzy.getSuggestion(i));
+		}
+		assertNull(tree.getFuzzySuggestions("x", 0, 7, BUDGET));
+	}
+
+	@Test
+	public void testBudget() {
+		SuggestTree tree = this.bands(0);
+		assertNull(tree.getFuzzySuggestions("metalica", 1, 7, 0));
+		// the typed characters are followed first
+		SuggestTree.Node node = tree.getFuzzySuggestions("metallica", 0, 7,
+				4);
+		assertEquals("metallica", node.getSuggestion(0));
+	}
+
+	@Test
+	public void testSameMatchesAsBruteForce() {
+		SuggestTree tree = new SuggestTree(100);
+		Set<String> suggestions = new HashSet<String>();
+		Random random = new Random(3);
+		for (int i = 0; i < 300; i++) {
+			String suggestion = randomString(random, ALPHABET, 6);
+			tree.put(suggestion, random.nextInt(100), null);
+			suggestions.add(suggestion);
+		}
+		// with lists that hold all suggestions, every match is found
+		for (int i = 0; i < 100; i++) {
+			String prefix = randomString(random, ALPHABET, 6);
+			int maxDistance = random.nextInt(3);
+			Set<String> expected = new HashSet<String>();
+			for (String suggestion : suggestions) {
+				if (prefixDistance(prefix, suggestion) <= maxDistance) {
+					expected.add(suggestion);
+				}
+			}
+			SuggestTree.Node node = tree.getFuzzySuggestions(prefix,
+					maxDistance, 1000, BUDGET);
+			Set<String> found = new HashSet<String>();
+			if (node != null) {
+				for (int j = 0; j < node.listLength(); j++) {
+					assertTrue(found.add(node.getSuggestion(j)));
+				}
+			}
+			assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	public void testMoreMatchesThanListLength() {
+		this.checkRankingAgainstBruteForce(0);
+	}
+
+	@Test
+	public void testMoreMatchesThanListLengthAdaptive() {
+		this.checkRankingAgainstBruteForce(SuggestTree.ADAPTIVE);
+	}
+
+	/**
+	 * asks trees with short lists for more matches than a list holds and
+	 * compares the result with the suggestions ranked by their distance and
+	 * weight. The weights are distinct, so the ranking is unique
+	 */
+	private void checkRankingAgainstBruteForce(int flags) {
+		Random random = new Random(5);
+		for (int t = 0; t < 200; t++) {
+			SuggestTree tree = new SuggestTree(3, flags);
+			final Map<String, Integer> weights = new HashMap<String, Integer>();
+			List<Integer> shuffled = new ArrayList<Integer>();
+			for (int i = 0; i < 60; i++) {
+				shuffled.add(i);
+			}
+			Collections.shuffle(shuffled, random);
+			for (int weight : shuffled) {
+				String suggestion = randomString(random, ALPHABET, 6);
+				tree.put(suggestion, weight, null);
+				weights.put(suggestion, weight);
+			}
+			String prefix = randomString(random, ALPHABET, 4);
+			int maxDistance = random.nextInt(3);
+			final Map<String, Integer> distances = new HashMap<String, Integer>();
+			List<String> expected = new ArrayList<String>();
+			for (String suggestion : weights.keySet()) {
+				int distance = prefixDistance(prefix, suggestion);
+				if (distance <= maxDistance) {
+					distances.put(suggestion, distance);
+					expected.add(suggestion);
+				}
+			}
+			Collections.sort(expected, new Comparator<String>() {
+
+				@Override
+				public int compare(String a, String b) {
+					int byDistance = distances.get(a).compareTo(
+							distances.get(b));
+					return (byDistance != 0) ? byDistance : weights.get(b)
+							.compareTo(weights.get(a));
+				}
+			});
+			expected = expected.subList(0, Math.min(10, expected.size()));
+
+			SuggestTree.Node node = tree.getFuzzySuggestions(prefix,
+					maxDistance, 10, BUDGET);
+			List<String> found = new ArrayList<String>();
+			if (node != null) {
+				for (int j = 0; j < node.listLength(); j++) {
+					found.add(node.getSuggestion(j));
+				}
+			}
+			assertEquals(prefix + " within " + maxDistance, expected, found);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDistance() {
+		this.bands(0).getFuzzySuggestions("me", -1, 7, BUDGET);
+	}
+
+	private SuggestTree bands(int flags) {
+		SuggestTree tree = new SuggestTree(7, flags);
+		tree.put("metallica", 10, "band:1");
+		tree.put("megadeth", 5, "band:2");
+		tree.put("nightwish", 7, "band:3");
+		tree.put("manowar", 3, "band:5");
+		return tree;
+	}
+
+	/**
+	 * Returns the lowest edit distance between the prefix and any prefix of
+	 * the suggestion.
+	 */
+	private static int prefixDistance(String prefix, String suggestion) {
+		int[] row = new int[prefix.length() + 1];
+		for (int j = 0; j < row.length; j++) {
+			row[j] = j;
+		}
+		int best = row[prefix.length()];
+		for (int i = 0; i < suggestion.length(); i++) {
+			int[] next = new int[row.length];
+			next[0] = i + 1;
+			for (int j = 1; j < row.length; j++) {
+				int cost = (prefix.charAt(j - 1) == suggestion.charAt(i)) ? 0
+						: 1;
+				next[j] = Math.min(Math.min(next[j - 1], row[j]) + 1,
+						row[j - 1] + cost);
+			}
+			row = next;
+			best = Math.min(best, row[prefix.length()]);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,156 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Makes sure that the {@link ImageStore} returns the bytes that were put for a
+ * key, also where they fill its segments, that a key keeps its newest image
+ * and that keys with the same bytes share one image.
+ */
+public class TestImageStore {
+
+	private static final int SEGMENT_SIZE = 1024;
+
+	private ImageStore imageStore;
+
+	@Before
+	public void openImageStore() throws IOException {
+		File file = File.createTempFile("images", ".blob");
+		file.deleteOnExit();
+		this.imageStore = new ImageStore(file, SEGMENT_SIZE);
+	}
+
+	@After
+	public void closeImageStore() throws IOException {
+		this.imageStore.close();
+	}
+
+	@Test
+	public void testImages() throws IOException {
+		Random random = new Random(5);
+		byte[][] images = new byte[100][];
+		for (int i = 0; i < images.length; i++) {
+			// most images do not fit into the rest of a segment
+			images[i] = new byte[random.nextInt(SEGMENT_SIZE + 1)];
+			random.nextBytes(images[i]);
+			this.imageStore.put("band:" + i, images[i]);
+		}
+		assertEquals(images.length, this.imageStore.size());
+		long bytes = 0;
+		for (int i = 0; i < images.length; i++) {
+			assertTrue(Arrays.equals(images[i],
+					this.imageStore.get("band:" + i)));
+			ImageStore.Image image = this.imageStore.getImage("band:" + i);
+			assertEquals(images[i].length, image.getLength());
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			this.imageStore.transferTo(image, Channels.newChannel(out));
+			assertTrue(Arrays.equals(images[i], out.toByteArray()));
+			bytes += images[i].length;
+		}
+		assertEquals(bytes, this.imageStore.bytes());
+		assertTrue(this.imageStore.fileBytes() >= bytes);
+		assertNull(this.imageStore.get("band:" + images.length));
+		assertNull(this.imageStore.getImage("band:" + images.length));
+	}
+
+	@Test
+	public void testChangedImage() throws IOException {
+		this.imageStore.put("band:1", new byte[] { 1, 2, 3 });
+		ImageStore.Image old = this.imageStore.getImage("band:1");
+		this.imageStore.put("band:1", new byte[] { 4, 5 });
+		ImageStore.Image image = this.imageStore.getImage("band:1");
+		assertTrue(!image.getVersion().equals(old.getVersion()));
+		assertTrue(Arrays.equals(new byte[] { 4, 5 },
+				this.imageStore.get("band:1")));
+		assertEquals(2L, this.imageStore.bytes());
+
+		// the old image can still be read by whoever got it before
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3 },
+				this.imageStore.get(old)));
+
+		// the same bytes have the same version
+		this.imageStore.put("band:2", new byte[] { 4, 5 });
+		assertEquals(image.getVersion(), this.imageStore.getImage("band:2")
+				.getVersion());
+	}
+
+	@Test
+	public void testSharedImages() throws IOException {
+		byte[] cover = { 1, 2, 3, 4 };
+		this.imageStore.put("album:1", cover);
+		long fileBytes = this.imageStore.fileBytes();
+		this.imageStore.put("album:2", cover.clone());
+		this.imageStore.put("album:3", new byte[] { 1, 2, 3, 5 });
+		assertEquals(3, this.imageStore.size());
+		assertEquals(2, this.imageStore.images());
+		assertEquals(8L, this.imageStore.bytes());
+		assertEquals(4L, this.imageStore.savedBytes());
+		assertEquals(fileBytes + 4, this.imageStore.fileBytes());
+
+		// the image stays while a key references it
+		assertTrue(this.imageStore.remove("album:1"));
+		assertTrue(Arrays.equals(cover, this.imageStore.get("album:2")));
+		assertEquals(2, this.imageStore.images());
+		assertEquals(0L, this.imageStore.savedBytes());
+
+		// a key that gets another image drops its reference
+		this.imageStore.put("album:2", new byte[] { 1, 2, 3, 5 });
+		assertEquals(1, this.imageStore.images());
+		assertEquals(4L, this.imageStore.bytes());
+		assertEquals(4L, this.imageStore.savedBytes());
+
+		assertTrue(this.imageStore.remove("album:2"));
+		assertTrue(this.imageStore.remove("album:3"));
+		assertFalse(this.imageStore.remove("album:3"));
+		assertEquals(0, this.imageStore.images());
+		assertEquals(0L, this.imageStore.bytes());
+		assertEquals(0L, this.imageStore.savedBytes());
+		assertNull(this.imageStore.get("album:2"));
+	}
+
+	@Test
+	public void testDataUri() throws IOException {
+		this.imageStore.putDataUri("band:1", "data:image/jpg;base64,/9j/4A==");
+		assertTrue(Arrays.equals(new byte[] { (byte) 0xFF, (byte) 0xD8,
+				(byte) 0xFF, (byte) 0xE0 }, this.imageStore.get("band:1")));
+		assertEquals("data:image/jpg;base64,/9j/4A==",
+				this.imageStore.getDataUri(this.imageStore.getImage("band:1")));
+	}
+
+	@Test
+	public void testHandle() throws IOException {
+		ImageStore.Handle handle = this.imageStore.handle("band:1");
+		assertNull(handle.getImage());
+		assertEquals(0, this.imageStore.size());
+
+		this.imageStore.put("band:1", new byte[] { 1, 2, 3 });
+		assertEquals(this.imageStore.getImage("band:1"), handle.getImage());
+		this.imageStore.put("band:1", new byte[] { 4, 5 });
+		assertTrue(Arrays.equals(new byte[] { 4, 5 },
+				this.imageStore.get(handle.getImage())));
+		assertEquals(handle, this.imageStore.handle("band:1"));
+
+		this.imageStore.remove("band:1");
+		assertNull(handle.getImage());
+		assertEquals(0, this.imageStore.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testImageLargerThanSegment() throws IOException {
+		this.imageStore.put("band:1", new byte[SEGMENT_SIZE + 1]);
+	}
+}
@@ -0,0 +1,98 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes suggest trees to index files and makes sure that the mapped trees
+ * answer every query exactly like the trees they were written from.
+ */
+public class TestMappedSuggestTree {
+
+	private static final String ALPHABET = "abcdef";
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		this.file = File.createTempFile("suggest", ".idx");
+	}
+
+	@After
+	public void deleteFile() {
+		this.file.delete();
+	}
+
+	@Test
+	public void testSameAnswersAsSuggestTree() throws IOException {
+		SuggestTree tree = new SuggestTree(7);
+		Set<String> strings = new HashSet<String>();
+		Random random = new Random(3);
+		for (int i = 0; i < 20000; i++) {
+			String suggestion = randomString(random, ALPHABET, 7);
+			strings.add(suggestion);
+			if (random.nextInt(5) == 0) {
+				tree.remove(suggestion);
+			} else {
+				// some suggestions have no key
+				String key = (random.nextInt(10) == 0) ? null : "key:"
+						+ suggestion;
+				tree.put(suggestion, random.nextInt(500), key);
+			}
+		}
+
+		MappedSuggestTree.write(tree.freeze(), this.file);
+		MappedSuggestTree mapped = MappedSuggestTree.open(this.file);
+		assertEquals(tree.size(), mapped.size());
+		for (String string : strings) {
+			assertEquals(tree.weightOf(string), mapped.weightOf(string));
+			for (int end = 1; end <= string.length(); end++) {
+				String prefix = string.substring(0, end);
+				SuggestTree.Node expected = tree.getBestSuggestions(prefix);
+				MappedSuggestTree.Node actual = mapped
+						.getBestSuggestions(prefix);
+				if (expected == null) {
+					assertNull(actual);
+					continue;
+				}
+				assertEquals(expected.listLength(), actual.listLength());
+				for (int i = 0; i < expected.listLength(); i++) {
+					assertEquals(expected.getSuggestion(i),
+							actual.getSuggestion(i));
+					assertEquals(expected.getWeight(i), actual.getWeight(i));
+					assertEquals(expected.getKey(i), actual.getKey(i));
+				}
+			}
+		}
+		assertNull(mapped.getBestSuggestions("x"));
+		assertEquals(-1, mapped.weightOf("x"));
+	}
+
+	@Test
+	public void testEmptyTree() throws IOException {
+		MappedSuggestTree.write(new SuggestTree(7).freeze(), this.file);
+		MappedSuggestTree mapped = MappedSuggestTree.open(this.file);
+		assertEquals(0, mapped.size());
+		assertNull(mapped.getBestSuggestions("a"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoIndexFile() throws IOException {
+		FileOutputStream out = new FileOutputStream(this.file);
+		out.write("no index".getBytes("UTF-8"));
+		out.close();
+		MappedSuggestTree.open(this.file);
+	}
+}
@@ -0,0 +1,166 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MultiTermQuery} with typical queries and against a brute force
+ * search over all suggestions.
+ */
+public class TestMultiTermQuery {
+
+	private static final String[] WORDS = { "a", "ab", "abc", "b", "ba", "c",
+			"cab" };
+
+	private static final int BUDGET = Integer.MAX_VALUE;
+
+	private final SuggestTree index = new SuggestTree(3);
+
+	private final TokenIndex tokenIndex = new TokenIndex(3, 0);
+
+	@Test
+	public void testTerms() {
+		this.addAlbums();
+		assertEquals("[Iron Maiden – Powerslave]",
+				this.query("Iron Maiden Power", 7));
+		// the terms may come in any order
+		assertEquals("[Iron Maiden – Powerslave]",
+				this.query("Powerslave Iron", 7));
+		assertEquals(
+				"[Iron Maiden, Iron Maiden – Powerslave, Iron Maiden – Killers]",
+				this.query("Maiden Iron", 7));
+		assertEquals("[Iron Maiden]", this.query("Maiden Iron", 1));
+	}
+
+	@Test
+	public void testCompleteTerms() {
+		this.addAlbums();
+		// all terms but the last must be whole words
+		assertEquals("[]", this.query("Iro Power", 7));
+		// unless the query ends with whitespace, the last term is a prefix
+		assertEquals("[]", this.query("Maiden Kill ", 7));
+		assertEquals("[Iron Maiden – Killers]",
+				this.query("Maiden Killers ", 7));
+	}
+
+	@Test
+	public void testSingleTerm() {
+		this.addAlbums();
+		assertEquals("[]", this.query("Iron", 7));
+		assertEquals("[]", this.query(" Iron ", 7));
+	}
+
+	@Test
+	public void testEntities() {
+		this.addAlbums();
+		// suggests the same entity as "Iron Maiden – Powerslave"
+		this.put("Maiden Iron – Powerslave", 95, "album:1");
+		assertEquals(
+				"[Iron Maiden, Maiden Iron – Powerslave, Iron Maiden – Killers]",
+				this.query("Iron Maiden", 7));
+	}
+
+	@Test
+	public void testBudget() {
+		this.addAlbums();
+		LinkedHashMap<String, String> suggestions = MultiTermQuery
+				.getSuggestions(this.index, this.tokenIndex,
+						"Iron Maiden Power", 7, 0);
+		assertTrue(suggestions.isEmpty());
+	}
+
+	@Test
+	public void testSameMatchesAsBruteForce() {
+		Random random = new Random(5);
+		List<String> suggestions = new ArrayList<String>();
+		List<Integer> weights = new ArrayList<Integer>();
+		for (int i = 0; i < 300; i++) {
+			String suggestion = randomWords(random);
+			if (this.index.weightOf(suggestion) == -1) {
+				int weight = random.nextInt(1000);
+				this.put(suggestion, weight, suggestion);
+				suggestions.add(suggestion);
+				weights.add(weight);
+			}
+		}
+		for (int i = 0; i < 200; i++) {
+			String query = randomWords(random);
+			if (random.nextBoolean()) {
+				query += " ";
+			}
+			String[] terms = query.trim().split(" ");
+			if (terms.length < 2) {
+				continue;
+			}
+			boolean prefix = !query.endsWith(" ");
+			// the highest weights of the matching suggestions
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int j = 0; j < suggestions.size(); j++) {
+				List<String> words = Arrays.asList(suggestions.get(j).split(
+						" "));
+				boolean matches = words.size() > 1;
+				for (int t = 0; t < terms.length; t++) {
+					boolean found = false;
+					for (String word : words) {
+						found |= (prefix && t == terms.length - 1) ? word
+								.startsWith(terms[t]) : word.equals(terms[t]);
+					}
+					matches &= found;
+				}
+				if (matches) {
+					expected.add(weights.get(j));
+				}
+			}
+			Collections.sort(expected, Collections.reverseOrder());
+			expected = expected.subList(0, Math.min(5, expected.size()));
+
+			List<Integer> found = new ArrayList<Integer>();
+			for (String suggestion : MultiTermQuery.getSuggestions(
+					this.index, this.tokenIndex, query, 5, BUDGET).keySet()) {
+				found.add(weights.get(suggestions.indexOf(suggestion)));
+			}
+			assertEquals(query, expected, found);
+		}
+	}
+
+	private void addAlbums() {
+		this.put("Iron Maiden – Powerslave", 90, "album:1");
+		this.put("Iron Maiden – Killers", 80, "album:2");
+		this.put("Iron Maiden", 100, "band:1");
+		this.put("Maiden Voyage", 70, "album:3");
+		this.put("Powerwolf – Lupus Dei", 60, "album:4");
+		this.put("Iron Savior", 85, "band:2");
+	}
+
+	private void put(String suggestion, int weight, String key) {
+		this.index.put(suggestion, weight, key);
+		this.tokenIndex.put(suggestion, weight, key);
+	}
+
+	private String query(String query, int count) {
+		return new ArrayList<String>(MultiTermQuery.getSuggestions(
+				this.index, this.tokenIndex, query, count, BUDGET).keySet())
+				.toString();
+	}
+
+	private static String randomWords(Random random) {
+		int length = 1 + random.nextInt(4);
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			if (i > 0) {
+				builder.append(' ');
+			}
+			builder.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return builder.toString();
+	}
+}
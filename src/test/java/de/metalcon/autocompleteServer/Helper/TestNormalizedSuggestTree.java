@@ -0,0 +1,207 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests a {@link SuggestTree} created with the {@link SuggestTree#NORMALIZE}
+ * flag, which finds suggestions regardless of case and diacritics, against a
+ * plain tree of the normalized suggestions.
+ */
+public class TestNormalizedSuggestTree {
+
+	private static final String ALPHABET = "aAäÄoOöÖ ";
+
+	private static final int FLAGS = SuggestTree.NORMALIZE;
+
+	@Test
+	public void testNormalize() {
+		assertEquals("motorhead", SuggestTree.normalize("Motörhead"));
+		assertEquals("motorhead", SuggestTree.normalize("MOTÖRHEAD"));
+		assertEquals("die muhle", SuggestTree.normalize("Die Mühle"));
+		assertEquals("beyonce", SuggestTree.normalize("Beyoncé"));
+		// full width and no-break characters are compatibility characters
+		assertEquals("ab c", SuggestTree.normalize("Ａｂ c"));
+		String plain = "already normal";
+		assertEquals(plain, SuggestTree.normalize(plain));
+		// characters that expand to several letters are only case-folded
+		assertEquals("ﬁ", SuggestTree.normalize("ﬁ"));
+	}
+
+	@Test
+	public void testFoldingIsStable() {
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			char folded = SuggestTree.normalize((char) c);
+			assertEquals(folded, SuggestTree.normalize(folded));
+		}
+	}
+
+	@Test
+	public void testVariantsAreOneSuggestion() {
+		SuggestTree tree = new SuggestTree(7, FLAGS);
+		tree.put("Motörhead", 10, "band:1");
+		tree.put("motorhead", 20, "band:2");
+		tree.put("MOTÖRHEAD", 30, "band:3");
+		tree.put("Mötley Crüe", 15, "band:4");
+		assertEquals(2, tree.size());
+		assertEquals(30, tree.weightOf("motörhead"));
+
+		// the first display string and key are kept
+		SuggestTree.Node node = tree.getBestSuggestions("MOT");
+		assertEquals(2, node.listLength());
+		assertEquals("Motörhead", node.getSuggestion(0));
+		assertEquals("band:1", node.getKey(0));
+		assertEquals("Mötley Crüe", node.getSuggestion(1));
+
+		node = tree.getFuzzySuggestions("motley crue", 0, 7, 1000);
+		assertEquals("Mötley Crüe", node.getSuggestion(0));
+
+		tree.remove("MOTORHEAD");
+		assertEquals(1, tree.size());
+		assertNull(tree.getBestSuggestions("motor"));
+	}
+
+	@Test
+	public void testDecomposedIsComposed() {
+		SuggestTree tree = new SuggestTree(7, FLAGS);
+		tree.put("Moto\u0308rhead", 10, "band:1");
+		tree.put("Motörhead", 20, "band:1");
+		assertEquals(1, tree.size());
+		assertEquals(20, tree.weightOf("motorhead"));
+		assertEquals(20, tree.weightOf("MOTO\u0308RHEAD"));
+		// the suggestion is returned composed
+		assertEquals("Motörhead", tree.getBestSuggestions("motorh")
+				.getSuggestion(0));
+
+		tree = new SuggestTree.Builder(7, FLAGS)
+				.add("Mo\u0308tley Cru\u0308e", 5, "band:2")
+				.add("Megadeth", 3, "band:3").build();
+		assertEquals("Mötley Crüe", tree.getBestSuggestions("motley")
+				.getSuggestion(0));
+		assertEquals(5, tree.weightOf("Mötley Crüe"));
+	}
+
+	@Test
+	public void testContinuation() {
+		SuggestTree tree = new SuggestTree(1, FLAGS);
+		tree.put("Die Mühle", 3, null);
+		tree.put("Die Halle", 2, null);
+		tree.put("Das Kult", 1, null);
+		SuggestTree.Page page = tree.getBestSuggestions("D", 1, null);
+		assertEquals("Die Mühle", page.getSuggestion(0));
+		page = tree.getBestSuggestions("d", 2, page.getContinuation());
+		assertEquals("Die Halle", page.getSuggestion(0));
+		assertEquals("Das Kult", page.getSuggestion(1));
+	}
+
+	@Test
+	public void testSameAnswersAsPlainTree() {
+		for (int flags : new int[] { 0, SuggestTree.CONCURRENT,
+				SuggestTree.TEXT_ARENA, SuggestTree.ADAPTIVE }) {
+			SuggestTree tree = new SuggestTree(5, FLAGS | flags);
+			SuggestTree plain = new SuggestTree(5, flags);
+			List<String> strings = new ArrayList<String>();
+			Random random = new Random(flags);
+			for (int i = 0; i < 5000; i++) {
+				String suggestion = randomString(random, ALPHABET, 6);
+				strings.add(suggestion);
+				if (random.nextInt(5) == 0) {
+					tree.remove(suggestion);
+					plain.remove(SuggestTree.normalize(suggestion));
+				} else {
+					int weight = random.nextInt(100);
+					tree.put(suggestion, weight, null);
+					plain.put(SuggestTree.normalize(suggestion), weight, null);
+				}
+			}
+			assertSameAnswers(plain, tree, strings);
+		}
+	}
+
+	@Test
+	public void testBuilder() {
+		SuggestTree.Builder builder = new SuggestTree.Builder(5, FLAGS);
+		SuggestTree.Builder plain = new SuggestTree.Builder(5);
+		List<String> strings = new ArrayList<String>();
+		Random random = new Random(5);
+		for (int i = 0; i < 5000; i++) {
+			String suggestion = randomString(random, ALPHABET, 6);
+			strings.add(suggestion);
+			int weight = random.nextInt(100);
+			builder.add(suggestion, weight, null);
+			plain.add(SuggestTree.normalize(suggestion), weight, null);
+		}
+		SuggestTree tree = builder.build();
+		assertSameAnswers(plain.build(), tree, strings);
+
+		// the suggestion that was added last is kept
+		tree = new SuggestTree.Builder(7, FLAGS).add("Die Muhle", 1, "a")
+				.add("die mühle", 2, "b").add("Die Halle", 3, "c").build();
+		assertEquals(2, tree.size());
+		SuggestTree.Node node = tree.getBestSuggestions("DIE M");
+		assertEquals("die mühle", node.getSuggestion(0));
+		assertEquals("b", node.getKey(0));
+	}
+
+	@Test
+	public void testFrozenAndMapped() throws IOException {
+		SuggestTree tree = new SuggestTree(7, FLAGS);
+		tree.put("Motörhead", 10, "band:1");
+		tree.put("Megadeth", 5, "band:2");
+		FrozenSuggestTree frozen = tree.freeze();
+		assertEquals("Motörhead", frozen.getBestSuggestions("MOTOR")
+				.getSuggestion(0));
+		assertEquals(10, frozen.weightOf("motorhead"));
+
+		File file = File.createTempFile("normalized", ".idx");
+		try {
+			MappedSuggestTree.write(frozen, file);
+			MappedSuggestTree mapped = MappedSuggestTree.open(file);
+			assertEquals("Motörhead", mapped.getBestSuggestions("motö")
+					.getSuggestion(0));
+			assertEquals(10, mapped.weightOf("MOTORHEAD"));
+			assertNull(mapped.getBestSuggestions("mx"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * asserts that the normalized tree returns the same weights for every
+	 * prefix as the plain tree does for the normalized prefix, and
+	 * suggestions that normalize to the ones of the plain tree
+	 */
+	private static void assertSameAnswers(SuggestTree plain,
+			SuggestTree tree, List<String> strings) {
+		assertEquals(plain.size(), tree.size());
+		for (String string : strings) {
+			String normalized = SuggestTree.normalize(string);
+			assertEquals(plain.weightOf(normalized), tree.weightOf(string));
+			for (int end = 1; end <= string.length(); end++) {
+				SuggestTree.Node expected = plain.getBestSuggestions(normalized
+						.substring(0, end));
+				SuggestTree.Node actual = tree.getBestSuggestions(string
+						.substring(0, end));
+				if (expected == null) {
+					assertNull(actual);
+					continue;
+				}
+				assertEquals(expected.listLength(), actual.listLength());
+				for (int i = 0; i < expected.listLength(); i++) {
+					assertEquals(expected.getSuggestion(i),
+							SuggestTree.normalize(actual.getSuggestion(i)));
+					assertEquals(expected.getWeight(i), actual.getWeight(i));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that the suggestions of a {@link SuggestTree} return the payloads
+ * they were put with, whichever way the tree is created or queried.
+ */
+public class TestPayloads {
+
+	private static final int[] FLAGS = { 0, SuggestTree.CONCURRENT,
+			SuggestTree.TEXT_ARENA, SuggestTree.NORMALIZE,
+			SuggestTree.DISTINCT_KEYS | SuggestTree.FRAGMENTS };
+
+	@Test
+	public void testPut() {
+		for (int flags : FLAGS) {
+			SuggestTree tree = new SuggestTree(3, flags);
+			tree.put("Metallica", 100, "band:1", "payload:1");
+			tree.put("Megadeth", 90, "band:2", "payload:2");
+			tree.put("Meshuggah", 80, "band:3");
+			tree.put("Me", 70, "band:4", "payload:4");
+			assertPayloads(tree.getBestSuggestions("Me"), "payload:1",
+					"payload:2", null);
+
+			// a new weight keeps the payload, unless another one is put
+			tree.put("Metallica", 60, "band:1");
+			tree.put("Megadeth", 95, "band:2", "payload:5");
+			tree.put("Meshuggah", 85, "band:3", "payload:3");
+			assertPayloads(tree.getBestSuggestions("Me", 4, null),
+					"payload:5", "payload:3", "payload:4", "payload:1");
+			assertPayloads(tree.getBestSuggestions("Met", 1), "payload:1");
+
+			tree.put("Megadeth", 95, "band:2", null);
+			tree.remove("Me");
+			tree.put("Me", 70, "band:4");
+			assertPayloads(tree.getBestSuggestions("Me"), null, "payload:3",
+					null);
+		}
+	}
+
+	@Test
+	public void testBuilder() {
+		for (int flags : FLAGS) {
+			SuggestTree.Builder builder = new SuggestTree.Builder(3, flags);
+			builder.add("Metallica", 100, "band:1", "payload:1");
+			builder.add("Megadeth", 90, "band:2");
+			builder.add("Meshuggah", 80, "band:3", "payload:3");
+			builder.add("Megadeth", 90, "band:2", "payload:2");
+			SuggestTree tree = builder.build();
+			assertPayloads(tree.getBestSuggestions("M"), "payload:1",
+					"payload:2", "payload:3");
+			assertPayloads(tree.getFuzzySuggestions("Mwg", 1, 3, 100),
+					"payload:2");
+		}
+	}
+
+	private static void assertPayloads(SuggestTree.Node suggestions,
+			Object... payloads) {
+		assertEquals(payloads.length, suggestions.listLength());
+		for (int i = 0; i < payloads.length; i++) {
+			if (payloads[i] == null) {
+				assertNull(suggestions.getPayload(i));
+			} else {
+				assertEquals(payloads[i], suggestions.getPayload(i));
+			}
+		}
+	}
+}
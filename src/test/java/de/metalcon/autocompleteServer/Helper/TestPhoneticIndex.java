@@ -0,0 +1,76 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that the {@link PhoneticIndex} finds suggestions by the way they
+ * sound, in the order of their weights and without duplicates.
+ */
+public class TestPhoneticIndex {
+
+	@Test
+	public void testSoundAlikes() {
+		PhoneticIndex index = new PhoneticIndex(7, 0);
+		this.addBands(index);
+		LinkedHashMap<String, String> suggestions = index.getSuggestions(
+				"motorhed", 7);
+		assertEquals(1, suggestions.size());
+		assertEquals("band:1", suggestions.get("Motörhead"));
+
+		suggestions = index.getSuggestions("slayr", 7);
+		assertEquals("band:2", suggestions.get("Slayer"));
+
+		// a typed prefix sounds like the start of the name
+		suggestions = index.getSuggestions("nait", 7);
+		assertEquals("band:3", suggestions.get("Nightwish"));
+	}
+
+	@Test
+	public void testOrderAndCount() {
+		PhoneticIndex index = new PhoneticIndex(7, 0);
+		this.addBands(index);
+		// "Megadeth" is stored under two codes but returned once
+		LinkedHashMap<String, String> suggestions = index.getSuggestions("m",
+				7);
+		assertEquals("[Metallica, Motörhead, Megadeth]",
+				new ArrayList<String>(suggestions.keySet()).toString());
+		assertEquals(2, index.getSuggestions("m", 2).size());
+	}
+
+	@Test
+	public void testNoCode() {
+		PhoneticIndex index = new PhoneticIndex(7, 0);
+		index.put("1349", 5, "band:7");
+		assertEquals(0, index.size());
+		this.addBands(index);
+		assertTrue(index.getSuggestions("1349", 7).isEmpty());
+	}
+
+	@Test
+	public void testBuilder() {
+		PhoneticIndex.Builder builder = new PhoneticIndex.Builder(7,
+				SuggestTree.CONCURRENT);
+		builder.add("Motörhead", 8, "band:1");
+		builder.add("Megadeth", 5, "band:4");
+		PhoneticIndex index = builder.build();
+		assertEquals("band:1", index.getSuggestions("motorhed", 7).get(
+				"Motörhead"));
+		index.put("Metallica", 10, "band:5");
+		assertEquals("Metallica", index.getSuggestions("metalika", 7)
+				.keySet().iterator().next());
+	}
+
+	private void addBands(PhoneticIndex index) {
+		index.put("Motörhead", 8, "band:1");
+		index.put("Slayer", 6, "band:2");
+		index.put("Nightwish", 7, "band:3");
+		index.put("Megadeth", 5, "band:4");
+		index.put("Metallica", 10, "band:5");
+	}
+}
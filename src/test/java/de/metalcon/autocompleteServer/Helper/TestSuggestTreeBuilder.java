@@ -0,0 +1,173 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that a tree created by a {@link SuggestTree.Builder} holds the
+ * same suggestions and lists as a tree created with
+ * {@link SuggestTree#put}, and that it can still be modified afterwards.
+ */
+public class TestSuggestTreeBuilder {
+
+	private static final int K = 7;
+	private static final String ALPHABET = "abcdef";
+
+	@Test
+	public void testSameListsAsPut() {
+		this.checkBuilder(0);
+	}
+
+	@Test
+	public void testSameListsAsPutWithFlags() {
+		this.checkBuilder(SuggestTree.CONCURRENT | SuggestTree.TEXT_ARENA);
+	}
+
+	@Test
+	public void testParallelBuildIsIdentical() {
+		this.checkParallelBuild(0);
+	}
+
+	@Test
+	public void testParallelBuildIsIdenticalWithFlags() {
+		this.checkParallelBuild(SuggestTree.TEXT_ARENA);
+	}
+
+	@Test
+	public void testEmptyBuilder() {
+		SuggestTree tree = new SuggestTree.Builder(K).build();
+		assertEquals(0, tree.size());
+		assertNull(tree.getBestSuggestions("a"));
+		tree.put("a", 1, "a");
+		assertEquals(1, tree.weightOf("a"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeWeight() {
+		new SuggestTree.Builder(K).add("a", -1, "a");
+	}
+
+	private void checkBuilder(int flags) {
+		Random random = new Random(5);
+		SuggestTree.Builder builder = new SuggestTree.Builder(K, flags);
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		Map<String, String> keys = new HashMap<String, String>();
+		for (int i = 0; i < 20000; i++) {
+			String suggestion = randomString(random, ALPHABET, 7);
+			int weight = random.nextInt(500);
+			String key = "key" + i;
+			builder.add(suggestion, weight, key);
+			weights.put(suggestion, weight);
+			keys.put(suggestion, key);
+		}
+		SuggestTree tree = builder.build();
+		assertEquals(weights.size(), tree.size());
+		checkAgainstReference(tree, weights, keys);
+
+		SuggestTree.Iterator iterator = tree.iterator();
+		List<String> sorted = new ArrayList<String>(weights.keySet());
+		Collections.sort(sorted);
+		for (String suggestion : sorted) {
+			assertEquals(suggestion, iterator.next());
+		}
+		assertNull(iterator.next());
+
+		// the built tree has to support the usual modifications
+		for (int i = 0; i < 20000; i++) {
+			String suggestion = randomString(random, ALPHABET, 7);
+			if (random.nextInt(3) == 0) {
+				tree.remove(suggestion);
+				weights.remove(suggestion);
+				keys.remove(suggestion);
+			} else if (!weights.containsKey(suggestion)) {
+				int weight = random.nextInt(500);
+				tree.put(suggestion, weight, suggestion);
+				weights.put(suggestion, weight);
+				keys.put(suggestion, suggestion);
+			} else {
+				int weight = random.nextInt(500);
+				tree.put(suggestion, weight, suggestion);
+				weights.put(suggestion, weight);
+			}
+		}
+		assertEquals(weights.size(), tree.size());
+		checkAgainstReference(tree, weights, keys);
+	}
+
+	/**
+	 * Builds the same large tree sequentially and in parallel and compares
+	 * their frozen copies, which contain the whole node structure.
+	 */
+	private void checkParallelBuild(int flags) {
+		Random random = new Random(9);
+		SuggestTree.Builder builder = new SuggestTree.Builder(K, flags);
+		for (int i = 0; i < 200000; i++) {
+			String suggestion = randomString(random, ALPHABET, 7)
+					+ randomString(random, ALPHABET, 7);
+			builder.add(suggestion, random.nextInt(500), "key" + i);
+		}
+		FrozenSuggestTree expected = builder.build().freeze();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		FrozenSuggestTree actual = builder.build(pool).freeze();
+		pool.shutdown();
+
+		assertEquals(expected.nodeCount(), actual.nodeCount());
+		assertTrue(Arrays.equals(expected.firstChar, actual.firstChar));
+		assertTrue(Arrays.equals(expected.charEnd, actual.charEnd));
+		assertTrue(Arrays.equals(expected.left, actual.left));
+		assertTrue(Arrays.equals(expected.mid, actual.mid));
+		assertTrue(Arrays.equals(expected.right, actual.right));
+		assertTrue(Arrays.equals(expected.text, actual.text));
+		assertTrue(Arrays.equals(expected.listStart, actual.listStart));
+		assertTrue(Arrays.equals(expected.lists, actual.lists));
+		assertTrue(Arrays.equals(expected.suggestions, actual.suggestions));
+		assertTrue(Arrays.equals(expected.keys, actual.keys));
+		assertTrue(Arrays.equals(expected.weights, actual.weights));
+	}
+
+	private static void checkAgainstReference(SuggestTree tree,
+			Map<String, Integer> weights, Map<String, String> keys) {
+		Map<String, List<Integer>> expected = new HashMap<String, List<Integer>>();
+		for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+			String suggestion = entry.getKey();
+			assertEquals(entry.getValue().intValue(), tree.weightOf(suggestion));
+			for (int end = 1; end <= suggestion.length(); end++) {
+				String prefix = suggestion.substring(0, end);
+				List<Integer> list = expected.get(prefix);
+				if (list == null) {
+					list = new ArrayList<Integer>();
+					expected.put(prefix, list);
+				}
+				list.add(entry.getValue());
+			}
+		}
+		for (Map.Entry<String, List<Integer>> entry : expected.entrySet()) {
+			List<Integer> list = entry.getValue();
+			Collections.sort(list, Collections.reverseOrder());
+			SuggestTree.Node suggestions = tree.getBestSuggestions(entry
+					.getKey());
+			assertEquals(Math.min(K, list.size()), suggestions.listLength());
+			for (int i = 0; i < suggestions.listLength(); i++) {
+				String suggestion = suggestions.getSuggestion(i);
+				assertTrue(suggestion.startsWith(entry.getKey()));
+				assertEquals(list.get(i).intValue(), suggestions.getWeight(i));
+				assertEquals(weights.get(suggestion).intValue(),
+						suggestions.getWeight(i));
+				assertEquals(keys.get(suggestion), suggestions.getKey(i));
+			}
+		}
+	}
+}
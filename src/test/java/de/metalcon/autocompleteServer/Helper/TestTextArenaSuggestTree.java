@@ -0,0 +1,97 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static de.metalcon.autocompleteServer.Helper.RandomStrings.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that a tree created with the {@link SuggestTree#TEXT_ARENA} flag
+ * behaves exactly like a tree that keeps its strings.
+ */
+public class TestTextArenaSuggestTree {
+
+	private static final String ALPHABET = "abcde\u00e4\u0416";
+
+	@Test
+	public void testSameAnswersAsStringTree() {
+		SuggestTree expected = new SuggestTree(7);
+		SuggestTree actual = new SuggestTree(7, SuggestTree.TEXT_ARENA);
+		Set<String> strings = new HashSet<String>();
+		Random random = new Random(11);
+		for (int i = 0; i < 20000; i++) {
+			String suggestion = randomString(random, ALPHABET, 7);
+			strings.add(suggestion);
+			if (random.nextInt(5) == 0) {
+				expected.remove(suggestion);
+				actual.remove(suggestion);
+			} else {
+				int weight = random.nextInt(500);
+				String key = (random.nextInt(10) == 0) ? null : "key:"
+						+ suggestion;
+				expected.put(suggestion, weight, key);
+				actual.put(suggestion, weight, key);
+			}
+		}
+
+		assertEquals(expected.size(), actual.size());
+		for (String string : strings) {
+			assertEquals(expected.weightOf(string), actual.weightOf(string));
+			for (int end = 1; end <= string.length(); end++) {
+				String prefix = string.substring(0, end);
+				assertSameList(expected.getBestSuggestions(prefix),
+						actual.getBestSuggestions(prefix));
+			}
+		}
+
+		SuggestTree.Iterator expectedIterator = expected.iterator();
+		SuggestTree.Iterator actualIterator = actual.iterator();
+		String suggestion;
+		while ((suggestion = expectedIterator.next()) != null) {
+			assertEquals(suggestion, actualIterator.next());
+			assertEquals(expectedIterator.weight(), actualIterator.weight());
+		}
+		assertNull(actualIterator.next());
+	}
+
+	@Test
+	public void testClear() {
+		SuggestTree tree = new SuggestTree(7, SuggestTree.TEXT_ARENA);
+		tree.put("metallica", 10, "band:1");
+		tree.clear();
+		assertNull(tree.getBestSuggestions("m"));
+		tree.put("megadeth", 5, "band:2");
+		assertEquals("megadeth", tree.getBestSuggestions("me")
+				.getSuggestion(0));
+		assertEquals("band:2", tree.getBestSuggestions("me").getKey(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLongSuggestion() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i <= Short.MAX_VALUE; i++) {
+			builder.append('a');
+		}
+		new SuggestTree(7, SuggestTree.TEXT_ARENA).put("a", 1,
+				builder.toString());
+	}
+
+	private static void assertSameList(SuggestTree.Node expected,
+			SuggestTree.Node actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.listLength(), actual.listLength());
+		for (int i = 0; i < expected.listLength(); i++) {
+			assertEquals(expected.getSuggestion(i), actual.getSuggestion(i));
+			assertEquals(expected.getWeight(i), actual.getWeight(i));
+			assertEquals(expected.getKey(i), actual.getKey(i));
+		}
+	}
+}
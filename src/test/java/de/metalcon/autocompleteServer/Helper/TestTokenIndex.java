@@ -0,0 +1,113 @@
+package de.metalcon.autocompleteServer.Helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that the {@link TokenIndex} finds suggestions by the start of a
+ * later word, in the order of their weights and once per entity.
+ */
+public class TestTokenIndex {
+
+	@Test
+	public void testWordStarts() {
+		TokenIndex index = new TokenIndex(7, 0);
+		this.addAlbums(index);
+		LinkedHashMap<String, String> suggestions = index.getSuggestions(
+				"puppets", 7);
+		assertEquals(1, suggestions.size());
+		assertEquals("album:1", suggestions.get("master of puppets"));
+
+		// a term may span several words
+		suggestions = index.getSuggestions("of pup", 7);
+		assertEquals("album:1", suggestions.get("master of puppets"));
+
+		// the first word is left to the index itself
+		assertTrue(index.getSuggestions("master", 7).isEmpty());
+		assertTrue(index.getSuggestions("ppets", 7).isEmpty());
+	}
+
+	@Test
+	public void testOrderAndEntities() {
+		TokenIndex index = new TokenIndex(7, 0);
+		this.addAlbums(index);
+		// "ride the lightning" is returned once although two words start
+		// with "l", and "lightning" suggests the same entity
+		index.put("lightning", 100, "album:2");
+		index.put("live in london", 3, "album:4");
+		LinkedHashMap<String, String> suggestions = index.getSuggestions("l",
+				7);
+		assertEquals("[ride the lightning, live in london]",
+				new ArrayList<String>(suggestions.keySet()).toString());
+		assertEquals(1, index.getSuggestions("l", 1).size());
+	}
+
+	@Test
+	public void testSingleWords() {
+		TokenIndex index = new TokenIndex(7, 0);
+		index.put("metallica", 10, "band:1");
+		index.put("metallica ", 10, "band:1");
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void testBuilder() {
+		TokenIndex.Builder builder = new TokenIndex.Builder(7,
+				SuggestTree.CONCURRENT | SuggestTree.TEXT_ARENA);
+		builder.add("master of puppets", 8, "album:1");
+		TokenIndex index = builder.build();
+		assertEquals(2, index.size());
+		assertEquals("album:1",
+				index.getSuggestions("pup", 7).get("master of puppets"));
+		index.put("kill 'em all", 7, "album:3");
+		assertEquals("album:3", index.getSuggestions("'em", 7).get(
+				"kill 'em all"));
+	}
+
+	@Test
+	public void testBuilderOrder() {
+		TokenIndex.Builder builder = new TokenIndex.Builder(7, 0);
+		builder.add("master of puppets", 8, "album:1");
+		builder.add("ride the lightning", 7, "album:2");
+		builder.add("ride the lightning", 9, "album:2");
+		builder.add("live in london", 3, "album:4");
+		TokenIndex index = builder.build();
+		// a suggestion added twice keeps the weight that was added last
+		assertEquals(6, index.size());
+		assertEquals("[ride the lightning, live in london]",
+				new ArrayList<String>(index.getSuggestions("l", 7).keySet())
+						.toString());
+
+		// suggestions put later are merged by weight, and a suggestion of
+		// the builder that is put again takes its new weight
+		index.put("kill em all lightning", 5, "album:5");
+		index.put("ride the lightning", 1, "album:2");
+		assertEquals("[kill em all lightning, live in london, ride the lightning]",
+				new ArrayList<String>(index.getSuggestions("l", 7).keySet())
+						.toString());
+	}
+
+	@Test
+	public void testBuilderNormalize() {
+		TokenIndex.Builder builder = new TokenIndex.Builder(7,
+				SuggestTree.NORMALIZE);
+		builder.add("Ace of Spades", 8, "album:1");
+		builder.add("Hammered Mo\u0308torhead", 7, "album:2");
+		TokenIndex index = builder.build();
+		assertEquals("album:1",
+				index.getSuggestions("SPADES", 7).get("Ace of Spades"));
+		assertEquals("album:2", index.getSuggestions("motor", 7).get(
+				"Hammered M\u00f6torhead"));
+	}
+
+	private void addAlbums(TokenIndex index) {
+		index.put("master of puppets", 8, "album:1");
+		index.put("ride the lightning", 7, "album:2");
+		index.put("and justice for all", 5, "album:3");
+	}
+}
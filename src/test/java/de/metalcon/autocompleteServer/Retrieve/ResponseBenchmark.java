@@ -0,0 +1,241 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import javax.servlet.ServletContext;
+
+import org.json.simple.JSONObject;
+
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.ImageStore.Handle;
+import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+import de.metalcon.autocompleteServer.Helper.SuggestTree;
+
+/**
+ * Measures the bytes that encoding a retrieve response allocates, for the
+ * json-simple objects the servlet used to build and for the streaming
+ * {@link JsonWriter}, with inline images and with references to the
+ * {@link ImageServlet}, looked up by key or read from the handles the index
+ * keeps. This is not a unit test and is not run by the build.
+ * Run it with the number of responses and the bytes of the images, for
+ * example:
+ *
+ * <pre>
+ * java ... ResponseBenchmark 1000000 0
+ * java ... ResponseBenchmark 1000000 2000
+ * </pre>
+ *
+ * The reports show the bytes allocated, the time taken and the length of a
+ * response. Every response has the seven suggestions of a list with keys and a
+ * warning. The images are looked up through a proxy of the servlet context,
+ * which allocates a little for each lookup. The fragment variant also looks up
+ * the list in the index, which the others get once.
+ */
+public class ResponseBenchmark {
+
+	private static final String[] BANDS = { "Metallica", "Megadeth",
+			"Megaherz", "Meshuggah", "Menhir", "Meat Loaf", "Mötley Crüe" };
+
+	/**
+	 * the context key of the map of data URIs for the json-simple path
+	 */
+	private static final String LEGACY_IMAGE_INDEX = "legacy-image-index";
+
+	/**
+	 * the number of bytes written to the sink
+	 */
+	private static long sent;
+
+	/**
+	 * discards the responses, like a servlet stream that sends them away
+	 */
+	private static final OutputStream SINK = new OutputStream() {
+
+		@Override
+		public void write(int b) {
+			sent++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			sent += len;
+		}
+	};
+
+	public static void main(String[] args) throws IOException {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		int imageLength = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+
+		SuggestTree index = new SuggestTree(BANDS.length, SuggestTree.FRAGMENTS);
+		File imageFile = File.createTempFile("images", ".blob");
+		imageFile.deleteOnExit();
+		ImageStore imageStore = new ImageStore(imageFile);
+		HashMap<String, String> dataUris = new HashMap<String, String>();
+		byte[] image = new byte[imageLength];
+		new Random(0).nextBytes(image);
+		for (int i = 0; i < BANDS.length; i++) {
+			index.put(BANDS[i], 100 - i, "band:" + i,
+					imageStore.handle("band:" + i));
+			if (imageLength > 0) {
+				imageStore.put("band:" + i, image);
+				dataUris.put("band:" + i,
+						imageStore.getDataUri(imageStore.getImage("band:" + i)));
+			}
+		}
+		ServletContext context = context(imageStore, dataUris);
+		SuggestTree.Page page = index.getBestSuggestions("Me", BANDS.length,
+				null);
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(SINK,
+				StandardCharsets.UTF_8));
+
+		System.out.printf("%-11s %15s %12s %12s%n", "path", "bytes/response",
+				"ns/response", "length");
+		for (int round = 0; round < 2; round++) {
+			// the first round warms up
+			boolean report = round == 1;
+			run("json-simple", report, count, page, context, writer, 0);
+			run("streaming", report, count, page, context, writer, 1);
+			run("references", report, count, page, context, writer, 2);
+			run("handles", report, count, page, context, writer, 3);
+			run("fragment", report, count, index, context, writer, 4);
+		}
+	}
+
+	private static void run(String name, boolean report, int count,
+			Object suggestions, ServletContext context, PrintWriter writer,
+			int path) throws IOException {
+		long allocated = allocatedBytes();
+		long bytes = sent;
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			switch (path) {
+			case 0:
+				jsonSimple((SuggestTree.Page) suggestions, context, writer);
+				break;
+			case 1:
+				streaming((SuggestTree.Page) suggestions, context, true, false);
+				break;
+			case 2:
+				streaming((SuggestTree.Page) suggestions, context, false, false);
+				break;
+			case 3:
+				streaming((SuggestTree.Page) suggestions, context, false, true);
+				break;
+			default:
+				fragment((SuggestTree) suggestions, context);
+			}
+		}
+		long time = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated;
+		long length = (sent - bytes) / count;
+		if (report) {
+			System.out.printf("%-11s %15d %12d %12d%n", name, allocated
+					/ count, time / count, length);
+		}
+	}
+
+	/**
+	 * encodes the response like the servlet did before the
+	 * {@link JsonWriter}, with a JSON object, a map per suggestion and a
+	 * String that is copied through the writer of the servlet
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void jsonSimple(SuggestTree.Page page,
+			ServletContext context, PrintWriter writer) {
+		JSONObject jsonResponse = new JSONObject();
+		ArrayList suggestions = new ArrayList();
+		for (int i = 0; i < page.listLength(); i++) {
+			HashMap<String, String> suggestion = new HashMap<String, String>();
+			suggestion.put(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION,
+					page.getSuggestion(i));
+			suggestion.put(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_KEY,
+					page.getKey(i));
+			String image = ((HashMap<String, String>) context
+					.getAttribute(LEGACY_IMAGE_INDEX)).get(page.getKey(i));
+			if (image != null) {
+				suggestion.put(
+						ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_IMAGE,
+						image);
+			}
+			suggestions.add(suggestion);
+		}
+		jsonResponse.put("warning:noIndexGiven",
+				RetrieveStatusCodes.NO_INDEX_GIVEN);
+		jsonResponse.put(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST,
+				suggestions);
+		writer.println(jsonResponse.toJSONString());
+		writer.flush();
+	}
+
+	private static void streaming(SuggestTree.Page page,
+			ServletContext context, boolean inlineImages, boolean handles)
+			throws IOException {
+		ProcessRetrieveResponse response = new ProcessRetrieveResponse(context);
+		response.setInlineImages(inlineImages);
+		for (int i = 0; i < page.listLength(); i++) {
+			if (handles) {
+				response.addSuggestion(page.getSuggestion(i), page.getKey(i),
+						(Handle) page.getPayload(i));
+			} else {
+				response.addSuggestion(page.getSuggestion(i), page.getKey(i));
+			}
+		}
+		response.addIndexWarning(RetrieveStatusCodes.NO_INDEX_GIVEN);
+		response.writeJsonResponse(SINK);
+	}
+
+	private static void fragment(SuggestTree index, ServletContext context)
+			throws IOException {
+		ProcessRetrieveResponse response = new ProcessRetrieveResponse(context);
+		response.addSuggestionFragment(index,
+				index.getBestSuggestions("Me", BANDS.length, null));
+		response.addIndexWarning(RetrieveStatusCodes.NO_INDEX_GIVEN);
+		response.writeJsonResponse(SINK);
+	}
+
+	/**
+	 * returns a servlet context that only has the image store and the map of
+	 * data URIs the servlet used to keep instead
+	 */
+	private static ServletContext context(final ImageStore imageStore,
+			final HashMap<String, String> dataUris) {
+		return (ServletContext) Proxy.newProxyInstance(
+				ServletContext.class.getClassLoader(),
+				new Class<?>[] { ServletContext.class },
+				new InvocationHandler() {
+
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (method.getName().equals("getAttribute")) {
+							if (ProtocolConstants.IMAGE_SERVER_CONTEXT_KEY
+									.equals(args[0])) {
+								return imageStore;
+							}
+							if (LEGACY_IMAGE_INDEX.equals(args[0])) {
+								return dataUris;
+							}
+						}
+						return null;
+					}
+				});
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+}
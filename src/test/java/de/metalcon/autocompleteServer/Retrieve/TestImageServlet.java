@@ -0,0 +1,139 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
+
+/**
+ * Makes sure that the {@link ImageServlet} serves the JPEG of a key and lets
+ * clients cache it for good only under its current reference.
+ */
+public class TestImageServlet {
+
+	private static final byte[] JPEG = { (byte) 0xFF, (byte) 0xD8,
+			(byte) 0xFF, (byte) 0xE0 };
+
+	final private ServletConfig servletConfig = mock(ServletConfig.class);
+	final private ServletContext servletContext = mock(ServletContext.class);
+
+	private final ImageServlet servlet = new ImageServlet();
+
+	private HttpServletRequest request;
+
+	private HttpServletResponse response;
+
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+	private ImageStore imageStore;
+
+	private String version;
+
+	@Before
+	public void initializeTest() throws IOException {
+		when(this.servletConfig.getServletContext()).thenReturn(
+				this.servletContext);
+		File imageFile = File.createTempFile("images", ".blob");
+		imageFile.deleteOnExit();
+		this.imageStore = new ImageStore(imageFile);
+		this.imageStore.put("band:1", JPEG);
+		this.version = this.imageStore.getImage("band:1").getVersion();
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.IMAGE_SERVER_CONTEXT_KEY))
+				.thenReturn(this.imageStore);
+		try {
+			this.servlet.init(this.servletConfig);
+		} catch (ServletException e) {
+			fail("could not initialize servlet");
+		}
+		this.request = mock(HttpServletRequest.class);
+		this.response = mock(HttpServletResponse.class);
+		when(this.response.getOutputStream()).thenReturn(
+				new ServletOutputStream() {
+
+					@Override
+					public void write(int b) {
+						TestImageServlet.this.body.write(b);
+					}
+				});
+	}
+
+	@After
+	public void closeImageStore() throws IOException {
+		this.imageStore.close();
+	}
+
+	@Test
+	public void testCurrentReference() throws ServletException, IOException {
+		when(this.request.getParameter(ProtocolConstants.IMAGE_KEY_PARAMETER))
+				.thenReturn("band:1");
+		when(
+				this.request
+						.getParameter(ProtocolConstants.IMAGE_VERSION_PARAMETER))
+				.thenReturn(this.version);
+		this.servlet.doGet(this.request, this.response);
+
+		assertTrue(Arrays.equals(JPEG, this.body.toByteArray()));
+		verify(this.response).setContentType("image/jpeg");
+		verify(this.response).setContentLength(JPEG.length);
+		verify(this.response).setHeader("ETag", "\"" + this.version + "\"");
+		verify(this.response).setHeader("Cache-Control",
+				"public, max-age=" + ProtocolConstants.IMAGE_MAX_AGE);
+		assertEquals("image?key=band%3A1&v=" + this.version,
+				ImageServlet.reference("band:1",
+						this.imageStore.getImage("band:1")));
+	}
+
+	@Test
+	public void testRevalidation() throws ServletException, IOException {
+		// without the version the image has to be revalidated
+		when(this.request.getParameter(ProtocolConstants.IMAGE_KEY_PARAMETER))
+				.thenReturn("band:1");
+		this.servlet.doGet(this.request, this.response);
+		verify(this.response).setHeader("Cache-Control", "no-cache");
+		assertTrue(Arrays.equals(JPEG, this.body.toByteArray()));
+
+		// which does not send it again
+		this.body.reset();
+		when(this.request.getHeader("If-None-Match")).thenReturn(
+				"\"" + this.version + "\"");
+		this.servlet.doGet(this.request, this.response);
+		verify(this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		assertEquals(0, this.body.size());
+	}
+
+	@Test
+	public void testMissingImage() throws ServletException, IOException {
+		this.servlet.doGet(this.request, this.response);
+		verify(this.response).sendError(HttpServletResponse.SC_BAD_REQUEST);
+
+		when(this.request.getParameter(ProtocolConstants.IMAGE_KEY_PARAMETER))
+				.thenReturn("band:2");
+		this.servlet.doGet(this.request, this.response);
+		verify(this.response).sendError(HttpServletResponse.SC_NOT_FOUND);
+		verify(this.response, never()).getOutputStream();
+	}
+}
@@ -0,0 +1,70 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+/**
+ * Makes sure that the {@link JsonWriter} encodes strings like json-simple and
+ * reuses the buffer of its thread.
+ */
+public class TestJsonWriter {
+
+	@Test
+	public void testEscapesLikeJsonSimple() {
+		String[] strings = { "", "Metallica", "Mötley Crüe \"Live\"",
+				"AC/DC\\", "tab\tnew\nline\r\b\f", "\u0000\u001F\u007F\u0085",
+				"\u2028\u20AC\u20FF\u2100", "\uD83E\uDD18 horns",
+				"unpaired \uD800 and \uDC00" };
+		for (String string : strings) {
+			checkString(string);
+		}
+		Random random = new Random(11);
+		for (int i = 0; i < 1000; i++) {
+			char[] chars = new char[random.nextInt(20)];
+			for (int j = 0; j < chars.length; j++) {
+				chars[j] = (char) ((random.nextBoolean()) ? random.nextInt(0x100)
+						: random.nextInt(0x10000));
+			}
+			checkString(new String(chars));
+		}
+	}
+
+	@Test
+	public void testReusedBuffer() throws IOException {
+		JsonWriter json = JsonWriter.get();
+		json.write('{').writeField("suggestion", "Metallica").write('}');
+		assertEquals("{\"suggestion\":\"Metallica\"}", json.toString());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		json.writeTo(out);
+		assertEquals(json.size(), out.size());
+
+		// the next response of the thread starts empty in the same writer
+		assertTrue(JsonWriter.get() == json);
+		assertEquals(0, json.size());
+
+		// large responses grow the writer
+		StringBuilder image = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			image.append('A');
+		}
+		json.writeString(image.toString());
+		assertEquals(100002, json.size());
+		assertEquals(0, JsonWriter.get().size());
+	}
+
+	private static void checkString(String string) {
+		JsonWriter json = new JsonWriter(0);
+		json.writeString(string);
+		assertTrue(Arrays.equals(("\"" + JSONValue.escape(string) + "\"")
+				.getBytes(StandardCharsets.UTF_8), json.toByteArray()));
+	}
+}
@@ -3,14 +3,21 @@
  */
 package de.metalcon.autocompleteServer.Retrieve;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.lang.reflect.Field;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -19,10 +26,21 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import de.metalcon.autocompleteServer.Search;
+import de.metalcon.autocompleteServer.Create.SuggestionComponents;
+import de.metalcon.autocompleteServer.Helper.CategoryIndex;
+import de.metalcon.autocompleteServer.Helper.ImageStore;
+import de.metalcon.autocompleteServer.Helper.Importer;
+import de.metalcon.autocompleteServer.Helper.MappedSuggestTree;
+import de.metalcon.autocompleteServer.Helper.PhoneticIndex;
 import de.metalcon.autocompleteServer.Helper.ProtocolConstants;
 import de.metalcon.autocompleteServer.Helper.SuggestTree;
+import de.metalcon.autocompleteServer.Helper.TokenIndex;
 
 /**
  * @author Rene Pickhardt
@@ -37,6 +55,7 @@ import de.metalcon.autocompleteServer.Helper.SuggestTree;
 public class TestProcessRetrieveRequest {
 	final private ServletConfig servletConfig = mock(ServletConfig.class);
 	final private ServletContext servletContext = mock(ServletContext.class);
+	private ImageStore imageStore;
 
 	private HttpServletRequest initializeTest() {
 		// setup the test.
@@ -45,7 +64,7 @@ public class TestProcessRetrieveRequest {
 		when(this.servletConfig.getServletContext()).thenReturn(
 				this.servletContext);
 
-		SuggestTree generalIndex = new SuggestTree(7);
+		SuggestTree generalIndex = new SuggestTree(7, SuggestTree.NORMALIZE);
 		generalIndex.put("Metallica", 100, "Metallica");
 		generalIndex.put("Megadeth", 99, "Metallica");
 		generalIndex.put("Megaherz", 98, "Metallica");
@@ -60,7 +79,7 @@ public class TestProcessRetrieveRequest {
 								+ ProtocolConstants.DEFAULT_INDEX_NAME))
 				.thenReturn(generalIndex);
 
-		SuggestTree venueIndex = new SuggestTree(7);
+		SuggestTree venueIndex = new SuggestTree(7, SuggestTree.NORMALIZE);
 		venueIndex.put("Das Kult", 55, "http://www.daskult.de");
 		venueIndex.put("Die Halle", 44, "http://www.diehalle-frankfurt.de");
 		venueIndex.put("Die Mühle", 30, "http://www.die-muehle.net");
@@ -74,11 +93,17 @@ public class TestProcessRetrieveRequest {
 						.getAttribute(ProtocolConstants.INDEX_PARAMETER
 								+ "venueIndex")).thenReturn(venueIndex);
 
-		HashMap<String, String> imageIndex = new HashMap<String, String>();
+		try {
+			File imageFile = File.createTempFile("images", ".blob");
+			imageFile.deleteOnExit();
+			this.imageStore = new ImageStore(imageFile);
+		} catch (IOException e) {
+			fail("could not create the image store");
+		}
 		when(
 				this.servletContext
 						.getAttribute(ProtocolConstants.IMAGE_SERVER_CONTEXT_KEY))
-				.thenReturn(imageIndex);
+				.thenReturn(this.imageStore);
 
 		try {
 			servlet.init(this.servletConfig);
@@ -136,7 +161,7 @@ public class TestProcessRetrieveRequest {
 	@Test
 	public void testNumItemField() {
 		HttpServletRequest request = this.initializeTest();
-		JSONObject jsonResponse = this.testRequest(request, "Me", "8",
+		JSONObject jsonResponse = this.testRequest(request, "Me", "51",
 				ProtocolConstants.DEFAULT_INDEX_NAME);
 		assertTrue(jsonResponse.get("warning:numItems").equals(
 				RetrieveStatusCodes.NUMITEMS_OUT_OF_RANGE));
@@ -144,6 +169,20 @@ public class TestProcessRetrieveRequest {
 				.get("suggestionList");
 		assertTrue(suggestionList.size() == 7);
 
+		// more items than the index precomputes are not a warning
+		jsonResponse = this.testRequest(request, "Me", "8",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		assertTrue(jsonResponse.get("warning:numItems") == null);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get("suggestionList");
+		assertTrue(suggestionList.size() == 7);
+
+		jsonResponse = this.testRequest(request, "Me", "3",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get("suggestionList");
+		assertTrue(suggestionList.size() == 3);
+
 		jsonResponse = this.testRequest(request, "Me", "someRandomString",
 				ProtocolConstants.DEFAULT_INDEX_NAME);
 		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
@@ -161,6 +200,261 @@ public class TestProcessRetrieveRequest {
 		assertTrue(suggestionList.size() == 7);
 	}
 
+	/**
+	 * pages through all suggestions for a term with the continuation
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testContinuation() {
+		HttpServletRequest request = this.initializeTest();
+		JSONObject jsonResponse = this.testRequest(request, "Me", "3",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 3);
+		String continuation = (String) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_CONTINUATION);
+		assertTrue(continuation != null);
+
+		when(request.getParameter(ProtocolConstants.CONTINUATION_PARAMETER))
+				.thenReturn(continuation);
+		jsonResponse = this.testRequest(request, "Me", "5",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 4);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Meshuggah"));
+		assertTrue(jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_CONTINUATION) == null);
+
+		// a continuation for another term falls back to the first page
+		jsonResponse = this.testRequest(request, "Mega", "5",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		assertTrue(jsonResponse.get("warning:continuation").equals(
+				RetrieveStatusCodes.CONTINUATION_INVALID));
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 2);
+	}
+
+	/**
+	 * searches for misspelled terms with the fuzzy parameter
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testFuzzy() {
+		HttpServletRequest request = this.initializeTest();
+		JSONObject jsonResponse = this.testRequest(request, "Metalica", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 0);
+
+		when(request.getParameter(ProtocolConstants.FUZZY_PARAMETER))
+				.thenReturn("1");
+		jsonResponse = this.testRequest(request, "Metalica", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 1);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Metallica"));
+
+		// a two character term is searched exactly
+		jsonResponse = this.testRequest(request, "Ma", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 0);
+
+		when(request.getParameter(ProtocolConstants.FUZZY_PARAMETER))
+				.thenReturn("3");
+		jsonResponse = this.testRequest(request, "Me", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		assertTrue(jsonResponse.get("warning:fuzzy").equals(
+				RetrieveStatusCodes.FUZZY_INVALID));
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 7);
+	}
+
+	/**
+	 * fills up the suggestions for a term with sound-alikes from the
+	 * phonetic index
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testPhoneticFallback() {
+		HttpServletRequest request = this.initializeTest();
+		PhoneticIndex phoneticIndex = new PhoneticIndex(7,
+				SuggestTree.NORMALIZE);
+		phoneticIndex.put("Metallica", 100, "Metallica");
+		phoneticIndex.put("Motörhead", 90, "Motörhead");
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.PHONETIC_INDEX_CONTEXT_KEY
+								+ ProtocolConstants.DEFAULT_INDEX_NAME))
+				.thenReturn(phoneticIndex);
+
+		JSONObject jsonResponse = this.testRequest(request, "Motorhed", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 1);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Motörhead"));
+		assertTrue(jsonResponse.get("error") == null);
+
+		// exact matches come first and are not repeated
+		jsonResponse = this.testRequest(request, "Meta", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 2);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Metallica"));
+		assertTrue(suggestionList.get(1)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Motörhead"));
+
+		// a full page of exact matches is not filled up
+		jsonResponse = this.testRequest(request, "Me", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 7);
+		for (HashMap<String, String> suggestion : suggestionList) {
+			assertTrue(suggestion.get(
+					ProtocolConstants.RESP_JSON_FIELD_SUGGESTION).startsWith(
+					"Me"));
+		}
+	}
+
+	/**
+	 * merges the suggestions for a term with suggestions that have a later
+	 * word starting with the term, once per entity
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testTokenMatches() {
+		HttpServletRequest request = this.initializeTest();
+		TokenIndex tokenIndex = new TokenIndex(7,
+				SuggestTree.NORMALIZE);
+		tokenIndex.put("Meat Loaf", 95, "Metallica");
+		tokenIndex.put("Master of Puppets", 80, "album:1");
+		tokenIndex.put("Master of Metal", 60, "album:2");
+		tokenIndex.put("Made of Metal", 50, "album:2");
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.TOKEN_INDEX_CONTEXT_KEY
+								+ ProtocolConstants.DEFAULT_INDEX_NAME))
+				.thenReturn(tokenIndex);
+
+		JSONObject jsonResponse = this.testRequest(request, "Puppets", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 1);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Master of Puppets"));
+		assertTrue(jsonResponse.get("error") == null);
+
+		// "Meat Loaf" is an exact match and "Made of Metal" suggests the same
+		// entity as "Master of Metal"
+		jsonResponse = this.testRequest(request, "M", "9",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 8);
+		assertTrue(suggestionList.get(7)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Master of Metal"));
+	}
+
+	/**
+	 * ranks the suggestions with a later word starting with the term among
+	 * those that start with it and continues after the ones that were listed
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testTokenMatchesRanked() {
+		HttpServletRequest request = this.initializeTest();
+		TokenIndex tokenIndex = new TokenIndex(7, SuggestTree.NORMALIZE);
+		tokenIndex.put("Heavy Metal Thunder", 99, "album:3");
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.TOKEN_INDEX_CONTEXT_KEY
+								+ ProtocolConstants.DEFAULT_INDEX_NAME))
+				.thenReturn(tokenIndex);
+
+		JSONObject jsonResponse = this.testRequest(request, "Me", "3",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 3);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Metallica"));
+		assertTrue(suggestionList.get(1)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Megadeth"));
+		assertTrue(suggestionList.get(2)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Heavy Metal Thunder"));
+		String continuation = (String) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_CONTINUATION);
+		assertTrue(continuation != null);
+
+		when(request.getParameter(ProtocolConstants.CONTINUATION_PARAMETER))
+				.thenReturn(continuation);
+		jsonResponse = this.testRequest(request, "Me", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 5);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Megaherz"));
+	}
+
+	/**
+	 * fills up the suggestions for a term of several words with suggestions
+	 * that contain all of them
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testMultiTermQuery() {
+		HttpServletRequest request = this.initializeTest();
+		SuggestTree index = (SuggestTree) this.servletContext
+				.getAttribute(ProtocolConstants.INDEX_PARAMETER
+						+ ProtocolConstants.DEFAULT_INDEX_NAME);
+		TokenIndex tokenIndex = new TokenIndex(7,
+				SuggestTree.NORMALIZE);
+		index.put("Iron Maiden – Powerslave", 80, "album:1");
+		tokenIndex.put("Iron Maiden – Powerslave", 80, "album:1");
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.TOKEN_INDEX_CONTEXT_KEY
+								+ ProtocolConstants.DEFAULT_INDEX_NAME))
+				.thenReturn(tokenIndex);
+
+		JSONObject jsonResponse = this.testRequest(request,
+				"Iron Maiden Power", "7", ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 1);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Iron Maiden – Powerslave"));
+		assertTrue(jsonResponse.get("error") == null);
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testIndexNames() {
@@ -194,6 +488,223 @@ public class TestProcessRetrieveRequest {
 		assertTrue(suggestionList.size() == 7);
 	}
 
+	/**
+	 * finds suggestions regardless of case and diacritics, but returns them
+	 * as they were inserted
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testNormalizedTerm() {
+		HttpServletRequest request = this.initializeTest();
+		for (String term : new String[] { "Die Mühle", "die muhle", "DIE MÜH",
+				"die mu\u0308" }) {
+			JSONObject jsonResponse = this.testRequest(request, term, "7",
+					"venueIndex");
+			ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+			assertTrue(suggestionList.size() == 1);
+			assertTrue(suggestionList.get(0)
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+					.equals("Die Mühle"));
+			assertTrue(suggestionList.get(0)
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_KEY)
+					.equals("http://www.die-muehle.net"));
+		}
+	}
+
+	/**
+	 * answers a request with a category from the tree of that category, and
+	 * a request with an unknown category from the whole index
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testCategory() {
+		HttpServletRequest request = this.initializeTest();
+		CategoryIndex categoryIndex = new CategoryIndex(
+				ProtocolConstants.CATEGORIES.length, 7, SuggestTree.NORMALIZE);
+		categoryIndex.put("Metallica", 100, "band:1", 0);
+		categoryIndex.put("Megadeth", 99, "band:2", 0);
+		categoryIndex.put("Metal Church", 10, "band:3", 0);
+		categoryIndex.put("Master of Puppets", 80, "album:1", 1);
+		categoryIndex.put("Mezzanine", 70, "album:2", 1);
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.CATEGORY_INDEX_CONTEXT_KEY
+								+ ProtocolConstants.DEFAULT_INDEX_NAME))
+				.thenReturn(categoryIndex);
+
+		when(request.getParameter(ProtocolConstants.CATEGORY_PARAMETER))
+				.thenReturn("album");
+		JSONObject jsonResponse = this.testRequest(request, "Me", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 1);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Mezzanine"));
+
+		when(request.getParameter(ProtocolConstants.CATEGORY_PARAMETER))
+				.thenReturn("band");
+		jsonResponse = this.testRequest(request, "Met", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 2);
+		assertTrue(suggestionList.get(1)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+				.equals("Metal Church"));
+
+		when(request.getParameter(ProtocolConstants.CATEGORY_PARAMETER))
+				.thenReturn("label");
+		jsonResponse = this.testRequest(request, "Me", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.size() == 7);
+		assertTrue(jsonResponse.get("warning:category") != null);
+	}
+
+	/**
+	 * answers from an index that keeps the encoded suggestions of its lists
+	 * the same way as from one that does not
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testFragments() throws IOException {
+		HttpServletRequest request = this.initializeTest();
+		SuggestTree generalIndex = new SuggestTree(7, SuggestTree.NORMALIZE
+				| SuggestTree.FRAGMENTS);
+		generalIndex.put("Metallica", 100, "band:1");
+		generalIndex.put("Megadeth", 99, "band:2");
+		generalIndex.put("Menhir", 96, null);
+		generalIndex.put("Mötley Crüe \"Live\"", 95, "band:3");
+		when(
+				this.servletContext
+						.getAttribute(ProtocolConstants.INDEX_PARAMETER
+								+ ProtocolConstants.DEFAULT_INDEX_NAME))
+				.thenReturn(generalIndex);
+		this.imageStore.putDataUri("band:2", "data:image/jpg;base64,AAAA");
+
+		// the second request is answered from the fragment of the first
+		for (int i = 0; i < 2; i++) {
+			when(request.getParameter(ProtocolConstants.QUERY_PARAMETER))
+					.thenReturn("M");
+			when(request.getParameter(ProtocolConstants.NUM_ITEMS))
+					.thenReturn("7");
+			when(request.getParameter(ProtocolConstants.INDEX_PARAMETER))
+					.thenReturn(ProtocolConstants.DEFAULT_INDEX_NAME);
+			ProcessRetrieveResponse response = ProcessRetrieveRequest
+					.checkRequestParameter(request, this.servletContext);
+			JSONObject jsonResponse = this.getJson(response);
+			assertTrue(jsonResponse.get("warning:numItems") == null);
+			List<Map<String, String>> suggestionList = (List<Map<String, String>>) jsonResponse
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+			assertTrue(suggestionList.size() == 4);
+			assertTrue(suggestionList.get(1)
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_IMAGE)
+					.startsWith("image?key=band%3A2&v="));
+			assertTrue(suggestionList.get(2).get(
+					ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_KEY) == null);
+			assertTrue(suggestionList.get(3)
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION)
+					.equals("Mötley Crüe \"Live\""));
+		}
+	}
+
+	/**
+	 * writes an index file from a save file like the Importer does, maps it
+	 * at the start and retrieves from it like from the default index
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testMappedIndex() throws IOException {
+		HttpServletRequest request = this.initializeTest();
+		File directory = File.createTempFile("indexes", "");
+		directory.delete();
+		directory.mkdir();
+		File saveFile = new File(directory, "mappedIndex.save");
+		File indexFile = new File(directory, "mappedIndex"
+				+ ProtocolConstants.INDEX_FILE_EXTENSION);
+		try {
+			String[] suggestions = { "Metallica", "Megadeth", "Megaherz",
+					"Metallica Live" };
+			String[] keys = { "band:1", "band:2", "band:3", "band:1" };
+			int[] weights = { 100, 99, 98, 97 };
+			for (int i = 0; i < suggestions.length; i++) {
+				SuggestionComponents components = new SuggestionComponents();
+				components.setSuggestString(suggestions[i]);
+				components.setKey(keys[i]);
+				components.setWeight(weights[i]);
+				components.saveToDisc(saveFile);
+			}
+			Importer.writeIndexFile(saveFile, indexFile);
+
+			Search.mapIndexFiles(directory, this.servletContext);
+			ArgumentCaptor<MappedSuggestTree> mappedIndex = ArgumentCaptor
+					.forClass(MappedSuggestTree.class);
+			verify(this.servletContext).setAttribute(
+					eq(ProtocolConstants.MAPPED_INDEX_CONTEXT_KEY
+							+ "mappedIndex"), mappedIndex.capture());
+			when(
+					this.servletContext
+							.getAttribute(ProtocolConstants.MAPPED_INDEX_CONTEXT_KEY
+									+ "mappedIndex")).thenReturn(
+					mappedIndex.getValue());
+
+			JSONObject jsonResponse = this.testRequest(request, "me", "7",
+					"mappedIndex");
+			assertTrue(jsonResponse.get("warning:noIndexGiven") == null);
+			List<Map<String, String>> suggestionList = (List<Map<String, String>>) jsonResponse
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+			// the index file keeps one suggestion per key like the default
+			// index
+			assertEquals(3, suggestionList.size());
+			assertEquals("Metallica",
+					suggestionList.get(0).get(
+							ProtocolConstants.RESP_JSON_FIELD_SUGGESTION));
+			assertEquals("band:3",
+					suggestionList.get(2).get(
+							ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_KEY));
+
+			jsonResponse = this.testRequest(request, "Meg", "1", "mappedIndex");
+			suggestionList = (List<Map<String, String>>) jsonResponse
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+			assertEquals(1, suggestionList.size());
+			assertEquals("Megadeth",
+					suggestionList.get(0).get(
+							ProtocolConstants.RESP_JSON_FIELD_SUGGESTION));
+
+			jsonResponse = this.testRequest(request, "x", "7", "mappedIndex");
+			assertEquals(RetrieveStatusCodes.NO_SUGGESTIONS_MATCHING_TERM,
+					jsonResponse.get("error"));
+
+			// the suggestions created since the start are merged by weight,
+			// and one that was created again has its new weight
+			SuggestTree created = new SuggestTree(7, Search.INDEX_FLAGS);
+			created.put("Megadeth", 101, "band:2");
+			created.put("Meshuggah", 99, "band:4");
+			when(
+					this.servletContext
+							.getAttribute(ProtocolConstants.INDEX_PARAMETER
+									+ "mappedIndex")).thenReturn(created);
+			jsonResponse = this.testRequest(request, "me", "7", "mappedIndex");
+			suggestionList = (List<Map<String, String>>) jsonResponse
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+			assertEquals(4, suggestionList.size());
+			String[] expected = { "Megadeth", "Metallica", "Meshuggah",
+					"Megaherz" };
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], suggestionList.get(i).get(
+						ProtocolConstants.RESP_JSON_FIELD_SUGGESTION));
+			}
+		} finally {
+			saveFile.delete();
+			indexFile.delete();
+			directory.delete();
+		}
+	}
+
 	/**
 	 * tests if the keys are correctly trasfered TODO: need to be more specific
 	 * what happens if no keys are in the answer and if mixed keys are availabel
@@ -210,9 +721,58 @@ public class TestProcessRetrieveRequest {
 		suggestionList.get(0).get("key").equals("http://www.daskult.de");
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testImages() throws IOException {
+		HttpServletRequest request = this.initializeTest();
+		String image = "data:image/jpg;base64,AAAA";
+		this.imageStore.putDataUri("Metallica", image);
+
+		// the suggestions refer to the image servlet
+		JSONObject jsonResponse = this.testRequest(request, "Me", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		String reference = suggestionList.get(0).get(
+				ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_IMAGE);
+		assertTrue(reference.equals("image?key=Metallica&v="
+				+ this.imageStore.getImage("Metallica").getVersion()));
+
+		// unless they ask for the images themselves
+		when(request.getParameter(ProtocolConstants.INLINE_IMAGES_PARAMETER))
+				.thenReturn("true");
+		jsonResponse = this.testRequest(request, "Me", "7",
+				ProtocolConstants.DEFAULT_INDEX_NAME);
+		suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+		assertTrue(suggestionList.get(0)
+				.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_IMAGE)
+				.equals(image));
+	}
+
+	@SuppressWarnings("unchecked")
 	@Test
-	public void testImages() {
-		// TODO: need to implement Images Test
+	public void testImageHandles() throws IOException {
+		HttpServletRequest request = this.initializeTest();
+		SuggestTree generalIndex = (SuggestTree) this.servletContext
+				.getAttribute(ProtocolConstants.INDEX_PARAMETER
+						+ ProtocolConstants.DEFAULT_INDEX_NAME);
+		generalIndex.put("Metallica", 100, "Metallica",
+				this.imageStore.handle("Metallica"));
+
+		// the handle follows the image of the key
+		for (String image : new String[] { "data:image/jpg;base64,AAAA",
+				"data:image/jpg;base64,BBBB" }) {
+			this.imageStore.putDataUri("Metallica", image);
+			JSONObject jsonResponse = this.testRequest(request, "Met", "7",
+					ProtocolConstants.DEFAULT_INDEX_NAME);
+			ArrayList<HashMap<String, String>> suggestionList = (ArrayList<HashMap<String, String>>) jsonResponse
+					.get(ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_LIST);
+			assertEquals("image?key=Metallica&v="
+					+ this.imageStore.getImage("Metallica").getVersion(),
+					suggestionList.get(0).get(
+							ProtocolConstants.RESP_JSON_FIELD_SUGGESTION_IMAGE));
+		}
 	}
 
 	/**
@@ -232,35 +792,25 @@ public class TestProcessRetrieveRequest {
 				.thenReturn(indexName);
 		ProcessRetrieveResponse response = ProcessRetrieveRequest
 				.checkRequestParameter(request, this.servletContext);
-		response.buildJsonResonse();
-		JSONObject jsonResponse = this.getJson(response);
-		return jsonResponse;
+		return this.getJson(response);
 	}
 
 	/**
+	 * parses the bytes that the servlet would send for the response
+	 * 
 	 * @param response
 	 * @return
 	 */
 	private JSONObject getJson(ProcessRetrieveResponse response) {
-		Field field = null;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		try {
-			field = ProcessRetrieveResponse.class
-					.getDeclaredField("jsonResponse");
-		} catch (NoSuchFieldException e) {
+			response.writeJsonResponse(out);
+			return (JSONObject) new JSONParser().parse(new String(out
+					.toByteArray(), "UTF-8"));
+		} catch (IOException e) {
 			e.printStackTrace();
 			fail("could not test the Json resonse of the ProcessRetrieveResponse class");
-		} catch (SecurityException e) {
-			e.printStackTrace();
-			fail("could not test the Json resonse of the ProcessRetrieveResponse class");
-		}
-		field.setAccessible(true);
-		try {
-			return (JSONObject) field.get(response);
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
-			fail("could not test the Json resonse of the ProcessRetrieveResponse class");
-
-		} catch (IllegalAccessException e) {
+		} catch (ParseException e) {
 			e.printStackTrace();
 			fail("could not test the Json resonse of the ProcessRetrieveResponse class");
 		}
@@ -0,0 +1,166 @@
+package de.metalcon.autocompleteServer.Retrieve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Makes sure that the {@link ResponseCache} returns a response only while its
+ * index is unchanged, stays within its bytes and keeps frequent responses
+ * over rare ones.
+ */
+public class TestResponseCache {
+
+	private static final byte[] RESPONSE = new byte[100];
+
+	@Test
+	public void testVersions() {
+		ResponseCache cache = new ResponseCache(10000, 100);
+		long version = cache.version("generalIndex");
+		cache.put("me", version, RESPONSE);
+		assertTrue(Arrays.equals(RESPONSE, cache.get("me", version)));
+
+		cache.invalidate("venueIndex");
+		assertEquals(version, cache.version("generalIndex"));
+		assertNotNull(cache.get("me", cache.version("generalIndex")));
+
+		cache.invalidate("generalIndex");
+		assertTrue(cache.version("generalIndex") != version);
+		assertNull(cache.get("me", cache.version("generalIndex")));
+		assertEquals(0, cache.size());
+
+		version = cache.version("generalIndex");
+		cache.put("me", version, RESPONSE);
+		cache.invalidate(null);
+		assertNull(cache.get("me", cache.version("generalIndex")));
+
+		assertEquals(2L, cache.hits());
+		assertEquals(2L, cache.misses());
+		assertEquals(0.5, cache.hitRate(), 0);
+	}
+
+	@Test
+	public void testBounded() {
+		ResponseCache cache = new ResponseCache(1000, 100);
+		for (int i = 0; i < 100; i++) {
+			String key = "term" + i;
+			cache.get(key, 0);
+			cache.put(key, 0, RESPONSE);
+			assertTrue(cache.bytes() <= 1000);
+		}
+		assertTrue(cache.size() > 0);
+
+		cache.put("large", 0, new byte[1001]);
+		assertNull(cache.get("large", 0));
+	}
+
+	@Test
+	public void testFrequentResponsesStay() {
+		ResponseCache cache = new ResponseCache(5 * (RESPONSE.length + 4), 100);
+		for (int i = 0; i < 10; i++) {
+			cache.get("m", 0);
+			cache.get("me", 0);
+		}
+		cache.put("m", 0, RESPONSE);
+		cache.put("me", 0, RESPONSE);
+
+		// a burst of terms that are requested once does not evict them
+		for (int i = 0; i < 1000; i++) {
+			String key = "t" + i;
+			if (cache.get(key, 0) == null) {
+				cache.put(key, 0, RESPONSE);
+			}
+		}
+		assertNotNull(cache.get("m", 0));
+		assertNotNull(cache.get("me", 0));
+		assertTrue(cache.rejections() > 0);
+
+		// a term that becomes frequent is admitted
+		for (int i = 0; i < 10; i++) {
+			cache.get("met", 0);
+		}
+		cache.put("met", 0, RESPONSE);
+		assertNotNull(cache.get("met", 0));
+		assertTrue(cache.evictions() > 0);
+	}
+
+	@Test
+	public void testHitsTakeNoLock() throws InterruptedException {
+		final ResponseCache cache = new ResponseCache(10000, 100);
+		cache.put("me", cache.version("generalIndex"), RESPONSE);
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch answered = new CountDownLatch(1);
+		final AtomicBoolean released = new AtomicBoolean();
+		Thread writer = new Thread() {
+
+			@Override
+			public void run() {
+				synchronized (cache) {
+					locked.countDown();
+					try {
+						answered.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						// released below
+					}
+					released.set(true);
+				}
+			}
+		};
+		writer.start();
+		locked.await();
+		// the hit is answered while the lock is held
+		assertNotNull(cache.get("me", cache.version("generalIndex")));
+		assertFalse(released.get());
+		answered.countDown();
+		writer.join();
+	}
+
+	@Test
+	public void testConcurrentRequests() throws InterruptedException {
+		final ResponseCache cache = new ResponseCache(20
+				* (RESPONSE.length + 8), 100);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						// a few frequent terms and many rare ones
+						String key = "t"
+								+ ((random.nextInt(4) == 0) ? random
+										.nextInt(1000) : random.nextInt(10));
+						long version = cache.version("generalIndex");
+						if (cache.get(key, version) == null) {
+							cache.put(key, version, RESPONSE);
+						}
+						if (i % 5000 == 0) {
+							cache.invalidate("generalIndex");
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(cache.bytes() <= 20 * (RESPONSE.length + 8));
+		assertTrue(cache.size() > 0);
+		for (int i = 0; i < 10; i++) {
+			cache.get("t" + i, cache.version("generalIndex"));
+		}
+		assertTrue(cache.hits() > 0);
+	}
+}